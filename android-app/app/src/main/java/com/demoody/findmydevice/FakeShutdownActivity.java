@@ -10,6 +10,7 @@ import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.Toast;
+import com.demoody.findmydevice.services.BurstMode;
 import com.demoody.findmydevice.utils.PreferenceManager;
 
 public class FakeShutdownActivity extends Activity {
@@ -28,7 +29,7 @@ public class FakeShutdownActivity extends Activity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_fake_shutdown);
         
-        preferenceManager = new PreferenceManager(this);
+        preferenceManager = PreferenceManager.getInstance(this);
         
         // Make this activity appear over lock screen and other apps
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED |
@@ -75,6 +76,9 @@ public class FakeShutdownActivity extends Activity {
             passwordInput.setText("");
             passwordInput.requestFocus();
             
+            // Someone trying to switch the phone off without the password is likely a thief
+            BurstMode.start(this, BurstMode.REASON_FAKE_SHUTDOWN);
+            
             // Optionally, you could implement a delay or limit attempts
         }
     }
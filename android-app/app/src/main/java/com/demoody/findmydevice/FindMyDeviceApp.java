@@ -0,0 +1,58 @@
+package com.demoody.findmydevice;
+
+import android.app.Application;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import com.demoody.findmydevice.metrics.StartupTrace;
+import com.demoody.findmydevice.network.ApiClient;
+import com.demoody.findmydevice.services.FirebaseMessagingService;
+import com.demoody.findmydevice.utils.PreferenceManager;
+import com.demoody.findmydevice.work.WorkScheduler;
+import com.google.firebase.messaging.FirebaseMessaging;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class FindMyDeviceApp extends Application {
+    private static final String TAG = "FindMyDeviceApp";
+    
+    // Two threads so the settings load never queues behind the network stack
+    private static final ExecutorService startupExecutor = Executors.newFixedThreadPool(2);
+    
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        
+        StartupTrace trace = StartupTrace.getInstance();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            long sinceFork = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+            trace.setProcessStart(trace.now() - sinceFork);
+        }
+        
+        // Nothing here may block: activities, services and receivers all wait on onCreate
+        long warmUpStart = trace.now();
+        runInBackground(() -> {
+            PreferenceManager preferences = PreferenceManager.getInstance(this);
+            // Covers installs that registered only locally before uploads were held for the server
+            if (preferences.isDeviceRegistered() && !preferences.isServerRegistered()) {
+                WorkScheduler.scheduleRegistration(this);
+            }
+        });
+        // onNewToken only fires on rotation, so installs whose token never reached the server catch up here
+        FirebaseMessaging.getInstance().getToken().addOnSuccessListener(token ->
+                runInBackground(() -> FirebaseMessagingService.sendTokenToServer(this, token)));
+        runInBackground(() -> {
+            ApiClient.getInstance(this);
+            Log.d(TAG, "Warm-up done in " + trace.record(StartupTrace.WARM_UP, warmUpStart) + "ms");
+        });
+    }
+    
+    /**
+     * Runs startup work off the main thread. Not for long-running jobs; those
+     * belong to WorkManager or the component that owns them.
+     */
+    public static void runInBackground(Runnable task) {
+        startupExecutor.execute(task);
+    }
+}
\ No newline at end of file
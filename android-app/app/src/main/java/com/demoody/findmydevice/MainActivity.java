@@ -7,6 +7,7 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.os.Bundle;
+import android.util.Log;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -15,19 +16,23 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.demoody.findmydevice.metrics.StartupTrace;
 import com.demoody.findmydevice.models.ApiResponse;
 import com.demoody.findmydevice.models.DeviceRegistration;
 import com.demoody.findmydevice.network.ApiClient;
 import com.demoody.findmydevice.receivers.DeviceAdminReceiver;
 import com.demoody.findmydevice.services.LocationTrackingService;
 import com.demoody.findmydevice.utils.DeviceUtils;
+import com.demoody.findmydevice.utils.Lazy;
 import com.demoody.findmydevice.utils.LocationUtils;
 import com.demoody.findmydevice.utils.PreferenceManager;
+import com.demoody.findmydevice.work.WorkScheduler;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 
 public class MainActivity extends AppCompatActivity {
+    private static final String TAG = "MainActivity";
     
     private static final int REQUEST_LOCATION_PERMISSION = 1001;
     private static final int REQUEST_BACKGROUND_LOCATION_PERMISSION = 1002;
@@ -39,10 +44,12 @@ public class MainActivity extends AppCompatActivity {
     private Button enableDeviceAdminBtn;
     private Button testLocationBtn;
     private Button settingsBtn;
-    private PreferenceManager preferenceManager;
+    // Both decrypt or build something expensive, so neither is touched on the main thread before the first frame
+    private final Lazy<PreferenceManager> preferenceManager = new Lazy<>(() -> PreferenceManager.getInstance(this));
+    private final Lazy<ApiClient> apiClient = new Lazy<>(() -> ApiClient.getInstance(this));
     private DevicePolicyManager devicePolicyManager;
     private ComponentName deviceAdminComponent;
-    private ApiClient apiClient;
+    private boolean componentsReady = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -51,7 +58,7 @@ public class MainActivity extends AppCompatActivity {
         
         initializeViews();
         initializeComponents();
-        updateUI();
+        StartupTrace.getInstance().milestone(StartupTrace.ACTIVITY_CREATED);
     }
     
     private void initializeViews() {
@@ -66,20 +73,50 @@ public class MainActivity extends AppCompatActivity {
         enableDeviceAdminBtn.setOnClickListener(v -> enableDeviceAdmin());
         testLocationBtn.setOnClickListener(v -> testLocation());
         settingsBtn.setOnClickListener(v -> openSettings());
+        
+        // Stay inert until the settings behind every button have loaded
+        setButtonsEnabled(false);
+        statusText.setText("Loading…");
+    }
+    
+    private void setButtonsEnabled(boolean enabled) {
+        enableTrackingBtn.setEnabled(enabled);
+        enableDeviceAdminBtn.setEnabled(enabled);
+        testLocationBtn.setEnabled(enabled);
+        settingsBtn.setEnabled(enabled);
     }
     
     private void initializeComponents() {
-        preferenceManager = new PreferenceManager(this);
         devicePolicyManager = (DevicePolicyManager) getSystemService(DEVICE_POLICY_SERVICE);
         deviceAdminComponent = new ComponentName(this, DeviceAdminReceiver.class);
-        apiClient = ApiClient.getInstance(this);
         
-        // Register device if not already registered
-        if (!preferenceManager.isDeviceRegistered()) {
-            registerDevice();
+        FindMyDeviceApp.runInBackground(() -> {
+            // Usually already warm from FindMyDeviceApp; otherwise this is where the decrypt happens
+            PreferenceManager preferences = preferenceManager.get();
+            runOnUiThread(this::onComponentsReady);
+            
+            // Register device if not already registered
+            if (!preferences.isDeviceRegistered()) {
+                registerDevice();
+            }
+        });
+    }
+    
+    private void onComponentsReady() {
+        if (isFinishing() || isDestroyed()) {
+            return;
         }
         
+        componentsReady = true;
+        setButtonsEnabled(true);
+        updateUI();
         updateDeviceInfo();
+        
+        reportFullyDrawn();
+        long elapsed = StartupTrace.getInstance().milestone(StartupTrace.INTERACTIVE);
+        if (elapsed >= 0) {
+            Log.d(TAG, "Interactive " + elapsed + "ms after process start");
+        }
     }
     
     private void handleTrackingToggle() {
@@ -88,7 +125,7 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
         
-        if (preferenceManager.isTrackingEnabled()) {
+        if (preferenceManager.get().isTrackingEnabled()) {
             stopLocationTracking();
         } else {
             startLocationTracking();
@@ -137,7 +174,7 @@ public class MainActivity extends AppCompatActivity {
         Intent serviceIntent = new Intent(this, LocationTrackingService.class);
         startForegroundService(serviceIntent);
         
-        preferenceManager.setTrackingEnabled(true);
+        preferenceManager.get().setTrackingEnabled(true);
         updateUI();
         Toast.makeText(this, "Location tracking started", Toast.LENGTH_SHORT).show();
     }
@@ -146,7 +183,7 @@ public class MainActivity extends AppCompatActivity {
         Intent serviceIntent = new Intent(this, LocationTrackingService.class);
         stopService(serviceIntent);
         
-        preferenceManager.setTrackingEnabled(false);
+        preferenceManager.get().setTrackingEnabled(false);
         updateUI();
         Toast.makeText(this, "Location tracking stopped", Toast.LENGTH_SHORT).show();
     }
@@ -166,7 +203,10 @@ public class MainActivity extends AppCompatActivity {
     private void registerDevice() {
         String deviceId = DeviceUtils.getDeviceId(this);
         String deviceName = DeviceUtils.getDeviceName();
-        String authToken = DeviceUtils.generateRandomToken();
+        // Keep a token the server may already hold; a new one would be refused for this device id
+        String existingToken = preferenceManager.get().getDeviceToken();
+        String authToken = existingToken != null ? existingToken : DeviceUtils.generateRandomToken();
+        String fcmToken = preferenceManager.get().getFcmToken();
         
         DeviceRegistration registration = new DeviceRegistration(
                 deviceId,
@@ -174,21 +214,26 @@ public class MainActivity extends AppCompatActivity {
                 authToken,
                 DeviceUtils.getDeviceModel(),
                 DeviceUtils.getOsVersion(),
-                null // FCM token will be set later
+                fcmToken // Null if Firebase hasn't issued one yet; FcmTokenWorker sends it later
         );
         
-        Call<ApiResponse<Void>> call = apiClient.getApiService().registerDevice(registration);
+        Call<ApiResponse<Void>> call = apiClient.get().getApiService().registerDevice(registration);
         call.enqueue(new Callback<ApiResponse<Void>>() {
             @Override
             public void onResponse(Call<ApiResponse<Void>> call, Response<ApiResponse<Void>> response) {
                 if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
-                    preferenceManager.setDeviceId(deviceId);
-                    preferenceManager.setDeviceName(deviceName);
-                    preferenceManager.setDeviceToken(response.body().getDevice_token());
-                    preferenceManager.setDeviceRegistered(true);
+                    preferenceManager.get().setDeviceId(deviceId);
+                    preferenceManager.get().setDeviceName(deviceName);
+                    preferenceManager.get().setDeviceToken(response.body().getDevice_token());
+                    preferenceManager.get().setDeviceRegistered(true);
+                    preferenceManager.get().setServerRegistered(true);
+                    if (fcmToken != null) {
+                        preferenceManager.get().setSyncedFcmToken(fcmToken);
+                    }
+                    WorkScheduler.scheduleFcmTokenSync(MainActivity.this);
                     
                     // Generate SMS secret
-                    preferenceManager.setSmsSecret(DeviceUtils.generateRandomToken().substring(0, 8));
+                    preferenceManager.get().setSmsSecret(DeviceUtils.generateRandomToken().substring(0, 8));
                     
                     runOnUiThread(() -> {
                         Toast.makeText(MainActivity.this, "Device registered successfully", Toast.LENGTH_SHORT).show();
@@ -208,32 +253,46 @@ public class MainActivity extends AppCompatActivity {
         });
     }
     
+    /**
+     * Sets up the local identity so SMS commands and tracking work offline. Nothing is
+     * uploaded until RegistrationWorker gets the server to accept the token.
+     */
     private void registerDeviceLocally(String deviceId, String deviceName, String authToken) {
-        preferenceManager.setDeviceId(deviceId);
-        preferenceManager.setDeviceName(deviceName);
-        preferenceManager.setDeviceToken(authToken);
-        preferenceManager.setDeviceRegistered(true);
-        preferenceManager.setSmsSecret(DeviceUtils.generateRandomToken().substring(0, 8));
+        preferenceManager.get().setDeviceId(deviceId);
+        preferenceManager.get().setDeviceName(deviceName);
+        preferenceManager.get().setDeviceToken(authToken);
+        preferenceManager.get().setDeviceRegistered(true);
+        preferenceManager.get().setSmsSecret(DeviceUtils.generateRandomToken().substring(0, 8));
+        
+        // Keep trying to reach the server once a network is available
+        WorkScheduler.scheduleRegistration(this);
         
         runOnUiThread(() -> {
-            Toast.makeText(this, "Device registered locally (server unavailable)", Toast.LENGTH_SHORT).show();
+            Toast.makeText(this, "Server unavailable, registration will be retried", Toast.LENGTH_SHORT).show();
             updateUI();
         });
     }
     
     private void updateUI() {
+        if (!componentsReady) {
+            return;
+        }
+        
         StringBuilder status = new StringBuilder();
         
         // Device registration status
-        if (preferenceManager.isDeviceRegistered()) {
+        if (preferenceManager.get().isServerRegistered()) {
             status.append("✓ Device registered\n");
-            status.append("Device ID: ").append(preferenceManager.getDeviceId()).append("\n\n");
+            status.append("Device ID: ").append(preferenceManager.get().getDeviceId()).append("\n\n");
+        } else if (preferenceManager.get().isDeviceRegistered()) {
+            status.append("… Waiting to register with server\n");
+            status.append("Device ID: ").append(preferenceManager.get().getDeviceId()).append("\n\n");
         } else {
             status.append("✗ Device not registered\n\n");
         }
         
         // Location tracking status
-        if (preferenceManager.isTrackingEnabled()) {
+        if (preferenceManager.get().isTrackingEnabled()) {
             status.append("✓ Location tracking active\n");
             enableTrackingBtn.setText("Stop Tracking");
         } else {
@@ -257,7 +316,7 @@ public class MainActivity extends AppCompatActivity {
     
     private void updateDeviceInfo() {
         StringBuilder info = new StringBuilder();
-        info.append("Device ID: ").append(preferenceManager.getDeviceId()).append("\n");
+        info.append("Device ID: ").append(preferenceManager.get().getDeviceId()).append("\n");
         info.append("Model: ").append(DeviceUtils.getDeviceModel()).append("\n");
         info.append("OS Version: ").append(DeviceUtils.getOsVersion()).append("\n");
         info.append("SDK: ").append(DeviceUtils.getSdkVersion()).append("\n");
@@ -268,7 +327,7 @@ public class MainActivity extends AppCompatActivity {
         }
         
         info.append("Location Enabled: ").append(LocationUtils.isLocationEnabled(this) ? "Yes" : "No").append("\n");
-        info.append("SMS Secret: ").append(preferenceManager.getSmsSecret()).append("\n");
+        info.append("SMS Secret: ").append(preferenceManager.get().getSmsSecret()).append("\n");
         
         deviceInfoText.setText(info.toString());
     }
@@ -0,0 +1,166 @@
+package com.demoody.findmydevice.commands;
+
+import android.content.Context;
+import android.util.Log;
+import com.demoody.findmydevice.database.AppDatabase;
+import com.demoody.findmydevice.database.CommandAck;
+import com.demoody.findmydevice.database.CommandAckDao;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.models.ApiResponse;
+import com.demoody.findmydevice.network.ApiClient;
+import com.demoody.findmydevice.network.ApiService;
+import com.demoody.findmydevice.utils.PreferenceManager;
+import com.demoody.findmydevice.work.WorkScheduler;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import retrofit2.Response;
+
+/**
+ * Durable journal of command acknowledgements. Each status change is written
+ * to the local database keyed by command id, so a later status replaces an
+ * earlier one that has not been sent yet, and acks that could not be
+ * delivered survive until {@link com.demoody.findmydevice.work.AckFlushWorker}
+ * gets through.
+ */
+public class CommandAckJournal {
+    private static final String TAG = "CommandAckJournal";
+    private static final int BATCH_SIZE = 50;
+    private static final int HTTP_BAD_REQUEST = 400;
+    
+    private static volatile CommandAckJournal instance;
+    
+    private final Context context;
+    private final CommandAckDao commandAckDao;
+    private final PreferenceManager preferenceManager;
+    private final ApiClient apiClient;
+    // Single thread orders writes and flushes, so a row is never replaced while its batch is in flight
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    
+    private CommandAckJournal(Context context) {
+        this.context = context;
+        commandAckDao = AppDatabase.getInstance(context).commandAckDao();
+        preferenceManager = PreferenceManager.getInstance(context);
+        apiClient = ApiClient.getInstance(context);
+    }
+    
+    public static CommandAckJournal getInstance(Context context) {
+        if (instance == null) {
+            synchronized (CommandAckJournal.class) {
+                if (instance == null) {
+                    instance = new CommandAckJournal(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * Records a status for a server-issued command. Commands without an id
+     * (for example ones received by SMS) have nothing to acknowledge.
+     */
+    public void record(int commandId, String status, String message) {
+        if (commandId <= 0) {
+            return;
+        }
+        
+        long executedAt = System.currentTimeMillis() / 1000;
+        executor.execute(() -> {
+            CommandAck existing = commandAckDao.get(commandId);
+            CommandAck ack = new CommandAck(commandId, status, message, executedAt);
+            
+            if (existing != null) {
+                if (existing.isFinal() && !ack.isFinal()) {
+                    // A late "acknowledged" must not hide the outcome
+                    return;
+                }
+                ack.setAttempts(existing.getAttempts());
+            }
+            
+            commandAckDao.upsert(ack);
+            WorkScheduler.scheduleAckFlush(context);
+        });
+    }
+    
+    public void flush() {
+        WorkScheduler.scheduleAckFlush(context);
+    }
+    
+    /**
+     * Sends everything journaled and waits for the result. Called from the
+     * ack flush worker, never from the main thread.
+     *
+     * @return true if the journal was fully drained
+     */
+    public boolean flushNow() {
+        try {
+            return executor.submit(() -> {
+                boolean sent = sendPending();
+                MetricsRegistry.getInstance().gauge("queue.command_acks").set(commandAckDao.count());
+                return sent;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error flushing acknowledgements", e.getCause());
+            return false;
+        }
+    }
+    
+    /**
+     * Sends journaled acks batch by batch until none are left or a batch
+     * fails. Must run on the journal thread.
+     *
+     * @return true if the journal was fully drained
+     */
+    private boolean sendPending() {
+        String deviceId = preferenceManager.getDeviceId();
+        String authHeader = apiClient.getAuthHeader();
+        
+        if (deviceId == null || authHeader == null) {
+            Log.w(TAG, "Missing device ID or auth token, keeping acknowledgements queued");
+            return false;
+        }
+        
+        while (true) {
+            List<CommandAck> pending = commandAckDao.getPending(BATCH_SIZE);
+            if (pending.isEmpty()) {
+                return true;
+            }
+            
+            List<ApiService.CommandAckEntry> entries = new ArrayList<>(pending.size());
+            List<Integer> ids = new ArrayList<>(pending.size());
+            for (CommandAck ack : pending) {
+                entries.add(new ApiService.CommandAckEntry(ack.getCommandId(), ack.getStatus(),
+                        ack.getMessage(), ack.getExecutedAt()));
+                ids.add(ack.getCommandId());
+            }
+            
+            try {
+                Response<ApiResponse<Void>> response = apiClient.getApiService()
+                        .acknowledgeCommands(deviceId, authHeader, new ApiService.CommandAckBatch(entries))
+                        .execute();
+                
+                if (response.code() == HTTP_BAD_REQUEST) {
+                    // Resending the same batch cannot succeed
+                    Log.e(TAG, "Server rejected acknowledgement batch, dropping " + ids.size() + " acks");
+                } else if (!response.isSuccessful() || response.body() == null || !response.body().isSuccess()) {
+                    Log.w(TAG, "Failed to send acknowledgements: " + response.code());
+                    commandAckDao.incrementAttempts(ids);
+                    return false;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Network error sending acknowledgements", e);
+                commandAckDao.incrementAttempts(ids);
+                return false;
+            }
+            
+            commandAckDao.deleteByIds(ids);
+            Log.d(TAG, "Sent " + ids.size() + " command acknowledgements");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.demoody.findmydevice.commands;
+
+import com.demoody.findmydevice.tracking.Clock;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Drops a remote command that has already been seen on another delivery
+ * channel (FCM, SMS or polling). Commands from the server are keyed by id;
+ * SMS commands have no id and are keyed by a hash of their content, with a
+ * shorter window so a deliberately repeated SMS still goes through.
+ */
+public class CommandDeduplicator {
+    public static final long ID_WINDOW = 30 * 60 * 1000;
+    public static final long CONTENT_WINDOW = 60 * 1000;
+    public static final int MAX_ENTRIES = 256;
+    
+    private static final CommandDeduplicator INSTANCE =
+            new CommandDeduplicator(Clock.SYSTEM, ID_WINDOW, CONTENT_WINDOW, MAX_ENTRIES);
+    
+    private final Clock clock;
+    private final long idWindowMillis;
+    private final long contentWindowMillis;
+    private final int maxEntries;
+    // Key -> expiry time; insertion order is also expiry order within each window
+    private final LinkedHashMap<String, Long> seen = new LinkedHashMap<>();
+    private final Map<String, ChannelStats> channels = new TreeMap<>();
+    
+    private static class ChannelStats {
+        long accepted;
+        long suppressed;
+    }
+    
+    public CommandDeduplicator(Clock clock, long idWindowMillis, long contentWindowMillis, int maxEntries) {
+        this.clock = clock;
+        this.idWindowMillis = idWindowMillis;
+        this.contentWindowMillis = contentWindowMillis;
+        this.maxEntries = maxEntries;
+    }
+    
+    public static CommandDeduplicator getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * @param channel delivery channel, used only for the suppression counts
+     * @param commandId server command id, or 0 if the command has none
+     * @param content canonical command content, hashed when there is no id
+     * @return true the first time a command is seen within its window
+     */
+    public synchronized boolean accept(String channel, int commandId, String content) {
+        long now = clock.currentTimeMillis();
+        expire(now);
+        
+        String key;
+        long window;
+        if (commandId > 0) {
+            key = "id:" + commandId;
+            window = idWindowMillis;
+        } else {
+            key = "sha:" + contentHash(content);
+            window = contentWindowMillis;
+        }
+        
+        ChannelStats stats = stats(channel);
+        Long expiresAt = seen.get(key);
+        if (expiresAt != null && expiresAt > now) {
+            stats.suppressed++;
+            return false;
+        }
+        
+        seen.put(key, now + window);
+        if (seen.size() > maxEntries) {
+            // Oldest entry goes first; losing it only risks a late duplicate
+            Iterator<String> eldest = seen.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        stats.accepted++;
+        return true;
+    }
+    
+    public synchronized int size() {
+        return seen.size();
+    }
+    
+    public synchronized Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, ChannelStats> entry : channels.entrySet()) {
+            String prefix = entry.getKey().toLowerCase() + ".";
+            snapshot.put(prefix + "accepted", entry.getValue().accepted);
+            snapshot.put(prefix + "suppressed", entry.getValue().suppressed);
+        }
+        return snapshot;
+    }
+    
+    private void expire(long now) {
+        // Id and content entries have different windows, so scan rather than stop at the first live one
+        Iterator<Long> expiries = seen.values().iterator();
+        while (expiries.hasNext()) {
+            if (expiries.next() <= now) {
+                expiries.remove();
+            }
+        }
+    }
+    
+    private ChannelStats stats(String channel) {
+        String name = channel != null ? channel : "unknown";
+        ChannelStats stats = channels.get(name);
+        if (stats == null) {
+            stats = new ChannelStats();
+            channels.put(name, stats);
+        }
+        return stats;
+    }
+    
+    private static String contentHash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((content != null ? content : "").getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(16);
+            // 64 bits are plenty for a few hundred live entries
+            for (int i = 0; i < 8; i++) {
+                hex.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android and JVM runtime ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
\ No newline at end of file
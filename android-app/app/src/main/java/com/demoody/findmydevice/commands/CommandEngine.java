@@ -0,0 +1,283 @@
+package com.demoody.findmydevice.commands;
+
+import com.demoody.findmydevice.tracking.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs remote commands on a bounded worker pool with a per-type policy:
+ * <ul>
+ *   <li>{@link Policy#PRIORITY} jumps ahead of everything already queued,</li>
+ *   <li>{@link Policy#EXCLUSIVE} never runs two commands of the same type at once,</li>
+ *   <li>{@link Policy#COALESCE} folds a new request into one of the same type that is
+ *       still queued or running, and every requester receives its result.</li>
+ * </ul>
+ * Commands complete asynchronously through a {@link Completion} and are failed
+ * if they don't complete within their timeout. The {@link IdleListener} fires
+ * whenever the last outstanding command finishes.
+ */
+public class CommandEngine {
+    private static final int MAX_QUEUED_COMMANDS = 32;
+    
+    public enum Policy {
+        NORMAL, PRIORITY, EXCLUSIVE, COALESCE
+    }
+    
+    public interface Completion {
+        void complete(boolean success, String message);
+        
+        /**
+         * Runs action if the engine fails the command before the task completes
+         * it, such as on timeout, so the task can stop work nobody will read.
+         * Runs at once if that has already happened.
+         */
+        void onCancelled(Runnable action);
+    }
+    
+    public interface CommandTask {
+        void execute(Completion completion) throws Exception;
+    }
+    
+    public interface ResultListener {
+        void onResult(String type, boolean success, String message);
+    }
+    
+    public interface IdleListener {
+        void onIdle();
+    }
+    
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor();
+    private final Clock clock;
+    private final IdleListener idleListener;
+    private final CommandMetrics metrics = new CommandMetrics();
+    
+    private final Object lock = new Object();
+    private final Map<String, Execution> coalescing = new HashMap<>();
+    private final Set<String> exclusiveRunning = new HashSet<>();
+    private final Map<String, ArrayDeque<Execution>> exclusiveWaiting = new HashMap<>();
+    private int outstanding = 0;
+    private long sequence = 0;
+    
+    public CommandEngine(int workerCount, Clock clock, IdleListener idleListener) {
+        this.clock = clock;
+        this.idleListener = idleListener;
+        // execute() on a priority queue needs Comparable runnables, which Execution is
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>());
+        workers.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * @return false if the command was rejected because the queue is full
+     */
+    public boolean submit(String type, Policy policy, long timeoutMillis, CommandTask task, ResultListener listener) {
+        Execution execution;
+        synchronized (lock) {
+            if (policy == Policy.COALESCE) {
+                Execution existing = coalescing.get(type);
+                if (existing != null) {
+                    existing.listeners.add(listener);
+                    metrics.recordCoalesced(type);
+                    return true;
+                }
+            }
+            
+            if (outstanding >= MAX_QUEUED_COMMANDS) {
+                metrics.recordRejected(type);
+                listener.onResult(type, false, "Command queue full");
+                return false;
+            }
+            
+            execution = new Execution(type, policy, timeoutMillis, task, sequence++);
+            execution.listeners.add(listener);
+            if (policy == Policy.COALESCE) {
+                coalescing.put(type, execution);
+            }
+            outstanding++;
+            metrics.recordSubmitted(type);
+        }
+        
+        dispatch(execution);
+        return true;
+    }
+    
+    private void dispatch(Execution execution) {
+        try {
+            workers.execute(execution);
+        } catch (RejectedExecutionException e) {
+            // Shut down: fail it rather than throw on the caller, the worker or the timeout thread
+            execution.abandon("Command engine shut down");
+        }
+    }
+    
+    public boolean isIdle() {
+        synchronized (lock) {
+            return outstanding == 0;
+        }
+    }
+    
+    public CommandMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public void shutdown() {
+        workers.shutdownNow();
+        timeouts.shutdownNow();
+    }
+    
+    private class Execution implements Runnable, Comparable<Execution>, Completion {
+        final String type;
+        final Policy policy;
+        final long timeoutMillis;
+        final CommandTask task;
+        final long sequence;
+        final long submittedAt;
+        final List<ResultListener> listeners = new ArrayList<>();
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        // Guarded by this
+        final List<Runnable> cancelActions = new ArrayList<>();
+        boolean cancelled = false;
+        long startedAt;
+        ScheduledFuture<?> timeoutFuture;
+        
+        Execution(String type, Policy policy, long timeoutMillis, CommandTask task, long sequence) {
+            this.type = type;
+            this.policy = policy;
+            this.timeoutMillis = timeoutMillis;
+            this.task = task;
+            this.sequence = sequence;
+            this.submittedAt = clock.currentTimeMillis();
+        }
+        
+        @Override
+        public int compareTo(Execution other) {
+            boolean priority = policy == Policy.PRIORITY;
+            boolean otherPriority = other.policy == Policy.PRIORITY;
+            if (priority != otherPriority) {
+                return priority ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+        
+        @Override
+        public void run() {
+            if (policy == Policy.EXCLUSIVE) {
+                synchronized (lock) {
+                    if (exclusiveRunning.contains(type)) {
+                        // Parked without holding a worker; resubmitted when the running one finishes
+                        ArrayDeque<Execution> waiting = exclusiveWaiting.get(type);
+                        if (waiting == null) {
+                            waiting = new ArrayDeque<>();
+                            exclusiveWaiting.put(type, waiting);
+                        }
+                        waiting.add(this);
+                        return;
+                    }
+                    exclusiveRunning.add(type);
+                }
+            }
+            
+            startedAt = clock.currentTimeMillis();
+            metrics.recordStarted(type, startedAt - submittedAt);
+            timeoutFuture = timeouts.schedule(() -> finish(false, "Timed out", true),
+                    timeoutMillis, TimeUnit.MILLISECONDS);
+            
+            try {
+                task.execute(this);
+            } catch (Exception e) {
+                finish(false, "Error executing command: " + e.getMessage(), false);
+            }
+        }
+        
+        @Override
+        public void complete(boolean success, String message) {
+            finish(success, message, false);
+        }
+        
+        @Override
+        public void onCancelled(Runnable action) {
+            synchronized (this) {
+                if (!cancelled) {
+                    cancelActions.add(action);
+                    return;
+                }
+            }
+            action.run();
+        }
+        
+        private void runCancelActions() {
+            List<Runnable> actions;
+            synchronized (this) {
+                cancelled = true;
+                actions = new ArrayList<>(cancelActions);
+                cancelActions.clear();
+            }
+            for (Runnable action : actions) {
+                action.run();
+            }
+        }
+        
+        // For an execution that never started; its listeners are still told
+        void abandon(String message) {
+            startedAt = clock.currentTimeMillis();
+            finish(false, message, false);
+        }
+        
+        private void finish(boolean success, String message, boolean timedOut) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel(false);
+            }
+            if (timedOut) {
+                runCancelActions();
+            }
+            
+            List<ResultListener> toNotify;
+            Execution next = null;
+            boolean idle;
+            synchronized (lock) {
+                if (coalescing.get(type) == this) {
+                    coalescing.remove(type);
+                }
+                toNotify = new ArrayList<>(listeners);
+                if (policy == Policy.EXCLUSIVE) {
+                    exclusiveRunning.remove(type);
+                    ArrayDeque<Execution> waiting = exclusiveWaiting.get(type);
+                    if (waiting != null) {
+                        next = waiting.poll();
+                    }
+                }
+                outstanding--;
+                idle = outstanding == 0;
+            }
+            
+            metrics.recordFinished(type, success, timedOut, clock.currentTimeMillis() - startedAt);
+            for (ResultListener listener : toNotify) {
+                listener.onResult(type, success, message);
+            }
+            
+            if (next != null) {
+                dispatch(next);
+            }
+            if (idle) {
+                idleListener.onIdle();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.demoody.findmydevice.commands;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per command type queue depth and latency counters for {@link CommandEngine}.
+ */
+public class CommandMetrics {
+    private final Map<String, TypeStats> types = new TreeMap<>();
+    
+    private static class TypeStats {
+        long submitted;
+        long coalesced;
+        long rejected;
+        long succeeded;
+        long failed;
+        long timedOut;
+        long queued;
+        long maxQueued;
+        long totalQueueMillis;
+        long maxQueueMillis;
+        long totalRunMillis;
+        long maxRunMillis;
+    }
+    
+    synchronized void recordSubmitted(String type) {
+        TypeStats stats = stats(type);
+        stats.submitted++;
+        stats.queued++;
+        stats.maxQueued = Math.max(stats.maxQueued, stats.queued);
+    }
+    
+    synchronized void recordCoalesced(String type) {
+        stats(type).coalesced++;
+    }
+    
+    synchronized void recordRejected(String type) {
+        stats(type).rejected++;
+    }
+    
+    synchronized void recordStarted(String type, long queueMillis) {
+        TypeStats stats = stats(type);
+        stats.queued--;
+        stats.totalQueueMillis += queueMillis;
+        stats.maxQueueMillis = Math.max(stats.maxQueueMillis, queueMillis);
+    }
+    
+    synchronized void recordFinished(String type, boolean success, boolean timedOut, long runMillis) {
+        TypeStats stats = stats(type);
+        if (timedOut) {
+            stats.timedOut++;
+        } else if (success) {
+            stats.succeeded++;
+        } else {
+            stats.failed++;
+        }
+        stats.totalRunMillis += runMillis;
+        stats.maxRunMillis = Math.max(stats.maxRunMillis, runMillis);
+    }
+    
+    public synchronized long getQueueDepth(String type) {
+        TypeStats stats = types.get(type);
+        return stats == null ? 0 : stats.queued;
+    }
+    
+    public synchronized Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, TypeStats> entry : types.entrySet()) {
+            String prefix = entry.getKey().toLowerCase() + ".";
+            TypeStats stats = entry.getValue();
+            snapshot.put(prefix + "submitted", stats.submitted);
+            snapshot.put(prefix + "coalesced", stats.coalesced);
+            snapshot.put(prefix + "rejected", stats.rejected);
+            snapshot.put(prefix + "succeeded", stats.succeeded);
+            snapshot.put(prefix + "failed", stats.failed);
+            snapshot.put(prefix + "timed_out", stats.timedOut);
+            snapshot.put(prefix + "queue_depth", stats.queued);
+            snapshot.put(prefix + "max_queue_depth", stats.maxQueued);
+            snapshot.put(prefix + "total_queue_ms", stats.totalQueueMillis);
+            snapshot.put(prefix + "max_queue_ms", stats.maxQueueMillis);
+            snapshot.put(prefix + "total_run_ms", stats.totalRunMillis);
+            snapshot.put(prefix + "max_run_ms", stats.maxRunMillis);
+        }
+        return snapshot;
+    }
+    
+    private TypeStats stats(String type) {
+        TypeStats stats = types.get(type);
+        if (stats == null) {
+            stats = new TypeStats();
+            types.put(type, stats);
+        }
+        return stats;
+    }
+}
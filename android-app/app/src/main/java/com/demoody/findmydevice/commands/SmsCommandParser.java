@@ -0,0 +1,157 @@
+package com.demoody.findmydevice.commands;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parses SMS commands of the form {@code FINDMY <device-id> <secret> [command] [argument]}
+ * in a single pass over the message, without splitting it into an array.
+ */
+public class SmsCommandParser {
+    public static final String KEYWORD = "FINDMY";
+    public static final String DEFAULT_COMMAND = "LOCATE";
+    
+    public static class SmsCommand {
+        private final String type;
+        private final String argument;
+        
+        SmsCommand(String type, String argument) {
+            this.type = type;
+            this.argument = argument;
+        }
+        
+        public String getType() {
+            return type;
+        }
+        
+        /**
+         * @return the rest of the message after the command, or null
+         */
+        public String getArgument() {
+            return argument;
+        }
+    }
+    
+    private SmsCommandParser() {}
+    
+    /**
+     * Joins the parts of a broadcast's messages per sender. Parts of a
+     * multipart SMS arrive together and in order; null parts are skipped.
+     *
+     * @param senders originating address of each part
+     * @param parts body of each part, in the same order as senders
+     * @return each sender's joined body, in order of first appearance
+     */
+    public static Map<String, StringBuilder> joinParts(String[] senders, String[] parts) {
+        Map<String, StringBuilder> bodies = new LinkedHashMap<>();
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            if (part == null) {
+                continue;
+            }
+            StringBuilder body = bodies.get(senders[i]);
+            if (body == null) {
+                body = new StringBuilder(part.length());
+                bodies.put(senders[i], body);
+            }
+            body.append(part);
+        }
+        return bodies;
+    }
+    
+    /**
+     * @return the command, or null if the message is not a command for this
+     *         device or the secret does not match
+     */
+    public static SmsCommand parse(CharSequence body, String deviceId, String secret) {
+        if (body == null || deviceId == null || secret == null) {
+            return null;
+        }
+        
+        int length = body.length();
+        int start = skipWhitespace(body, 0);
+        int end = tokenEnd(body, start);
+        if (!regionMatches(body, start, end, KEYWORD, true)) {
+            return null;
+        }
+        
+        start = skipWhitespace(body, end);
+        end = tokenEnd(body, start);
+        if (!regionMatches(body, start, end, deviceId, false)) {
+            return null;
+        }
+        
+        start = skipWhitespace(body, end);
+        end = tokenEnd(body, start);
+        if (start == end || !constantTimeEquals(body, start, end, secret)) {
+            return null;
+        }
+        
+        start = skipWhitespace(body, end);
+        if (start == length) {
+            return new SmsCommand(DEFAULT_COMMAND, null);
+        }
+        end = tokenEnd(body, start);
+        String type = upperCase(body, start, end);
+        
+        start = skipWhitespace(body, end);
+        if (start == length) {
+            return new SmsCommand(type, null);
+        }
+        int argumentEnd = length;
+        while (Character.isWhitespace(body.charAt(argumentEnd - 1))) {
+            argumentEnd--;
+        }
+        return new SmsCommand(type, body.subSequence(start, argumentEnd).toString());
+    }
+    
+    private static int skipWhitespace(CharSequence body, int index) {
+        int length = body.length();
+        while (index < length && Character.isWhitespace(body.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+    
+    private static int tokenEnd(CharSequence body, int index) {
+        int length = body.length();
+        while (index < length && !Character.isWhitespace(body.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+    
+    private static boolean regionMatches(CharSequence body, int start, int end, String expected, boolean ignoreCase) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char actual = body.charAt(i);
+            char wanted = expected.charAt(i - start);
+            if (actual != wanted && (!ignoreCase || Character.toUpperCase(actual) != Character.toUpperCase(wanted))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Time depends only on the length of the expected secret, not on where the first mismatch is
+    private static boolean constantTimeEquals(CharSequence body, int start, int end, String expected) {
+        int expectedLength = expected.length();
+        int diff = (end - start) ^ expectedLength;
+        for (int i = 0; i < expectedLength; i++) {
+            int index = start + i;
+            char actual = index < end ? body.charAt(index) : 0;
+            diff |= actual ^ expected.charAt(i);
+        }
+        return diff == 0 && expectedLength > 0;
+    }
+    
+    private static String upperCase(CharSequence body, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = Character.toUpperCase(body.charAt(i));
+        }
+        return new String(chars);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.demoody.findmydevice.database;
+
+import android.content.Context;
+import androidx.room.Database;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+@Database(entities = {PendingLocation.class, CommandAck.class}, version = 2, exportSchema = false)
+public abstract class AppDatabase extends RoomDatabase {
+    private static final String DATABASE_NAME = "findmydevice.db";
+    
+    private static volatile AppDatabase instance;
+    
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `command_acks` (`command_id` INTEGER NOT NULL, "
+                    + "`status` TEXT, `message` TEXT, `executed_at` INTEGER NOT NULL, "
+                    + "`attempts` INTEGER NOT NULL, PRIMARY KEY(`command_id`))");
+        }
+    };
+    
+    public abstract PendingLocationDao pendingLocationDao();
+    
+    public abstract CommandAckDao commandAckDao();
+    
+    public static AppDatabase getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AppDatabase.class) {
+                if (instance == null) {
+                    instance = Room.databaseBuilder(context.getApplicationContext(),
+                            AppDatabase.class, DATABASE_NAME)
+                            .addMigrations(MIGRATION_1_2)
+                            .build();
+                }
+            }
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,75 @@
+package com.demoody.findmydevice.database;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+@Entity(tableName = "command_acks")
+public class CommandAck {
+    public static final String STATUS_ACKNOWLEDGED = "acknowledged";
+    public static final String STATUS_EXECUTED = "executed";
+    public static final String STATUS_FAILED = "failed";
+    
+    // One row per command: a later status for the same command replaces the earlier one
+    @PrimaryKey
+    @ColumnInfo(name = "command_id")
+    private int commandId;
+    private String status;
+    private String message;
+    @ColumnInfo(name = "executed_at")
+    private long executedAt;
+    private int attempts;
+    
+    public CommandAck() {}
+    
+    public CommandAck(int commandId, String status, String message, long executedAt) {
+        this.commandId = commandId;
+        this.status = status;
+        this.message = message;
+        this.executedAt = executedAt;
+    }
+    
+    public boolean isFinal() {
+        return STATUS_EXECUTED.equals(status) || STATUS_FAILED.equals(status);
+    }
+    
+    public int getCommandId() {
+        return commandId;
+    }
+    
+    public void setCommandId(int commandId) {
+        this.commandId = commandId;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+    
+    public void setMessage(String message) {
+        this.message = message;
+    }
+    
+    public long getExecutedAt() {
+        return executedAt;
+    }
+    
+    public void setExecutedAt(long executedAt) {
+        this.executedAt = executedAt;
+    }
+    
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
\ No newline at end of file
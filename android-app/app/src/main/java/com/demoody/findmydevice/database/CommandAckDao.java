@@ -0,0 +1,29 @@
+package com.demoody.findmydevice.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import java.util.List;
+
+@Dao
+public interface CommandAckDao {
+    
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(CommandAck ack);
+    
+    @Query("SELECT * FROM command_acks WHERE command_id = :commandId")
+    CommandAck get(int commandId);
+    
+    @Query("SELECT * FROM command_acks ORDER BY command_id ASC LIMIT :limit")
+    List<CommandAck> getPending(int limit);
+    
+    @Query("DELETE FROM command_acks WHERE command_id IN (:commandIds)")
+    void deleteByIds(List<Integer> commandIds);
+    
+    @Query("UPDATE command_acks SET attempts = attempts + 1 WHERE command_id IN (:commandIds)")
+    void incrementAttempts(List<Integer> commandIds);
+    
+    @Query("SELECT COUNT(*) FROM command_acks")
+    int count();
+}
\ No newline at end of file
@@ -0,0 +1,200 @@
+package com.demoody.findmydevice.database;
+
+import com.demoody.findmydevice.models.LocationData;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size, memory-mapped ring of location fixes. Appending writes 32
+ * bytes into the mapping with no allocation and no fsync; the kernel owns
+ * the dirty pages, so records survive the process being killed. When the
+ * ring is full the oldest record is overwritten.
+ *
+ * <pre>
+ * header (64 bytes): magic:i32 version:i32 capacity:i32 recordSize:i32 head:i64 tail:i64
+ * record (32 bytes): time:i64 lat:i32 lng:i32 accuracyDm:i32 provider:u8 pad:3 sequence:i64
+ * </pre>
+ *
+ * head counts records ever written and tail the first one not yet consumed.
+ * A record's sequence is written last and head is bumped after it, so a
+ * record torn by a crash is either not counted or fails the sequence check.
+ */
+public class FixRingBuffer implements Closeable {
+    public static final int RECORD_SIZE = 32;
+    
+    private static final int MAGIC = 0x464d4452; // "FMDR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int HEAD_OFFSET = 16;
+    private static final int TAIL_OFFSET = 24;
+    private static final double FIXED_POINT_SCALE = 1e7;
+    
+    private static final String[] PROVIDERS = {null, "gps", "network", "fused", "passive", "other"};
+    private static final byte PROVIDER_OTHER = 5;
+    
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private long head;
+    private long tail;
+    
+    public static class Batch {
+        private final List<LocationData> fixes;
+        private final long endSequence;
+        
+        Batch(List<LocationData> fixes, long endSequence) {
+            this.fixes = fixes;
+            this.endSequence = endSequence;
+        }
+        
+        public List<LocationData> getFixes() {
+            return fixes;
+        }
+        
+        /**
+         * @return value to pass to {@link #commit} once the fixes are stored elsewhere
+         */
+        public long getEndSequence() {
+            return endSequence;
+        }
+    }
+    
+    public FixRingBuffer(File path, int capacity) throws IOException {
+        this.capacity = capacity;
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        
+        file = new RandomAccessFile(path, "rw");
+        boolean fresh = file.length() != size;
+        if (fresh) {
+            file.setLength(size);
+        }
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        
+        if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != capacity || buffer.getInt(12) != RECORD_SIZE) {
+            // New file, or a layout this code can't read: start empty
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, capacity);
+            buffer.putInt(12, RECORD_SIZE);
+            writeHead(0);
+            writeTail(0);
+        } else {
+            head = buffer.getLong(HEAD_OFFSET);
+            tail = buffer.getLong(TAIL_OFFSET);
+            if (head < 0 || tail < 0 || tail > head) {
+                writeHead(0);
+                writeTail(0);
+            } else if (head - tail > capacity) {
+                writeTail(head - capacity);
+            }
+        }
+    }
+    
+    public synchronized void append(double lat, double lng, double accuracy, long timestamp, String provider) {
+        int offset = offset(head);
+        buffer.putLong(offset, timestamp);
+        buffer.putInt(offset + 8, (int) Math.round(lat * FIXED_POINT_SCALE));
+        buffer.putInt(offset + 12, (int) Math.round(lng * FIXED_POINT_SCALE));
+        buffer.putInt(offset + 16, accuracy >= 0 ? (int) Math.round(accuracy * 10) : -1);
+        buffer.put(offset + 20, providerCode(provider));
+        // Commit marker; head only moves once the record is complete
+        buffer.putLong(offset + 24, head + 1);
+        
+        writeHead(head + 1);
+        if (head - tail > capacity) {
+            writeTail(head - capacity);
+        }
+    }
+    
+    public void append(LocationData fix) {
+        append(fix.getLat(), fix.getLng(), fix.getAccuracy(), fix.getTimestamp(), fix.getProvider());
+    }
+    
+    /**
+     * Reads up to max of the oldest unconsumed fixes without consuming them.
+     */
+    public synchronized Batch read(int max) {
+        long end = Math.min(head, tail + max);
+        List<LocationData> fixes = new ArrayList<>((int) (end - tail));
+        for (long sequence = tail; sequence < end; sequence++) {
+            int offset = offset(sequence);
+            if (buffer.getLong(offset + 24) != sequence + 1) {
+                continue; // torn or stale record
+            }
+            int accuracy = buffer.getInt(offset + 16);
+            int provider = buffer.get(offset + 20);
+            fixes.add(new LocationData(
+                    buffer.getInt(offset + 8) / FIXED_POINT_SCALE,
+                    buffer.getInt(offset + 12) / FIXED_POINT_SCALE,
+                    accuracy >= 0 ? accuracy / 10.0 : -1,
+                    buffer.getLong(offset),
+                    provider >= 0 && provider < PROVIDERS.length ? PROVIDERS[provider] : null));
+        }
+        return new Batch(fixes, end);
+    }
+    
+    /**
+     * Consumes everything before endSequence. Records overwritten since the
+     * read are already gone, so the tail never moves backwards.
+     */
+    public synchronized void commit(long endSequence) {
+        if (endSequence > tail) {
+            writeTail(Math.min(endSequence, head));
+        }
+    }
+    
+    public synchronized int size() {
+        return (int) (head - tail);
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Writes dirty pages to storage. Not needed for process death, only to
+     * survive a power loss; call sparingly.
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+    
+    private int offset(long sequence) {
+        return HEADER_SIZE + (int) (sequence % capacity) * RECORD_SIZE;
+    }
+    
+    private void writeHead(long value) {
+        head = value;
+        buffer.putLong(HEAD_OFFSET, value);
+    }
+    
+    private void writeTail(long value) {
+        tail = value;
+        buffer.putLong(TAIL_OFFSET, value);
+    }
+    
+    private static byte providerCode(String provider) {
+        if (provider == null) {
+            return 0;
+        }
+        for (byte code = 1; code < PROVIDER_OTHER; code++) {
+            if (PROVIDERS[code].equals(provider)) {
+                return code;
+            }
+        }
+        return PROVIDER_OTHER;
+    }
+}
\ No newline at end of file
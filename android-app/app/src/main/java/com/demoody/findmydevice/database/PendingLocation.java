@@ -0,0 +1,80 @@
+package com.demoody.findmydevice.database;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+import com.demoody.findmydevice.models.LocationData;
+
+@Entity(tableName = "pending_locations")
+public class PendingLocation {
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+    private double lat;
+    private double lng;
+    private double accuracy;
+    private long timestamp;
+    private String provider;
+    
+    public PendingLocation() {}
+    
+    public static PendingLocation fromLocationData(LocationData locationData) {
+        PendingLocation pending = new PendingLocation();
+        pending.setLat(locationData.getLat());
+        pending.setLng(locationData.getLng());
+        pending.setAccuracy(locationData.getAccuracy());
+        pending.setTimestamp(locationData.getTimestamp());
+        pending.setProvider(locationData.getProvider());
+        return pending;
+    }
+    
+    public LocationData toLocationData() {
+        return new LocationData(lat, lng, accuracy, timestamp, provider);
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    public void setId(long id) {
+        this.id = id;
+    }
+    
+    public double getLat() {
+        return lat;
+    }
+    
+    public void setLat(double lat) {
+        this.lat = lat;
+    }
+    
+    public double getLng() {
+        return lng;
+    }
+    
+    public void setLng(double lng) {
+        this.lng = lng;
+    }
+    
+    public double getAccuracy() {
+        return accuracy;
+    }
+    
+    public void setAccuracy(double accuracy) {
+        this.accuracy = accuracy;
+    }
+    
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+    
+    public String getProvider() {
+        return provider;
+    }
+    
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+}
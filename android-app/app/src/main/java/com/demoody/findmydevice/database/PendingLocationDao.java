@@ -0,0 +1,29 @@
+package com.demoody.findmydevice.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import java.util.List;
+
+@Dao
+public interface PendingLocationDao {
+    
+    @Insert
+    long insert(PendingLocation location);
+    
+    @Insert
+    void insertAll(List<PendingLocation> locations);
+    
+    @Query("SELECT * FROM pending_locations ORDER BY id ASC LIMIT :limit")
+    List<PendingLocation> getOldest(int limit);
+    
+    @Query("DELETE FROM pending_locations WHERE id IN (:ids)")
+    void deleteByIds(List<Long> ids);
+    
+    @Query("SELECT COUNT(*) FROM pending_locations")
+    int count();
+    
+    // Drop the oldest rows once the queue grows past its cap so a long offline period can't fill the disk
+    @Query("DELETE FROM pending_locations WHERE id NOT IN (SELECT id FROM pending_locations ORDER BY id DESC LIMIT :keep)")
+    void trimTo(int keep);
+}
@@ -0,0 +1,26 @@
+package com.demoody.findmydevice.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic count, reset each time the registry is snapshotted.
+ */
+public class Counter {
+    private final AtomicLong value = new AtomicLong();
+    
+    public void increment() {
+        value.incrementAndGet();
+    }
+    
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+    
+    public long get() {
+        return value.get();
+    }
+    
+    long getAndReset() {
+        return value.getAndSet(0);
+    }
+}
\ No newline at end of file
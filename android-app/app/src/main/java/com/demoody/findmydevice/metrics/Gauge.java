@@ -0,0 +1,18 @@
+package com.demoody.findmydevice.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last observed value of something that goes up and down, such as a queue depth.
+ */
+public class Gauge {
+    private final AtomicLong value = new AtomicLong();
+    
+    public void set(long value) {
+        this.value.set(value);
+    }
+    
+    public long get() {
+        return value.get();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+package com.demoody.findmydevice.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide named counters, gauges and histograms. Lookups and updates
+ * never take a lock, so hot paths can record without caring who else does.
+ * Components that already keep their own totals register a {@link Source},
+ * which is read into gauges when a snapshot is taken.
+ *
+ * <p>Names are dotted and lower case, e.g. {@code fix.ttff_ms.gps}.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+    
+    public interface Source {
+        Map<String, Long> snapshot();
+    }
+    
+    public interface TimeSource {
+        long currentTimeMillis();
+    }
+    
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Source> sources = new ConcurrentHashMap<>();
+    private final TimeSource timeSource;
+    private long periodStart;
+    
+    public MetricsRegistry(TimeSource timeSource) {
+        this.timeSource = timeSource;
+        this.periodStart = timeSource.currentTimeMillis();
+    }
+    
+    private MetricsRegistry() {
+        this(System::currentTimeMillis);
+    }
+    
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+    
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+    
+    public Gauge gauge(String name) {
+        Gauge gauge = gauges.get(name);
+        if (gauge == null) {
+            Gauge created = new Gauge();
+            gauge = gauges.putIfAbsent(name, created);
+            if (gauge == null) {
+                gauge = created;
+            }
+        }
+        return gauge;
+    }
+    
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+    
+    /**
+     * Registers a source whose values are reported as gauges under prefix,
+     * replacing any source already registered under it.
+     */
+    public void registerSource(String prefix, Source source) {
+        sources.put(prefix, source);
+    }
+    
+    public void unregisterSource(String prefix) {
+        sources.remove(prefix);
+    }
+    
+    /**
+     * Captures everything since the previous snapshot and starts a new
+     * period. Counters and histograms that saw nothing are left out.
+     */
+    public synchronized MetricsSnapshot snapshotAndReset() {
+        long now = timeSource.currentTimeMillis();
+        MetricsSnapshot snapshot = new MetricsSnapshot(periodStart, now);
+        periodStart = now;
+        
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            long value = entry.getValue().getAndReset();
+            if (value != 0) {
+                snapshot.putCounter(entry.getKey(), value);
+            }
+        }
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            snapshot.putGauge(entry.getKey(), entry.getValue().get());
+        }
+        for (Map.Entry<String, Source> entry : sources.entrySet()) {
+            for (Map.Entry<String, Long> value : entry.getValue().snapshot().entrySet()) {
+                snapshot.putGauge(entry.getKey() + "." + value.getKey(), value.getValue());
+            }
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            MetricsSnapshot.HistogramSnapshot histogram = entry.getValue().snapshotAndReset();
+            if (histogram.getCount() != 0) {
+                snapshot.putHistogram(entry.getKey(), histogram);
+            }
+        }
+        return snapshot;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+package com.demoody.findmydevice.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Everything the registry recorded over one period. Counters and histograms
+ * hold what happened during the period; gauges hold the value at its end.
+ * Serialized for upload by {@link MetricsSnapshotTypeAdapter}.
+ */
+public class MetricsSnapshot {
+    private long period_start;
+    private long period_end;
+    private Map<String, Long> counters = new TreeMap<>();
+    private Map<String, Long> gauges = new TreeMap<>();
+    private Map<String, HistogramSnapshot> histograms = new TreeMap<>();
+    
+    MetricsSnapshot(long periodStart, long periodEnd) {
+        this.period_start = periodStart;
+        this.period_end = periodEnd;
+    }
+    
+    public static class HistogramSnapshot {
+        private long count;
+        private long sum;
+        private long max;
+        private long p50;
+        private long p90;
+        private long p99;
+        // Flat pairs of bucket index and count, non-empty buckets only
+        private long[] buckets;
+        
+        static HistogramSnapshot of(long[] counts, long sum, long max) {
+            HistogramSnapshot snapshot = new HistogramSnapshot();
+            List<Long> pairs = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    snapshot.count += counts[i];
+                    pairs.add((long) i);
+                    pairs.add(counts[i]);
+                }
+            }
+            snapshot.buckets = new long[pairs.size()];
+            for (int i = 0; i < pairs.size(); i++) {
+                snapshot.buckets[i] = pairs.get(i);
+            }
+            snapshot.sum = sum;
+            snapshot.max = max;
+            snapshot.p50 = percentile(counts, snapshot.count, 0.50);
+            snapshot.p90 = percentile(counts, snapshot.count, 0.90);
+            snapshot.p99 = percentile(counts, snapshot.count, 0.99);
+            return snapshot;
+        }
+        
+        // Lower bound of the bucket holding the quantile, so never more than the true value
+        private static long percentile(long[] counts, long total, double quantile) {
+            long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] != 0) {
+                    return Histogram.bucketLowerBound(i);
+                }
+            }
+            return 0;
+        }
+        
+        long[] denseCounts() {
+            long[] counts = new long[Histogram.BUCKET_COUNT];
+            for (int i = 0; i + 1 < buckets.length; i += 2) {
+                counts[(int) buckets[i]] += buckets[i + 1];
+            }
+            return counts;
+        }
+        
+        HistogramSnapshot plus(HistogramSnapshot other) {
+            long[] counts = denseCounts();
+            long[] otherCounts = other.denseCounts();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += otherCounts[i];
+            }
+            return of(counts, sum + other.sum, Math.max(max, other.max));
+        }
+        
+        public long getCount() { return count; }
+        public long getSum() { return sum; }
+        public long getMax() { return max; }
+        public long getP50() { return p50; }
+        public long getP90() { return p90; }
+        public long getP99() { return p99; }
+        long[] getBuckets() { return buckets; }
+    }
+    
+    /**
+     * Folds a later snapshot into this one, used when an upload failed and
+     * the next period has to carry both.
+     */
+    public MetricsSnapshot plus(MetricsSnapshot later) {
+        MetricsSnapshot merged = new MetricsSnapshot(period_start, later.period_end);
+        merged.counters.putAll(counters);
+        for (Map.Entry<String, Long> entry : later.counters.entrySet()) {
+            Long current = merged.counters.get(entry.getKey());
+            merged.counters.put(entry.getKey(), current == null ? entry.getValue() : current + entry.getValue());
+        }
+        merged.gauges.putAll(gauges);
+        merged.gauges.putAll(later.gauges);
+        merged.histograms.putAll(histograms);
+        for (Map.Entry<String, HistogramSnapshot> entry : later.histograms.entrySet()) {
+            HistogramSnapshot current = merged.histograms.get(entry.getKey());
+            merged.histograms.put(entry.getKey(), current == null ? entry.getValue() : current.plus(entry.getValue()));
+        }
+        return merged;
+    }
+    
+    void putCounter(String name, long value) {
+        counters.put(name, value);
+    }
+    
+    void putGauge(String name, long value) {
+        gauges.put(name, value);
+    }
+    
+    void putHistogram(String name, HistogramSnapshot histogram) {
+        histograms.put(name, histogram);
+    }
+    
+    public long getPeriodStart() { return period_start; }
+    public long getPeriodEnd() { return period_end; }
+    public Map<String, Long> getCounters() { return counters; }
+    public Map<String, Long> getGauges() { return gauges; }
+    public Map<String, HistogramSnapshot> getHistograms() { return histograms; }
+}
\ No newline at end of file
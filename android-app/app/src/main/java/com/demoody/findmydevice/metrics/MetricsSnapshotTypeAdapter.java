@@ -0,0 +1,144 @@
+package com.demoody.findmydevice.metrics;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes a snapshot in the layout documented for the metrics endpoint.
+ * Reading recomputes each histogram's count and percentiles from its
+ * buckets rather than trusting the stored values.
+ */
+public class MetricsSnapshotTypeAdapter extends TypeAdapter<MetricsSnapshot> {
+    
+    @Override
+    public void write(JsonWriter out, MetricsSnapshot snapshot) throws IOException {
+        if (snapshot == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("period_start").value(snapshot.getPeriodStart());
+        out.name("period_end").value(snapshot.getPeriodEnd());
+        out.name("counters");
+        writeValues(out, snapshot.getCounters());
+        out.name("gauges");
+        writeValues(out, snapshot.getGauges());
+        out.name("histograms").beginObject();
+        for (Map.Entry<String, MetricsSnapshot.HistogramSnapshot> entry : snapshot.getHistograms().entrySet()) {
+            MetricsSnapshot.HistogramSnapshot histogram = entry.getValue();
+            out.name(entry.getKey()).beginObject();
+            out.name("count").value(histogram.getCount());
+            out.name("sum").value(histogram.getSum());
+            out.name("max").value(histogram.getMax());
+            out.name("p50").value(histogram.getP50());
+            out.name("p90").value(histogram.getP90());
+            out.name("p99").value(histogram.getP99());
+            out.name("buckets").beginArray();
+            for (long value : histogram.getBuckets()) {
+                out.value(value);
+            }
+            out.endArray();
+            out.endObject();
+        }
+        out.endObject();
+        out.endObject();
+    }
+    
+    private static void writeValues(JsonWriter out, Map<String, Long> values) throws IOException {
+        out.beginObject();
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            out.name(entry.getKey()).value(entry.getValue());
+        }
+        out.endObject();
+    }
+    
+    @Override
+    public MetricsSnapshot read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        long periodStart = 0;
+        long periodEnd = 0;
+        Map<String, Long> counters = new TreeMap<>();
+        Map<String, Long> gauges = new TreeMap<>();
+        Map<String, MetricsSnapshot.HistogramSnapshot> histograms = new TreeMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "period_start": periodStart = in.nextLong(); break;
+                case "period_end": periodEnd = in.nextLong(); break;
+                case "counters": readValues(in, counters); break;
+                case "gauges": readValues(in, gauges); break;
+                case "histograms":
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        histograms.put(in.nextName(), readHistogram(in));
+                    }
+                    in.endObject();
+                    break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        
+        MetricsSnapshot snapshot = new MetricsSnapshot(periodStart, periodEnd);
+        snapshot.getCounters().putAll(counters);
+        snapshot.getGauges().putAll(gauges);
+        snapshot.getHistograms().putAll(histograms);
+        return snapshot;
+    }
+    
+    private static void readValues(JsonReader in, Map<String, Long> values) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            values.put(in.nextName(), in.nextLong());
+        }
+        in.endObject();
+    }
+    
+    private static MetricsSnapshot.HistogramSnapshot readHistogram(JsonReader in) throws IOException {
+        long sum = 0;
+        long max = 0;
+        List<Long> pairs = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "sum": sum = in.nextLong(); break;
+                case "max": max = in.nextLong(); break;
+                case "buckets":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        pairs.add(in.nextLong());
+                    }
+                    in.endArray();
+                    break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        
+        long[] counts = new long[Histogram.BUCKET_COUNT];
+        for (int i = 0; i + 1 < pairs.size(); i += 2) {
+            long index = pairs.get(i);
+            if (index < 0 || index >= counts.length) {
+                throw new JsonSyntaxException("Histogram bucket out of range: " + index);
+            }
+            counts[(int) index] += pairs.get(i + 1);
+        }
+        return MetricsSnapshot.HistogramSnapshot.of(counts, sum, max);
+    }
+}
\ No newline at end of file
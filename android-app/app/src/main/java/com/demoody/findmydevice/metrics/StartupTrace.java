@@ -0,0 +1,67 @@
+package com.demoody.findmydevice.metrics;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Startup milestones, recorded as {@code startup.<name>_ms} histograms so cold
+ * starts show up in the uploaded metrics alongside everything else. Times are
+ * monotonic milliseconds from {@link #now()}, never wall clock.
+ */
+public class StartupTrace {
+    public static final String ACTIVITY_CREATED = "activity_created";
+    public static final String INTERACTIVE = "interactive";
+    public static final String WARM_UP = "warm_up";
+    public static final String FIRST_FIX = "first_fix";
+    
+    private static final StartupTrace INSTANCE = new StartupTrace(MetricsRegistry.getInstance(),
+            () -> System.nanoTime() / 1000000);
+    
+    private final MetricsRegistry registry;
+    private final MetricsRegistry.TimeSource clock;
+    private final Set<String> reached = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile long processStart;
+    
+    public StartupTrace(MetricsRegistry registry, MetricsRegistry.TimeSource clock) {
+        this.registry = registry;
+        this.clock = clock;
+        this.processStart = clock.currentTimeMillis();
+    }
+    
+    public static StartupTrace getInstance() {
+        return INSTANCE;
+    }
+    
+    public long now() {
+        return clock.currentTimeMillis();
+    }
+    
+    /**
+     * Moves the origin back to when the process was forked, if the platform can tell.
+     */
+    public void setProcessStart(long processStart) {
+        this.processStart = processStart;
+    }
+    
+    /**
+     * Records the time from process start to the first time name is reached.
+     *
+     * @return the elapsed time, or -1 if name was already reached in this process
+     */
+    public long milestone(String name) {
+        if (!reached.add(name)) {
+            return -1;
+        }
+        return record(name, processStart);
+    }
+    
+    /**
+     * Records the time since startedAt, a value from {@link #now()}, under name.
+     */
+    public long record(String name, long startedAt) {
+        long elapsed = Math.max(0, now() - startedAt);
+        registry.histogram("startup." + name + "_ms").record(elapsed);
+        return elapsed;
+    }
+}
\ No newline at end of file
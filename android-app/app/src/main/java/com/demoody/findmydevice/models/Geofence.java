@@ -0,0 +1,62 @@
+package com.demoody.findmydevice.models;
+
+public class Geofence {
+    private int id;
+    private String name;
+    private double lat;
+    private double lng;
+    private double radius;
+    
+    public Geofence() {}
+    
+    public Geofence(int id, String name, double lat, double lng, double radius) {
+        this.id = id;
+        this.name = name;
+        this.lat = lat;
+        this.lng = lng;
+        this.radius = radius;
+    }
+    
+    public int getId() {
+        return id;
+    }
+    
+    public void setId(int id) {
+        this.id = id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public double getLat() {
+        return lat;
+    }
+    
+    public void setLat(double lat) {
+        this.lat = lat;
+    }
+    
+    public double getLng() {
+        return lng;
+    }
+    
+    public void setLng(double lng) {
+        this.lng = lng;
+    }
+    
+    /**
+     * @return radius in metres
+     */
+    public double getRadius() {
+        return radius;
+    }
+    
+    public void setRadius(double radius) {
+        this.radius = radius;
+    }
+}
\ No newline at end of file
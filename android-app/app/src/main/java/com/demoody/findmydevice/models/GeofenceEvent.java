@@ -0,0 +1,48 @@
+package com.demoody.findmydevice.models;
+
+public class GeofenceEvent {
+    public static final String TYPE_ENTER = "enter";
+    public static final String TYPE_EXIT = "exit";
+    
+    private int geofence_id;
+    private String type;
+    private double lat;
+    private double lng;
+    private double accuracy;
+    private long timestamp;
+    
+    public GeofenceEvent() {}
+    
+    public GeofenceEvent(int geofenceId, String type, LocationData location) {
+        this.geofence_id = geofenceId;
+        this.type = type;
+        this.lat = location.getLat();
+        this.lng = location.getLng();
+        this.accuracy = location.getAccuracy();
+        this.timestamp = location.getTimestamp();
+    }
+    
+    public int getGeofence_id() {
+        return geofence_id;
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public double getLat() {
+        return lat;
+    }
+    
+    public double getLng() {
+        return lng;
+    }
+    
+    public double getAccuracy() {
+        return accuracy;
+    }
+    
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
\ No newline at end of file
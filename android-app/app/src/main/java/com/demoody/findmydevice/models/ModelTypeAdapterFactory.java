@@ -0,0 +1,354 @@
+package com.demoody.findmydevice.models;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * Streaming adapters for every model, so Gson never falls back to reflection
+ * for them. Field names, order and null handling match what the reflective
+ * adapter produced: nulls are left out on write, and a JSON null or an
+ * unknown field leaves the model's default in place on read.
+ */
+public class ModelTypeAdapterFactory implements TypeAdapterFactory {
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        if (raw == LocationData.class) {
+            return (TypeAdapter<T>) new LocationDataAdapter();
+        }
+        if (raw == RemoteCommand.class) {
+            return (TypeAdapter<T>) new RemoteCommandAdapter(gson.getAdapter(JsonElement.class));
+        }
+        if (raw == DeviceRegistration.class) {
+            return (TypeAdapter<T>) new DeviceRegistrationAdapter();
+        }
+        if (raw == Geofence.class) {
+            return (TypeAdapter<T>) new GeofenceAdapter();
+        }
+        if (raw == GeofenceEvent.class) {
+            return (TypeAdapter<T>) new GeofenceEventAdapter();
+        }
+        if (raw == ApiResponse.class) {
+            Type dataType = type.getType() instanceof ParameterizedType
+                    ? ((ParameterizedType) type.getType()).getActualTypeArguments()[0]
+                    : Object.class;
+            // ApiResponse<Void> never looks at data, so don't build anything to parse it
+            TypeAdapter<?> dataAdapter = dataType == Void.class ? null : gson.getAdapter(TypeToken.get(dataType));
+            return (TypeAdapter<T>) new ApiResponseAdapter<>(dataAdapter);
+        }
+        return null;
+    }
+    
+    /**
+     * Consumes a JSON null in place of a field value, for callers that keep the default instead.
+     */
+    public static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+    
+    static final class LocationDataAdapter extends TypeAdapter<LocationData> {
+        @Override
+        public void write(JsonWriter out, LocationData fix) throws IOException {
+            if (fix == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("lat").value(fix.getLat());
+            out.name("lng").value(fix.getLng());
+            out.name("accuracy").value(fix.getAccuracy());
+            out.name("timestamp").value(fix.getTimestamp());
+            out.name("provider").value(fix.getProvider());
+            out.endObject();
+        }
+        
+        @Override
+        public LocationData read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            LocationData fix = new LocationData();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "lat": fix.setLat(in.nextDouble()); break;
+                    case "lng": fix.setLng(in.nextDouble()); break;
+                    case "accuracy": fix.setAccuracy(in.nextDouble()); break;
+                    case "timestamp": fix.setTimestamp(in.nextLong()); break;
+                    case "provider": fix.setProvider(in.nextString()); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return fix;
+        }
+    }
+    
+    static final class RemoteCommandAdapter extends TypeAdapter<RemoteCommand> {
+        private final TypeAdapter<JsonElement> elementAdapter;
+        
+        RemoteCommandAdapter(TypeAdapter<JsonElement> elementAdapter) {
+            this.elementAdapter = elementAdapter;
+        }
+        
+        @Override
+        public void write(JsonWriter out, RemoteCommand command) throws IOException {
+            if (command == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(command.getId());
+            out.name("device_id").value(command.getDevice_id());
+            out.name("type").value(command.getType());
+            out.name("payload");
+            elementAdapter.write(out, command.getPayload());
+            out.name("status").value(command.getStatus());
+            out.name("created_at").value(command.getCreated_at());
+            out.name("executed_at").value(command.getExecuted_at());
+            out.endObject();
+        }
+        
+        @Override
+        public RemoteCommand read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            RemoteCommand command = new RemoteCommand();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "id": command.setId(in.nextInt()); break;
+                    case "device_id": command.setDevice_id(in.nextString()); break;
+                    case "type": command.setType(in.nextString()); break;
+                    case "payload":
+                        // PHP encodes an empty payload as [], which is no use as a payload either
+                        JsonElement payload = elementAdapter.read(in);
+                        if (payload.isJsonObject()) {
+                            command.setPayload(payload.getAsJsonObject());
+                        }
+                        break;
+                    case "status": command.setStatus(in.nextString()); break;
+                    case "created_at": command.setCreated_at(in.nextLong()); break;
+                    case "executed_at": command.setExecuted_at(in.nextLong()); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return command;
+        }
+    }
+    
+    static final class DeviceRegistrationAdapter extends TypeAdapter<DeviceRegistration> {
+        @Override
+        public void write(JsonWriter out, DeviceRegistration registration) throws IOException {
+            if (registration == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("device_id").value(registration.getDevice_id());
+            out.name("device_name").value(registration.getDevice_name());
+            out.name("auth_token").value(registration.getAuth_token());
+            out.name("model").value(registration.getModel());
+            out.name("os_version").value(registration.getOs_version());
+            out.name("fcm_token").value(registration.getFcm_token());
+            out.endObject();
+        }
+        
+        @Override
+        public DeviceRegistration read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            DeviceRegistration registration = new DeviceRegistration();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "device_id": registration.setDevice_id(in.nextString()); break;
+                    case "device_name": registration.setDevice_name(in.nextString()); break;
+                    case "auth_token": registration.setAuth_token(in.nextString()); break;
+                    case "model": registration.setModel(in.nextString()); break;
+                    case "os_version": registration.setOs_version(in.nextString()); break;
+                    case "fcm_token": registration.setFcm_token(in.nextString()); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return registration;
+        }
+    }
+    
+    static final class GeofenceAdapter extends TypeAdapter<Geofence> {
+        @Override
+        public void write(JsonWriter out, Geofence fence) throws IOException {
+            if (fence == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(fence.getId());
+            out.name("name").value(fence.getName());
+            out.name("lat").value(fence.getLat());
+            out.name("lng").value(fence.getLng());
+            out.name("radius").value(fence.getRadius());
+            out.endObject();
+        }
+        
+        @Override
+        public Geofence read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            Geofence fence = new Geofence();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "id": fence.setId(in.nextInt()); break;
+                    case "name": fence.setName(in.nextString()); break;
+                    case "lat": fence.setLat(in.nextDouble()); break;
+                    case "lng": fence.setLng(in.nextDouble()); break;
+                    case "radius": fence.setRadius(in.nextDouble()); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return fence;
+        }
+    }
+    
+    static final class GeofenceEventAdapter extends TypeAdapter<GeofenceEvent> {
+        @Override
+        public void write(JsonWriter out, GeofenceEvent event) throws IOException {
+            if (event == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("geofence_id").value(event.getGeofence_id());
+            out.name("type").value(event.getType());
+            out.name("lat").value(event.getLat());
+            out.name("lng").value(event.getLng());
+            out.name("accuracy").value(event.getAccuracy());
+            out.name("timestamp").value(event.getTimestamp());
+            out.endObject();
+        }
+        
+        @Override
+        public GeofenceEvent read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            int geofenceId = 0;
+            String type = null;
+            LocationData location = new LocationData();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "geofence_id": geofenceId = in.nextInt(); break;
+                    case "type": type = in.nextString(); break;
+                    case "lat": location.setLat(in.nextDouble()); break;
+                    case "lng": location.setLng(in.nextDouble()); break;
+                    case "accuracy": location.setAccuracy(in.nextDouble()); break;
+                    case "timestamp": location.setTimestamp(in.nextLong()); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new GeofenceEvent(geofenceId, type, location);
+        }
+    }
+    
+    static final class ApiResponseAdapter<T> extends TypeAdapter<ApiResponse<T>> {
+        // Null for ApiResponse<Void>
+        private final TypeAdapter<T> dataAdapter;
+        
+        ApiResponseAdapter(TypeAdapter<T> dataAdapter) {
+            this.dataAdapter = dataAdapter;
+        }
+        
+        @Override
+        public void write(JsonWriter out, ApiResponse<T> response) throws IOException {
+            if (response == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("status").value(response.getStatus());
+            out.name("message").value(response.getMessage());
+            if (dataAdapter != null && response.getData() != null) {
+                out.name("data");
+                dataAdapter.write(out, response.getData());
+            }
+            out.name("device_token").value(response.getDevice_token());
+            out.name("command_id").value(response.getCommand_id());
+            out.endObject();
+        }
+        
+        @Override
+        public ApiResponse<T> read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            ApiResponse<T> response = new ApiResponse<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "status": response.setStatus(in.nextString()); break;
+                    case "message": response.setMessage(in.nextString()); break;
+                    case "data":
+                        if (dataAdapter != null) {
+                            response.setData(dataAdapter.read(in));
+                        } else {
+                            in.skipValue();
+                        }
+                        break;
+                    case "device_token": response.setDevice_token(in.nextString()); break;
+                    case "command_id": response.setCommand_id(in.nextInt()); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    }
+}
\ No newline at end of file
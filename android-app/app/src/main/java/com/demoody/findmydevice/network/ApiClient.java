@@ -1,67 +1,135 @@
 package com.demoody.findmydevice.network;
 
 import android.content.Context;
+import android.util.Log;
+import com.demoody.findmydevice.BuildConfig;
+import com.demoody.findmydevice.metrics.MetricsSnapshot;
+import com.demoody.findmydevice.metrics.MetricsSnapshotTypeAdapter;
+import com.demoody.findmydevice.models.ModelTypeAdapterFactory;
 import com.demoody.findmydevice.utils.PreferenceManager;
+import com.demoody.findmydevice.work.WorkScheduler;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
 import okhttp3.logging.HttpLoggingInterceptor;
-import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 import java.util.concurrent.TimeUnit;
 
 public class ApiClient {
-    private static ApiClient instance;
-    private ApiService apiService;
-    private PreferenceManager preferenceManager;
+    private static final String TAG = "ApiClient";
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final String HTTP_CACHE_DIR = "http_cache";
+    // Only the geofence list is cacheable (no-cache plus an ETag), and 500 fences are well under 100 KB
+    private static final long HTTP_CACHE_SIZE = 256 * 1024;
+    
+    // Every body type has a streaming adapter, so nothing is (de)serialized by reflection
+    public static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+            .registerTypeAdapterFactory(new ApiTypeAdapterFactory())
+            .registerTypeAdapter(MetricsSnapshot.class, new MetricsSnapshotTypeAdapter())
+            .create();
+    
+    private static volatile ApiClient instance;
+    
+    private final Context context;
+    // Shared across base URL changes so the connection pool and dispatcher survive a swap
+    private final OkHttpClient okHttpClient;
+    private final PreferenceManager preferenceManager;
+    private final ServiceConfig serviceConfig;
     
     private ApiClient(Context context) {
-        preferenceManager = new PreferenceManager(context);
+        this.context = context;
         
+        // Never log bodies: they carry location payloads and tokens
         HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
-        loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
+        loggingInterceptor.setLevel(BuildConfig.DEBUG
+                ? HttpLoggingInterceptor.Level.HEADERS
+                : HttpLoggingInterceptor.Level.NONE);
+        loggingInterceptor.redactHeader("Authorization");
         
-        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+        okHttpClient = new OkHttpClient.Builder()
+                .addInterceptor(this::detectRejectedToken)
+                .addInterceptor(new GzipRequestInterceptor())
                 .addInterceptor(loggingInterceptor)
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
+                .eventListenerFactory(NetworkEventListener.FACTORY)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                // Lets GeofenceSync revalidate its list with If-None-Match and get a bodiless 304
+                .cache(new Cache(new File(context.getCacheDir(), HTTP_CACHE_DIR), HTTP_CACHE_SIZE))
+                .connectTimeout(15, TimeUnit.SECONDS)
+                // Must outlast the command long-poll wait
+                .readTimeout(40, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .build();
         
-        String baseUrl = preferenceManager.getServerUrl();
-        if (!baseUrl.endsWith("/")) {
-            baseUrl += "/";
-        }
-        
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(baseUrl)
-                .client(okHttpClient)
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-        
-        apiService = retrofit.create(ApiService.class);
+        // Fetched only now so a concurrent settings load overlaps with building the client
+        preferenceManager = PreferenceManager.getInstance(context);
+        serviceConfig = new ServiceConfig(okHttpClient, GsonConverterFactory.create(GSON),
+                preferenceManager.getServerUrl());
     }
     
-    public static synchronized ApiClient getInstance(Context context) {
+    public static ApiClient getInstance(Context context) {
         if (instance == null) {
-            instance = new ApiClient(context.getApplicationContext());
+            synchronized (ApiClient.class) {
+                if (instance == null) {
+                    instance = new ApiClient(context.getApplicationContext());
+                }
+            }
         }
         return instance;
     }
     
+    // Lock-free; callers may hold on to the ApiClient, but should fetch the service per call
     public ApiService getApiService() {
-        return apiService;
+        return serviceConfig.get().apiService;
     }
     
+    public String getBaseUrl() {
+        return serviceConfig.get().baseUrl;
+    }
+    
+    /**
+     * @return null until the server has accepted the device token; callers keep
+     *         their data queued rather than send it with a token that would be rejected
+     */
     public String getAuthHeader() {
         String token = preferenceManager.getDeviceToken();
-        if (token != null) {
+        if (token != null && preferenceManager.isServerRegistered()) {
             return "Bearer " + token;
         }
         return null;
     }
     
+    // A 401 for the current token means the server no longer knows this device
+    private Response detectRejectedToken(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+        
+        String sent = request.header("Authorization");
+        if (response.code() == 401 && sent != null && sent.equals(getAuthHeader())) {
+            Log.w(TAG, "Device token rejected, holding uploads until registered again");
+            preferenceManager.setServerRegistered(false);
+            WorkScheduler.scheduleReregistration(context);
+        }
+        return response;
+    }
+    
+    /**
+     * Points the client at a new server. Calls already in flight finish on the
+     * old service; new calls pick up the new one.
+     */
     public void updateBaseUrl(String newUrl) {
         preferenceManager.setServerUrl(newUrl);
-        // Recreate the instance with new URL
-        instance = new ApiClient(null);
+        serviceConfig.update(newUrl);
     }
 }
\ No newline at end of file
@@ -1,14 +1,19 @@
 package com.demoody.findmydevice.network;
 
+import com.demoody.findmydevice.metrics.MetricsSnapshot;
 import com.demoody.findmydevice.models.ApiResponse;
 import com.demoody.findmydevice.models.DeviceRegistration;
+import com.demoody.findmydevice.models.Geofence;
+import com.demoody.findmydevice.models.GeofenceEvent;
 import com.demoody.findmydevice.models.LocationData;
 import com.demoody.findmydevice.models.RemoteCommand;
 import java.util.List;
+import okhttp3.RequestBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
 import retrofit2.http.Header;
+import retrofit2.http.Headers;
 import retrofit2.http.POST;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
@@ -25,11 +30,28 @@ public interface ApiService {
             @Body LocationData location
     );
     
+    @Headers(GzipRequestInterceptor.MARKER)
+    @POST("api/devices/{device_id}/location/batch")
+    Call<ApiResponse<Void>> uploadLocationBatch(
+            @Path("device_id") String deviceId,
+            @Header("Authorization") String token,
+            @Body LocationBatch batch
+    );
+    
+    // Same endpoint, body encoded with LocationBatchCodec
+    @POST("api/devices/{device_id}/location/batch")
+    Call<ApiResponse<Void>> uploadLocationBatchCompact(
+            @Path("device_id") String deviceId,
+            @Header("Authorization") String token,
+            @Body RequestBody batch
+    );
+    
     @GET("api/devices/{device_id}/commands/poll")
     Call<ApiResponse<List<RemoteCommand>>> pollCommands(
             @Path("device_id") String deviceId,
             @Header("Authorization") String token,
-            @Query("since_id") int sinceId
+            @Query("since_id") int sinceId,
+            @Query("wait") int waitSeconds
     );
     
     @POST("api/devices/{device_id}/commands/{command_id}/ack")
@@ -40,6 +62,35 @@ public interface ApiService {
             @Body CommandAcknowledgment ack
     );
     
+    @Headers(GzipRequestInterceptor.MARKER)
+    @POST("api/devices/{device_id}/commands/ack")
+    Call<ApiResponse<Void>> acknowledgeCommands(
+            @Path("device_id") String deviceId,
+            @Header("Authorization") String token,
+            @Body CommandAckBatch batch
+    );
+    
+    @GET("api/devices/{device_id}/geofences")
+    Call<ApiResponse<List<Geofence>>> getGeofences(
+            @Path("device_id") String deviceId,
+            @Header("Authorization") String token
+    );
+    
+    @POST("api/devices/{device_id}/geofences/events")
+    Call<ApiResponse<Void>> uploadGeofenceEvents(
+            @Path("device_id") String deviceId,
+            @Header("Authorization") String token,
+            @Body GeofenceEventBatch batch
+    );
+    
+    @Headers(GzipRequestInterceptor.MARKER)
+    @POST("api/devices/{device_id}/metrics")
+    Call<ApiResponse<Void>> uploadMetrics(
+            @Path("device_id") String deviceId,
+            @Header("Authorization") String token,
+            @Body MetricsSnapshot snapshot
+    );
+    
     @POST("api/devices/{device_id}/sim_change")
     Call<ApiResponse<Void>> reportSimChange(
             @Path("device_id") String deviceId,
@@ -47,6 +98,33 @@ public interface ApiService {
             @Body SimChangeReport report
     );
     
+    @POST("api/devices/{device_id}/fcm_token")
+    Call<ApiResponse<Void>> updateFcmToken(
+            @Path("device_id") String deviceId,
+            @Header("Authorization") String token,
+            @Body FcmTokenUpdate update
+    );
+    
+    public static class LocationBatch {
+        private List<LocationData> locations;
+        
+        public LocationBatch(List<LocationData> locations) {
+            this.locations = locations;
+        }
+        
+        public List<LocationData> getLocations() { return locations; }
+    }
+    
+    public static class GeofenceEventBatch {
+        private List<GeofenceEvent> events;
+        
+        public GeofenceEventBatch(List<GeofenceEvent> events) {
+            this.events = events;
+        }
+        
+        public List<GeofenceEvent> getEvents() { return events; }
+    }
+    
     public static class CommandAcknowledgment {
         private String status;
         private String message;
@@ -63,6 +141,35 @@ public interface ApiService {
         public long getExecuted_at() { return executed_at; }
     }
     
+    public static class CommandAckEntry {
+        private int command_id;
+        private String status;
+        private String message;
+        private long executed_at;
+        
+        public CommandAckEntry(int commandId, String status, String message, long executedAt) {
+            this.command_id = commandId;
+            this.status = status;
+            this.message = message;
+            this.executed_at = executedAt;
+        }
+        
+        public int getCommand_id() { return command_id; }
+        public String getStatus() { return status; }
+        public String getMessage() { return message; }
+        public long getExecuted_at() { return executed_at; }
+    }
+    
+    public static class CommandAckBatch {
+        private List<CommandAckEntry> acks;
+        
+        public CommandAckBatch(List<CommandAckEntry> acks) {
+            this.acks = acks;
+        }
+        
+        public List<CommandAckEntry> getAcks() { return acks; }
+    }
+    
     public static class SimChangeReport {
         private SimInfo old_sim;
         private SimInfo new_sim;
@@ -94,4 +201,14 @@ public interface ApiService {
         public String getOperator() { return operator; }
         public String getNumber() { return number; }
     }
+    
+    public static class FcmTokenUpdate {
+        private String fcm_token;
+        
+        public FcmTokenUpdate(String fcmToken) {
+            this.fcm_token = fcmToken;
+        }
+        
+        public String getFcm_token() { return fcm_token; }
+    }
 }
\ No newline at end of file
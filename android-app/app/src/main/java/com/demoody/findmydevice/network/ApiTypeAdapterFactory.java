@@ -0,0 +1,406 @@
+package com.demoody.findmydevice.network;
+
+import com.demoody.findmydevice.models.GeofenceEvent;
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.models.ModelTypeAdapterFactory;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming adapters for the request bodies nested in {@link ApiService}.
+ * They are only ever written; reading is supported so they round-trip.
+ */
+public class ApiTypeAdapterFactory implements TypeAdapterFactory {
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        if (raw == ApiService.LocationBatch.class) {
+            return (TypeAdapter<T>) new LocationBatchAdapter(gson.getAdapter(LocationData.class));
+        }
+        if (raw == ApiService.GeofenceEventBatch.class) {
+            return (TypeAdapter<T>) new GeofenceEventBatchAdapter(gson.getAdapter(GeofenceEvent.class));
+        }
+        if (raw == ApiService.CommandAcknowledgment.class) {
+            return (TypeAdapter<T>) new CommandAcknowledgmentAdapter();
+        }
+        if (raw == ApiService.CommandAckEntry.class) {
+            return (TypeAdapter<T>) new CommandAckEntryAdapter();
+        }
+        if (raw == ApiService.CommandAckBatch.class) {
+            return (TypeAdapter<T>) new CommandAckBatchAdapter(gson.getAdapter(ApiService.CommandAckEntry.class));
+        }
+        if (raw == ApiService.SimChangeReport.class) {
+            return (TypeAdapter<T>) new SimChangeReportAdapter(gson.getAdapter(ApiService.SimInfo.class),
+                    gson.getAdapter(LocationData.class));
+        }
+        if (raw == ApiService.SimInfo.class) {
+            return (TypeAdapter<T>) new SimInfoAdapter();
+        }
+        if (raw == ApiService.FcmTokenUpdate.class) {
+            return (TypeAdapter<T>) new FcmTokenUpdateAdapter();
+        }
+        return null;
+    }
+    
+    private static <E> void writeList(JsonWriter out, TypeAdapter<E> adapter, List<E> items) throws IOException {
+        if (items == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (E item : items) {
+            adapter.write(out, item);
+        }
+        out.endArray();
+    }
+    
+    private static <E> List<E> readList(JsonReader in, TypeAdapter<E> adapter) throws IOException {
+        List<E> items = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            items.add(adapter.read(in));
+        }
+        in.endArray();
+        return items;
+    }
+    
+    static final class LocationBatchAdapter extends TypeAdapter<ApiService.LocationBatch> {
+        private final TypeAdapter<LocationData> locationAdapter;
+        
+        LocationBatchAdapter(TypeAdapter<LocationData> locationAdapter) {
+            this.locationAdapter = locationAdapter;
+        }
+        
+        @Override
+        public void write(JsonWriter out, ApiService.LocationBatch batch) throws IOException {
+            if (batch == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("locations");
+            writeList(out, locationAdapter, batch.getLocations());
+            out.endObject();
+        }
+        
+        @Override
+        public ApiService.LocationBatch read(JsonReader in) throws IOException {
+            if (ModelTypeAdapterFactory.skipNull(in)) {
+                return null;
+            }
+            List<LocationData> locations = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (ModelTypeAdapterFactory.skipNull(in)) {
+                    continue;
+                }
+                if (name.equals("locations")) {
+                    locations = readList(in, locationAdapter);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ApiService.LocationBatch(locations);
+        }
+    }
+    
+    static final class GeofenceEventBatchAdapter extends TypeAdapter<ApiService.GeofenceEventBatch> {
+        private final TypeAdapter<GeofenceEvent> eventAdapter;
+        
+        GeofenceEventBatchAdapter(TypeAdapter<GeofenceEvent> eventAdapter) {
+            this.eventAdapter = eventAdapter;
+        }
+        
+        @Override
+        public void write(JsonWriter out, ApiService.GeofenceEventBatch batch) throws IOException {
+            if (batch == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("events");
+            writeList(out, eventAdapter, batch.getEvents());
+            out.endObject();
+        }
+        
+        @Override
+        public ApiService.GeofenceEventBatch read(JsonReader in) throws IOException {
+            if (ModelTypeAdapterFactory.skipNull(in)) {
+                return null;
+            }
+            List<GeofenceEvent> events = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (ModelTypeAdapterFactory.skipNull(in)) {
+                    continue;
+                }
+                if (name.equals("events")) {
+                    events = readList(in, eventAdapter);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ApiService.GeofenceEventBatch(events);
+        }
+    }
+    
+    static final class CommandAcknowledgmentAdapter extends TypeAdapter<ApiService.CommandAcknowledgment> {
+        @Override
+        public void write(JsonWriter out, ApiService.CommandAcknowledgment ack) throws IOException {
+            if (ack == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("status").value(ack.getStatus());
+            out.name("message").value(ack.getMessage());
+            out.name("executed_at").value(ack.getExecuted_at());
+            out.endObject();
+        }
+        
+        @Override
+        public ApiService.CommandAcknowledgment read(JsonReader in) throws IOException {
+            if (ModelTypeAdapterFactory.skipNull(in)) {
+                return null;
+            }
+            String status = null;
+            String message = null;
+            long executedAt = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (ModelTypeAdapterFactory.skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "status": status = in.nextString(); break;
+                    case "message": message = in.nextString(); break;
+                    case "executed_at": executedAt = in.nextLong(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ApiService.CommandAcknowledgment(status, message, executedAt);
+        }
+    }
+    
+    static final class CommandAckEntryAdapter extends TypeAdapter<ApiService.CommandAckEntry> {
+        @Override
+        public void write(JsonWriter out, ApiService.CommandAckEntry ack) throws IOException {
+            if (ack == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("command_id").value(ack.getCommand_id());
+            out.name("status").value(ack.getStatus());
+            out.name("message").value(ack.getMessage());
+            out.name("executed_at").value(ack.getExecuted_at());
+            out.endObject();
+        }
+        
+        @Override
+        public ApiService.CommandAckEntry read(JsonReader in) throws IOException {
+            if (ModelTypeAdapterFactory.skipNull(in)) {
+                return null;
+            }
+            int commandId = 0;
+            String status = null;
+            String message = null;
+            long executedAt = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (ModelTypeAdapterFactory.skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "command_id": commandId = in.nextInt(); break;
+                    case "status": status = in.nextString(); break;
+                    case "message": message = in.nextString(); break;
+                    case "executed_at": executedAt = in.nextLong(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ApiService.CommandAckEntry(commandId, status, message, executedAt);
+        }
+    }
+    
+    static final class CommandAckBatchAdapter extends TypeAdapter<ApiService.CommandAckBatch> {
+        private final TypeAdapter<ApiService.CommandAckEntry> entryAdapter;
+        
+        CommandAckBatchAdapter(TypeAdapter<ApiService.CommandAckEntry> entryAdapter) {
+            this.entryAdapter = entryAdapter;
+        }
+        
+        @Override
+        public void write(JsonWriter out, ApiService.CommandAckBatch batch) throws IOException {
+            if (batch == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("acks");
+            writeList(out, entryAdapter, batch.getAcks());
+            out.endObject();
+        }
+        
+        @Override
+        public ApiService.CommandAckBatch read(JsonReader in) throws IOException {
+            if (ModelTypeAdapterFactory.skipNull(in)) {
+                return null;
+            }
+            List<ApiService.CommandAckEntry> acks = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (ModelTypeAdapterFactory.skipNull(in)) {
+                    continue;
+                }
+                if (name.equals("acks")) {
+                    acks = readList(in, entryAdapter);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ApiService.CommandAckBatch(acks);
+        }
+    }
+    
+    static final class SimChangeReportAdapter extends TypeAdapter<ApiService.SimChangeReport> {
+        private final TypeAdapter<ApiService.SimInfo> simAdapter;
+        private final TypeAdapter<LocationData> locationAdapter;
+        
+        SimChangeReportAdapter(TypeAdapter<ApiService.SimInfo> simAdapter, TypeAdapter<LocationData> locationAdapter) {
+            this.simAdapter = simAdapter;
+            this.locationAdapter = locationAdapter;
+        }
+        
+        @Override
+        public void write(JsonWriter out, ApiService.SimChangeReport report) throws IOException {
+            if (report == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("old_sim");
+            simAdapter.write(out, report.getOld_sim());
+            out.name("new_sim");
+            simAdapter.write(out, report.getNew_sim());
+            out.name("location");
+            locationAdapter.write(out, report.getLocation());
+            out.endObject();
+        }
+        
+        @Override
+        public ApiService.SimChangeReport read(JsonReader in) throws IOException {
+            if (ModelTypeAdapterFactory.skipNull(in)) {
+                return null;
+            }
+            ApiService.SimInfo oldSim = null;
+            ApiService.SimInfo newSim = null;
+            LocationData location = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "old_sim": oldSim = simAdapter.read(in); break;
+                    case "new_sim": newSim = simAdapter.read(in); break;
+                    case "location": location = locationAdapter.read(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ApiService.SimChangeReport(oldSim, newSim, location);
+        }
+    }
+    
+    static final class SimInfoAdapter extends TypeAdapter<ApiService.SimInfo> {
+        @Override
+        public void write(JsonWriter out, ApiService.SimInfo sim) throws IOException {
+            if (sim == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("serial").value(sim.getSerial());
+            out.name("operator").value(sim.getOperator());
+            out.name("number").value(sim.getNumber());
+            out.endObject();
+        }
+        
+        @Override
+        public ApiService.SimInfo read(JsonReader in) throws IOException {
+            if (ModelTypeAdapterFactory.skipNull(in)) {
+                return null;
+            }
+            String serial = null;
+            String operator = null;
+            String number = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (ModelTypeAdapterFactory.skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "serial": serial = in.nextString(); break;
+                    case "operator": operator = in.nextString(); break;
+                    case "number": number = in.nextString(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ApiService.SimInfo(serial, operator, number);
+        }
+    }
+    
+    static final class FcmTokenUpdateAdapter extends TypeAdapter<ApiService.FcmTokenUpdate> {
+        @Override
+        public void write(JsonWriter out, ApiService.FcmTokenUpdate update) throws IOException {
+            if (update == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("fcm_token").value(update.getFcm_token());
+            out.endObject();
+        }
+        
+        @Override
+        public ApiService.FcmTokenUpdate read(JsonReader in) throws IOException {
+            if (ModelTypeAdapterFactory.skipNull(in)) {
+                return null;
+            }
+            String fcmToken = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (ModelTypeAdapterFactory.skipNull(in)) {
+                    continue;
+                }
+                if (name.equals("fcm_token")) {
+                    fcmToken = in.nextString();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ApiService.FcmTokenUpdate(fcmToken);
+        }
+    }
+}
\ No newline at end of file
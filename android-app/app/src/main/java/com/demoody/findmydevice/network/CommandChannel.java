@@ -0,0 +1,194 @@
+package com.demoody.findmydevice.network;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import com.demoody.findmydevice.models.ApiResponse;
+import com.demoody.findmydevice.models.RemoteCommand;
+import com.demoody.findmydevice.services.CommandExecutorService;
+import com.demoody.findmydevice.utils.Backoff;
+import com.demoody.findmydevice.utils.PreferenceManager;
+import com.google.gson.JsonElement;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Holds a long-poll connection open against the command poll endpoint so new
+ * commands are picked up as soon as the server creates them. After a
+ * reconnect it resumes from the last command id it handed to the executor.
+ * While the server can push commands over FCM, the long poll is replaced by
+ * an occasional short poll that only picks up pushes that never arrived.
+ */
+public class CommandChannel {
+    private static final String TAG = "CommandChannel";
+    // Must stay below the OkHttp read timeout in ApiClient
+    private static final int LONG_POLL_WAIT_SECONDS = 25;
+    private static final long MIN_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 60 * 1000;
+    private static final long RECONCILE_INTERVAL = 15 * 60 * 1000;
+    
+    private final Context context;
+    private final PreferenceManager preferenceManager;
+    private final ApiClient apiClient;
+    // Jittered so devices that lost the server together don't all reconnect together
+    private final Backoff retryBackoff = new Backoff(MIN_RETRY_DELAY, MAX_RETRY_DELAY);
+    
+    private Thread pollThread;
+    private volatile boolean running = false;
+    private volatile Call<ApiResponse<List<RemoteCommand>>> currentCall;
+    private final Object reconcileWait = new Object();
+    // Cuts the reconcile wait short as soon as push stops being available
+    private final PreferenceManager.OnSettingChangedListener pushListener = key -> {
+        if (!preferenceManager.isPushActive()) {
+            synchronized (reconcileWait) {
+                reconcileWait.notifyAll();
+            }
+        }
+    };
+    
+    public CommandChannel(Context context) {
+        this.context = context.getApplicationContext();
+        preferenceManager = PreferenceManager.getInstance(this.context);
+        apiClient = ApiClient.getInstance(this.context);
+    }
+    
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        
+        running = true;
+        preferenceManager.registerListener(pushListener);
+        pollThread = new Thread(this::pollLoop, TAG);
+        pollThread.start();
+        Log.d(TAG, "Command channel started");
+    }
+    
+    public synchronized void stop() {
+        running = false;
+        preferenceManager.unregisterListener(pushListener);
+        
+        Call<ApiResponse<List<RemoteCommand>>> call = currentCall;
+        if (call != null) {
+            call.cancel();
+        }
+        if (pollThread != null) {
+            pollThread.interrupt();
+            pollThread = null;
+        }
+        Log.d(TAG, "Command channel stopped");
+    }
+    
+    private void pollLoop() {
+        int failures = 0;
+        
+        while (running) {
+            boolean push = preferenceManager.isPushActive();
+            if (pollOnce(push ? 0 : LONG_POLL_WAIT_SECONDS)) {
+                failures = 0;
+                if (push && !awaitReconcile()) {
+                    return;
+                }
+                continue;
+            }
+            
+            try {
+                Thread.sleep(retryBackoff.delayMillis(failures++));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * @return false if the channel was stopped while waiting
+     */
+    private boolean awaitReconcile() {
+        try {
+            synchronized (reconcileWait) {
+                if (preferenceManager.isPushActive()) {
+                    reconcileWait.wait(RECONCILE_INTERVAL);
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Fetches pending commands once without waiting for new ones, outside the
+     * long-poll loop.
+     * @return true if the poll succeeded
+     */
+    public boolean pollNow() {
+        return pollOnce(0);
+    }
+    
+    /**
+     * @return true if the poll completed normally and can be re-issued immediately
+     */
+    private boolean pollOnce(int waitSeconds) {
+        String deviceId = preferenceManager.getDeviceId();
+        String authHeader = apiClient.getAuthHeader();
+        if (deviceId == null || authHeader == null) {
+            return false;
+        }
+        
+        try {
+            currentCall = apiClient.getApiService().pollCommands(
+                    deviceId, authHeader, preferenceManager.getLastCommandId(), waitSeconds);
+            Response<ApiResponse<List<RemoteCommand>>> response = currentCall.execute();
+            
+            if (!response.isSuccessful() || response.body() == null || !response.body().isSuccess()) {
+                Log.w(TAG, "Command poll failed: " + response.code());
+                return false;
+            }
+            
+            List<RemoteCommand> commands = response.body().getData();
+            if (commands != null) {
+                for (RemoteCommand command : commands) {
+                    dispatch(command);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            if (running) {
+                Log.e(TAG, "Network error polling commands", e);
+            }
+            return false;
+        } finally {
+            currentCall = null;
+        }
+    }
+    
+    private void dispatch(RemoteCommand command) {
+        if (command.getType() == null) {
+            return;
+        }
+        
+        Intent serviceIntent = new Intent(context, CommandExecutorService.class);
+        serviceIntent.putExtra("command_type", command.getType());
+        serviceIntent.putExtra("command_id", command.getId());
+        serviceIntent.putExtra("source", "POLL");
+        serviceIntent.putExtra(CommandExecutorService.EXTRA_RECEIVED_AT, System.currentTimeMillis());
+        
+        // Flatten simple payload fields the same way FCM data messages arrive
+        if (command.getPayload() != null) {
+            for (Map.Entry<String, JsonElement> entry : command.getPayload().entrySet()) {
+                if (entry.getValue().isJsonPrimitive()) {
+                    serviceIntent.putExtra(entry.getKey(), entry.getValue().getAsString());
+                }
+            }
+        }
+        
+        context.startService(serviceIntent);
+        
+        if (command.getId() > preferenceManager.getLastCommandId()) {
+            preferenceManager.setLastCommandId(command.getId());
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.demoody.findmydevice.network;
+
+import android.content.Context;
+import android.util.Log;
+import com.demoody.findmydevice.models.ApiResponse;
+import com.demoody.findmydevice.models.Geofence;
+import com.demoody.findmydevice.models.GeofenceEvent;
+import com.demoody.findmydevice.utils.PreferenceManager;
+import com.demoody.findmydevice.work.WorkScheduler;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import retrofit2.Response;
+
+/**
+ * Pulls the device's safe zones from the server and pushes enter/exit
+ * events back. Events that cannot be sent are kept in memory and retried
+ * with the next event or config sync.
+ */
+public class GeofenceSync {
+    private static final String TAG = "GeofenceSync";
+    private static final int MAX_PENDING_EVENTS = 200;
+    
+    public interface FencesListener {
+        void onFencesUpdated(List<Geofence> fences);
+    }
+    
+    private static volatile GeofenceSync instance;
+    
+    private final Context context;
+    private final PreferenceManager preferenceManager;
+    private final ApiClient apiClient;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Only touched on the sync thread
+    private final List<GeofenceEvent> pendingEvents = new ArrayList<>();
+    private volatile List<Geofence> fences;
+    private volatile FencesListener fencesListener;
+    
+    private GeofenceSync(Context context) {
+        this.context = context;
+        preferenceManager = PreferenceManager.getInstance(context);
+        apiClient = ApiClient.getInstance(context);
+    }
+    
+    public static GeofenceSync getInstance(Context context) {
+        if (instance == null) {
+            synchronized (GeofenceSync.class) {
+                if (instance == null) {
+                    instance = new GeofenceSync(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * Sets who receives the zone list; called right away if a list is already loaded.
+     */
+    public void setFencesListener(FencesListener listener) {
+        fencesListener = listener;
+        List<Geofence> current = fences;
+        if (listener != null && current != null) {
+            listener.onFencesUpdated(current);
+        }
+    }
+    
+    public void refresh() {
+        WorkScheduler.scheduleConfigSync(context);
+    }
+    
+    /**
+     * Fetches the zone list and retries unsent events, waiting for both.
+     * Called from the config sync worker, never from the main thread.
+     *
+     * @return true if the zone list was fetched
+     */
+    public boolean refreshNow() {
+        try {
+            return executor.submit(() -> {
+                boolean fetched = fetchFences();
+                sendPendingEvents();
+                return fetched;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error refreshing geofences", e.getCause());
+            return false;
+        }
+    }
+    
+    // The server sends an ETag, so an unchanged list is answered from the HTTP cache after a bodiless 304
+    private boolean fetchFences() {
+        String deviceId = preferenceManager.getDeviceId();
+        String authHeader = apiClient.getAuthHeader();
+        if (deviceId == null || authHeader == null) {
+            return false;
+        }
+        
+        try {
+            Response<ApiResponse<List<Geofence>>> response = apiClient.getApiService()
+                    .getGeofences(deviceId, authHeader)
+                    .execute();
+            
+            if (!response.isSuccessful() || response.body() == null || !response.body().isSuccess()) {
+                Log.w(TAG, "Failed to fetch geofences: " + response.code());
+                return false;
+            }
+            
+            List<Geofence> updated = response.body().getData();
+            fences = updated != null ? updated : new ArrayList<Geofence>();
+            FencesListener listener = fencesListener;
+            if (listener != null) {
+                listener.onFencesUpdated(fences);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Network error fetching geofences", e);
+            return false;
+        }
+    }
+    
+    public void reportEvents(List<GeofenceEvent> events) {
+        executor.execute(() -> {
+            pendingEvents.addAll(events);
+            if (pendingEvents.size() > MAX_PENDING_EVENTS) {
+                pendingEvents.subList(0, pendingEvents.size() - MAX_PENDING_EVENTS).clear();
+            }
+            sendPendingEvents();
+        });
+    }
+    
+    private void sendPendingEvents() {
+        if (pendingEvents.isEmpty()) {
+            return;
+        }
+        
+        String deviceId = preferenceManager.getDeviceId();
+        String authHeader = apiClient.getAuthHeader();
+        if (deviceId == null || authHeader == null) {
+            return;
+        }
+        
+        List<GeofenceEvent> batch = new ArrayList<>(pendingEvents);
+        try {
+            Response<ApiResponse<Void>> response = apiClient.getApiService()
+                    .uploadGeofenceEvents(deviceId, authHeader, new ApiService.GeofenceEventBatch(batch))
+                    .execute();
+            
+            if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
+                pendingEvents.subList(0, batch.size()).clear();
+                Log.d(TAG, "Sent " + batch.size() + " geofence events");
+            } else {
+                Log.w(TAG, "Failed to send geofence events: " + response.code());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Network error sending geofence events", e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.demoody.findmydevice.network;
+
+import java.io.IOException;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Gzips the body of requests that carry the {@link #HEADER} marker, which
+ * ApiService puts on the bulk upload endpoints. The marker is stripped before
+ * the request goes out.
+ */
+public class GzipRequestInterceptor implements Interceptor {
+    public static final String HEADER = "X-Gzip-Body";
+    public static final String MARKER = HEADER + ": true";
+    
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.header(HEADER) == null) {
+            return chain.proceed(request);
+        }
+        
+        Request.Builder builder = request.newBuilder().removeHeader(HEADER);
+        RequestBody body = request.body();
+        if (body == null || request.header("Content-Encoding") != null) {
+            return chain.proceed(builder.build());
+        }
+        
+        Request compressed = builder
+                .header("Content-Encoding", "gzip")
+                .method(request.method(), gzip(body))
+                .build();
+        return chain.proceed(compressed);
+    }
+    
+    private static RequestBody gzip(RequestBody body) throws IOException {
+        // Compress up front so the request keeps a Content-Length instead of going chunked
+        Buffer buffer = new Buffer();
+        BufferedSink gzipSink = Okio.buffer(new GzipSink(buffer));
+        body.writeTo(gzipSink);
+        gzipSink.close();
+        return RequestBody.create(buffer.readByteString(), body.contentType());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,182 @@
+package com.demoody.findmydevice.network;
+
+import com.demoody.findmydevice.models.LocationData;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding for location batches, sent as {@link #CONTENT_TYPE}.
+ *
+ * <pre>
+ * "FL" version:u8
+ * count:varint
+ * providers:varint { length:varint utf8-bytes }*
+ * count x {
+ *   dLat:zigzag-varint   latitude in 1e-7 degrees, delta from the previous record
+ *   dLng:zigzag-varint   longitude in 1e-7 degrees, delta from the previous record
+ *   dTime:zigzag-varint  timestamp in ms, delta from the previous record
+ *   accuracy:varint      decimetres + 1, 0 when unknown
+ *   provider:varint      dictionary index + 1, 0 when null
+ * }
+ * </pre>
+ *
+ * The backend decodes the same layout in decode_compact_locations().
+ */
+public class LocationBatchCodec {
+    public static final String CONTENT_TYPE = "application/x-fmd-locations";
+    
+    private static final byte MAGIC_0 = 'F';
+    private static final byte MAGIC_1 = 'L';
+    private static final byte VERSION = 1;
+    private static final double FIXED_POINT_SCALE = 1e7;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    public static byte[] encode(List<LocationData> locations) {
+        Map<String, Integer> providers = new LinkedHashMap<>();
+        for (LocationData location : locations) {
+            String provider = location.getProvider();
+            if (provider != null && !providers.containsKey(provider)) {
+                providers.put(provider, providers.size());
+            }
+        }
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + locations.size() * 12);
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        out.write(VERSION);
+        writeVarint(out, locations.size());
+        
+        writeVarint(out, providers.size());
+        for (String provider : providers.keySet()) {
+            byte[] bytes = provider.getBytes(UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        
+        long previousLat = 0;
+        long previousLng = 0;
+        long previousTime = 0;
+        for (LocationData location : locations) {
+            long lat = Math.round(location.getLat() * FIXED_POINT_SCALE);
+            long lng = Math.round(location.getLng() * FIXED_POINT_SCALE);
+            long time = location.getTimestamp();
+            
+            writeVarint(out, zigzag(lat - previousLat));
+            writeVarint(out, zigzag(lng - previousLng));
+            writeVarint(out, zigzag(time - previousTime));
+            writeVarint(out, location.getAccuracy() < 0 ? 0 : Math.round(location.getAccuracy() * 10) + 1);
+            
+            Integer providerIndex = location.getProvider() != null ? providers.get(location.getProvider()) : null;
+            writeVarint(out, providerIndex == null ? 0 : providerIndex + 1);
+            
+            previousLat = lat;
+            previousLng = lng;
+            previousTime = time;
+        }
+        
+        return out.toByteArray();
+    }
+    
+    public static List<LocationData> decode(byte[] data) throws IOException {
+        Reader reader = new Reader(data);
+        if (reader.readByte() != MAGIC_0 || reader.readByte() != MAGIC_1) {
+            throw new IOException("Not a location batch");
+        }
+        if (reader.readByte() != VERSION) {
+            throw new IOException("Unsupported location batch version");
+        }
+        
+        int count = (int) reader.readVarint();
+        int providerCount = (int) reader.readVarint();
+        List<String> providers = new ArrayList<>(providerCount);
+        for (int i = 0; i < providerCount; i++) {
+            int length = (int) reader.readVarint();
+            providers.add(new String(reader.readBytes(length), UTF_8));
+        }
+        
+        List<LocationData> locations = new ArrayList<>(count);
+        long lat = 0;
+        long lng = 0;
+        long time = 0;
+        for (int i = 0; i < count; i++) {
+            lat += unzigzag(reader.readVarint());
+            lng += unzigzag(reader.readVarint());
+            time += unzigzag(reader.readVarint());
+            long accuracy = reader.readVarint();
+            int providerIndex = (int) reader.readVarint();
+            
+            if (providerIndex > providers.size()) {
+                throw new IOException("Provider index out of range");
+            }
+            
+            locations.add(new LocationData(
+                    lat / FIXED_POINT_SCALE,
+                    lng / FIXED_POINT_SCALE,
+                    accuracy == 0 ? -1 : (accuracy - 1) / 10.0,
+                    time,
+                    providerIndex == 0 ? null : providers.get(providerIndex - 1)
+            ));
+        }
+        
+        return locations;
+    }
+    
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+    
+    private static class Reader {
+        private final byte[] data;
+        private int position = 0;
+        
+        Reader(byte[] data) {
+            this.data = data;
+        }
+        
+        byte readByte() throws IOException {
+            if (position >= data.length) {
+                throw new IOException("Truncated location batch");
+            }
+            return data[position++];
+        }
+        
+        byte[] readBytes(int length) throws IOException {
+            if (length < 0 || position + length > data.length) {
+                throw new IOException("Truncated location batch");
+            }
+            byte[] bytes = new byte[length];
+            System.arraycopy(data, position, bytes, 0, length);
+            position += length;
+            return bytes;
+        }
+        
+        long readVarint() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+}
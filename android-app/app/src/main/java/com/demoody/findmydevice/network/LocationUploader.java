@@ -0,0 +1,286 @@
+package com.demoody.findmydevice.network;
+
+import android.content.Context;
+import android.util.Log;
+import com.demoody.findmydevice.database.AppDatabase;
+import com.demoody.findmydevice.database.FixRingBuffer;
+import com.demoody.findmydevice.database.PendingLocation;
+import com.demoody.findmydevice.database.PendingLocationDao;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.models.ApiResponse;
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.tracking.TrajectorySimplifier;
+import com.demoody.findmydevice.utils.PreferenceManager;
+import com.demoody.findmydevice.work.WorkScheduler;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import retrofit2.Response;
+
+/**
+ * Durable outbound queue for location fixes. Fixes are written to a
+ * memory-mapped {@link FixRingBuffer} as they are taken, moved into the local
+ * database in bulk and then drained to the server in batches by
+ * {@link com.demoody.findmydevice.work.UploadWorker}, so a fix taken in a dead
+ * zone is uploaded once the network is back instead of being dropped.
+ */
+public class LocationUploader {
+    private static final String TAG = "LocationUploader";
+    private static final int BATCH_SIZE = 50;
+    private static final String RING_FILE_NAME = "fix_ring.bin";
+    // About 256 KB; at one fix a minute that is well over a day offline
+    private static final int RING_CAPACITY = 8192;
+    // No smaller than the ring, so staging a full ring after a long offline period keeps every fix
+    private static final int MAX_QUEUED_LOCATIONS = RING_CAPACITY;
+    private static final int STAGE_BATCH_SIZE = 500;
+    private static final int HTTP_UNAUTHORIZED = 401;
+    private static final int HTTP_REQUEST_TIMEOUT = 408;
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final MediaType COMPACT_MEDIA_TYPE = MediaType.parse(LocationBatchCodec.CONTENT_TYPE);
+    
+    private static volatile LocationUploader instance;
+    
+    private final Context context;
+    private final AppDatabase database;
+    private final PendingLocationDao pendingLocationDao;
+    // Null if the ring file couldn't be mapped; fixes then go straight to the database
+    private final FixRingBuffer ring;
+    private final PreferenceManager preferenceManager;
+    private final ApiClient apiClient;
+    // Single thread keeps database writes and drains ordered without extra locking
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Cleared for the rest of the process once the server rejects the compact encoding
+    private volatile boolean compactSupported = true;
+    
+    private LocationUploader(Context context) {
+        this.context = context;
+        database = AppDatabase.getInstance(context);
+        pendingLocationDao = database.pendingLocationDao();
+        preferenceManager = PreferenceManager.getInstance(context);
+        apiClient = ApiClient.getInstance(context);
+        ring = openRing(new File(context.getFilesDir(), RING_FILE_NAME));
+    }
+    
+    private static FixRingBuffer openRing(File file) {
+        try {
+            return new FixRingBuffer(file, RING_CAPACITY);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not map fix ring, queueing fixes in the database", e);
+            return null;
+        }
+    }
+    
+    public static LocationUploader getInstance(Context context) {
+        if (instance == null) {
+            synchronized (LocationUploader.class) {
+                if (instance == null) {
+                    instance = new LocationUploader(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+    
+    public void enqueue(LocationData locationData) {
+        enqueue(locationData, false);
+    }
+    
+    /**
+     * @param expedited upload ahead of the OS's batching, for theft-critical fixes
+     */
+    public void enqueue(LocationData locationData, boolean expedited) {
+        store(locationData);
+        executor.execute(() -> WorkScheduler.scheduleUpload(context, expedited));
+    }
+    
+    /**
+     * Queues a fix without asking for an upload; it goes out with the next one.
+     */
+    public void record(LocationData locationData) {
+        store(locationData);
+    }
+    
+    private void store(LocationData locationData) {
+        if (ring != null) {
+            // A few bytes into the mapping; survives the process being killed from here on
+            ring.append(locationData);
+            return;
+        }
+        
+        executor.execute(() -> {
+            pendingLocationDao.insert(PendingLocation.fromLocationData(locationData));
+            pendingLocationDao.trimTo(MAX_QUEUED_LOCATIONS);
+        });
+    }
+    
+    public void flush() {
+        WorkScheduler.scheduleUpload(context, false);
+    }
+    
+    /**
+     * Writes the ring's dirty pages to storage. Process death doesn't need
+     * this, only power loss, so it is called when tracking stops rather than
+     * per fix.
+     */
+    public void sync() {
+        if (ring != null) {
+            ring.force();
+        }
+    }
+    
+    /**
+     * Drains the queue on the uploader thread and waits for the result. Called
+     * from the upload worker, never from the main thread.
+     *
+     * @return true if the queue was fully drained
+     */
+    public boolean drainNow() {
+        try {
+            return executor.submit(() -> {
+                boolean drained = drainQueue();
+                MetricsRegistry.getInstance().gauge("queue.locations").set(pendingLocationDao.count()
+                        + (ring != null ? ring.size() : 0));
+                return drained;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error draining location queue", e.getCause());
+            return false;
+        }
+    }
+    
+    /**
+     * Uploads queued fixes batch by batch until the queue is empty or a batch
+     * fails. Must run on the uploader thread.
+     *
+     * @return true if the queue was fully drained
+     */
+    private boolean drainQueue() {
+        stageRing();
+        
+        String deviceId = preferenceManager.getDeviceId();
+        String authHeader = apiClient.getAuthHeader();
+        
+        if (deviceId == null || authHeader == null) {
+            Log.w(TAG, "Missing device ID or auth token, keeping locations queued");
+            return false;
+        }
+        
+        while (true) {
+            List<PendingLocation> pending = pendingLocationDao.getOldest(BATCH_SIZE);
+            if (pending.isEmpty()) {
+                return true;
+            }
+            
+            List<LocationData> locations = new ArrayList<>(pending.size());
+            List<Long> ids = new ArrayList<>(pending.size());
+            for (PendingLocation location : pending) {
+                locations.add(location.toLocationData());
+                ids.add(location.getId());
+            }
+            
+            // Fixes queued while offline are mostly redundant; the batch keeps its first and last fix
+            TrajectorySimplifier.Result simplified = TrajectorySimplifier.simplify(locations,
+                    preferenceManager.getTrajectoryTolerance());
+            locations = simplified.getPoints();
+            
+            try {
+                Response<ApiResponse<Void>> response = uploadBatch(deviceId, authHeader, locations);
+                
+                if (isPermanentRejection(response.code())) {
+                    // Resending the same batch cannot succeed, and it would hold back every later fix
+                    Log.e(TAG, "Server rejected location batch: " + response.code() + ", dropping "
+                            + ids.size() + " queued locations");
+                    MetricsRegistry.getInstance().counter("queue.locations.rejected").add(ids.size());
+                    pendingLocationDao.deleteByIds(ids);
+                    continue;
+                }
+                if (!response.isSuccessful() || response.body() == null || !response.body().isSuccess()) {
+                    Log.w(TAG, "Failed to upload location batch: " + response.code());
+                    return false;
+                }
+            } catch (IOException e) {
+                // Leave the batch queued; the worker retries with backoff
+                Log.e(TAG, "Network error uploading location batch", e);
+                return false;
+            }
+            
+            // Dropped fixes are within tolerance of the uploaded track, so they go too
+            pendingLocationDao.deleteByIds(ids);
+            Log.d(TAG, "Uploaded " + locations.size() + " of " + ids.size() + " queued locations, max deviation "
+                    + String.format(Locale.US, "%.1f", simplified.getMaxDeviation()) + "m");
+        }
+    }
+    
+    /**
+     * Moves fixes from the ring into the database, one transaction per chunk.
+     * The ring is only advanced after the rows are committed; a crash in
+     * between re-stages the chunk, which costs a few duplicate fixes rather
+     * than lost ones.
+     */
+    private void stageRing() {
+        if (ring == null) {
+            return;
+        }
+        
+        int staged = 0;
+        while (ring.size() > 0) {
+            FixRingBuffer.Batch batch = ring.read(STAGE_BATCH_SIZE);
+            List<PendingLocation> rows = new ArrayList<>(batch.getFixes().size());
+            for (LocationData fix : batch.getFixes()) {
+                rows.add(PendingLocation.fromLocationData(fix));
+            }
+            
+            database.runInTransaction(() -> {
+                pendingLocationDao.insertAll(rows);
+                pendingLocationDao.trimTo(MAX_QUEUED_LOCATIONS);
+            });
+            ring.commit(batch.getEndSequence());
+            staged += rows.size();
+        }
+        
+        if (staged > 0) {
+            Log.d(TAG, "Staged " + staged + " fixes from the ring");
+        }
+    }
+    
+    /**
+     * A 4xx other than 401, 408 or 429. A 401 is answered by re-registering,
+     * after which the same batch goes out with the new token.
+     */
+    private static boolean isPermanentRejection(int code) {
+        return code >= 400 && code < 500 && code != HTTP_UNAUTHORIZED && code != HTTP_REQUEST_TIMEOUT
+                && code != HTTP_TOO_MANY_REQUESTS;
+    }
+    
+    private Response<ApiResponse<Void>> uploadBatch(String deviceId, String authHeader,
+                                                    List<LocationData> locations) throws IOException {
+        ApiService apiService = apiClient.getApiService();
+        
+        if (compactSupported) {
+            RequestBody body = RequestBody.create(LocationBatchCodec.encode(locations), COMPACT_MEDIA_TYPE);
+            Response<ApiResponse<Void>> response = apiService
+                    .uploadLocationBatchCompact(deviceId, authHeader, body)
+                    .execute();
+            if (response.code() != HTTP_UNSUPPORTED_MEDIA_TYPE) {
+                return response;
+            }
+            
+            Log.i(TAG, "Server does not accept compact location batches, falling back to JSON");
+            compactSupported = false;
+        }
+        
+        return apiService.uploadLocationBatch(deviceId, authHeader, new ApiService.LocationBatch(locations))
+                .execute();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package com.demoody.findmydevice.network;
+
+import android.content.Context;
+import android.util.Log;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.metrics.MetricsSnapshot;
+import com.demoody.findmydevice.models.ApiResponse;
+import com.demoody.findmydevice.utils.PreferenceManager;
+import java.io.IOException;
+import retrofit2.Response;
+
+/**
+ * Sends {@link MetricsRegistry} snapshots to the server. Runs inside the
+ * periodic sync, so metrics ride on a wakeup that is happening anyway. A
+ * snapshot that fails to send is merged into the next one; snapshots are
+ * not persisted, so a process death loses at most one period.
+ */
+public class MetricsUploader {
+    private static final String TAG = "MetricsUploader";
+    // Past this the unsent backlog is dropped rather than growing without bound
+    private static final long MAX_PENDING_PERIOD = 24 * 60 * 60 * 1000;
+    
+    private static volatile MetricsUploader instance;
+    
+    private final PreferenceManager preferenceManager;
+    private final ApiClient apiClient;
+    private final MetricsRegistry registry = MetricsRegistry.getInstance();
+    private MetricsSnapshot pending;
+    
+    private MetricsUploader(Context context) {
+        preferenceManager = PreferenceManager.getInstance(context);
+        apiClient = ApiClient.getInstance(context);
+    }
+    
+    public static MetricsUploader getInstance(Context context) {
+        if (instance == null) {
+            synchronized (MetricsUploader.class) {
+                if (instance == null) {
+                    instance = new MetricsUploader(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * Takes a snapshot and uploads it on the calling thread.
+     *
+     * @return true if the snapshot was accepted
+     */
+    public synchronized boolean sendNow() {
+        MetricsSnapshot snapshot = registry.snapshotAndReset();
+        if (pending != null && snapshot.getPeriodEnd() - pending.getPeriodStart() <= MAX_PENDING_PERIOD) {
+            snapshot = pending.plus(snapshot);
+        }
+        pending = null;
+        
+        String deviceId = preferenceManager.getDeviceId();
+        String authHeader = apiClient.getAuthHeader();
+        if (deviceId == null || authHeader == null) {
+            pending = snapshot;
+            return false;
+        }
+        
+        try {
+            Response<ApiResponse<Void>> response = apiClient.getApiService()
+                    .uploadMetrics(deviceId, authHeader, snapshot)
+                    .execute();
+            
+            if (response.isSuccessful()) {
+                Log.d(TAG, "Uploaded metrics for " + (snapshot.getPeriodEnd() - snapshot.getPeriodStart()) / 60000
+                        + " minutes: " + snapshot.getCounters().size() + " counters, "
+                        + snapshot.getHistograms().size() + " histograms");
+                return true;
+            }
+            if (response.code() >= 400 && response.code() < 500) {
+                // Resending the same snapshot won't change the answer
+                Log.w(TAG, "Metrics rejected: " + response.code());
+                return false;
+            }
+            Log.w(TAG, "Failed to upload metrics: " + response.code());
+        } catch (IOException e) {
+            Log.e(TAG, "Network error uploading metrics", e);
+        }
+        pending = snapshot;
+        return false;
+    }
+}
\ No newline at end of file
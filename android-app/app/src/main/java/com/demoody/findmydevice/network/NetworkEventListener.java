@@ -0,0 +1,116 @@
+package com.demoody.findmydevice.network;
+
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import retrofit2.Invocation;
+
+/**
+ * Records DNS, connect, TLS, time-to-first-byte and total call time for each
+ * request into {@link NetworkTimings}, keyed by the ApiService method name,
+ * and call latency and failures into the {@link MetricsRegistry}.
+ * A new listener is created per call, so no state is shared between calls.
+ */
+public class NetworkEventListener extends EventListener {
+    public static final Factory FACTORY = call -> new NetworkEventListener(endpointOf(call));
+    
+    private final String endpoint;
+    private final NetworkTimings timings = NetworkTimings.getInstance();
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long secureConnectStart;
+    private long requestStart;
+    
+    private NetworkEventListener(String endpoint) {
+        this.endpoint = endpoint;
+    }
+    
+    private static String endpointOf(Call call) {
+        Invocation invocation = call.request().tag(Invocation.class);
+        if (invocation != null) {
+            return invocation.method().getName();
+        }
+        return call.request().method() + " " + call.request().url().encodedPath();
+    }
+    
+    @Override
+    public void callStart(Call call) {
+        callStart = System.nanoTime();
+        metrics.counter("http." + endpoint + ".calls").increment();
+    }
+    
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+    }
+    
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        timings.record(endpoint, NetworkTimings.PHASE_DNS, millisSince(dnsStart));
+    }
+    
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+    
+    @Override
+    public void secureConnectStart(Call call) {
+        secureConnectStart = System.nanoTime();
+    }
+    
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        timings.record(endpoint, NetworkTimings.PHASE_TLS, millisSince(secureConnectStart));
+    }
+    
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        timings.record(endpoint, NetworkTimings.PHASE_CONNECT, millisSince(connectStart));
+    }
+    
+    @Override
+    public void requestHeadersStart(Call call) {
+        requestStart = System.nanoTime();
+    }
+    
+    @Override
+    public void responseHeadersStart(Call call) {
+        timings.record(endpoint, NetworkTimings.PHASE_TTFB, millisSince(requestStart));
+    }
+    
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        if (response.code() >= 400) {
+            metrics.counter("http." + endpoint + ".http_errors").increment();
+        }
+    }
+    
+    @Override
+    public void callEnd(Call call) {
+        long millis = millisSince(callStart);
+        timings.record(endpoint, NetworkTimings.PHASE_CALL, millis);
+        metrics.histogram("http." + endpoint + ".latency_ms").record(millis);
+    }
+    
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        timings.recordFailure(endpoint);
+        metrics.counter("http." + endpoint + ".failures").increment();
+    }
+    
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+}
@@ -0,0 +1,82 @@
+package com.demoody.findmydevice.network;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregated per-endpoint network phase timings, fed by {@link NetworkEventListener}.
+ * Each phase keeps a count, total and max so snapshots from many devices can be summed.
+ */
+public class NetworkTimings {
+    public static final String PHASE_DNS = "dns";
+    public static final String PHASE_CONNECT = "connect";
+    public static final String PHASE_TLS = "tls";
+    public static final String PHASE_TTFB = "ttfb";
+    public static final String PHASE_CALL = "call";
+    
+    private static final NetworkTimings INSTANCE = new NetworkTimings();
+    
+    private final Map<String, EndpointStats> endpoints = new TreeMap<>();
+    
+    private static class PhaseStats {
+        long count;
+        long totalMillis;
+        long maxMillis;
+    }
+    
+    private static class EndpointStats {
+        final Map<String, PhaseStats> phases = new LinkedHashMap<>();
+        long failures;
+    }
+    
+    public static NetworkTimings getInstance() {
+        return INSTANCE;
+    }
+    
+    public synchronized void record(String endpoint, String phase, long millis) {
+        PhaseStats stats = endpointStats(endpoint).phases.get(phase);
+        if (stats == null) {
+            stats = new PhaseStats();
+            endpointStats(endpoint).phases.put(phase, stats);
+        }
+        stats.count++;
+        stats.totalMillis += millis;
+        stats.maxMillis = Math.max(stats.maxMillis, millis);
+    }
+    
+    public synchronized void recordFailure(String endpoint) {
+        endpointStats(endpoint).failures++;
+    }
+    
+    /**
+     * Flat snapshot keyed "endpoint.phase.count|total_ms|max_ms" and "endpoint.failures".
+     */
+    public synchronized Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, EndpointStats> endpoint : endpoints.entrySet()) {
+            String prefix = endpoint.getKey() + ".";
+            for (Map.Entry<String, PhaseStats> phase : endpoint.getValue().phases.entrySet()) {
+                PhaseStats stats = phase.getValue();
+                snapshot.put(prefix + phase.getKey() + ".count", stats.count);
+                snapshot.put(prefix + phase.getKey() + ".total_ms", stats.totalMillis);
+                snapshot.put(prefix + phase.getKey() + ".max_ms", stats.maxMillis);
+            }
+            snapshot.put(prefix + "failures", endpoint.getValue().failures);
+        }
+        return snapshot;
+    }
+    
+    public synchronized void reset() {
+        endpoints.clear();
+    }
+    
+    private EndpointStats endpointStats(String endpoint) {
+        EndpointStats stats = endpoints.get(endpoint);
+        if (stats == null) {
+            stats = new EndpointStats();
+            endpoints.put(endpoint, stats);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,78 @@
+package com.demoody.findmydevice.network;
+
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.OkHttpClient;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Holds the base URL together with the ApiService built for it, and swaps
+ * both in one step. Every service is built on the same OkHttpClient, so the
+ * connection pool and dispatcher survive a swap. Plain Java, so the swap can
+ * be tested on the JVM.
+ */
+class ServiceConfig {
+    private final OkHttpClient okHttpClient;
+    private final Converter.Factory converterFactory;
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    
+    // Immutable pairing of a base URL with the service built for it
+    static final class Snapshot {
+        final String baseUrl;
+        final Retrofit retrofit;
+        final ApiService apiService;
+        
+        Snapshot(String baseUrl, Retrofit retrofit) {
+            this.baseUrl = baseUrl;
+            this.retrofit = retrofit;
+            this.apiService = retrofit.create(ApiService.class);
+        }
+    }
+    
+    ServiceConfig(OkHttpClient okHttpClient, Converter.Factory converterFactory, String baseUrl) {
+        this.okHttpClient = okHttpClient;
+        this.converterFactory = converterFactory;
+        current.set(build(normalizeBaseUrl(baseUrl)));
+    }
+    
+    // Lock-free
+    Snapshot get() {
+        return current.get();
+    }
+    
+    /**
+     * Points new calls at baseUrl. Calls already in flight finish on the old service.
+     */
+    void update(String baseUrl) {
+        String normalized = normalizeBaseUrl(baseUrl);
+        Snapshot updated = null;
+        while (true) {
+            Snapshot snapshot = current.get();
+            if (snapshot.baseUrl.equals(normalized)) {
+                return;
+            }
+            if (updated == null) {
+                updated = build(normalized);
+            }
+            if (current.compareAndSet(snapshot, updated)) {
+                return;
+            }
+        }
+    }
+    
+    private Snapshot build(String baseUrl) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(okHttpClient)
+                .addConverterFactory(converterFactory)
+                .build();
+        return new Snapshot(baseUrl, retrofit);
+    }
+    
+    static String normalizeBaseUrl(String baseUrl) {
+        if (!baseUrl.endsWith("/")) {
+            baseUrl += "/";
+        }
+        return baseUrl;
+    }
+}
\ No newline at end of file
@@ -4,9 +4,13 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
+import com.demoody.findmydevice.metrics.StartupTrace;
+import com.demoody.findmydevice.services.BurstMode;
 import com.demoody.findmydevice.services.LocationTrackingService;
 import com.demoody.findmydevice.utils.DeviceUtils;
 import com.demoody.findmydevice.utils.PreferenceManager;
+import com.demoody.findmydevice.work.SimChangeWorker;
+import com.demoody.findmydevice.work.WorkScheduler;
 
 public class BootReceiver extends BroadcastReceiver {
     private static final String TAG = "BootReceiver";
@@ -19,14 +23,16 @@ public class BootReceiver extends BroadcastReceiver {
         if (Intent.ACTION_BOOT_COMPLETED.equals(action) || 
             Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
             
-            PreferenceManager preferenceManager = new PreferenceManager(context);
+            PreferenceManager preferenceManager = PreferenceManager.getInstance(context);
             
             // Check for SIM change on boot
             checkSimChange(context, preferenceManager);
             
             // Restart location tracking if it was enabled
             if (preferenceManager.isTrackingEnabled()) {
-                Intent serviceIntent = new Intent(context, LocationTrackingService.class);
+                Intent serviceIntent = new Intent(context, LocationTrackingService.class)
+                        .putExtra(LocationTrackingService.EXTRA_TRIGGER, LocationTrackingService.TRIGGER_BOOT)
+                        .putExtra(LocationTrackingService.EXTRA_REQUESTED_AT, StartupTrace.getInstance().now());
                 context.startForegroundService(serviceIntent);
                 Log.d(TAG, "Restarted location tracking service");
             }
@@ -42,9 +48,9 @@ public class BootReceiver extends BroadcastReceiver {
             
             Log.w(TAG, "SIM change detected on boot");
             
-            // TODO: Report SIM change to server
-            // This would typically trigger an immediate location report
-            // and notification to the user's account
+            WorkScheduler.scheduleSimChangeReport(context, SimChangeWorker.createInput(lastSimSerial,
+                    currentSimSerial, DeviceUtils.getSimOperator(context), DeviceUtils.getPhoneNumber(context)));
+            BurstMode.start(context, BurstMode.REASON_SIM_CHANGE);
             
             preferenceManager.setLastSimSerial(currentSimSerial);
         } else if (currentSimSerial != null && lastSimSerial == null) {
@@ -5,9 +5,12 @@ import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
 import android.widget.Toast;
+import com.demoody.findmydevice.services.BurstMode;
 
 public class DeviceAdminReceiver extends android.app.admin.DeviceAdminReceiver {
     private static final String TAG = "DeviceAdminReceiver";
+    // An owner fumbling their PIN once shouldn't start a burst
+    private static final int FAILED_ATTEMPTS_BEFORE_BURST = 3;
     
     @Override
     public void onEnabled(Context context, Intent intent) {
@@ -32,7 +35,12 @@ public class DeviceAdminReceiver extends android.app.admin.DeviceAdminReceiver {
     @Override
     public void onPasswordFailed(Context context, Intent intent) {
         super.onPasswordFailed(context, intent);
-        Log.d(TAG, "Password failed");
+        int failedAttempts = getManager(context).getCurrentFailedPasswordAttempts();
+        Log.d(TAG, "Password failed, " + failedAttempts + " attempts");
+        
+        if (failedAttempts >= FAILED_ATTEMPTS_BEFORE_BURST) {
+            BurstMode.start(context, BurstMode.REASON_PASSWORD_FAILED);
+        }
     }
     
     @Override
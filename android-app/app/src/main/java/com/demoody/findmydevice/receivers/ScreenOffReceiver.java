@@ -15,7 +15,7 @@ public class ScreenOffReceiver extends BroadcastReceiver {
         String action = intent.getAction();
         Log.d(TAG, "Received action: " + action);
         
-        PreferenceManager preferenceManager = new PreferenceManager(context);
+        PreferenceManager preferenceManager = PreferenceManager.getInstance(context);
         
         // Only show fake shutdown if tracking is enabled
         if (!preferenceManager.isTrackingEnabled()) {
@@ -3,91 +3,106 @@ package com.demoody.findmydevice.receivers;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Bundle;
+import android.provider.Telephony;
 import android.telephony.SmsMessage;
 import android.util.Log;
+import com.demoody.findmydevice.commands.SmsCommandParser;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
 import com.demoody.findmydevice.services.CommandExecutorService;
 import com.demoody.findmydevice.utils.PreferenceManager;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SmsReceiver extends BroadcastReceiver {
     private static final String TAG = "SmsReceiver";
-    private static final String SMS_RECEIVED_ACTION = "android.provider.Telephony.SMS_RECEIVED";
+    
+    // Shared across broadcasts; parsing is cheap, so one thread keeps messages in arrival order
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
     
     @Override
     public void onReceive(Context context, Intent intent) {
-        if (!SMS_RECEIVED_ACTION.equals(intent.getAction())) {
+        if (!Telephony.Sms.Intents.SMS_RECEIVED_ACTION.equals(intent.getAction())) {
             return;
         }
         
-        Bundle bundle = intent.getExtras();
-        if (bundle == null) {
-            return;
-        }
+        long receivedAt = System.currentTimeMillis();
+        MetricsRegistry.getInstance().counter("wakeups.sms").increment();
         
-        try {
-            Object[] pdus = (Object[]) bundle.get("pdus");
-            if (pdus == null) {
-                return;
-            }
-            
-            for (Object pdu : pdus) {
-                SmsMessage smsMessage = SmsMessage.createFromPdu((byte[]) pdu);
-                String messageBody = smsMessage.getMessageBody();
-                String sender = smsMessage.getOriginatingAddress();
-                
-                Log.d(TAG, "Received SMS from: " + sender + ", Message: " + messageBody);
-                
-                if (isValidCommand(context, messageBody)) {
-                    processCommand(context, messageBody, sender);
+        // Must be read before goAsync(), which detaches the result from this receiver
+        boolean ordered = isOrderedBroadcast();
+        Context appContext = context.getApplicationContext();
+        PendingResult pendingResult = goAsync();
+        
+        executor.execute(() -> {
+            try {
+                if (handleMessages(appContext, intent, receivedAt) && ordered) {
                     // Abort broadcast to prevent other apps from processing this SMS
-                    abortBroadcast();
+                    pendingResult.abortBroadcast();
                 }
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing SMS", e);
+            } finally {
+                pendingResult.finish();
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing SMS", e);
-        }
+        });
     }
     
-    private boolean isValidCommand(Context context, String messageBody) {
-        if (messageBody == null || messageBody.trim().isEmpty()) {
+    /**
+     * @return true if any message in the broadcast was a command for this device
+     */
+    private boolean handleMessages(Context context, Intent intent, long receivedAt) {
+        SmsMessage[] messages = Telephony.Sms.Intents.getMessagesFromIntent(intent);
+        if (messages == null || messages.length == 0) {
             return false;
         }
         
-        String[] parts = messageBody.trim().split("\\s+");
-        if (parts.length < 3) {
-            return false;
-        }
-        
-        // Format: FINDMY <device-id> <secret-token> [command]
-        if (!"FINDMY".equalsIgnoreCase(parts[0])) {
-            return false;
+        String[] senders = new String[messages.length];
+        String[] parts = new String[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            if (messages[i] != null) {
+                senders[i] = messages[i].getOriginatingAddress();
+                parts[i] = messages[i].getMessageBody();
+            }
         }
+        Map<String, StringBuilder> bodies = SmsCommandParser.joinParts(senders, parts);
         
-        PreferenceManager preferenceManager = new PreferenceManager(context);
+        PreferenceManager preferenceManager = PreferenceManager.getInstance(context);
         String deviceId = preferenceManager.getDeviceId();
         String smsSecret = preferenceManager.getSmsSecret();
         
-        if (deviceId == null || smsSecret == null) {
-            return false;
+        boolean handled = false;
+        for (Map.Entry<String, StringBuilder> entry : bodies.entrySet()) {
+            SmsCommandParser.SmsCommand command = SmsCommandParser.parse(entry.getValue(), deviceId, smsSecret);
+            if (command != null) {
+                processCommand(context, command, entry.getKey(), receivedAt);
+                handled = true;
+            }
         }
-        
-        return deviceId.equals(parts[1]) && smsSecret.equals(parts[2]);
+        return handled;
     }
     
-    private void processCommand(Context context, String messageBody, String sender) {
-        String[] parts = messageBody.trim().split("\\s+");
-        
-        String command = "LOCATE"; // Default command
-        if (parts.length > 3) {
-            command = parts[3].toUpperCase();
-        }
-        
-        Log.d(TAG, "Processing SMS command: " + command + " from " + sender);
+    private void processCommand(Context context, SmsCommandParser.SmsCommand command, String sender,
+                                long receivedAt) {
+        Log.d(TAG, "Processing SMS command: " + command.getType() + " from " + sender);
         
         Intent serviceIntent = new Intent(context, CommandExecutorService.class);
-        serviceIntent.putExtra("command_type", command);
+        serviceIntent.putExtra("command_type", command.getType());
         serviceIntent.putExtra("sender", sender);
         serviceIntent.putExtra("source", "SMS");
+        serviceIntent.putExtra(CommandExecutorService.EXTRA_RECEIVED_AT, receivedAt);
+        
+        if (command.getArgument() != null) {
+            switch (command.getType()) {
+                case "ALARM":
+                case "RING":
+                    serviceIntent.putExtra("duration", command.getArgument());
+                    break;
+                case "SHOW_MESSAGE":
+                    serviceIntent.putExtra("message", command.getArgument());
+                    break;
+            }
+        }
         
         context.startService(serviceIntent);
     }
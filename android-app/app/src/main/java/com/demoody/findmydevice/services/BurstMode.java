@@ -0,0 +1,52 @@
+package com.demoody.findmydevice.services;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import com.demoody.findmydevice.tracking.BurstSamplingPolicy;
+import com.demoody.findmydevice.utils.PreferenceManager;
+
+/**
+ * Entry point for theft signals. Starts a tracking burst in
+ * {@link LocationTrackingService}; see {@link BurstSamplingPolicy} for how
+ * fast it samples and for how long.
+ */
+public class BurstMode {
+    private static final String TAG = "BurstMode";
+    
+    public static final String REASON_SIM_CHANGE = "sim_change";
+    public static final String REASON_PASSWORD_FAILED = "password_failed";
+    public static final String REASON_FAKE_SHUTDOWN = "fake_shutdown";
+    
+    private BurstMode() {}
+    
+    /**
+     * Starts a burst unless one is already running; repeated signals from the
+     * same theft don't refill the budget.
+     *
+     * @return true if a new burst was started
+     */
+    public static boolean start(Context context, String reason) {
+        PreferenceManager preferenceManager = PreferenceManager.getInstance(context);
+        long now = System.currentTimeMillis();
+        long elapsed = now - preferenceManager.getBurstStartedAt();
+        if (elapsed >= 0 && elapsed < BurstSamplingPolicy.MAX_DURATION) {
+            Log.d(TAG, "Burst already running for " + preferenceManager.getBurstReason() + ", ignoring " + reason);
+            return false;
+        }
+        
+        Log.w(TAG, "Starting theft burst: " + reason);
+        preferenceManager.setBurst(now, reason);
+        
+        // Runs regardless of the tracking setting; the service stops again when the burst ends
+        Intent intent = new Intent(context, LocationTrackingService.class)
+                .setAction(LocationTrackingService.ACTION_START_BURST);
+        try {
+            context.startForegroundService(intent);
+        } catch (IllegalStateException e) {
+            // Background start limits; the burst is picked up when the service next starts
+            Log.w(TAG, "Could not start tracking for burst", e);
+        }
+        return true;
+    }
+}
\ No newline at end of file
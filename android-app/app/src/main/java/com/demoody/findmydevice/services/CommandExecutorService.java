@@ -7,44 +7,98 @@ import android.content.Intent;
 import android.location.Location;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.Toast;
 import com.demoody.findmydevice.R;
-import com.demoody.findmydevice.models.RemoteCommand;
+import com.demoody.findmydevice.commands.CommandAckJournal;
+import com.demoody.findmydevice.commands.CommandDeduplicator;
+import com.demoody.findmydevice.commands.CommandEngine;
+import com.demoody.findmydevice.database.CommandAck;
+import com.demoody.findmydevice.metrics.Histogram;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.network.LocationUploader;
 import com.demoody.findmydevice.receivers.DeviceAdminReceiver;
+import com.demoody.findmydevice.tracking.Clock;
 import com.demoody.findmydevice.utils.LocationUtils;
 import com.demoody.findmydevice.utils.PreferenceManager;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class CommandExecutorService extends Service {
+    // Wall-clock time the channel received the command, for receive-to-execute latency
+    public static final String EXTRA_RECEIVED_AT = "received_at";
+    
     private static final String TAG = "CommandExecutorService";
+    private static final int WORKER_COUNT = 3;
+    // A LOCATE answers at once with the best known fix, then refines to a recent, accurate one
+    private static final long LOCATE_MAX_FIX_AGE = 30 * 1000;
+    private static final float LOCATE_TARGET_ACCURACY = 25;
+    private static final long LOCATE_REFINE_TIMEOUT = 40000;
+    
+    private static final long DEFAULT_ALARM_DURATION = 120000; // 2 minutes
+    private static final long COMMAND_TIMEOUT = 20000;
+    private static final long LOCATE_TIMEOUT = 45000; // Refinement gives up after 40 seconds
+    private static final long ALARM_TIMEOUT_MARGIN = 30000;
     
     private PreferenceManager preferenceManager;
     private DevicePolicyManager devicePolicyManager;
     private ComponentName deviceAdminComponent;
     private MediaPlayer alarmPlayer;
+    private CommandEngine commandEngine;
+    private CommandAckJournal ackJournal;
+    // Outlives the service, which stops between bursts of commands
+    private final CommandDeduplicator deduplicator = CommandDeduplicator.getInstance();
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<LocationUtils.Cancellable> locateRequests = new CopyOnWriteArrayList<>();
+    // Every LOCATE merged into the running one, and the last progress it acknowledged
+    private final Set<Integer> locateCommandIds = new CopyOnWriteArraySet<>();
+    private volatile String locateProgress;
+    private int lastStartId;
     
     @Override
     public void onCreate() {
         super.onCreate();
         
-        preferenceManager = new PreferenceManager(this);
+        preferenceManager = PreferenceManager.getInstance(this);
         devicePolicyManager = (DevicePolicyManager) getSystemService(DEVICE_POLICY_SERVICE);
         deviceAdminComponent = new ComponentName(this, DeviceAdminReceiver.class);
+        ackJournal = CommandAckJournal.getInstance(this);
+        commandEngine = new CommandEngine(WORKER_COUNT, Clock.SYSTEM, () -> mainHandler.post(this::stopIfIdle));
+        metrics.registerSource("commands", commandEngine.getMetrics()::snapshot);
+        metrics.registerSource("dedupe", deduplicator::snapshot);
     }
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        lastStartId = startId;
+        
         if (intent != null) {
             String commandType = intent.getStringExtra("command_type");
             String source = intent.getStringExtra("source");
             
             Log.d(TAG, "Executing command: " + commandType + " from " + source);
             
-            executeCommand(commandType, intent);
+            if (commandType != null) {
+                metrics.counter("command.received." + channelOf(intent)).increment();
+                int commandId = getCommandId(intent);
+                if (deduplicator.accept(source, commandId, describeCommand(commandType, intent))) {
+                    submitCommand(commandId, commandType, intent);
+                } else {
+                    Log.d(TAG, "Dropping duplicate " + commandType + " from " + source);
+                }
+            }
         }
         
-        stopSelf(startId);
+        // Stay alive until the engine reports it has no outstanding commands
+        stopIfIdle();
         return START_NOT_STICKY;
     }
     
@@ -53,46 +107,165 @@ public class CommandExecutorService extends Service {
         return null;
     }
     
-    private void executeCommand(String commandType, Intent intent) {
-        try {
-            switch (commandType.toUpperCase()) {
-                case "LOCK":
-                    executeLockCommand();
-                    break;
-                case "ALARM":
-                case "RING":
-                    executeAlarmCommand();
-                    break;
-                case "LOCATE":
-                case "GET_LOCATION":
-                    executeLocationCommand();
-                    break;
-                case "SHOW_MESSAGE":
-                    String message = intent.getStringExtra("message");
-                    executeShowMessageCommand(message);
-                    break;
-                case "WIPE":
-                    executeWipeCommand();
-                    break;
-                default:
-                    Log.w(TAG, "Unknown command: " + commandType);
+    private void stopIfIdle() {
+        if (commandEngine.isIdle()) {
+            Log.d(TAG, "No outstanding commands, metrics: " + commandEngine.getMetrics().snapshot()
+                    + ", duplicates: " + deduplicator.snapshot());
+            // Only stops if no newer start request has arrived since
+            stopSelf(lastStartId);
+        }
+    }
+    
+    // Polled commands carry an int id, push payloads carry it as a string
+    private static int getCommandId(Intent intent) {
+        Object commandId = intent.getExtras() != null ? intent.getExtras().get("command_id") : null;
+        if (commandId instanceof Number) {
+            return ((Number) commandId).intValue();
+        }
+        if (commandId instanceof String) {
+            try {
+                return Integer.parseInt(((String) commandId).trim());
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Invalid command id: " + commandId);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error executing command: " + commandType, e);
         }
+        return 0;
+    }
+    
+    private static String channelOf(Intent intent) {
+        String source = intent.getStringExtra("source");
+        return source != null ? source.toLowerCase() : "unknown";
+    }
+    
+    /**
+     * Wraps a task so its start is recorded against the time its channel
+     * received the command.
+     */
+    private CommandEngine.CommandTask timed(Intent intent, CommandEngine.CommandTask task) {
+        long receivedAt = intent.getLongExtra(EXTRA_RECEIVED_AT, System.currentTimeMillis());
+        Histogram latency = metrics.histogram("command.receive_to_execute_ms." + channelOf(intent));
+        return completion -> {
+            latency.record(System.currentTimeMillis() - receivedAt);
+            task.execute(completion);
+        };
+    }
+    
+    // Identifies a command that has no server id, such as one sent by SMS
+    private static String describeCommand(String commandType, Intent intent) {
+        return commandType.toUpperCase() + "\n" + intent.getStringExtra("sender")
+                + "\n" + intent.getStringExtra("message") + "\n" + intent.getStringExtra("duration");
+    }
+    
+    private void submitCommand(int commandId, String commandType, Intent intent) {
+        CommandEngine.ResultListener listener = (type, success, message) ->
+                onCommandFinished(commandId, type, success, message);
+        boolean accepted;
+        
+        switch (commandType.toUpperCase()) {
+            case "LOCK":
+                accepted = commandEngine.submit("LOCK", CommandEngine.Policy.PRIORITY, COMMAND_TIMEOUT,
+                        timed(intent, completion -> completion.complete(executeLockCommand(), "Lock requested")),
+                        listener);
+                break;
+            case "ALARM":
+            case "RING":
+                long duration = parseAlarmDuration(intent.getStringExtra("duration"));
+                accepted = commandEngine.submit("ALARM", CommandEngine.Policy.EXCLUSIVE, duration + ALARM_TIMEOUT_MARGIN,
+                        timed(intent, completion -> mainHandler.post(() -> executeAlarmCommand(duration, completion))),
+                        listener);
+                break;
+            case "LOCATE":
+            case "GET_LOCATION":
+                // Added before submitting, so a LOCATE merged into a running one gets that run's progress acks
+                if (hasServerId(commandId)) {
+                    locateCommandIds.add(commandId);
+                }
+                accepted = commandEngine.submit("LOCATE", CommandEngine.Policy.COALESCE, LOCATE_TIMEOUT,
+                        timed(intent, this::executeLocationCommand), (type, success, message) -> {
+                            if (hasServerId(commandId)) {
+                                locateCommandIds.remove(commandId);
+                            }
+                            locateProgress = null;
+                            listener.onResult(type, success, message);
+                        });
+                break;
+            case "SHOW_MESSAGE":
+                String message = intent.getStringExtra("message");
+                accepted = commandEngine.submit("SHOW_MESSAGE", CommandEngine.Policy.NORMAL, COMMAND_TIMEOUT,
+                        timed(intent, completion -> {
+                            executeShowMessageCommand(message);
+                            completion.complete(true, "Message shown");
+                        }), listener);
+                break;
+            case "WIPE":
+                accepted = commandEngine.submit("WIPE", CommandEngine.Policy.NORMAL, COMMAND_TIMEOUT,
+                        timed(intent, completion -> completion.complete(executeWipeCommand(), "Wipe requested")),
+                        listener);
+                break;
+            default:
+                Log.w(TAG, "Unknown command: " + commandType);
+                if (hasServerId(commandId)) {
+                    ackJournal.record(commandId, CommandAck.STATUS_FAILED, "Unknown command: " + commandType);
+                }
+                return;
+        }
+        
+        // A rejected command has already been reported as failed through the listener
+        if (accepted && hasServerId(commandId)) {
+            // A LOCATE that joined a running one starts from the fix already reported
+            String progress = locateCommandIds.contains(commandId) ? locateProgress : null;
+            ackJournal.record(commandId, CommandAck.STATUS_ACKNOWLEDGED, progress != null ? progress : "Received");
+        }
+    }
+    
+    private void onCommandFinished(int commandId, String type, boolean success, String message) {
+        if (success) {
+            Log.d(TAG, "Command " + type + " finished: " + message);
+        } else {
+            Log.w(TAG, "Command " + type + " failed: " + message);
+        }
+        if (hasServerId(commandId)) {
+            ackJournal.record(commandId, success ? CommandAck.STATUS_EXECUTED : CommandAck.STATUS_FAILED, message);
+        }
+    }
+    
+    // SMS commands carry id 0; they have nothing to acknowledge and must not share journal or LOCATE entries
+    private static boolean hasServerId(int commandId) {
+        return commandId > 0;
+    }
+    
+    private void showToast(String message, int duration) {
+        mainHandler.post(() -> Toast.makeText(this, message, duration).show());
     }
     
-    private void executeLockCommand() {
+    private boolean executeLockCommand() {
         if (devicePolicyManager.isAdminActive(deviceAdminComponent)) {
             devicePolicyManager.lockNow();
             Log.d(TAG, "Device locked");
-            Toast.makeText(this, "Device locked remotely", Toast.LENGTH_SHORT).show();
+            showToast("Device locked remotely", Toast.LENGTH_SHORT);
+            return true;
         } else {
             Log.w(TAG, "Device admin not active, cannot lock device");
+            return false;
         }
     }
     
-    private void executeAlarmCommand() {
+    private static long parseAlarmDuration(String durationSeconds) {
+        if (durationSeconds != null) {
+            try {
+                long seconds = Long.parseLong(durationSeconds.trim());
+                if (seconds > 0) {
+                    return Math.min(seconds * 1000, 10 * DEFAULT_ALARM_DURATION);
+                }
+            } catch (NumberFormatException e) {
+                // Fall through to the default
+            }
+        }
+        return DEFAULT_ALARM_DURATION;
+    }
+    
+    // Runs on the main thread; completes once the alarm has finished playing
+    private void executeAlarmCommand(long duration, CommandEngine.Completion completion) {
         try {
             // Stop any existing alarm
             stopAlarm();
@@ -115,12 +288,25 @@ public class CommandExecutorService extends Service {
                 alarmPlayer.start();
                 Log.d(TAG, "Alarm started");
                 
-                // Stop alarm after 2 minutes
-                android.os.Handler handler = new android.os.Handler();
-                handler.postDelayed(this::stopAlarm, 120000);
+                MediaPlayer player = alarmPlayer;
+                Runnable played = () -> {
+                    stopAlarm();
+                    completion.complete(true, "Alarm played");
+                };
+                mainHandler.postDelayed(played, duration);
+                // Timed out by the engine: stop this alarm rather than let it outlive its command
+                completion.onCancelled(() -> mainHandler.post(() -> {
+                    mainHandler.removeCallbacks(played);
+                    if (alarmPlayer == player) {
+                        stopAlarm();
+                    }
+                }));
+            } else {
+                completion.complete(false, "No alarm sound available");
             }
         } catch (Exception e) {
             Log.e(TAG, "Error starting alarm", e);
+            completion.complete(false, "Error starting alarm: " + e.getMessage());
         }
     }
     
@@ -139,22 +325,117 @@ public class CommandExecutorService extends Service {
         }
     }
     
-    private void executeLocationCommand() {
-        LocationUtils.getCurrentLocation(this, new LocationUtils.LocationCallback() {
+    /**
+     * Reports the best fix already known within milliseconds, both as a
+     * location upload and in the acknowledgement of every LOCATE merged into
+     * this one, then uploads each better fix until one is recent and accurate
+     * enough to finish the command.
+     */
+    private void executeLocationCommand(CommandEngine.Completion completion) {
+        // Set once the command has an outcome; nothing is acknowledged as in progress after that
+        AtomicBoolean ended = new AtomicBoolean(false);
+        LocationUtils.Cancellable[] request = new LocationUtils.Cancellable[1];
+        request[0] = LocationUtils.getProgressiveLocation(this, LOCATE_MAX_FIX_AGE, LOCATE_TARGET_ACCURACY,
+                LOCATE_REFINE_TIMEOUT, new LocationUtils.ProgressiveLocationCallback() {
             @Override
-            public void onLocationReceived(Location location) {
+            public void onInitialFix(Location location, long ageMillis) {
+                if (location == null) {
+                    Log.d(TAG, "No known location yet, waiting for a fresh fix");
+                    return;
+                }
+                Log.d(TAG, "Known location: " + describeFix(location) + ", " + ageMillis / 1000 + "s old");
+                reportLocateProgress(ended, location, describeFix(location) + ", " + ageMillis / 1000
+                        + "s old, refining");
+            }
+            
+            @Override
+            public void onImprovedFix(Location location) {
+                Log.d(TAG, "Improved location: " + describeFix(location));
+                reportLocateProgress(ended, location, describeFix(location) + ", refining");
+            }
+            
+            @Override
+            public void onFinalFix(Location location) {
+                if (!ended.compareAndSet(false, true)) {
+                    return;
+                }
+                locateRequests.remove(request[0]);
                 Log.d(TAG, "Current location: " + location.getLatitude() + ", " + location.getLongitude());
-                // TODO: Send location to server or SMS sender
-                Toast.makeText(CommandExecutorService.this, 
-                    "Location: " + location.getLatitude() + ", " + location.getLongitude(), 
+                uploadFix(location);
+                Toast.makeText(CommandExecutorService.this,
+                    "Location: " + location.getLatitude() + ", " + location.getLongitude(),
                     Toast.LENGTH_LONG).show();
+                completion.complete(true, location.getLatitude() + "," + location.getLongitude());
+            }
+            
+            @Override
+            public void onTimeout(Location best) {
+                if (!ended.compareAndSet(false, true)) {
+                    return;
+                }
+                locateRequests.remove(request[0]);
+                if (best == null) {
+                    Log.e(TAG, "Location error: no fix before timeout");
+                    completion.complete(false, "Location request timeout");
+                } else {
+                    // Already uploaded when it arrived; still the best answer there is
+                    completion.complete(true, best.getLatitude() + "," + best.getLongitude()
+                            + " (" + describeAccuracy(best) + ", target accuracy not reached)");
+                }
             }
             
             @Override
             public void onLocationError(String error) {
+                if (!ended.compareAndSet(false, true)) {
+                    return;
+                }
+                locateRequests.remove(request[0]);
                 Log.e(TAG, "Location error: " + error);
+                completion.complete(false, error);
             }
         });
+        
+        locateRequests.add(request[0]);
+        // The engine's LOCATE timeout must release the GPS session too
+        completion.onCancelled(() -> {
+            ended.set(true);
+            locateRequests.remove(request[0]);
+            request[0].cancel();
+        });
+        if (ended.get()) {
+            // Ended before the handle was assigned, e.g. without location permission
+            locateRequests.remove(request[0]);
+        }
+    }
+    
+    // Uploads an interim fix and acknowledges it on every LOCATE still waiting for this run
+    private void reportLocateProgress(AtomicBoolean ended, Location location, String message) {
+        if (ended.get()) {
+            return;
+        }
+        uploadFix(location);
+        locateProgress = message;
+        for (int commandId : locateCommandIds) {
+            ackJournal.record(commandId, CommandAck.STATUS_ACKNOWLEDGED, message);
+        }
+    }
+    
+    private void uploadFix(Location location) {
+        LocationUploader.getInstance(this).enqueue(new LocationData(
+                location.getLatitude(),
+                location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : -1,
+                location.getTime(),
+                location.getProvider()
+        ), true);
+    }
+    
+    private static String describeFix(Location location) {
+        return location.getLatitude() + "," + location.getLongitude() + " " + describeAccuracy(location);
+    }
+    
+    private static String describeAccuracy(Location location) {
+        return location.hasAccuracy() ? "±" + Math.round(location.getAccuracy()) + "m" : "accuracy unknown";
     }
     
     private void executeShowMessageCommand(String message) {
@@ -163,11 +444,11 @@ public class CommandExecutorService extends Service {
         }
         
         // Show message as toast (in a real implementation, you might want a full-screen dialog)
-        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        showToast(message, Toast.LENGTH_LONG);
         Log.d(TAG, "Showed message: " + message);
     }
     
-    private void executeWipeCommand() {
+    private boolean executeWipeCommand() {
         if (devicePolicyManager.isAdminActive(deviceAdminComponent)) {
             // This is a destructive operation - be very careful
             Log.w(TAG, "WIPE command received - this will erase all data!");
@@ -176,15 +457,21 @@ public class CommandExecutorService extends Service {
             // devicePolicyManager.wipeData(0);
             
             // For safety, just show a warning for now
-            Toast.makeText(this, "WIPE command received but not executed (safety)", Toast.LENGTH_LONG).show();
+            showToast("WIPE command received but not executed (safety)", Toast.LENGTH_LONG);
+            return false;
         } else {
             Log.w(TAG, "Device admin not active, cannot wipe device");
+            return false;
         }
     }
     
     @Override
     public void onDestroy() {
         super.onDestroy();
+        commandEngine.shutdown();
+        for (LocationUtils.Cancellable request : locateRequests) {
+            request.cancel();
+        }
         stopAlarm();
     }
 }
\ No newline at end of file
@@ -1,10 +1,13 @@
 package com.demoody.findmydevice.services;
 
+import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
 import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
 import com.demoody.findmydevice.utils.PreferenceManager;
+import com.demoody.findmydevice.work.WorkScheduler;
 import java.util.Map;
 
 public class FirebaseMessagingService extends com.google.firebase.messaging.FirebaseMessagingService {
@@ -13,13 +16,15 @@ public class FirebaseMessagingService extends com.google.firebase.messaging.Fire
     @Override
     public void onMessageReceived(RemoteMessage remoteMessage) {
         super.onMessageReceived(remoteMessage);
+        long receivedAt = System.currentTimeMillis();
+        MetricsRegistry.getInstance().counter("wakeups.push").increment();
         
         Log.d(TAG, "From: " + remoteMessage.getFrom());
         
         // Check if message contains data payload
         if (remoteMessage.getData().size() > 0) {
             Log.d(TAG, "Message data payload: " + remoteMessage.getData());
-            handleDataMessage(remoteMessage.getData());
+            handleDataMessage(remoteMessage.getData(), receivedAt);
         }
         
         // Check if message contains notification payload
@@ -34,20 +39,27 @@ public class FirebaseMessagingService extends com.google.firebase.messaging.Fire
         Log.d(TAG, "Refreshed token: " + token);
         
         // Send token to server
-        sendTokenToServer(token);
+        sendTokenToServer(this, token);
     }
     
-    private void handleDataMessage(Map<String, String> data) {
+    private void handleDataMessage(Map<String, String> data, long receivedAt) {
         String commandType = data.get("command_type");
         String deviceId = data.get("device_id");
         
         // Verify this message is for our device
-        PreferenceManager preferenceManager = new PreferenceManager(this);
-        if (!preferenceManager.getDeviceId().equals(deviceId)) {
+        PreferenceManager preferenceManager = PreferenceManager.getInstance(this);
+        if (deviceId == null || !deviceId.equals(preferenceManager.getDeviceId())) {
             Log.w(TAG, "Received command for different device ID");
             return;
         }
         
+        // The server only announces a command whose payload doesn't fit in a data message
+        if (commandType == null && "poll".equals(data.get("action"))) {
+            WorkScheduler.scheduleCommandPoll(this);
+            return;
+        }
+        
+        // The message carries the command and its payload fields, so it runs without a poll
         if (commandType != null) {
             Intent serviceIntent = new Intent(this, CommandExecutorService.class);
             serviceIntent.putExtra("command_type", commandType);
@@ -57,16 +69,24 @@ public class FirebaseMessagingService extends com.google.firebase.messaging.Fire
             for (Map.Entry<String, String> entry : data.entrySet()) {
                 serviceIntent.putExtra(entry.getKey(), entry.getValue());
             }
+            serviceIntent.putExtra(CommandExecutorService.EXTRA_RECEIVED_AT, receivedAt);
             
             startService(serviceIntent);
         }
     }
     
-    private void sendTokenToServer(String token) {
-        // TODO: Implement API call to update FCM token on server
-        PreferenceManager preferenceManager = new PreferenceManager(this);
-        // Store token locally for now
-        // In a real implementation, you would send this to your server
-        Log.d(TAG, "FCM token updated: " + token);
+    /**
+     * Records the current FCM token and, if the server doesn't have it yet,
+     * schedules an update. Called on rotation and with the token fetched at startup.
+     */
+    public static void sendTokenToServer(Context context, String token) {
+        PreferenceManager preferenceManager = PreferenceManager.getInstance(context);
+        if (token == null || token.equals(preferenceManager.getFcmToken())
+                && token.equals(preferenceManager.getSyncedFcmToken())) {
+            return;
+        }
+        preferenceManager.setFcmToken(token);
+        WorkScheduler.scheduleFcmTokenSync(context);
+        Log.d(TAG, "FCM token updated, server sync scheduled");
     }
 }
\ No newline at end of file
@@ -13,36 +13,76 @@ import android.util.Log;
 import androidx.core.app.NotificationCompat;
 import com.demoody.findmydevice.MainActivity;
 import com.demoody.findmydevice.R;
-import com.demoody.findmydevice.models.ApiResponse;
+import com.demoody.findmydevice.commands.CommandAckJournal;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.metrics.StartupTrace;
+import com.demoody.findmydevice.models.GeofenceEvent;
 import com.demoody.findmydevice.models.LocationData;
-import com.demoody.findmydevice.network.ApiClient;
+import com.demoody.findmydevice.network.CommandChannel;
+import com.demoody.findmydevice.network.GeofenceSync;
+import com.demoody.findmydevice.network.LocationUploader;
+import com.demoody.findmydevice.network.NetworkTimings;
+import com.demoody.findmydevice.tracking.AdaptiveSamplingPolicy;
+import com.demoody.findmydevice.tracking.BurstSamplingPolicy;
+import com.demoody.findmydevice.tracking.Clock;
+import com.demoody.findmydevice.tracking.FixPipeline;
+import com.demoody.findmydevice.tracking.GeofenceEngine;
+import com.demoody.findmydevice.tracking.SamplingEngine;
+import com.demoody.findmydevice.utils.DeviceUtils;
+import com.demoody.findmydevice.utils.Lazy;
 import com.demoody.findmydevice.utils.LocationUtils;
 import com.demoody.findmydevice.utils.PreferenceManager;
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
+import com.demoody.findmydevice.work.WorkScheduler;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 public class LocationTrackingService extends Service {
+    public static final String ACTION_START_BURST = "com.demoody.findmydevice.action.START_BURST";
+    // Who started the service and when, on the StartupTrace clock; used to time the first fix
+    public static final String EXTRA_TRIGGER = "trigger";
+    public static final String EXTRA_REQUESTED_AT = "requested_at";
+    public static final String TRIGGER_BOOT = "boot";
+    private static final String TRIGGER_START = "start";
+    private static final String TRIGGER_RESTART = "restart";
+    
     private static final String TAG = "LocationTrackingService";
     private static final String CHANNEL_ID = "location_tracking_channel";
     private static final int NOTIFICATION_ID = 1001;
-    private static final long LOCATION_UPDATE_INTERVAL = 5 * 60 * 1000; // 5 minutes
+    private static final long MAX_FIX_AGE = 2 * 60 * 1000; // 2 minutes
+    private static final float MAX_FIX_ACCURACY = 200; // metres
+    // A burst samples every few seconds, so a cached fix is only good for one interval
+    private static final long BURST_MAX_FIX_AGE = BurstSamplingPolicy.INITIAL_INTERVAL;
     
     private PreferenceManager preferenceManager;
-    private ApiClient apiClient;
+    // Database, fix ring and network stack are built on the scheduler, not in onCreate
+    private final Lazy<LocationUploader> locationUploader = new Lazy<>(() -> LocationUploader.getInstance(this));
     private ScheduledExecutorService scheduler;
+    private volatile ScheduledFuture<?> nextUpdate;
+    private BurstSamplingPolicy burstPolicy;
+    private SamplingEngine samplingEngine;
+    private FixPipeline fixPipeline;
+    private GeofenceEngine geofenceEngine;
+    private final Lazy<GeofenceSync> geofenceSync = new Lazy<>(() -> GeofenceSync.getInstance(this));
+    private final Lazy<CommandChannel> commandChannel = new Lazy<>(() -> new CommandChannel(this));
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
     private boolean isRunning = false;
+    private String startTrigger;
+    private long startRequestedAt;
+    private volatile boolean firstFixRecorded = false;
     
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "Service created");
         
-        preferenceManager = new PreferenceManager(this);
-        apiClient = ApiClient.getInstance(this);
+        preferenceManager = PreferenceManager.getInstance(this);
+        burstPolicy = new BurstSamplingPolicy(new AdaptiveSamplingPolicy(), Clock.SYSTEM);
+        samplingEngine = new SamplingEngine(burstPolicy, Clock.SYSTEM);
+        fixPipeline = new FixPipeline();
+        geofenceEngine = new GeofenceEngine();
         
         createNotificationChannel();
     }
@@ -53,8 +93,11 @@ public class LocationTrackingService extends Service {
         
         if (!isRunning) {
             startForeground(NOTIFICATION_ID, createNotification());
+            recordStartRequest(intent);
             startLocationTracking();
             isRunning = true;
+        } else if (intent != null && ACTION_START_BURST.equals(intent.getAction())) {
+            startBurst();
         }
         
         return START_STICKY; // Restart if killed
@@ -66,9 +109,25 @@ public class LocationTrackingService extends Service {
         Log.d(TAG, "Service destroyed");
         
         stopLocationTracking();
+        if (commandChannel.isInitialized()) {
+            commandChannel.get().stop();
+        }
         isRunning = false;
     }
     
+    private void recordStartRequest(Intent intent) {
+        StartupTrace trace = StartupTrace.getInstance();
+        if (intent == null) {
+            // START_STICKY restart after the process was killed
+            startTrigger = TRIGGER_RESTART;
+            startRequestedAt = trace.now();
+        } else {
+            String trigger = intent.getStringExtra(EXTRA_TRIGGER);
+            startTrigger = trigger != null ? trigger : TRIGGER_START;
+            startRequestedAt = intent.getLongExtra(EXTRA_REQUESTED_AT, trace.now());
+        }
+    }
+    
     @Override
     public IBinder onBind(Intent intent) {
         return null; // Not a bound service
@@ -109,21 +168,79 @@ public class LocationTrackingService extends Service {
     private void startLocationTracking() {
         scheduler = Executors.newSingleThreadScheduledExecutor();
         
-        // Initial location update
-        updateLocation();
+        metrics.registerSource("sampling", samplingEngine.getMetrics()::snapshot);
+        metrics.registerSource("fix_pipeline", fixPipeline.getStats()::snapshot);
         
-        // Schedule periodic updates
-        scheduler.scheduleAtFixedRate(
-                this::updateLocation,
-                LOCATION_UPDATE_INTERVAL,
-                LOCATION_UPDATE_INTERVAL,
-                TimeUnit.MILLISECONDS
-        );
+        // Resume a burst that outlived the previous run, or the one this start was for
+        if (preferenceManager.getBurstStartedAt() > 0) {
+            burstPolicy.start(preferenceManager.getBurstStartedAt());
+        }
+        geofenceEngine.restoreInside(preferenceManager.getInsideGeofences());
+        
+        // The first fix only needs the engines above; everything with I/O behind it waits its turn
+        scheduler.execute(this::updateLocation);
+        scheduler.execute(this::startBackgroundComponents);
         
         Log.d(TAG, "Location tracking started");
     }
     
+    private void startBackgroundComponents() {
+        // Upload anything left queued from a previous run
+        locationUploader.get().flush();
+        CommandAckJournal.getInstance(this).flush();
+        commandChannel.get().start();
+        
+        geofenceSync.get().setFencesListener(geofenceEngine::setFences);
+        geofenceSync.get().refresh();
+        // Later refreshes ride on the periodic sync the OS batches with other apps' work
+        WorkScheduler.schedulePeriodicSync(this);
+    }
+    
+    private void scheduleNextUpdate() {
+        if (scheduler == null || scheduler.isShutdown()) {
+            return;
+        }
+        
+        samplingEngine.onBatteryChanged(DeviceUtils.getBatteryLevel(this), DeviceUtils.isCharging(this));
+        long interval = samplingEngine.nextIntervalMillis();
+        Log.d(TAG, "Next location update in " + interval / 1000 + "s");
+        
+        nextUpdate = scheduler.schedule(this::updateLocation, interval, TimeUnit.MILLISECONDS);
+        
+        if (preferenceManager.getBurstStartedAt() > 0 && !burstPolicy.isActive()) {
+            endBurst();
+        }
+    }
+    
+    private void startBurst() {
+        burstPolicy.start(preferenceManager.getBurstStartedAt());
+        Log.d(TAG, "Theft burst started: " + preferenceManager.getBurstReason());
+        
+        // Take the first burst fix now rather than at the end of a long idle interval
+        ScheduledFuture<?> pending = nextUpdate;
+        if (pending != null && pending.cancel(false) && !scheduler.isShutdown()) {
+            scheduler.execute(this::updateLocation);
+        }
+    }
+    
+    private void endBurst() {
+        Log.d(TAG, "Theft burst over: " + burstPolicy.getFixesUsed() + " fixes, "
+                + burstPolicy.getUploadsUsed() + " immediate uploads");
+        preferenceManager.clearBurst();
+        // Catch up on fixes held back once the upload budget ran out
+        locationUploader.get().flush();
+        
+        if (!preferenceManager.isTrackingEnabled()) {
+            // Started only for the burst
+            stopSelf();
+        }
+    }
+    
     private void stopLocationTracking() {
+        if (geofenceSync.isInitialized()) {
+            geofenceSync.get().setFencesListener(null);
+        }
+        
         if (scheduler != null && !scheduler.isShutdown()) {
             scheduler.shutdown();
             try {
@@ -135,63 +252,83 @@ public class LocationTrackingService extends Service {
                 Thread.currentThread().interrupt();
             }
         }
+        if (locationUploader.isInitialized()) {
+            locationUploader.get().sync();
+        }
         
-        Log.d(TAG, "Location tracking stopped");
+        Log.d(TAG, "Location tracking stopped, sampling metrics: " + samplingEngine.getMetrics().snapshot()
+                + ", fix pipeline: " + fixPipeline.getStats()
+                + ", network timings: " + NetworkTimings.getInstance().snapshot());
     }
     
     private void updateLocation() {
+        metrics.counter("wakeups.location").increment();
+        
         if (!preferenceManager.isDeviceRegistered()) {
             Log.w(TAG, "Device not registered, skipping location update");
+            scheduleNextUpdate();
             return;
         }
         
-        LocationUtils.getCurrentLocation(this, new LocationUtils.LocationCallback() {
+        long maxFixAge = burstPolicy.isActive() ? BURST_MAX_FIX_AGE : MAX_FIX_AGE;
+        LocationUtils.getCurrentLocation(this, maxFixAge, MAX_FIX_ACCURACY, new LocationUtils.LocationCallback() {
             @Override
             public void onLocationReceived(Location location) {
-                uploadLocationToServer(location);
+                if (!firstFixRecorded) {
+                    firstFixRecorded = true;
+                    long elapsed = StartupTrace.getInstance().record(
+                            StartupTrace.FIRST_FIX + "." + startTrigger, startRequestedAt);
+                    Log.d(TAG, "First fix " + elapsed + "ms after " + startTrigger);
+                }
+                
+                LocationData locationData = new LocationData(
+                        location.getLatitude(),
+                        location.getLongitude(),
+                        location.hasAccuracy() ? location.getAccuracy() : -1,
+                        location.getTime(),
+                        location.getProvider()
+                );
+                
+                // Motion detection wants the raw fix; the upload gets the cleaned-up one
+                samplingEngine.onFix(locationData);
+                LocationData processed = fixPipeline.process(locationData);
+                if (processed != null) {
+                    handleProcessedFix(processed);
+                }
+                scheduleNextUpdate();
             }
             
             @Override
             public void onLocationError(String error) {
                 Log.e(TAG, "Location error: " + error);
+                scheduleNextUpdate();
             }
         });
     }
     
-    private void uploadLocationToServer(Location location) {
-        String deviceId = preferenceManager.getDeviceId();
-        String authHeader = apiClient.getAuthHeader();
-        
-        if (deviceId == null || authHeader == null) {
-            Log.w(TAG, "Missing device ID or auth token");
-            return;
+    private void handleProcessedFix(LocationData locationData) {
+        List<GeofenceEvent> events = geofenceEngine.evaluate(locationData);
+        if (!events.isEmpty()) {
+            Log.d(TAG, events.size() + " geofence transitions, inside " + geofenceEngine.getInsideFenceIds());
+            preferenceManager.setInsideGeofences(geofenceEngine.getInsideFenceIds());
+            geofenceSync.get().reportEvents(events);
         }
         
-        LocationData locationData = new LocationData(
-                location.getLatitude(),
-                location.getLongitude(),
-                location.hasAccuracy() ? location.getAccuracy() : -1,
-                System.currentTimeMillis(),
-                location.getProvider()
-        );
-        
-        Call<ApiResponse<Void>> call = apiClient.getApiService()
-                .uploadLocation(deviceId, authHeader, locationData);
-        
-        call.enqueue(new Callback<ApiResponse<Void>>() {
-            @Override
-            public void onResponse(Call<ApiResponse<Void>> call, Response<ApiResponse<Void>> response) {
-                if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
-                    Log.d(TAG, "Location uploaded successfully");
-                } else {
-                    Log.w(TAG, "Failed to upload location: " + response.code());
-                }
+        if (burstPolicy.isActive()) {
+            // Every burst fix is kept, safe zone or not; only the first few go out immediately
+            if (burstPolicy.tryConsumeUpload()) {
+                locationUploader.get().enqueue(locationData, true);
+            } else {
+                locationUploader.get().record(locationData);
             }
-            
-            @Override
-            public void onFailure(Call<ApiResponse<Void>> call, Throwable t) {
-                Log.e(TAG, "Network error uploading location", t);
-            }
-        });
+        } else if (!events.isEmpty() || !geofenceEngine.isInsideAnyFence()) {
+            uploadLocationToServer(locationData);
+        }
+        // Otherwise the device is resting in a safe zone and the enter event already told the server where
+    }
+    
+    private void uploadLocationToServer(LocationData locationData) {
+        // Queue locally first so the fix survives a failed upload
+        locationUploader.get().enqueue(locationData);
     }
 }
\ No newline at end of file
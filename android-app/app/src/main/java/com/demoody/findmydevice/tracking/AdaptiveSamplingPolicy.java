@@ -0,0 +1,56 @@
+package com.demoody.findmydevice.tracking;
+
+/**
+ * Motion-aware policy: backs off while consecutive fixes stay within their
+ * accuracy radius, samples faster as speed or displacement rises, and caps
+ * the rate on a low, unplugged battery.
+ */
+public class AdaptiveSamplingPolicy implements SamplingPolicy {
+    public static final long MIN_INTERVAL = 60 * 1000; // 1 minute
+    public static final long DEFAULT_INTERVAL = 5 * 60 * 1000; // 5 minutes
+    public static final long MAX_INTERVAL = 30 * 60 * 1000; // 30 minutes
+    
+    private static final long LOW_BATTERY_INTERVAL = 15 * 60 * 1000; // 15 minutes
+    private static final int LOW_BATTERY_LEVEL = 15;
+    private static final double STRETCH_FACTOR = 1.5;
+    private static final double WALKING_SPEED = 1.0; // m/s
+    private static final double DRIVING_SPEED = 8.0; // m/s
+    private static final double MIN_MOVEMENT_RADIUS = 25; // metres
+    
+    @Override
+    public Result nextInterval(SamplingState state) {
+        if (!state.hasPreviousFix()) {
+            return applyBattery(state, new Result(DEFAULT_INTERVAL, Decision.INITIAL));
+        }
+        
+        double radius = Math.max(state.getAccuracyRadiusMeters(), MIN_MOVEMENT_RADIUS);
+        boolean moved = state.getDisplacementMeters() > radius;
+        double speed = state.getSpeedMetersPerSecond();
+        
+        Result result;
+        if (speed >= DRIVING_SPEED) {
+            result = new Result(MIN_INTERVAL, Decision.SHRINK);
+        } else if (moved || speed >= WALKING_SPEED) {
+            long interval = Math.min(state.getCurrentIntervalMillis() / 2, DEFAULT_INTERVAL / 2);
+            result = new Result(Math.max(MIN_INTERVAL, interval), Decision.SHRINK);
+        } else {
+            long interval = (long) (state.getCurrentIntervalMillis() * STRETCH_FACTOR);
+            // Stationary while plugged in costs little, so don't back off past the default
+            long ceiling = state.isCharging() ? DEFAULT_INTERVAL : MAX_INTERVAL;
+            interval = Math.min(Math.max(interval, MIN_INTERVAL), ceiling);
+            Decision decision = interval > state.getCurrentIntervalMillis() ? Decision.STRETCH : Decision.HOLD;
+            result = new Result(interval, decision);
+        }
+        
+        return applyBattery(state, result);
+    }
+    
+    private Result applyBattery(SamplingState state, Result result) {
+        if (!state.isCharging() && state.getBatteryLevel() >= 0
+                && state.getBatteryLevel() <= LOW_BATTERY_LEVEL
+                && result.getIntervalMillis() < LOW_BATTERY_INTERVAL) {
+            return new Result(LOW_BATTERY_INTERVAL, Decision.BATTERY_CAPPED);
+        }
+        return result;
+    }
+}
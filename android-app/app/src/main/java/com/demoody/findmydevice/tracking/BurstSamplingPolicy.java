@@ -0,0 +1,102 @@
+package com.demoody.findmydevice.tracking;
+
+/**
+ * Wraps another policy with a theft burst. For a while after {@link #start}
+ * fixes are taken far more often than the delegate would ask for, with the
+ * interval doubling every {@link #HALF_LIFE}, so the densest track covers the
+ * first minutes after a theft. The burst ends after {@link #MAX_DURATION} or
+ * once its fix (energy) budget is spent; uploads draw on a separate data budget
+ * through {@link #tryConsumeUpload}.
+ */
+public class BurstSamplingPolicy implements SamplingPolicy {
+    public static final long INITIAL_INTERVAL = 10 * 1000; // 10 seconds
+    public static final long HALF_LIFE = 5 * 60 * 1000; // 5 minutes
+    public static final long MAX_DURATION = 30 * 60 * 1000; // 30 minutes
+    public static final int FIX_BUDGET = 60;
+    public static final int UPLOAD_BUDGET = 20;
+    
+    private static final int LOW_BATTERY_LEVEL = 15;
+    
+    private final SamplingPolicy delegate;
+    private final Clock clock;
+    private long startedAt = -1;
+    private int fixesUsed;
+    private int uploadsUsed;
+    
+    public BurstSamplingPolicy(SamplingPolicy delegate, Clock clock) {
+        this.delegate = delegate;
+        this.clock = clock;
+    }
+    
+    /**
+     * Starts a burst, or resumes one that began at startedAt in an earlier
+     * process. Either way the budgets start full.
+     */
+    public synchronized void start(long startedAt) {
+        this.startedAt = startedAt;
+        fixesUsed = 0;
+        uploadsUsed = 0;
+    }
+    
+    public synchronized void stop() {
+        startedAt = -1;
+    }
+    
+    public synchronized boolean isActive() {
+        if (startedAt < 0) {
+            return false;
+        }
+        if (elapsedMillis() >= MAX_DURATION || fixesUsed >= FIX_BUDGET) {
+            startedAt = -1;
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Takes one immediate upload from the data budget.
+     *
+     * @return false once the burst is over or the budget is spent; the fix should then wait for a batched upload
+     */
+    public synchronized boolean tryConsumeUpload() {
+        if (!isActive() || uploadsUsed >= UPLOAD_BUDGET) {
+            return false;
+        }
+        uploadsUsed++;
+        return true;
+    }
+    
+    public synchronized int getFixesUsed() {
+        return fixesUsed;
+    }
+    
+    public synchronized int getUploadsUsed() {
+        return uploadsUsed;
+    }
+    
+    @Override
+    public synchronized Result nextInterval(SamplingState state) {
+        // The delegate still sees every state so it picks up smoothly when the burst ends
+        Result result = delegate.nextInterval(state);
+        if (!isActive()) {
+            return result;
+        }
+        
+        double interval = INITIAL_INTERVAL * Math.pow(2, elapsedMillis() / (double) HALF_LIFE);
+        if (!state.isCharging() && state.getBatteryLevel() >= 0 && state.getBatteryLevel() <= LOW_BATTERY_LEVEL) {
+            interval *= 2;
+        }
+        if (interval >= result.getIntervalMillis()) {
+            // Decayed past the normal rate; don't spend budget on it
+            return result;
+        }
+        
+        fixesUsed++;
+        return new Result((long) interval, Decision.BURST);
+    }
+    
+    // A clock set backwards counts as the start of the burst
+    private long elapsedMillis() {
+        return Math.max(0, clock.currentTimeMillis() - startedAt);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,10 @@
+package com.demoody.findmydevice.tracking;
+
+/**
+ * Time source for the tracking engines, so they can be driven by a fake clock on the JVM.
+ */
+public interface Clock {
+    Clock SYSTEM = System::currentTimeMillis;
+    
+    long currentTimeMillis();
+}
@@ -0,0 +1,174 @@
+package com.demoody.findmydevice.tracking;
+
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.utils.GeoUtils;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cleans up raw fixes before they are queued for upload:
+ * <ol>
+ *   <li>rejects fixes that are too inaccurate or imply an impossible jump,</li>
+ *   <li>smooths the rest with a lightweight Kalman filter weighted by accuracy,</li>
+ *   <li>suppresses fixes that haven't left the dead-band around the last upload.</li>
+ * </ol>
+ * Every drop is counted per step in {@link Stats}.
+ */
+public class FixPipeline {
+    private static final double MAX_ACCURACY = 500; // metres
+    private static final double MAX_SPEED = 70; // m/s, about 250 km/h
+    private static final double PROCESS_NOISE = 3; // m/s of expected movement between fixes
+    private static final double MIN_DEAD_BAND = 30; // metres
+    private static final long HEARTBEAT_INTERVAL = 30 * 60 * 1000; // 30 minutes
+    private static final int MAX_CONSECUTIVE_JUMPS = 3;
+    
+    private final Stats stats = new Stats();
+    
+    // Last fix that passed outlier rejection
+    private LocationData lastAccepted;
+    private int consecutiveJumps = 0;
+    
+    // Kalman state; variance is in square metres, negative until the first fix
+    private double filteredLat;
+    private double filteredLng;
+    private double variance = -1;
+    private long filteredTime;
+    
+    // Last fix handed on for upload
+    private LocationData lastEmitted;
+    
+    public static class Stats {
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicLong rejectedInaccurate = new AtomicLong();
+        private final AtomicLong rejectedJump = new AtomicLong();
+        private final AtomicLong suppressedDeadBand = new AtomicLong();
+        private final AtomicLong emitted = new AtomicLong();
+        
+        public long getReceived() { return received.get(); }
+        public long getRejectedInaccurate() { return rejectedInaccurate.get(); }
+        public long getRejectedJump() { return rejectedJump.get(); }
+        public long getSuppressedDeadBand() { return suppressedDeadBand.get(); }
+        public long getEmitted() { return emitted.get(); }
+        
+        public Map<String, Long> snapshot() {
+            Map<String, Long> snapshot = new LinkedHashMap<>();
+            snapshot.put("received", received.get());
+            snapshot.put("rejected_inaccurate", rejectedInaccurate.get());
+            snapshot.put("rejected_jump", rejectedJump.get());
+            snapshot.put("suppressed_dead_band", suppressedDeadBand.get());
+            snapshot.put("emitted", emitted.get());
+            return snapshot;
+        }
+        
+        @Override
+        public String toString() {
+            return "received=" + received +
+                   " rejected_inaccurate=" + rejectedInaccurate +
+                   " rejected_jump=" + rejectedJump +
+                   " suppressed_dead_band=" + suppressedDeadBand +
+                   " emitted=" + emitted;
+        }
+    }
+    
+    /**
+     * @return the smoothed fix to upload, or null if the fix was dropped
+     */
+    public synchronized LocationData process(LocationData fix) {
+        stats.received.incrementAndGet();
+        
+        if (fix.getAccuracy() > MAX_ACCURACY) {
+            stats.rejectedInaccurate.incrementAndGet();
+            return null;
+        }
+        
+        if (isImpossibleJump(fix)) {
+            if (++consecutiveJumps < MAX_CONSECUTIVE_JUMPS) {
+                stats.rejectedJump.incrementAndGet();
+                return null;
+            }
+            // Several fixes agree on the new position, so the earlier one was the outlier
+            variance = -1;
+        }
+        consecutiveJumps = 0;
+        lastAccepted = fix;
+        
+        LocationData smoothed = smooth(fix);
+        
+        if (isInsideDeadBand(smoothed)) {
+            stats.suppressedDeadBand.incrementAndGet();
+            return null;
+        }
+        
+        lastEmitted = smoothed;
+        stats.emitted.incrementAndGet();
+        return smoothed;
+    }
+    
+    public Stats getStats() {
+        return stats;
+    }
+    
+    private boolean isImpossibleJump(LocationData fix) {
+        if (lastAccepted == null) {
+            return false;
+        }
+        
+        long elapsed = fix.getTimestamp() - lastAccepted.getTimestamp();
+        if (elapsed <= 0) {
+            return false;
+        }
+        
+        double distance = GeoUtils.distanceMeters(
+                lastAccepted.getLat(), lastAccepted.getLng(), fix.getLat(), fix.getLng());
+        // Give both fixes the benefit of their accuracy radius before judging the speed
+        double slack = accuracyOf(lastAccepted) + accuracyOf(fix);
+        double speed = Math.max(0, distance - slack) / (elapsed / 1000.0);
+        return speed > MAX_SPEED;
+    }
+    
+    private LocationData smooth(LocationData fix) {
+        double accuracy = Math.max(accuracyOf(fix), 1);
+        double measurementVariance = accuracy * accuracy;
+        
+        if (variance < 0) {
+            filteredLat = fix.getLat();
+            filteredLng = fix.getLng();
+            variance = measurementVariance;
+        } else {
+            long elapsed = fix.getTimestamp() - filteredTime;
+            if (elapsed > 0) {
+                // Uncertainty grows with the time since the last fix
+                variance += elapsed / 1000.0 * PROCESS_NOISE * PROCESS_NOISE;
+            }
+            
+            double gain = variance / (variance + measurementVariance);
+            filteredLat += gain * (fix.getLat() - filteredLat);
+            filteredLng += gain * (fix.getLng() - filteredLng);
+            variance = (1 - gain) * variance;
+        }
+        filteredTime = Math.max(filteredTime, fix.getTimestamp());
+        
+        return new LocationData(filteredLat, filteredLng, Math.sqrt(variance), fix.getTimestamp(), fix.getProvider());
+    }
+    
+    private boolean isInsideDeadBand(LocationData fix) {
+        if (lastEmitted == null) {
+            return false;
+        }
+        
+        // Still upload a heartbeat now and then so the server knows the device is alive
+        if (fix.getTimestamp() - lastEmitted.getTimestamp() >= HEARTBEAT_INTERVAL) {
+            return false;
+        }
+        
+        double distance = GeoUtils.distanceMeters(
+                lastEmitted.getLat(), lastEmitted.getLng(), fix.getLat(), fix.getLng());
+        double deadBand = Math.max(MIN_DEAD_BAND, Math.max(accuracyOf(fix), accuracyOf(lastEmitted)));
+        return distance < deadBand;
+    }
+    
+    private static double accuracyOf(LocationData fix) {
+        return fix.getAccuracy() >= 0 ? fix.getAccuracy() : MIN_DEAD_BAND;
+    }
+}
@@ -0,0 +1,113 @@
+package com.demoody.findmydevice.tracking;
+
+import com.demoody.findmydevice.models.Geofence;
+import com.demoody.findmydevice.models.GeofenceEvent;
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.utils.GeoUtils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tracks which safe zones the device is in and turns fixes into enter and
+ * exit transitions. A fix must be clearly outside a zone, by its accuracy
+ * and at least {@link #MIN_EXIT_MARGIN}, before an exit is reported, so GPS
+ * noise at the edge does not produce a stream of enter/exit pairs.
+ */
+public class GeofenceEngine {
+    public static final double MIN_EXIT_MARGIN = 25; // metres
+    
+    private GeofenceIndex index = GeofenceIndex.EMPTY;
+    private final Set<Integer> inside = new LinkedHashSet<>();
+    
+    public synchronized void setFences(List<Geofence> fences) {
+        index = new GeofenceIndex(fences);
+        // Zones deleted on the server are forgotten without an exit event
+        Iterator<Integer> ids = inside.iterator();
+        while (ids.hasNext()) {
+            if (index.get(ids.next()) == null) {
+                ids.remove();
+            }
+        }
+    }
+    
+    /**
+     * Restores the zones the device was in before the process restarted, so
+     * they are not reported as entered again.
+     */
+    public synchronized void restoreInside(Collection<Integer> fenceIds) {
+        inside.clear();
+        inside.addAll(fenceIds);
+    }
+    
+    /**
+     * @return transitions caused by this fix, usually none
+     */
+    public synchronized List<GeofenceEvent> evaluate(LocationData fix) {
+        if (index.size() == 0) {
+            return Collections.emptyList();
+        }
+        
+        List<GeofenceEvent> events = null;
+        double exitMargin = Math.max(MIN_EXIT_MARGIN, fix.getAccuracy());
+        
+        Iterator<Integer> ids = inside.iterator();
+        while (ids.hasNext()) {
+            int id = ids.next();
+            Geofence fence = index.get(id);
+            if (fence == null) {
+                ids.remove();
+            } else if (distance(fence, fix) > fence.getRadius() + exitMargin) {
+                ids.remove();
+                events = add(events, new GeofenceEvent(id, GeofenceEvent.TYPE_EXIT, fix));
+            }
+        }
+        
+        events = checkEnter(index.candidates(fix.getLat(), fix.getLng()), fix, events);
+        events = checkEnter(index.largeFences(), fix, events);
+        
+        return events != null ? events : Collections.<GeofenceEvent>emptyList();
+    }
+    
+    /**
+     * @return true only once fences are loaded, so a restored state alone never holds back uploads
+     */
+    public synchronized boolean isInsideAnyFence() {
+        return index.size() > 0 && !inside.isEmpty();
+    }
+    
+    public synchronized Set<Integer> getInsideFenceIds() {
+        return new LinkedHashSet<>(inside);
+    }
+    
+    public synchronized int getFenceCount() {
+        return index.size();
+    }
+    
+    private List<GeofenceEvent> checkEnter(Geofence[] candidates, LocationData fix, List<GeofenceEvent> events) {
+        for (Geofence fence : candidates) {
+            if (!inside.contains(fence.getId()) && distance(fence, fix) <= fence.getRadius()) {
+                inside.add(fence.getId());
+                events = add(events, new GeofenceEvent(fence.getId(), GeofenceEvent.TYPE_ENTER, fix));
+            }
+        }
+        return events;
+    }
+    
+    private static double distance(Geofence fence, LocationData fix) {
+        return GeoUtils.distanceMeters(fence.getLat(), fence.getLng(), fix.getLat(), fix.getLng());
+    }
+    
+    // Most fixes cause no transition, so the list is only allocated when needed
+    private static List<GeofenceEvent> add(List<GeofenceEvent> events, GeofenceEvent event) {
+        if (events == null) {
+            events = new ArrayList<>(2);
+        }
+        events.add(event);
+        return events;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package com.demoody.findmydevice.tracking;
+
+import com.demoody.findmydevice.models.Geofence;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable uniform-grid index over circular geofences. Each fence is listed
+ * in every cell its bounding box touches, so a lookup only has to check the
+ * few fences registered in the cell containing the point.
+ */
+public class GeofenceIndex {
+    private static final double CELL_DEGREES = 0.01; // about 1.1 km of latitude
+    private static final double METRES_PER_DEGREE = 111320;
+    // Fences larger than this many cells are checked on every lookup instead
+    private static final int MAX_CELLS_PER_FENCE = 256;
+    private static final Geofence[] NO_FENCES = new Geofence[0];
+    
+    public static final GeofenceIndex EMPTY = new GeofenceIndex(Collections.<Geofence>emptyList());
+    
+    private final Map<Long, Geofence[]> cells;
+    private final Geofence[] largeFences;
+    private final Map<Integer, Geofence> byId;
+    
+    public GeofenceIndex(List<Geofence> fences) {
+        Map<Long, List<Geofence>> building = new HashMap<>();
+        List<Geofence> large = new ArrayList<>();
+        byId = new HashMap<>();
+        
+        for (Geofence fence : fences) {
+            byId.put(fence.getId(), fence);
+            
+            double latSpan = fence.getRadius() / METRES_PER_DEGREE;
+            double cosLat = Math.max(Math.cos(Math.toRadians(fence.getLat())), 0.01);
+            double lngSpan = latSpan / cosLat;
+            int minLat = cell(fence.getLat() - latSpan);
+            int maxLat = cell(fence.getLat() + latSpan);
+            int minLng = cell(fence.getLng() - lngSpan);
+            int maxLng = cell(fence.getLng() + lngSpan);
+            
+            if ((long) (maxLat - minLat + 1) * (maxLng - minLng + 1) > MAX_CELLS_PER_FENCE) {
+                large.add(fence);
+                continue;
+            }
+            for (int latCell = minLat; latCell <= maxLat; latCell++) {
+                for (int lngCell = minLng; lngCell <= maxLng; lngCell++) {
+                    Long key = key(latCell, lngCell);
+                    List<Geofence> cellFences = building.get(key);
+                    if (cellFences == null) {
+                        cellFences = new ArrayList<>(2);
+                        building.put(key, cellFences);
+                    }
+                    cellFences.add(fence);
+                }
+            }
+        }
+        
+        cells = new HashMap<>(building.size() * 2);
+        for (Map.Entry<Long, List<Geofence>> entry : building.entrySet()) {
+            cells.put(entry.getKey(), entry.getValue().toArray(NO_FENCES));
+        }
+        largeFences = large.toArray(NO_FENCES);
+    }
+    
+    /**
+     * @return fences that may contain the point; callers still check the distance
+     */
+    public Geofence[] candidates(double lat, double lng) {
+        Geofence[] cellFences = cells.get(key(cell(lat), cell(lng)));
+        return cellFences != null ? cellFences : NO_FENCES;
+    }
+    
+    /**
+     * @return fences too large for the grid, to be checked on every lookup
+     */
+    public Geofence[] largeFences() {
+        return largeFences;
+    }
+    
+    public Geofence get(int id) {
+        return byId.get(id);
+    }
+    
+    public int size() {
+        return byId.size();
+    }
+    
+    private static int cell(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+    
+    private static Long key(int latCell, int lngCell) {
+        return ((long) latCell << 32) | (lngCell & 0xFFFFFFFFL);
+    }
+}
\ No newline at end of file
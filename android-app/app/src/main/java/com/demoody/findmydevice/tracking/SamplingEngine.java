@@ -0,0 +1,68 @@
+package com.demoody.findmydevice.tracking;
+
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.utils.GeoUtils;
+
+/**
+ * Feeds fixes and battery state into a {@link SamplingPolicy} and keeps track
+ * of the interval it chose. Fix arrival times come from the injected
+ * {@link Clock} rather than the fix itself, since cached fixes can be stale.
+ */
+public class SamplingEngine {
+    private final SamplingPolicy policy;
+    private final Clock clock;
+    private final SamplingMetrics metrics = new SamplingMetrics();
+    
+    private LocationData lastFix;
+    private long lastFixTime;
+    private double displacementMeters;
+    private double speedMetersPerSecond;
+    private boolean hasPreviousFix;
+    private int batteryLevel = -1;
+    private boolean charging;
+    private long currentIntervalMillis = AdaptiveSamplingPolicy.DEFAULT_INTERVAL;
+    
+    public SamplingEngine(SamplingPolicy policy, Clock clock) {
+        this.policy = policy;
+        this.clock = clock;
+    }
+    
+    public synchronized void onFix(LocationData fix) {
+        long now = clock.currentTimeMillis();
+        metrics.recordFix();
+        
+        if (lastFix != null) {
+            displacementMeters = GeoUtils.distanceMeters(
+                    lastFix.getLat(), lastFix.getLng(), fix.getLat(), fix.getLng());
+            long elapsed = now - lastFixTime;
+            speedMetersPerSecond = elapsed > 0 ? displacementMeters / (elapsed / 1000.0) : 0;
+            hasPreviousFix = true;
+        }
+        
+        lastFix = fix;
+        lastFixTime = now;
+    }
+    
+    public synchronized void onBatteryChanged(int level, boolean charging) {
+        this.batteryLevel = level;
+        this.charging = charging;
+    }
+    
+    /**
+     * Asks the policy for the delay before the next fix and records the decision.
+     */
+    public synchronized long nextIntervalMillis() {
+        double accuracyRadius = lastFix != null ? Math.max(lastFix.getAccuracy(), 0) : 0;
+        SamplingState state = new SamplingState(currentIntervalMillis, hasPreviousFix, displacementMeters,
+                accuracyRadius, speedMetersPerSecond, batteryLevel, charging);
+        
+        SamplingPolicy.Result result = policy.nextInterval(state);
+        currentIntervalMillis = result.getIntervalMillis();
+        metrics.recordDecision(result);
+        return currentIntervalMillis;
+    }
+    
+    public SamplingMetrics getMetrics() {
+        return metrics;
+    }
+}
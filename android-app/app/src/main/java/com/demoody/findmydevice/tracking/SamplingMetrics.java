@@ -0,0 +1,53 @@
+package com.demoody.findmydevice.tracking;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Running totals of the decisions made by a {@link SamplingEngine}.
+ */
+public class SamplingMetrics {
+    private final Map<SamplingPolicy.Decision, Long> decisionCounts = new EnumMap<>(SamplingPolicy.Decision.class);
+    private long fixCount;
+    private long lastIntervalMillis;
+    private long totalIntervalMillis;
+    
+    synchronized void recordFix() {
+        fixCount++;
+    }
+    
+    synchronized void recordDecision(SamplingPolicy.Result result) {
+        Long count = decisionCounts.get(result.getDecision());
+        decisionCounts.put(result.getDecision(), count == null ? 1 : count + 1);
+        lastIntervalMillis = result.getIntervalMillis();
+        totalIntervalMillis += result.getIntervalMillis();
+    }
+    
+    public synchronized long getDecisionCount(SamplingPolicy.Decision decision) {
+        Long count = decisionCounts.get(decision);
+        return count == null ? 0 : count;
+    }
+    
+    public synchronized long getFixCount() {
+        return fixCount;
+    }
+    
+    public synchronized long getLastIntervalMillis() {
+        return lastIntervalMillis;
+    }
+    
+    public synchronized Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        long decisions = 0;
+        for (SamplingPolicy.Decision decision : SamplingPolicy.Decision.values()) {
+            long count = getDecisionCount(decision);
+            snapshot.put("decision_" + decision.name().toLowerCase(), count);
+            decisions += count;
+        }
+        snapshot.put("fixes", fixCount);
+        snapshot.put("last_interval_ms", lastIntervalMillis);
+        snapshot.put("mean_interval_ms", decisions == 0 ? 0 : totalIntervalMillis / decisions);
+        return snapshot;
+    }
+}
@@ -0,0 +1,26 @@
+package com.demoody.findmydevice.tracking;
+
+/**
+ * Decides how long the tracker waits before taking the next fix.
+ */
+public interface SamplingPolicy {
+    
+    enum Decision {
+        INITIAL, STRETCH, SHRINK, HOLD, BATTERY_CAPPED, BURST
+    }
+    
+    class Result {
+        private final long intervalMillis;
+        private final Decision decision;
+        
+        public Result(long intervalMillis, Decision decision) {
+            this.intervalMillis = intervalMillis;
+            this.decision = decision;
+        }
+        
+        public long getIntervalMillis() { return intervalMillis; }
+        public Decision getDecision() { return decision; }
+    }
+    
+    Result nextInterval(SamplingState state);
+}
@@ -0,0 +1,54 @@
+package com.demoody.findmydevice.tracking;
+
+/**
+ * Immutable view of everything a {@link SamplingPolicy} may base its decision on.
+ */
+public class SamplingState {
+    private final long currentIntervalMillis;
+    private final boolean hasPreviousFix;
+    private final double displacementMeters;
+    private final double accuracyRadiusMeters;
+    private final double speedMetersPerSecond;
+    private final int batteryLevel;
+    private final boolean charging;
+    
+    public SamplingState(long currentIntervalMillis, boolean hasPreviousFix, double displacementMeters,
+                         double accuracyRadiusMeters, double speedMetersPerSecond,
+                         int batteryLevel, boolean charging) {
+        this.currentIntervalMillis = currentIntervalMillis;
+        this.hasPreviousFix = hasPreviousFix;
+        this.displacementMeters = displacementMeters;
+        this.accuracyRadiusMeters = accuracyRadiusMeters;
+        this.speedMetersPerSecond = speedMetersPerSecond;
+        this.batteryLevel = batteryLevel;
+        this.charging = charging;
+    }
+    
+    public long getCurrentIntervalMillis() {
+        return currentIntervalMillis;
+    }
+    
+    public boolean hasPreviousFix() {
+        return hasPreviousFix;
+    }
+    
+    public double getDisplacementMeters() {
+        return displacementMeters;
+    }
+    
+    public double getAccuracyRadiusMeters() {
+        return accuracyRadiusMeters;
+    }
+    
+    public double getSpeedMetersPerSecond() {
+        return speedMetersPerSecond;
+    }
+    
+    public int getBatteryLevel() {
+        return batteryLevel;
+    }
+    
+    public boolean isCharging() {
+        return charging;
+    }
+}
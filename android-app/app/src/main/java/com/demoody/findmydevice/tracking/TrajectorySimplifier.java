@@ -0,0 +1,126 @@
+package com.demoody.findmydevice.tracking;
+
+import com.demoody.findmydevice.models.LocationData;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time-aware Douglas-Peucker. A point is dropped only if the position
+ * interpolated at its timestamp between the kept neighbours is within the
+ * tolerance (synchronized Euclidean distance), so stops and speed changes
+ * survive even on a straight road. The backend's simplify_trajectory()
+ * implements the same algorithm for history reads.
+ */
+public class TrajectorySimplifier {
+    private static final double METRES_PER_DEGREE = 111320;
+    
+    public static class Result {
+        private final List<LocationData> points;
+        private final int originalCount;
+        private final double maxDeviation;
+        
+        Result(List<LocationData> points, int originalCount, double maxDeviation) {
+            this.points = points;
+            this.originalCount = originalCount;
+            this.maxDeviation = maxDeviation;
+        }
+        
+        public List<LocationData> getPoints() {
+            return points;
+        }
+        
+        public int getOriginalCount() {
+            return originalCount;
+        }
+        
+        /**
+         * @return largest distance in metres between a dropped point and the simplified track
+         */
+        public double getMaxDeviation() {
+            return maxDeviation;
+        }
+        
+        public double getCompressionRatio() {
+            return points.isEmpty() ? 1 : (double) originalCount / points.size();
+        }
+    }
+    
+    private TrajectorySimplifier() {}
+    
+    /**
+     * @param points fixes in time order
+     * @param toleranceMeters maximum allowed deviation; 0 or less keeps every point
+     */
+    public static Result simplify(List<LocationData> points, double toleranceMeters) {
+        int count = points.size();
+        if (count <= 2 || toleranceMeters <= 0) {
+            return new Result(points, count, 0);
+        }
+        
+        // Local flat projection around the first point; errors are negligible over a track's extent
+        double originLat = points.get(0).getLat();
+        double originLng = points.get(0).getLng();
+        double lngScale = Math.cos(Math.toRadians(originLat)) * METRES_PER_DEGREE;
+        double[] x = new double[count];
+        double[] y = new double[count];
+        long[] t = new long[count];
+        for (int i = 0; i < count; i++) {
+            LocationData point = points.get(i);
+            x[i] = (point.getLng() - originLng) * lngScale;
+            y[i] = (point.getLat() - originLat) * METRES_PER_DEGREE;
+            t[i] = point.getTimestamp();
+        }
+        
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        double maxDeviation = 0;
+        
+        // Explicit stack of [start, end] ranges instead of recursion
+        int[] stack = new int[2 * count];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            
+            int farthest = -1;
+            double farthestDistance = 0;
+            for (int i = start + 1; i < end; i++) {
+                double distance = synchronizedDistance(x, y, t, start, end, i);
+                if (distance > farthestDistance) {
+                    farthestDistance = distance;
+                    farthest = i;
+                }
+            }
+            
+            if (farthest >= 0 && farthestDistance > toleranceMeters) {
+                keep[farthest] = true;
+                stack[top++] = start;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = end;
+            } else {
+                maxDeviation = Math.max(maxDeviation, farthestDistance);
+            }
+        }
+        
+        List<LocationData> kept = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                kept.add(points.get(i));
+            }
+        }
+        return new Result(kept, count, maxDeviation);
+    }
+    
+    // Distance from point i to where the device would be at t[i] moving evenly from start to end
+    private static double synchronizedDistance(double[] x, double[] y, long[] t, int start, int end, int i) {
+        long span = t[end] - t[start];
+        double ratio = span > 0 ? (double) (t[i] - t[start]) / span : 0;
+        double expectedX = x[start] + (x[end] - x[start]) * ratio;
+        double expectedY = y[start] + (y[end] - y[start]) * ratio;
+        return Math.hypot(x[i] - expectedX, y[i] - expectedY);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.demoody.findmydevice.utils;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with full jitter: the wait before retry n is drawn
+ * uniformly from zero to min(cap, base * 2^n). Devices that all failed at the
+ * same moment, say during a server outage, come back spread across the
+ * window instead of in lockstep.
+ */
+public final class Backoff {
+    private final long baseMillis;
+    private final long capMillis;
+    private final Random random;
+    
+    public Backoff(long baseMillis, long capMillis) {
+        this(baseMillis, capMillis, new Random());
+    }
+    
+    public Backoff(long baseMillis, long capMillis, Random random) {
+        this.baseMillis = baseMillis;
+        this.capMillis = capMillis;
+        this.random = random;
+    }
+    
+    /**
+     * @return the longest wait retry attempt may get, attempt counting from 0
+     */
+    public long ceilingMillis(int attempt) {
+        // Stop shifting once the cap is reached so large attempts can't overflow
+        long ceiling = baseMillis;
+        for (int i = 0; i < attempt && ceiling < capMillis; i++) {
+            ceiling <<= 1;
+        }
+        return Math.min(ceiling, capMillis);
+    }
+    
+    public long delayMillis(int attempt) {
+        return (long) (random.nextDouble() * ceilingMillis(attempt));
+    }
+}
\ No newline at end of file
@@ -2,7 +2,10 @@ package com.demoody.findmydevice.utils;
 
 import android.Manifest;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.os.BatteryManager;
 import android.os.Build;
 import android.provider.Settings;
 import android.telephony.TelephonyManager;
@@ -118,6 +121,36 @@ public class DeviceUtils {
         return false;
     }
     
+    public static int getBatteryLevel(Context context) {
+        Intent batteryStatus = getBatteryStatus(context);
+        if (batteryStatus == null) {
+            return -1;
+        }
+        
+        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (level < 0 || scale <= 0) {
+            return -1;
+        }
+        return level * 100 / scale;
+    }
+    
+    public static boolean isCharging(Context context) {
+        Intent batteryStatus = getBatteryStatus(context);
+        if (batteryStatus == null) {
+            return false;
+        }
+        
+        int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        return status == BatteryManager.BATTERY_STATUS_CHARGING ||
+               status == BatteryManager.BATTERY_STATUS_FULL;
+    }
+    
+    private static Intent getBatteryStatus(Context context) {
+        // ACTION_BATTERY_CHANGED is sticky, so a null receiver just reads the last value
+        return context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+    }
+    
     public static String generateRandomToken() {
         return UUID.randomUUID().toString().replace("-", "");
     }
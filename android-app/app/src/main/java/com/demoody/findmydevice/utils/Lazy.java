@@ -0,0 +1,40 @@
+package com.demoody.findmydevice.utils;
+
+/**
+ * Builds a dependency on first use, from whichever thread gets there first.
+ * Lets a component hold on to something expensive without paying for it
+ * while the main thread is still drawing.
+ */
+public final class Lazy<T> {
+    
+    public interface Provider<T> {
+        T get();
+    }
+    
+    private Provider<T> provider;
+    private volatile T value;
+    
+    public Lazy(Provider<T> provider) {
+        this.provider = provider;
+    }
+    
+    public T get() {
+        T result = value;
+        if (result == null) {
+            synchronized (this) {
+                result = value;
+                if (result == null) {
+                    result = provider.get();
+                    value = result;
+                    // Let go of whatever the provider captured
+                    provider = null;
+                }
+            }
+        }
+        return result;
+    }
+    
+    public boolean isInitialized() {
+        return value != null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,380 @@
+package com.demoody.findmydevice.utils;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Owns the single FusedLocationProviderClient for the process. Concurrent
+ * callers share one in-flight fix, and a cached fix is reused whenever it is
+ * fresh and accurate enough for the caller's tolerance. Progressive callers
+ * keep the session running past the first fix until each reaches its target.
+ * All state is only touched on the main thread.
+ */
+public class LocationBroker {
+    private static final String TAG = "LocationBroker";
+    private static final long REQUEST_TIMEOUT = 30000;
+    
+    private static volatile LocationBroker instance;
+    
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<PendingRequest> waiting = new ArrayList<>();
+    private final List<ProgressiveRequest> refining = new ArrayList<>();
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    
+    private Location cachedLocation;
+    private boolean requestInFlight = false;
+    // The getLastLocation() lookup that opens a session hasn't answered yet
+    private boolean lookupPending = false;
+    private boolean sessionHasFix = false;
+    private int sessionCount = 0;
+    private long sessionStartMillis;
+    
+    private final com.google.android.gms.location.LocationCallback freshLocationCallback =
+            new com.google.android.gms.location.LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult locationResult) {
+            if (locationResult != null && !locationResult.getLocations().isEmpty()) {
+                Location location = locationResult.getLastLocation();
+                if (!sessionHasFix) {
+                    sessionHasFix = true;
+                    metrics.histogram("fix.ttff_ms." + location.getProvider())
+                            .record(SystemClock.elapsedRealtime() - sessionStartMillis);
+                }
+                cachedLocation = location;
+                deliverToAll(location);
+                offerToRefining(location);
+                stopSessionIfUnused();
+            }
+        }
+    };
+    
+    private final Runnable timeoutRunnable = this::onSessionTimeout;
+    
+    private static class PendingRequest {
+        final long maxAgeMillis;
+        final float maxAccuracyMeters;
+        final LocationUtils.LocationCallback callback;
+        
+        PendingRequest(long maxAgeMillis, float maxAccuracyMeters, LocationUtils.LocationCallback callback) {
+            this.maxAgeMillis = maxAgeMillis;
+            this.maxAccuracyMeters = maxAccuracyMeters;
+            this.callback = callback;
+        }
+    }
+    
+    private class ProgressiveRequest implements LocationUtils.Cancellable {
+        final long maxAgeMillis;
+        final float targetAccuracyMeters;
+        final LocationUtils.ProgressiveLocationCallback callback;
+        final long startedAt = SystemClock.elapsedRealtime();
+        final Runnable timeout = this::onTimeout;
+        Location best;
+        boolean initialDelivered = false;
+        boolean done = false;
+        
+        ProgressiveRequest(long maxAgeMillis, float targetAccuracyMeters,
+                           LocationUtils.ProgressiveLocationCallback callback) {
+            this.maxAgeMillis = maxAgeMillis;
+            this.targetAccuracyMeters = targetAccuracyMeters;
+            this.callback = callback;
+        }
+        
+        @Override
+        public void cancel() {
+            mainHandler.post(() -> {
+                if (finish()) {
+                    metrics.counter("fix.progressive.cancelled").increment();
+                }
+            });
+        }
+        
+        void deliverInitial(Location location) {
+            initialDelivered = true;
+            best = location;
+            callback.onInitialFix(location, location != null ? ageMillis(location) : -1);
+            if (satisfies(location, maxAgeMillis, targetAccuracyMeters)) {
+                deliverFinal(location);
+            }
+        }
+        
+        void offer(Location location) {
+            if (done) {
+                return;
+            }
+            if (!initialDelivered) {
+                deliverInitial(location);
+            } else if (satisfies(location, maxAgeMillis, targetAccuracyMeters)) {
+                deliverFinal(location);
+            } else if (isImprovement(location, best, maxAgeMillis)) {
+                best = location;
+                callback.onImprovedFix(location);
+            }
+        }
+        
+        private void deliverFinal(Location location) {
+            if (finish()) {
+                best = location;
+                metrics.histogram("fix.progressive.time_to_final_ms").record(SystemClock.elapsedRealtime() - startedAt);
+                callback.onFinalFix(location);
+            }
+        }
+        
+        private void onTimeout() {
+            if (finish()) {
+                metrics.counter("fix.progressive.timeouts").increment();
+                callback.onTimeout(best);
+            }
+        }
+        
+        /**
+         * @return false if the request had already finished
+         */
+        boolean finish() {
+            if (done) {
+                return false;
+            }
+            done = true;
+            refining.remove(this);
+            mainHandler.removeCallbacks(timeout);
+            stopSessionIfUnused();
+            return true;
+        }
+    }
+    
+    private LocationBroker(Context context) {
+        fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+    }
+    
+    public static LocationBroker getInstance(Context context) {
+        if (instance == null) {
+            synchronized (LocationBroker.class) {
+                if (instance == null) {
+                    instance = new LocationBroker(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * Delivers a fix no older than maxAgeMillis with an accuracy of at most
+     * maxAccuracyMeters if one is cached, otherwise joins (or starts) the
+     * shared fresh-location request.
+     */
+    public void requestLocation(long maxAgeMillis, float maxAccuracyMeters, LocationUtils.LocationCallback callback) {
+        mainHandler.post(() -> {
+            PendingRequest request = new PendingRequest(maxAgeMillis, maxAccuracyMeters, callback);
+            
+            if (satisfies(cachedLocation, maxAgeMillis, maxAccuracyMeters)) {
+                metrics.counter("fix.cache_hits").increment();
+                callback.onLocationReceived(cachedLocation);
+                return;
+            }
+            
+            waiting.add(request);
+            if (!requestInFlight) {
+                startSession();
+            }
+        });
+    }
+    
+    /**
+     * Delivers the cached fix at once, or the device's last known fix as soon
+     * as it has been looked up, then refines through the shared session.
+     */
+    public LocationUtils.Cancellable requestProgressiveLocation(long maxAgeMillis, float targetAccuracyMeters,
+                                                                long timeoutMillis,
+                                                                LocationUtils.ProgressiveLocationCallback callback) {
+        ProgressiveRequest request = new ProgressiveRequest(maxAgeMillis, targetAccuracyMeters, callback);
+        mainHandler.post(() -> {
+            refining.add(request);
+            mainHandler.postDelayed(request.timeout, timeoutMillis);
+            
+            // A session past its lookup has nothing better than the cache to offer right now
+            if (cachedLocation != null || (requestInFlight && !lookupPending)) {
+                request.deliverInitial(cachedLocation);
+            }
+            if (!request.done && !requestInFlight) {
+                startSession();
+            }
+        });
+        return request;
+    }
+    
+    public int getSessionCount() {
+        return sessionCount;
+    }
+    
+    private void startSession() {
+        requestInFlight = true;
+        lookupPending = true;
+        
+        try {
+            fusedLocationClient.getLastLocation()
+                    .addOnSuccessListener(location -> {
+                        lookupPending = false;
+                        if (location != null && isNewer(location, cachedLocation)) {
+                            cachedLocation = location;
+                        }
+                        deliverSatisfied(cachedLocation);
+                        offerToRefining(cachedLocation);
+                        
+                        if (waiting.isEmpty() && refining.isEmpty()) {
+                            requestInFlight = false;
+                        } else {
+                            requestFreshLocation();
+                        }
+                    })
+                    .addOnFailureListener(e -> {
+                        lookupPending = false;
+                        requestInFlight = false;
+                        failAll("Failed to get location: " + e.getMessage());
+                    });
+        } catch (SecurityException e) {
+            lookupPending = false;
+            requestInFlight = false;
+            failAll("Security exception: " + e.getMessage());
+        }
+    }
+    
+    private void requestFreshLocation() {
+        LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, 10000)
+                .setWaitForAccurateLocation(false)
+                .setMinUpdateIntervalMillis(5000)
+                .setMaxUpdateDelayMillis(15000)
+                .build();
+        
+        try {
+            sessionCount++;
+            sessionStartMillis = SystemClock.elapsedRealtime();
+            sessionHasFix = false;
+            metrics.counter("fix.sessions").increment();
+            Log.d(TAG, "Starting GPS session #" + sessionCount + " for " + (waiting.size() + refining.size()) + " callers");
+            fusedLocationClient.requestLocationUpdates(locationRequest, freshLocationCallback, Looper.getMainLooper());
+            
+            // Remove updates after 30 seconds to prevent battery drain
+            mainHandler.postDelayed(timeoutRunnable, REQUEST_TIMEOUT);
+        } catch (SecurityException e) {
+            requestInFlight = false;
+            failAll("Security exception: " + e.getMessage());
+        }
+    }
+    
+    private void finishSession() {
+        fusedLocationClient.removeLocationUpdates(freshLocationCallback);
+        mainHandler.removeCallbacks(timeoutRunnable);
+        requestInFlight = false;
+    }
+    
+    // The opening lookup decides for itself whether a fresh session is needed
+    private void stopSessionIfUnused() {
+        if (requestInFlight && !lookupPending && waiting.isEmpty() && refining.isEmpty()) {
+            finishSession();
+        }
+    }
+    
+    private void onSessionTimeout() {
+        if (!waiting.isEmpty()) {
+            metrics.counter("fix.timeouts").increment();
+            failWaiting("Location request timeout");
+        }
+        
+        if (refining.isEmpty()) {
+            finishSession();
+        } else {
+            // Progressive callers time out on their own; one-shot callers that join later still get this limit
+            mainHandler.postDelayed(timeoutRunnable, REQUEST_TIMEOUT);
+        }
+    }
+    
+    private void deliverSatisfied(Location location) {
+        Iterator<PendingRequest> iterator = waiting.iterator();
+        while (iterator.hasNext()) {
+            PendingRequest request = iterator.next();
+            if (satisfies(location, request.maxAgeMillis, request.maxAccuracyMeters)) {
+                iterator.remove();
+                request.callback.onLocationReceived(location);
+            }
+        }
+    }
+    
+    private void offerToRefining(Location location) {
+        for (ProgressiveRequest request : new ArrayList<>(refining)) {
+            request.offer(location);
+        }
+    }
+    
+    private void deliverToAll(Location location) {
+        List<PendingRequest> callers = new ArrayList<>(waiting);
+        waiting.clear();
+        for (PendingRequest request : callers) {
+            request.callback.onLocationReceived(location);
+        }
+    }
+    
+    private void failWaiting(String error) {
+        List<PendingRequest> callers = new ArrayList<>(waiting);
+        waiting.clear();
+        for (PendingRequest request : callers) {
+            request.callback.onLocationError(error);
+        }
+    }
+    
+    private void failAll(String error) {
+        failWaiting(error);
+        for (ProgressiveRequest request : new ArrayList<>(refining)) {
+            if (request.finish()) {
+                request.callback.onLocationError(error);
+            }
+        }
+    }
+    
+    private static boolean satisfies(Location location, long maxAgeMillis, float maxAccuracyMeters) {
+        if (location == null || ageMillis(location) > maxAgeMillis) {
+            return false;
+        }
+        return accuracyOf(location) <= maxAccuracyMeters;
+    }
+    
+    // A fresh fix beats a stale one; between two of the same kind the more accurate one wins
+    private static boolean isImprovement(Location location, Location best, long maxAgeMillis) {
+        if (location == null) {
+            return false;
+        }
+        if (best == null) {
+            return true;
+        }
+        boolean fresh = ageMillis(location) <= maxAgeMillis;
+        boolean bestFresh = ageMillis(best) <= maxAgeMillis;
+        if (fresh != bestFresh) {
+            return fresh;
+        }
+        return accuracyOf(location) < accuracyOf(best);
+    }
+    
+    private static long ageMillis(Location location) {
+        return (SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos()) / 1000000;
+    }
+    
+    private static float accuracyOf(Location location) {
+        return location.hasAccuracy() ? location.getAccuracy() : Float.MAX_VALUE;
+    }
+    
+    private static boolean isNewer(Location location, Location current) {
+        return current == null || location.getElapsedRealtimeNanos() > current.getElapsedRealtimeNanos();
+    }
+}
@@ -5,14 +5,7 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.location.LocationManager;
-import android.os.Looper;
 import androidx.core.app.ActivityCompat;
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
-import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.Priority;
 
 public class LocationUtils {
     
@@ -21,65 +14,66 @@ public class LocationUtils {
         void onLocationError(String error);
     }
     
+    /**
+     * Progress of a request that answers at once and then refines.
+     * onInitialFix comes first, then any number of onImprovedFix, then
+     * onFinalFix or onTimeout. onLocationError can end the request at any
+     * point. Nothing is delivered after a cancel.
+     */
+    public interface ProgressiveLocationCallback {
+        // The best fix already known, or null with an age of -1 if there is none
+        void onInitialFix(Location location, long ageMillis);
+        // More accurate than anything delivered so far, or the first fresh one after a stale fix
+        void onImprovedFix(Location location);
+        // Fresh and within the target accuracy
+        void onFinalFix(Location location);
+        // best is the last fix delivered, or null
+        void onTimeout(Location best);
+        void onLocationError(String error);
+    }
+    
+    public interface Cancellable {
+        void cancel();
+    }
+    
+    // Tolerances for callers that just want the best fix the device already has
+    public static final long ANY_AGE = Long.MAX_VALUE;
+    public static final float ANY_ACCURACY = Float.MAX_VALUE;
+    
     public static void getCurrentLocation(Context context, LocationCallback callback) {
+        getCurrentLocation(context, ANY_AGE, ANY_ACCURACY, callback);
+    }
+    
+    /**
+     * Requests a fix through the shared {@link LocationBroker}. A cached fix is
+     * reused when it is at most maxAgeMillis old and within maxAccuracyMeters;
+     * otherwise the caller joins the in-flight request.
+     */
+    public static void getCurrentLocation(Context context, long maxAgeMillis, float maxAccuracyMeters,
+                                          LocationCallback callback) {
         if (!hasLocationPermission(context)) {
             callback.onLocationError("Location permission not granted");
             return;
         }
         
-        FusedLocationProviderClient fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
-        
-        try {
-            fusedLocationClient.getLastLocation()
-                    .addOnSuccessListener(location -> {
-                        if (location != null) {
-                            callback.onLocationReceived(location);
-                        } else {
-                            // Request fresh location
-                            requestFreshLocation(context, callback);
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        callback.onLocationError("Failed to get location: " + e.getMessage());
-                    });
-        } catch (SecurityException e) {
-            callback.onLocationError("Security exception: " + e.getMessage());
-        }
+        LocationBroker.getInstance(context).requestLocation(maxAgeMillis, maxAccuracyMeters, callback);
     }
     
-    private static void requestFreshLocation(Context context, LocationCallback callback) {
-        FusedLocationProviderClient fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
-        
-        LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, 10000)
-                .setWaitForAccurateLocation(false)
-                .setMinUpdateIntervalMillis(5000)
-                .setMaxUpdateDelayMillis(15000)
-                .build();
-        
-        com.google.android.gms.location.LocationCallback locationCallback = new com.google.android.gms.location.LocationCallback() {
-            @Override
-            public void onLocationResult(LocationResult locationResult) {
-                if (locationResult != null && !locationResult.getLocations().isEmpty()) {
-                    Location location = locationResult.getLastLocation();
-                    callback.onLocationReceived(location);
-                    fusedLocationClient.removeLocationUpdates(this);
-                }
-            }
-        };
-        
-        try {
-            fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
-            
-            // Remove updates after 30 seconds to prevent battery drain
-            android.os.Handler handler = new android.os.Handler(Looper.getMainLooper());
-            handler.postDelayed(() -> {
-                fusedLocationClient.removeLocationUpdates(locationCallback);
-                callback.onLocationError("Location request timeout");
-            }, 30000);
-            
-        } catch (SecurityException e) {
-            callback.onLocationError("Security exception: " + e.getMessage());
+    /**
+     * Answers at once with the best fix the device has, then keeps the shared
+     * {@link LocationBroker} session running and reports better fixes until one
+     * is at most maxAgeMillis old and within targetAccuracyMeters, or
+     * timeoutMillis passes.
+     */
+    public static Cancellable getProgressiveLocation(Context context, long maxAgeMillis, float targetAccuracyMeters,
+                                                     long timeoutMillis, ProgressiveLocationCallback callback) {
+        if (!hasLocationPermission(context)) {
+            callback.onLocationError("Location permission not granted");
+            return () -> {};
         }
+        
+        return LocationBroker.getInstance(context).requestProgressiveLocation(maxAgeMillis, targetAccuracyMeters,
+                timeoutMillis, callback);
     }
     
     public static boolean hasLocationPermission(Context context) {
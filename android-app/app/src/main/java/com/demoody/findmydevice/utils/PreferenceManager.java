@@ -4,6 +4,10 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import androidx.security.crypto.EncryptedSharedPreferences;
 import androidx.security.crypto.MasterKey;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class PreferenceManager {
     private static final String PREF_NAME = "device_prefs";
@@ -11,15 +15,33 @@ public class PreferenceManager {
     private static final String KEY_DEVICE_NAME = "device_name";
     private static final String KEY_DEVICE_TOKEN = "device_token";
     private static final String KEY_IS_REGISTERED = "is_registered";
+    private static final String KEY_SERVER_REGISTERED = "server_registered";
     private static final String KEY_TRACKING_ENABLED = "tracking_enabled";
     private static final String KEY_LAST_SIM_SERIAL = "last_sim_serial";
     private static final String KEY_SERVER_URL = "server_url";
     private static final String KEY_FAKE_SHUTDOWN_PASSWORD = "fake_shutdown_password";
     private static final String KEY_SMS_SECRET = "sms_secret";
+    private static final String KEY_LAST_COMMAND_ID = "last_command_id";
+    private static final String KEY_INSIDE_GEOFENCES = "inside_geofences";
+    private static final String KEY_TRAJECTORY_TOLERANCE = "trajectory_tolerance";
+    private static final String KEY_BURST_STARTED_AT = "burst_started_at";
+    private static final String KEY_BURST_REASON = "burst_reason";
+    private static final String KEY_FCM_TOKEN = "fcm_token";
+    private static final String KEY_SYNCED_FCM_TOKEN = "synced_fcm_token";
+    
+    private static volatile PreferenceManager instance;
+    
+    public interface OnSettingChangedListener {
+        // key is null when all settings were cleared
+        void onSettingChanged(String key);
+    }
     
     private SharedPreferences sharedPreferences;
+    private volatile SettingsSnapshot snapshot;
+    private final Object writeLock = new Object();
+    private final List<OnSettingChangedListener> listeners = new CopyOnWriteArrayList<>();
     
-    public PreferenceManager(Context context) {
+    private PreferenceManager(Context context) {
         try {
             MasterKey masterKey = new MasterKey.Builder(context)
                     .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
@@ -36,81 +58,238 @@ public class PreferenceManager {
             // Fallback to regular SharedPreferences if encryption fails
             sharedPreferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
         }
+        
+        // Decrypt everything once; all reads are served from memory afterwards
+        snapshot = SettingsSnapshot.of(sharedPreferences.getAll());
+    }
+    
+    public static PreferenceManager getInstance(Context context) {
+        if (instance == null) {
+            synchronized (PreferenceManager.class) {
+                if (instance == null) {
+                    instance = new PreferenceManager(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+    
+    public void registerListener(OnSettingChangedListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void unregisterListener(OnSettingChangedListener listener) {
+        listeners.remove(listener);
+    }
+    
+    // Applied at once rather than batched: apply() is already asynchronous, and Android's
+    // QueuedWork waits for it before a receiver or service is counted as finished
+    private void put(String key, Object value) {
+        synchronized (writeLock) {
+            snapshot = snapshot.with(key, value);
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            if (value == null) {
+                editor.remove(key);
+            } else if (value instanceof String) {
+                editor.putString(key, (String) value);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(key, (Integer) value);
+            } else if (value instanceof Long) {
+                editor.putLong(key, (Long) value);
+            }
+            editor.apply();
+        }
+        notifyListeners(key);
+    }
+    
+    private void notifyListeners(String key) {
+        for (OnSettingChangedListener listener : listeners) {
+            listener.onSettingChanged(key);
+        }
     }
     
     public void setDeviceId(String deviceId) {
-        sharedPreferences.edit().putString(KEY_DEVICE_ID, deviceId).apply();
+        put(KEY_DEVICE_ID, deviceId);
     }
     
     public String getDeviceId() {
-        return sharedPreferences.getString(KEY_DEVICE_ID, null);
+        return snapshot.getString(KEY_DEVICE_ID, null);
     }
     
     public void setDeviceName(String deviceName) {
-        sharedPreferences.edit().putString(KEY_DEVICE_NAME, deviceName).apply();
+        put(KEY_DEVICE_NAME, deviceName);
     }
     
     public String getDeviceName() {
-        return sharedPreferences.getString(KEY_DEVICE_NAME, "Unknown Device");
+        return snapshot.getString(KEY_DEVICE_NAME, "Unknown Device");
     }
     
     public void setDeviceToken(String token) {
-        sharedPreferences.edit().putString(KEY_DEVICE_TOKEN, token).apply();
+        put(KEY_DEVICE_TOKEN, token);
     }
     
     public String getDeviceToken() {
-        return sharedPreferences.getString(KEY_DEVICE_TOKEN, null);
+        return snapshot.getString(KEY_DEVICE_TOKEN, null);
     }
     
     public void setDeviceRegistered(boolean registered) {
-        sharedPreferences.edit().putBoolean(KEY_IS_REGISTERED, registered).apply();
+        put(KEY_IS_REGISTERED, registered);
     }
     
     public boolean isDeviceRegistered() {
-        return sharedPreferences.getBoolean(KEY_IS_REGISTERED, false);
+        return snapshot.getBoolean(KEY_IS_REGISTERED, false);
+    }
+    
+    public void setServerRegistered(boolean registered) {
+        put(KEY_SERVER_REGISTERED, registered);
+    }
+    
+    /**
+     * @return whether the server has accepted the device token; until then nothing authenticated is sent
+     */
+    public boolean isServerRegistered() {
+        return snapshot.getBoolean(KEY_SERVER_REGISTERED, false);
+    }
+    
+    public void setFcmToken(String token) {
+        put(KEY_FCM_TOKEN, token);
+    }
+    
+    public String getFcmToken() {
+        return snapshot.getString(KEY_FCM_TOKEN, null);
+    }
+    
+    // The FCM token the server last accepted for this device
+    public void setSyncedFcmToken(String token) {
+        put(KEY_SYNCED_FCM_TOKEN, token);
+    }
+    
+    public String getSyncedFcmToken() {
+        return snapshot.getString(KEY_SYNCED_FCM_TOKEN, null);
+    }
+    
+    /**
+     * @return whether the server can reach this device by push, so commands need not be long-polled
+     */
+    public boolean isPushActive() {
+        String token = getFcmToken();
+        return token != null && token.equals(getSyncedFcmToken()) && isServerRegistered();
     }
     
     public void setTrackingEnabled(boolean enabled) {
-        sharedPreferences.edit().putBoolean(KEY_TRACKING_ENABLED, enabled).apply();
+        put(KEY_TRACKING_ENABLED, enabled);
     }
     
     public boolean isTrackingEnabled() {
-        return sharedPreferences.getBoolean(KEY_TRACKING_ENABLED, false);
+        return snapshot.getBoolean(KEY_TRACKING_ENABLED, false);
     }
     
     public void setLastSimSerial(String simSerial) {
-        sharedPreferences.edit().putString(KEY_LAST_SIM_SERIAL, simSerial).apply();
+        put(KEY_LAST_SIM_SERIAL, simSerial);
     }
     
     public String getLastSimSerial() {
-        return sharedPreferences.getString(KEY_LAST_SIM_SERIAL, null);
+        return snapshot.getString(KEY_LAST_SIM_SERIAL, null);
     }
     
     public void setServerUrl(String url) {
-        sharedPreferences.edit().putString(KEY_SERVER_URL, url).apply();
+        put(KEY_SERVER_URL, url);
     }
     
     public String getServerUrl() {
-        return sharedPreferences.getString(KEY_SERVER_URL, "https://api.findmydevice.demoody.com");
+        return snapshot.getString(KEY_SERVER_URL, "https://api.findmydevice.demoody.com");
     }
     
     public void setFakeShutdownPassword(String password) {
-        sharedPreferences.edit().putString(KEY_FAKE_SHUTDOWN_PASSWORD, password).apply();
+        put(KEY_FAKE_SHUTDOWN_PASSWORD, password);
     }
     
     public String getFakeShutdownPassword() {
-        return sharedPreferences.getString(KEY_FAKE_SHUTDOWN_PASSWORD, "1234");
+        return snapshot.getString(KEY_FAKE_SHUTDOWN_PASSWORD, "1234");
     }
     
     public void setSmsSecret(String secret) {
-        sharedPreferences.edit().putString(KEY_SMS_SECRET, secret).apply();
+        put(KEY_SMS_SECRET, secret);
     }
     
     public String getSmsSecret() {
-        return sharedPreferences.getString(KEY_SMS_SECRET, null);
+        return snapshot.getString(KEY_SMS_SECRET, null);
+    }
+    
+    public void setLastCommandId(int commandId) {
+        put(KEY_LAST_COMMAND_ID, commandId);
+    }
+    
+    public int getLastCommandId() {
+        return snapshot.getInt(KEY_LAST_COMMAND_ID, 0);
+    }
+    
+    public void setTrajectoryTolerance(int metres) {
+        put(KEY_TRAJECTORY_TOLERANCE, metres);
+    }
+    
+    /**
+     * @return how far in metres the uploaded track may deviate from the recorded one; 0 uploads every fix
+     */
+    public int getTrajectoryTolerance() {
+        return snapshot.getInt(KEY_TRAJECTORY_TOLERANCE, 10);
+    }
+    
+    /**
+     * Records the start of a theft burst so it resumes if the tracking service restarts.
+     */
+    public void setBurst(long startedAt, String reason) {
+        put(KEY_BURST_STARTED_AT, startedAt);
+        put(KEY_BURST_REASON, reason);
+    }
+    
+    public void clearBurst() {
+        put(KEY_BURST_STARTED_AT, null);
+        put(KEY_BURST_REASON, null);
+    }
+    
+    /**
+     * @return start time of the current theft burst, or 0 if none
+     */
+    public long getBurstStartedAt() {
+        return snapshot.getLong(KEY_BURST_STARTED_AT, 0);
+    }
+    
+    public String getBurstReason() {
+        return snapshot.getString(KEY_BURST_REASON, null);
+    }
+    
+    public void setInsideGeofences(Set<Integer> fenceIds) {
+        StringBuilder ids = new StringBuilder();
+        for (Integer id : fenceIds) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(id);
+        }
+        put(KEY_INSIDE_GEOFENCES, ids.toString());
+    }
+    
+    public Set<Integer> getInsideGeofences() {
+        Set<Integer> fenceIds = new LinkedHashSet<>();
+        String ids = snapshot.getString(KEY_INSIDE_GEOFENCES, "");
+        for (String id : ids.split(",")) {
+            try {
+                fenceIds.add(Integer.parseInt(id.trim()));
+            } catch (NumberFormatException e) {
+                // Skip empty or damaged entries
+            }
+        }
+        return fenceIds;
     }
     
     public void clearAll() {
-        sharedPreferences.edit().clear().apply();
+        synchronized (writeLock) {
+            snapshot = SettingsSnapshot.EMPTY;
+            sharedPreferences.edit().clear().apply();
+        }
+        notifyListeners(null);
     }
 }
\ No newline at end of file
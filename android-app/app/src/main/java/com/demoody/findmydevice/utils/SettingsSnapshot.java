@@ -0,0 +1,64 @@
+package com.demoody.findmydevice.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable, already-decrypted copy of the settings. Reads never touch disk;
+ * a write produces a new snapshot that replaces the old one.
+ */
+public final class SettingsSnapshot {
+    public static final SettingsSnapshot EMPTY = new SettingsSnapshot(Collections.<String, Object>emptyMap());
+    
+    private final Map<String, Object> values;
+    
+    private SettingsSnapshot(Map<String, Object> values) {
+        this.values = values;
+    }
+    
+    public static SettingsSnapshot of(Map<String, ?> values) {
+        return new SettingsSnapshot(Collections.unmodifiableMap(new HashMap<String, Object>(values)));
+    }
+    
+    /**
+     * @return a copy with the given key set, or removed when value is null
+     */
+    public SettingsSnapshot with(String key, Object value) {
+        Map<String, Object> updated = new HashMap<>(values);
+        if (value == null) {
+            updated.remove(key);
+        } else {
+            updated.put(key, value);
+        }
+        return new SettingsSnapshot(Collections.unmodifiableMap(updated));
+    }
+    
+    public boolean contains(String key) {
+        return values.containsKey(key);
+    }
+    
+    public String getString(String key, String defaultValue) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+    
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+    
+    public int getInt(String key, int defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+    
+    public long getLong(String key, long defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+    
+    public Map<String, Object> asMap() {
+        return values;
+    }
+}
@@ -0,0 +1,37 @@
+package com.demoody.findmydevice.work;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.work.ForegroundInfo;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.demoody.findmydevice.commands.CommandAckJournal;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.utils.PreferenceManager;
+
+/**
+ * Sends journaled command acknowledgements once a network is available.
+ */
+public class AckFlushWorker extends Worker {
+    
+    public AckFlushWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+    
+    @NonNull
+    @Override
+    public Result doWork() {
+        MetricsRegistry.getInstance().counter("wakeups.work.ack_flush").increment();
+        if (!PreferenceManager.getInstance(getApplicationContext()).isServerRegistered()) {
+            // Held, not failed: RegistrationWorker schedules this again once the server accepts the device
+            return Result.success();
+        }
+        return CommandAckJournal.getInstance(getApplicationContext()).flushNow() ? Result.success() : Result.retry();
+    }
+    
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        return WorkScheduler.createForegroundInfo(getApplicationContext());
+    }
+}
\ No newline at end of file
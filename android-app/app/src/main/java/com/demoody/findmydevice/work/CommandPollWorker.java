@@ -0,0 +1,33 @@
+package com.demoody.findmydevice.work;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.work.ForegroundInfo;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.network.CommandChannel;
+
+/**
+ * Fetches pending commands once, for a push that announced a command too
+ * large to carry inline.
+ */
+public class CommandPollWorker extends Worker {
+    
+    public CommandPollWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+    
+    @NonNull
+    @Override
+    public Result doWork() {
+        MetricsRegistry.getInstance().counter("wakeups.work.command_poll").increment();
+        return new CommandChannel(getApplicationContext()).pollNow() ? Result.success() : Result.retry();
+    }
+    
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        return WorkScheduler.createForegroundInfo(getApplicationContext());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.demoody.findmydevice.work;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.demoody.findmydevice.commands.CommandAckJournal;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.network.CommandChannel;
+import com.demoody.findmydevice.network.GeofenceSync;
+import com.demoody.findmydevice.network.LocationUploader;
+import com.demoody.findmydevice.network.MetricsUploader;
+
+/**
+ * Refreshes server-side config (the geofence list). As the periodic job it
+ * also drains queues whose own jobs gave up, so nothing stays stuck, sends
+ * the metrics snapshot along with them and picks up any command whose push
+ * was lost.
+ */
+public class ConfigSyncWorker extends Worker {
+    
+    public ConfigSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+    
+    @NonNull
+    @Override
+    public Result doWork() {
+        MetricsRegistry.getInstance().counter("wakeups.work.config_sync").increment();
+        Context context = getApplicationContext();
+        boolean synced = GeofenceSync.getInstance(context).refreshNow();
+        synced &= LocationUploader.getInstance(context).drainNow();
+        synced &= CommandAckJournal.getInstance(context).flushNow();
+        // The only poll left when tracking is off, since the command channel runs with the tracking service
+        synced &= new CommandChannel(context).pollNow();
+        // Not worth a retry on its own; a failed snapshot is folded into the next one
+        MetricsUploader.getInstance(context).sendNow();
+        return synced ? Result.success() : Result.retry();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.demoody.findmydevice.work;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.models.ApiResponse;
+import com.demoody.findmydevice.network.ApiClient;
+import com.demoody.findmydevice.network.ApiService;
+import com.demoody.findmydevice.utils.PreferenceManager;
+import java.io.IOException;
+import retrofit2.Response;
+
+/**
+ * Tells the server the current FCM token so commands can be pushed instead
+ * of polled. Always sends the latest token, so a run that starts after
+ * several rotations makes a single request.
+ */
+public class FcmTokenWorker extends Worker {
+    private static final String TAG = "FcmTokenWorker";
+    
+    public FcmTokenWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+    
+    @NonNull
+    @Override
+    public Result doWork() {
+        MetricsRegistry.getInstance().counter("wakeups.work.fcm_token").increment();
+        PreferenceManager preferenceManager = PreferenceManager.getInstance(getApplicationContext());
+        ApiClient apiClient = ApiClient.getInstance(getApplicationContext());
+        String deviceId = preferenceManager.getDeviceId();
+        String authHeader = apiClient.getAuthHeader();
+        String token = preferenceManager.getFcmToken();
+        if (token == null || token.equals(preferenceManager.getSyncedFcmToken())) {
+            return Result.success();
+        }
+        if (deviceId == null || authHeader == null) {
+            // Registration sends the token itself once the server accepts the device
+            return Result.success();
+        }
+        
+        try {
+            Response<ApiResponse<Void>> response = apiClient.getApiService()
+                    .updateFcmToken(deviceId, authHeader, new ApiService.FcmTokenUpdate(token))
+                    .execute();
+            
+            if (response.isSuccessful()) {
+                preferenceManager.setSyncedFcmToken(token);
+                Log.d(TAG, "FCM token synced, commands will be pushed");
+                return Result.success();
+            }
+            if (response.code() >= 400 && response.code() < 500) {
+                // A 401 has already queued a registration, which carries the token
+                Log.e(TAG, "FCM token rejected: " + response.code());
+                return Result.failure();
+            }
+            Log.w(TAG, "Failed to sync FCM token: " + response.code());
+        } catch (IOException e) {
+            Log.e(TAG, "Network error syncing FCM token", e);
+        }
+        return Result.retry();
+    }
+}
\ No newline at end of file
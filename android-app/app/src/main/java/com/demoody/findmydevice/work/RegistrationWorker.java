@@ -0,0 +1,115 @@
+package com.demoody.findmydevice.work;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.Data;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.models.ApiResponse;
+import com.demoody.findmydevice.models.DeviceRegistration;
+import com.demoody.findmydevice.network.ApiClient;
+import com.demoody.findmydevice.utils.DeviceUtils;
+import com.demoody.findmydevice.utils.PreferenceManager;
+import java.io.IOException;
+import retrofit2.Response;
+
+/**
+ * Retries registering a device that could only be registered locally, so
+ * the server learns its id and token. Every upload is held until this
+ * succeeds. Each failed attempt queues the next one itself, after a jittered
+ * wait from {@link WorkScheduler}.
+ */
+public class RegistrationWorker extends Worker {
+    private static final String TAG = "RegistrationWorker";
+    private static final String KEY_ATTEMPT = "attempt";
+    
+    public RegistrationWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+    
+    static Data createInput(int attempt) {
+        return new Data.Builder()
+                .putInt(KEY_ATTEMPT, attempt)
+                .build();
+    }
+    
+    @NonNull
+    @Override
+    public Result doWork() {
+        MetricsRegistry.getInstance().counter("wakeups.work.registration").increment();
+        PreferenceManager preferenceManager = PreferenceManager.getInstance(getApplicationContext());
+        String deviceId = preferenceManager.getDeviceId();
+        if (deviceId == null || preferenceManager.isServerRegistered()) {
+            return Result.success();
+        }
+        
+        int attempt = getInputData().getInt(KEY_ATTEMPT, 0);
+        long minDelay = 0;
+        String fcmToken = preferenceManager.getFcmToken();
+        
+        DeviceRegistration registration = new DeviceRegistration(
+                deviceId,
+                preferenceManager.getDeviceName(),
+                preferenceManager.getDeviceToken(),
+                DeviceUtils.getDeviceModel(),
+                DeviceUtils.getOsVersion(),
+                fcmToken
+        );
+        
+        try {
+            Response<ApiResponse<Void>> response = ApiClient.getInstance(getApplicationContext())
+                    .getApiService()
+                    .registerDevice(registration)
+                    .execute();
+            
+            if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
+                if (response.body().getDevice_token() != null) {
+                    preferenceManager.setDeviceToken(response.body().getDevice_token());
+                }
+                preferenceManager.setServerRegistered(true);
+                if (fcmToken != null) {
+                    preferenceManager.setSyncedFcmToken(fcmToken);
+                }
+                Log.d(TAG, "Device registered with server after " + (attempt + 1) + " attempts");
+                // Anything queued while unregistered can go out now
+                WorkScheduler.scheduleUpload(getApplicationContext(), false);
+                WorkScheduler.scheduleAckFlush(getApplicationContext());
+                WorkScheduler.scheduleConfigSync(getApplicationContext());
+                // In case the token changed while this request was in flight
+                WorkScheduler.scheduleFcmTokenSync(getApplicationContext());
+                return Result.success();
+            }
+            
+            int code = response.code();
+            if (code >= 400 && code < 500 && code != 408 && code != 429) {
+                // Rejected outright, e.g. 409 when the server holds a different token for this id.
+                // After a reinstall the owner releases it with DELETE /devices/{id}/token, and the
+                // next app start registers again with the token kept here
+                Log.e(TAG, "Registration refused: " + code + ", uploads stay held");
+                return Result.failure();
+            }
+            
+            Log.w(TAG, "Registration failed: " + code);
+            minDelay = parseRetryAfter(response.headers().get("Retry-After"));
+        } catch (IOException e) {
+            Log.e(TAG, "Network error registering device", e);
+        }
+        
+        WorkScheduler.scheduleRegistrationRetry(getApplicationContext(), attempt + 1, minDelay);
+        return Result.success();
+    }
+    
+    // Only the delay-seconds form; an HTTP date is rare enough to fall back to plain backoff
+    private static long parseRetryAfter(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+package com.demoody.findmydevice.work;
+
+import android.content.Context;
+import android.location.Location;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.Data;
+import androidx.work.ForegroundInfo;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.models.ApiResponse;
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.network.ApiClient;
+import com.demoody.findmydevice.network.ApiService;
+import com.demoody.findmydevice.utils.LocationUtils;
+import com.demoody.findmydevice.utils.PreferenceManager;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import retrofit2.Response;
+
+/**
+ * Sends a {@link ApiService.SimChangeReport} together with a fresh,
+ * high-accuracy fix. Without a fix in time the report goes out without one;
+ * the burst that follows supplies the track.
+ */
+public class SimChangeWorker extends Worker {
+    private static final String TAG = "SimChangeWorker";
+    
+    public static final String KEY_OLD_SERIAL = "old_serial";
+    public static final String KEY_NEW_SERIAL = "new_serial";
+    public static final String KEY_NEW_OPERATOR = "new_operator";
+    public static final String KEY_NEW_NUMBER = "new_number";
+    
+    private static final long MAX_FIX_AGE = 30 * 1000;
+    private static final float MAX_FIX_ACCURACY = 50; // metres
+    private static final long FIX_TIMEOUT = 40; // seconds, fresh fixes give up after 30
+    
+    public SimChangeWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+    
+    public static Data createInput(String oldSerial, String newSerial, String newOperator, String newNumber) {
+        return new Data.Builder()
+                .putString(KEY_OLD_SERIAL, oldSerial)
+                .putString(KEY_NEW_SERIAL, newSerial)
+                .putString(KEY_NEW_OPERATOR, newOperator)
+                .putString(KEY_NEW_NUMBER, newNumber)
+                .build();
+    }
+    
+    @NonNull
+    @Override
+    public Result doWork() {
+        MetricsRegistry.getInstance().counter("wakeups.work.sim_change").increment();
+        PreferenceManager preferenceManager = PreferenceManager.getInstance(getApplicationContext());
+        ApiClient apiClient = ApiClient.getInstance(getApplicationContext());
+        String deviceId = preferenceManager.getDeviceId();
+        String authHeader = apiClient.getAuthHeader();
+        if (deviceId == null || authHeader == null) {
+            Log.w(TAG, "Missing device ID or auth token, holding SIM change report");
+            return Result.retry();
+        }
+        
+        Data input = getInputData();
+        ApiService.SimChangeReport report = new ApiService.SimChangeReport(
+                new ApiService.SimInfo(input.getString(KEY_OLD_SERIAL), null, null),
+                new ApiService.SimInfo(input.getString(KEY_NEW_SERIAL), input.getString(KEY_NEW_OPERATOR),
+                        input.getString(KEY_NEW_NUMBER)),
+                getFreshFix()
+        );
+        
+        try {
+            Response<ApiResponse<Void>> response = apiClient.getApiService()
+                    .reportSimChange(deviceId, authHeader, report)
+                    .execute();
+            
+            if (response.isSuccessful()) {
+                Log.d(TAG, "SIM change reported" + (report.getLocation() == null ? " without a fix" : ""));
+                return Result.success();
+            }
+            if (response.code() >= 400 && response.code() < 500) {
+                // The server won't take this report however often it is sent
+                Log.e(TAG, "SIM change report rejected: " + response.code());
+                return Result.failure();
+            }
+            Log.w(TAG, "Failed to report SIM change: " + response.code());
+        } catch (IOException e) {
+            Log.e(TAG, "Network error reporting SIM change", e);
+        }
+        return Result.retry();
+    }
+    
+    private LocationData getFreshFix() {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<LocationData> fix = new AtomicReference<>();
+        
+        LocationUtils.getCurrentLocation(getApplicationContext(), MAX_FIX_AGE, MAX_FIX_ACCURACY,
+                new LocationUtils.LocationCallback() {
+            @Override
+            public void onLocationReceived(Location location) {
+                fix.set(new LocationData(
+                        location.getLatitude(),
+                        location.getLongitude(),
+                        location.hasAccuracy() ? location.getAccuracy() : -1,
+                        location.getTime(),
+                        location.getProvider()
+                ));
+                latch.countDown();
+            }
+            
+            @Override
+            public void onLocationError(String error) {
+                Log.w(TAG, "No fix for SIM change report: " + error);
+                latch.countDown();
+            }
+        });
+        
+        try {
+            latch.await(FIX_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return fix.get();
+    }
+    
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        return WorkScheduler.createForegroundInfo(getApplicationContext());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.demoody.findmydevice.work;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.work.ForegroundInfo;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.utils.PreferenceManager;
+import com.demoody.findmydevice.network.LocationUploader;
+
+/**
+ * Drains the queued location fixes once a network is available.
+ */
+public class UploadWorker extends Worker {
+    
+    public UploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+    
+    @NonNull
+    @Override
+    public Result doWork() {
+        MetricsRegistry.getInstance().counter("wakeups.work.upload").increment();
+        if (!PreferenceManager.getInstance(getApplicationContext()).isServerRegistered()) {
+            // Held, not failed: RegistrationWorker schedules this again once the server accepts the device
+            return Result.success();
+        }
+        return LocationUploader.getInstance(getApplicationContext()).drainNow() ? Result.success() : Result.retry();
+    }
+    
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        return WorkScheduler.createForegroundInfo(getApplicationContext());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,211 @@
+package com.demoody.findmydevice.work;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Build;
+import androidx.core.app.NotificationCompat;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.ForegroundInfo;
+import androidx.work.ListenableWorker;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import com.demoody.findmydevice.R;
+import com.demoody.findmydevice.utils.Backoff;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single place where background network work is enqueued. Every job waits
+ * for a connection and is unique by name, so repeated requests while one is
+ * pending collapse into a single run that the OS can batch with other wakeups.
+ */
+public class WorkScheduler {
+    static final String UPLOAD_WORK = "location_upload";
+    static final String ACK_FLUSH_WORK = "command_ack_flush";
+    static final String REGISTRATION_WORK = "device_registration";
+    static final String CONFIG_SYNC_WORK = "config_sync";
+    static final String PERIODIC_SYNC_WORK = "periodic_sync";
+    static final String SIM_CHANGE_WORK = "sim_change_report";
+    static final String FCM_TOKEN_WORK = "fcm_token_sync";
+    static final String COMMAND_POLL_WORK = "command_poll";
+    
+    private static final long BACKOFF_DELAY = 30; // seconds
+    private static final long PERIODIC_SYNC_INTERVAL = 30; // minutes
+    private static final long FCM_TOKEN_SYNC_DELAY = 10; // seconds
+    private static final long REGISTRATION_BACKOFF_BASE = 30 * 1000;
+    private static final long REGISTRATION_BACKOFF_CAP = 60 * 60 * 1000;
+    // After a rejected token, the first attempt is already spread over this retry's window
+    private static final int REJOIN_ATTEMPT = 1;
+    private static final Backoff registrationBackoff = new Backoff(REGISTRATION_BACKOFF_BASE, REGISTRATION_BACKOFF_CAP);
+    private static final String SYNC_CHANNEL_ID = "sync_channel";
+    private static final int SYNC_NOTIFICATION_ID = 1002;
+    
+    private WorkScheduler() {}
+    
+    /**
+     * @param expedited run ahead of the OS's batching, for theft-critical fixes
+     */
+    public static void scheduleUpload(Context context, boolean expedited) {
+        enqueue(context, UPLOAD_WORK, UploadWorker.class, expedited);
+    }
+    
+    // Command results tell the owner what happened to a lost phone, so they always go out expedited
+    public static void scheduleAckFlush(Context context) {
+        enqueue(context, ACK_FLUSH_WORK, AckFlushWorker.class, true);
+    }
+    
+    public static void scheduleRegistration(Context context) {
+        enqueue(context, REGISTRATION_WORK, RegistrationWorker.class, false);
+    }
+    
+    /**
+     * Registers again after the server rejected the device token. A server
+     * that lost its devices rejects the whole fleet at once, so even the first
+     * attempt waits a random time. Does nothing if a registration is already pending.
+     */
+    public static void scheduleReregistration(Context context) {
+        enqueueRegistration(context, REJOIN_ATTEMPT, registrationBackoff.delayMillis(REJOIN_ATTEMPT),
+                ExistingWorkPolicy.KEEP);
+    }
+    
+    /**
+     * Queues registration attempt number attempt to run once the attempt that
+     * just failed has finished. The wait is random, up to a limit that doubles with
+     * each attempt, and never shorter than minDelayMillis.
+     */
+    static void scheduleRegistrationRetry(Context context, int attempt, long minDelayMillis) {
+        long delay = Math.max(registrationBackoff.delayMillis(attempt), minDelayMillis);
+        enqueueRegistration(context, attempt, delay, ExistingWorkPolicy.APPEND_OR_REPLACE);
+    }
+    
+    private static void enqueueRegistration(Context context, int attempt, long delayMillis,
+                                            ExistingWorkPolicy policy) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        
+        // Retries are scheduled by the worker itself, so WorkManager's unjittered backoff never applies
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(RegistrationWorker.class)
+                .setConstraints(constraints)
+                .setInitialDelay(delayMillis, TimeUnit.MILLISECONDS)
+                .setInputData(RegistrationWorker.createInput(attempt))
+                .build();
+        
+        WorkManager.getInstance(context).enqueueUniqueWork(REGISTRATION_WORK, policy, request);
+    }
+    
+    public static void scheduleConfigSync(Context context) {
+        enqueue(context, CONFIG_SYNC_WORK, ConfigSyncWorker.class, false);
+    }
+    
+    /**
+     * Sends the current FCM token to the server after a short quiet period.
+     * Each call restarts the wait, so a burst of token changes goes out as one update.
+     */
+    public static void scheduleFcmTokenSync(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(FcmTokenWorker.class)
+                .setConstraints(constraints)
+                .setInitialDelay(FCM_TOKEN_SYNC_DELAY, TimeUnit.SECONDS)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_DELAY, TimeUnit.SECONDS)
+                .build();
+        
+        WorkManager.getInstance(context).enqueueUniqueWork(FCM_TOKEN_WORK, ExistingWorkPolicy.REPLACE, request);
+    }
+    
+    // A push only announced a command, so fetch it as promptly as the command itself would have run
+    public static void scheduleCommandPoll(Context context) {
+        enqueue(context, COMMAND_POLL_WORK, CommandPollWorker.class, true);
+    }
+    
+    /**
+     * Reports a SIM swap with a fresh fix. A newer swap replaces a report
+     * that hasn't gone out yet, since the server only needs the latest SIM.
+     */
+    public static void scheduleSimChangeReport(Context context, Data input) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(SimChangeWorker.class)
+                .setConstraints(constraints)
+                .setInputData(input)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_DELAY, TimeUnit.SECONDS)
+                .setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST)
+                .build();
+        
+        WorkManager.getInstance(context).enqueueUniqueWork(SIM_CHANGE_WORK, ExistingWorkPolicy.REPLACE, request);
+    }
+    
+    /**
+     * Safety net that refreshes config and drains anything left queued.
+     * Keeps the existing schedule if one is already registered.
+     */
+    public static void schedulePeriodicSync(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(ConfigSyncWorker.class,
+                PERIODIC_SYNC_INTERVAL, TimeUnit.MINUTES)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_DELAY, TimeUnit.SECONDS)
+                .build();
+        
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(PERIODIC_SYNC_WORK, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+    
+    private static void enqueue(Context context, String name, Class<? extends ListenableWorker> worker,
+                                boolean expedited) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(worker)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_DELAY, TimeUnit.SECONDS);
+        if (expedited) {
+            builder.setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST);
+        }
+        
+        // A pending or running job already drains everything queued so far
+        WorkManager.getInstance(context).enqueueUniqueWork(name, ExistingWorkPolicy.KEEP, builder.build());
+    }
+    
+    /**
+     * Expedited work runs as a foreground service before Android 12, which needs a notification.
+     */
+    static ForegroundInfo createForegroundInfo(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                    SYNC_CHANNEL_ID,
+                    context.getString(R.string.sync_notification_channel_name),
+                    NotificationManager.IMPORTANCE_MIN
+            );
+            channel.setDescription(context.getString(R.string.sync_notification_channel_description));
+            channel.setShowBadge(false);
+            context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+        
+        Notification notification = new NotificationCompat.Builder(context, SYNC_CHANNEL_ID)
+                .setContentTitle(context.getString(R.string.sync_notification_title))
+                .setSmallIcon(R.drawable.ic_power_off)
+                .setOngoing(true)
+                .setPriority(NotificationCompat.PRIORITY_MIN)
+                .build();
+        return new ForegroundInfo(SYNC_NOTIFICATION_ID, notification);
+    }
+}
\ No newline at end of file
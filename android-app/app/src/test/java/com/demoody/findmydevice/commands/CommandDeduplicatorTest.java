@@ -0,0 +1,158 @@
+package com.demoody.findmydevice.commands;
+
+import static com.demoody.findmydevice.commands.CommandDeduplicator.CONTENT_WINDOW;
+import static com.demoody.findmydevice.commands.CommandDeduplicator.ID_WINDOW;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.demoody.findmydevice.tracking.Clock;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandDeduplicatorTest {
+    private static final int MAX_ENTRIES = 4;
+    
+    private FakeClock clock;
+    private CommandDeduplicator deduplicator;
+    
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        deduplicator = new CommandDeduplicator(clock, ID_WINDOW, CONTENT_WINDOW, MAX_ENTRIES);
+    }
+    
+    @Test
+    public void sameIdOnAnotherChannelIsSuppressed() {
+        assertTrue(deduplicator.accept("FCM", 42, "LOCK"));
+        assertFalse(deduplicator.accept("POLL", 42, "LOCK"));
+        // The id alone decides, whatever the content
+        assertFalse(deduplicator.accept("POLL", 42, "ALARM"));
+        assertTrue(deduplicator.accept("POLL", 43, "LOCK"));
+    }
+    
+    @Test
+    public void idIsAcceptedAgainOnceItsWindowEnds() {
+        assertTrue(deduplicator.accept("FCM", 42, "LOCK"));
+        
+        clock.advance(ID_WINDOW - 1);
+        assertFalse(deduplicator.accept("POLL", 42, "LOCK"));
+        
+        clock.advance(1);
+        assertTrue(deduplicator.accept("POLL", 42, "LOCK"));
+    }
+    
+    @Test
+    public void repeatedIdDoesNotExtendItsWindow() {
+        assertTrue(deduplicator.accept("FCM", 42, "LOCK"));
+        clock.advance(ID_WINDOW / 2);
+        assertFalse(deduplicator.accept("POLL", 42, "LOCK"));
+        
+        clock.advance(ID_WINDOW / 2);
+        assertTrue(deduplicator.accept("POLL", 42, "LOCK"));
+    }
+    
+    @Test
+    public void sameContentWithoutIdIsSuppressedForContentWindow() {
+        assertTrue(deduplicator.accept("SMS", 0, "LOCK"));
+        assertFalse(deduplicator.accept("SMS", 0, "LOCK"));
+        assertTrue(deduplicator.accept("SMS", 0, "ALARM"));
+        
+        clock.advance(CONTENT_WINDOW - 1);
+        assertFalse(deduplicator.accept("SMS", 0, "LOCK"));
+        
+        // A deliberately repeated SMS gets through well before an id would
+        clock.advance(1);
+        assertTrue(deduplicator.accept("SMS", 0, "LOCK"));
+    }
+    
+    @Test
+    public void idAndContentWindowsAreIndependent() {
+        assertTrue(deduplicator.accept("FCM", 42, "LOCK"));
+        // Same content, but no id: keyed by its hash, not by 42
+        assertTrue(deduplicator.accept("SMS", 0, "LOCK"));
+        
+        clock.advance(CONTENT_WINDOW);
+        assertTrue(deduplicator.accept("SMS", 0, "LOCK"));
+        assertFalse(deduplicator.accept("POLL", 42, "LOCK"));
+    }
+    
+    @Test
+    public void negativeIdAndNullContentAreKeyedByContent() {
+        assertTrue(deduplicator.accept("SMS", -1, "LOCK"));
+        assertFalse(deduplicator.accept("SMS", 0, "LOCK"));
+        
+        assertTrue(deduplicator.accept("SMS", 0, null));
+        assertFalse(deduplicator.accept("SMS", 0, ""));
+    }
+    
+    @Test
+    public void expiredEntriesAreDropped() {
+        deduplicator.accept("FCM", 1, "LOCK");
+        deduplicator.accept("SMS", 0, "LOCK");
+        deduplicator.accept("FCM", 2, "ALARM");
+        assertEquals(3, deduplicator.size());
+        
+        // The content entry goes first even though an id entry was added before it
+        clock.advance(CONTENT_WINDOW);
+        deduplicator.accept("FCM", 3, "WIPE");
+        assertEquals(3, deduplicator.size());
+        
+        clock.advance(ID_WINDOW);
+        assertTrue(deduplicator.accept("FCM", 4, "LOCK"));
+        assertEquals(1, deduplicator.size());
+    }
+    
+    @Test
+    public void oldestEntryIsEvictedPastMaxEntries() {
+        for (int id = 1; id <= MAX_ENTRIES; id++) {
+            assertTrue(deduplicator.accept("FCM", id, "LOCK"));
+        }
+        assertEquals(MAX_ENTRIES, deduplicator.size());
+        
+        assertTrue(deduplicator.accept("FCM", MAX_ENTRIES + 1, "LOCK"));
+        assertEquals(MAX_ENTRIES, deduplicator.size());
+        
+        // Id 1 was evicted, so its late duplicate gets through; the rest are still held
+        assertFalse(deduplicator.accept("POLL", MAX_ENTRIES + 1, "LOCK"));
+        assertFalse(deduplicator.accept("POLL", 2, "LOCK"));
+        assertTrue(deduplicator.accept("POLL", 1, "LOCK"));
+        assertEquals(MAX_ENTRIES, deduplicator.size());
+    }
+    
+    @Test
+    public void snapshotCountsPerChannel() {
+        deduplicator.accept("FCM", 1, "LOCK");
+        deduplicator.accept("POLL", 1, "LOCK");
+        deduplicator.accept("POLL", 2, "ALARM");
+        deduplicator.accept("SMS", 0, "LOCK");
+        deduplicator.accept("SMS", 0, "LOCK");
+        deduplicator.accept(null, 2, "ALARM");
+        
+        Map<String, Long> snapshot = deduplicator.snapshot();
+        
+        assertEquals(Long.valueOf(1), snapshot.get("fcm.accepted"));
+        assertEquals(Long.valueOf(0), snapshot.get("fcm.suppressed"));
+        assertEquals(Long.valueOf(1), snapshot.get("poll.accepted"));
+        assertEquals(Long.valueOf(1), snapshot.get("poll.suppressed"));
+        assertEquals(Long.valueOf(1), snapshot.get("sms.accepted"));
+        assertEquals(Long.valueOf(1), snapshot.get("sms.suppressed"));
+        assertEquals(Long.valueOf(0), snapshot.get("unknown.accepted"));
+        assertEquals(Long.valueOf(1), snapshot.get("unknown.suppressed"));
+        assertEquals(8, snapshot.size());
+    }
+    
+    private static class FakeClock implements Clock {
+        private long now = 1_700_000_000_000L;
+        
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+        
+        void advance(long millis) {
+            now += millis;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,418 @@
+package com.demoody.findmydevice.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.demoody.findmydevice.tracking.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandEngineTest {
+    private static final long TIMEOUT = 10000;
+    private static final long WAIT_SECONDS = 5;
+    
+    private FakeClock clock;
+    private AtomicInteger idleCount;
+    private CommandEngine engine;
+    private Results results;
+    
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        idleCount = new AtomicInteger();
+        results = new Results();
+    }
+    
+    @After
+    public void tearDown() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+    
+    @Test
+    public void runsCommandAndReportsIdle() throws InterruptedException {
+        engine = newEngine(2);
+        
+        assertTrue(engine.submit("LOCK", CommandEngine.Policy.NORMAL, TIMEOUT,
+                completion -> completion.complete(true, "Locked"), results.listener("a")));
+        
+        assertEquals("a LOCK true Locked", results.next());
+        awaitIdle(1);
+        assertTrue(engine.isIdle());
+        assertEquals(Long.valueOf(1), engine.getMetrics().snapshot().get("lock.succeeded"));
+    }
+    
+    @Test
+    public void priorityJumpsAheadOfQueuedCommands() throws InterruptedException {
+        engine = newEngine(1);
+        BlockingTask blocker = new BlockingTask();
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        
+        engine.submit("BLOCK", CommandEngine.Policy.NORMAL, TIMEOUT, blocker, results.listener("blocker"));
+        blocker.awaitStarted();
+        engine.submit("ALARM", CommandEngine.Policy.NORMAL, TIMEOUT, recording(order, "alarm"), results.listener("alarm"));
+        engine.submit("MESSAGE", CommandEngine.Policy.NORMAL, TIMEOUT, recording(order, "message"), results.listener("message"));
+        engine.submit("LOCK", CommandEngine.Policy.PRIORITY, TIMEOUT, recording(order, "lock"), results.listener("lock"));
+        
+        blocker.release();
+        results.next(4);
+        
+        assertEquals(Arrays.asList("lock", "alarm", "message"), order);
+    }
+    
+    @Test
+    public void exclusiveWaitsForRunningCommandOfSameType() throws InterruptedException {
+        engine = newEngine(2);
+        HeldTask first = new HeldTask();
+        HeldTask second = new HeldTask();
+        CountDownLatch laterRan = new CountDownLatch(1);
+        
+        engine.submit("ALARM", CommandEngine.Policy.EXCLUSIVE, TIMEOUT, first, results.listener("first"));
+        first.awaitStarted();
+        engine.submit("ALARM", CommandEngine.Policy.EXCLUSIVE, TIMEOUT, second, results.listener("second"));
+        // Queued behind the second alarm, so once it runs the second alarm has been parked
+        engine.submit("LOCK", CommandEngine.Policy.NORMAL, TIMEOUT, completion -> {
+            laterRan.countDown();
+            completion.complete(true, "Locked");
+        }, results.listener("lock"));
+        
+        assertTrue(laterRan.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("lock LOCK true Locked", results.next());
+        assertFalse(second.hasStarted());
+        
+        first.complete(true, "Played");
+        assertEquals("first ALARM true Played", results.next());
+        second.awaitStarted();
+        second.complete(true, "Played again");
+        assertEquals("second ALARM true Played again", results.next());
+        awaitIdle(1);
+    }
+    
+    @Test
+    public void exclusiveDoesNotBlockOtherTypes() throws InterruptedException {
+        engine = newEngine(2);
+        HeldTask alarm = new HeldTask();
+        HeldTask message = new HeldTask();
+        
+        engine.submit("ALARM", CommandEngine.Policy.EXCLUSIVE, TIMEOUT, alarm, results.listener("alarm"));
+        engine.submit("MESSAGE", CommandEngine.Policy.EXCLUSIVE, TIMEOUT, message, results.listener("message"));
+        
+        alarm.awaitStarted();
+        message.awaitStarted();
+        alarm.complete(true, "Played");
+        message.complete(true, "Shown");
+        results.next(2);
+    }
+    
+    @Test
+    public void coalescedRequestsShareOneRun() throws InterruptedException {
+        engine = newEngine(2);
+        HeldTask locate = new HeldTask();
+        HeldTask duplicate = new HeldTask();
+        
+        engine.submit("LOCATE", CommandEngine.Policy.COALESCE, TIMEOUT, locate, results.listener("a"));
+        locate.awaitStarted();
+        assertTrue(engine.submit("LOCATE", CommandEngine.Policy.COALESCE, TIMEOUT, duplicate, results.listener("b")));
+        
+        locate.complete(true, "Located");
+        
+        assertEquals(Arrays.asList("a LOCATE true Located", "b LOCATE true Located"), results.next(2));
+        assertFalse(duplicate.hasStarted());
+        Map<String, Long> snapshot = engine.getMetrics().snapshot();
+        assertEquals(Long.valueOf(1), snapshot.get("locate.submitted"));
+        assertEquals(Long.valueOf(1), snapshot.get("locate.coalesced"));
+        awaitIdle(1);
+    }
+    
+    @Test
+    public void coalesceStartsNewRunAfterFinish() throws InterruptedException {
+        engine = newEngine(1);
+        
+        engine.submit("LOCATE", CommandEngine.Policy.COALESCE, TIMEOUT,
+                completion -> completion.complete(true, "First"), results.listener("a"));
+        assertEquals("a LOCATE true First", results.next());
+        awaitIdle(1);
+        engine.submit("LOCATE", CommandEngine.Policy.COALESCE, TIMEOUT,
+                completion -> completion.complete(true, "Second"), results.listener("b"));
+        
+        assertEquals("b LOCATE true Second", results.next());
+    }
+    
+    @Test
+    public void timeoutFailsCommandAndRunsCancelActions() throws InterruptedException {
+        engine = newEngine(1);
+        HeldTask stuck = new HeldTask();
+        CountDownLatch cancelled = new CountDownLatch(1);
+        
+        engine.submit("LOCATE", CommandEngine.Policy.COALESCE, 50, stuck, results.listener("a"));
+        stuck.awaitStarted();
+        stuck.completion.onCancelled(cancelled::countDown);
+        
+        assertEquals("a LOCATE false Timed out", results.next());
+        assertTrue(cancelled.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        awaitIdle(1);
+        
+        // A late completion is ignored
+        stuck.complete(true, "Located");
+        assertNull(results.poll());
+        Map<String, Long> snapshot = engine.getMetrics().snapshot();
+        assertEquals(Long.valueOf(1), snapshot.get("locate.timed_out"));
+        assertEquals(Long.valueOf(0), snapshot.get("locate.succeeded"));
+    }
+    
+    @Test
+    public void cancelActionAddedAfterTimeoutRunsAtOnce() throws InterruptedException {
+        engine = newEngine(1);
+        HeldTask stuck = new HeldTask();
+        
+        engine.submit("ALARM", CommandEngine.Policy.EXCLUSIVE, 50, stuck, results.listener("a"));
+        stuck.awaitStarted();
+        assertEquals("a ALARM false Timed out", results.next());
+        
+        AtomicInteger ran = new AtomicInteger();
+        stuck.completion.onCancelled(ran::incrementAndGet);
+        
+        assertEquals(1, ran.get());
+    }
+    
+    @Test
+    public void completionDoesNotRunCancelActions() throws InterruptedException {
+        engine = newEngine(1);
+        AtomicInteger ran = new AtomicInteger();
+        
+        engine.submit("ALARM", CommandEngine.Policy.EXCLUSIVE, TIMEOUT, completion -> {
+            completion.onCancelled(ran::incrementAndGet);
+            completion.complete(true, "Played");
+        }, results.listener("a"));
+        
+        assertEquals("a ALARM true Played", results.next());
+        assertEquals(0, ran.get());
+    }
+    
+    @Test
+    public void timedOutExclusiveReleasesNextOfSameType() throws InterruptedException {
+        engine = newEngine(2);
+        HeldTask stuck = new HeldTask();
+        
+        engine.submit("ALARM", CommandEngine.Policy.EXCLUSIVE, 50, stuck, results.listener("a"));
+        stuck.awaitStarted();
+        engine.submit("ALARM", CommandEngine.Policy.EXCLUSIVE, TIMEOUT,
+                completion -> completion.complete(true, "Played"), results.listener("b"));
+        
+        assertEquals(Arrays.asList("a ALARM false Timed out", "b ALARM true Played"), results.next(2));
+    }
+    
+    @Test
+    public void throwingTaskFails() throws InterruptedException {
+        engine = newEngine(1);
+        
+        engine.submit("WIPE", CommandEngine.Policy.NORMAL, TIMEOUT, completion -> {
+            throw new IllegalStateException("no admin");
+        }, results.listener("a"));
+        
+        assertEquals("a WIPE false Error executing command: no admin", results.next());
+        awaitIdle(1);
+    }
+    
+    @Test
+    public void fullQueueRejectsCommand() throws InterruptedException {
+        engine = newEngine(1);
+        BlockingTask blocker = new BlockingTask();
+        
+        engine.submit("BLOCK", CommandEngine.Policy.NORMAL, TIMEOUT, blocker, results.listener("blocker"));
+        blocker.awaitStarted();
+        for (int i = 1; i < 32; i++) {
+            assertTrue(engine.submit("MESSAGE", CommandEngine.Policy.NORMAL, TIMEOUT,
+                    completion -> completion.complete(true, "Shown"), results.listener("m")));
+        }
+        
+        assertFalse(engine.submit("LOCK", CommandEngine.Policy.PRIORITY, TIMEOUT,
+                completion -> completion.complete(true, "Locked"), results.listener("lock")));
+        assertEquals("lock LOCK false Command queue full", results.next());
+        assertEquals(Long.valueOf(1), engine.getMetrics().snapshot().get("lock.rejected"));
+        
+        blocker.release();
+        results.next(32);
+        awaitIdle(1);
+    }
+    
+    @Test
+    public void idleFiresOnlyWhenLastCommandFinishes() throws InterruptedException {
+        engine = newEngine(2);
+        HeldTask first = new HeldTask();
+        HeldTask second = new HeldTask();
+        
+        engine.submit("ALARM", CommandEngine.Policy.NORMAL, TIMEOUT, first, results.listener("a"));
+        engine.submit("LOCATE", CommandEngine.Policy.NORMAL, TIMEOUT, second, results.listener("b"));
+        first.awaitStarted();
+        second.awaitStarted();
+        
+        first.complete(true, "Played");
+        results.next();
+        assertEquals(0, idleCount.get());
+        assertFalse(engine.isIdle());
+        
+        second.complete(true, "Located");
+        results.next();
+        awaitIdle(1);
+    }
+    
+    @Test
+    public void recordsQueueAndRunTimeFromClock() throws InterruptedException {
+        engine = newEngine(1);
+        BlockingTask blocker = new BlockingTask();
+        HeldTask queued = new HeldTask();
+        
+        engine.submit("BLOCK", CommandEngine.Policy.NORMAL, TIMEOUT, blocker, results.listener("blocker"));
+        blocker.awaitStarted();
+        engine.submit("LOCATE", CommandEngine.Policy.NORMAL, TIMEOUT, queued, results.listener("locate"));
+        assertEquals(1, engine.getMetrics().getQueueDepth("LOCATE"));
+        
+        clock.advance(1500);
+        blocker.release();
+        queued.awaitStarted();
+        clock.advance(700);
+        queued.complete(true, "Located");
+        results.next(2);
+        
+        Map<String, Long> snapshot = engine.getMetrics().snapshot();
+        assertEquals(Long.valueOf(1500), snapshot.get("locate.max_queue_ms"));
+        assertEquals(Long.valueOf(700), snapshot.get("locate.total_run_ms"));
+        assertEquals(Long.valueOf(1500), snapshot.get("block.total_run_ms"));
+        assertEquals(0, engine.getMetrics().getQueueDepth("LOCATE"));
+    }
+    
+    @Test
+    public void submitAfterShutdownFailsWithoutThrowing() throws InterruptedException {
+        engine = newEngine(1);
+        engine.shutdown();
+        
+        assertTrue(engine.submit("LOCK", CommandEngine.Policy.PRIORITY, TIMEOUT,
+                completion -> completion.complete(true, "Locked"), results.listener("a")));
+        
+        assertEquals("a LOCK false Command engine shut down", results.next());
+        assertTrue(engine.isIdle());
+    }
+    
+    private CommandEngine newEngine(int workers) {
+        return new CommandEngine(workers, clock, idleCount::incrementAndGet);
+    }
+    
+    private void awaitIdle(int expected) throws InterruptedException {
+        // The idle listener runs after the result listeners, on the finishing thread
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_SECONDS);
+        while (idleCount.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, idleCount.get());
+    }
+    
+    private static CommandEngine.CommandTask recording(List<String> order, String name) {
+        return completion -> {
+            order.add(name);
+            completion.complete(true, name);
+        };
+    }
+    
+    // Records the completion it is run with and leaves finishing to the test
+    private static class HeldTask implements CommandEngine.CommandTask {
+        private final CountDownLatch started = new CountDownLatch(1);
+        volatile CommandEngine.Completion completion;
+        
+        @Override
+        public void execute(CommandEngine.Completion completion) {
+            this.completion = completion;
+            started.countDown();
+        }
+        
+        void awaitStarted() throws InterruptedException {
+            assertTrue("task never started", started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        }
+        
+        boolean hasStarted() {
+            return started.getCount() == 0;
+        }
+        
+        void complete(boolean success, String message) {
+            assertNotNull(completion);
+            completion.complete(success, message);
+        }
+    }
+    
+    // Holds its worker thread until released, so later commands stay queued
+    private static class BlockingTask implements CommandEngine.CommandTask {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        
+        @Override
+        public void execute(CommandEngine.Completion completion) throws InterruptedException {
+            started.countDown();
+            released.await();
+            completion.complete(true, "Done");
+        }
+        
+        void awaitStarted() throws InterruptedException {
+            assertTrue("task never started", started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        }
+        
+        void release() {
+            released.countDown();
+        }
+    }
+    
+    private static class Results {
+        private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        
+        CommandEngine.ResultListener listener(String name) {
+            return (type, success, message) -> queue.add(name + " " + type + " " + success + " " + message);
+        }
+        
+        String next() throws InterruptedException {
+            String result = queue.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull("no result", result);
+            return result;
+        }
+        
+        List<String> next(int count) throws InterruptedException {
+            List<String> next = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                next.add(next());
+            }
+            return next;
+        }
+        
+        // Waits briefly for a result that should not arrive
+        String poll() throws InterruptedException {
+            return queue.poll(100, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private static class FakeClock implements Clock {
+        private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+        
+        @Override
+        public long currentTimeMillis() {
+            return now.get();
+        }
+        
+        void advance(long millis) {
+            now.addAndGet(millis);
+        }
+    }
+}
\ No newline at end of file
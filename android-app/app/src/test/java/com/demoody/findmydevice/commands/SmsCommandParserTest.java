@@ -0,0 +1,132 @@
+package com.demoody.findmydevice.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+
+public class SmsCommandParserTest {
+    private static final String DEVICE_ID = "dev-7f3a";
+    private static final String SECRET = "s3cret!";
+    
+    @Test
+    public void bareCommandDefaultsToLocate() {
+        assertCommand("FINDMY dev-7f3a s3cret!", SmsCommandParser.DEFAULT_COMMAND, null);
+    }
+    
+    @Test
+    public void parsesCommandAndArgument() {
+        assertCommand("FINDMY dev-7f3a s3cret! lock", "LOCK", null);
+        assertCommand("FINDMY dev-7f3a s3cret! alarm 30", "ALARM", "30");
+        assertCommand("FINDMY dev-7f3a s3cret! SHOW_MESSAGE Please call  +44 7700 900000",
+                "SHOW_MESSAGE", "Please call  +44 7700 900000");
+    }
+    
+    @Test
+    public void toleratesWhitespaceAndKeywordCase() {
+        assertCommand("  findMy\tdev-7f3a\n s3cret!  ", SmsCommandParser.DEFAULT_COMMAND, null);
+        assertCommand("FINDMY  dev-7f3a  s3cret!  Ring \t", "RING", null);
+        // The argument keeps its inner whitespace but not the trailing run
+        assertCommand("FINDMY dev-7f3a s3cret! SHOW_MESSAGE \n Lost phone \n\t ", "SHOW_MESSAGE", "Lost phone");
+    }
+    
+    @Test
+    public void rejectsOtherMessages() {
+        assertRejected("Hello, are you there?");
+        assertRejected("");
+        assertRejected("   ");
+        assertRejected("FINDMYX dev-7f3a s3cret!");
+        assertRejected("FIND MY dev-7f3a s3cret!");
+        assertRejected("FINDMY");
+    }
+    
+    @Test
+    public void rejectsOtherDevice() {
+        assertRejected("FINDMY dev-0000 s3cret!");
+        // Device ids match exactly, unlike the keyword
+        assertRejected("FINDMY DEV-7F3A s3cret!");
+        assertRejected("FINDMY dev-7f3 s3cret!");
+        assertRejected("FINDMY dev-7f3ab s3cret!");
+    }
+    
+    @Test
+    public void rejectsWrongSecret() {
+        assertRejected("FINDMY dev-7f3a s3cret? LOCK");
+        assertRejected("FINDMY dev-7f3a x3cret! LOCK");
+        assertRejected("FINDMY dev-7f3a S3CRET! LOCK");
+    }
+    
+    @Test
+    public void rejectsSecretThatOnlySharesAPrefix() {
+        // Shorter: the missing characters compare against 0
+        assertRejected("FINDMY dev-7f3a s3cret LOCK");
+        assertRejected("FINDMY dev-7f3a s LOCK");
+        // Longer: the length check catches what the loop never reads
+        assertRejected("FINDMY dev-7f3a s3cret!! LOCK");
+        assertRejected("FINDMY dev-7f3a s3cret!LOCK");
+    }
+    
+    @Test
+    public void rejectsMissingSecret() {
+        assertRejected("FINDMY dev-7f3a");
+        assertRejected("FINDMY dev-7f3a   ");
+    }
+    
+    @Test
+    public void emptyConfiguredSecretMatchesNothing() {
+        assertNull(SmsCommandParser.parse("FINDMY dev-7f3a", DEVICE_ID, ""));
+        assertNull(SmsCommandParser.parse("FINDMY dev-7f3a LOCK", DEVICE_ID, ""));
+    }
+    
+    @Test
+    public void rejectsMissingInputs() {
+        assertNull(SmsCommandParser.parse(null, DEVICE_ID, SECRET));
+        assertNull(SmsCommandParser.parse("FINDMY dev-7f3a s3cret!", null, SECRET));
+        assertNull(SmsCommandParser.parse("FINDMY dev-7f3a s3cret!", DEVICE_ID, null));
+    }
+    
+    @Test
+    public void joinsPartsPerSenderInOrder() {
+        Map<String, StringBuilder> bodies = SmsCommandParser.joinParts(
+                new String[] {"+441", "+442", "+441", "+442", "+441"},
+                new String[] {"FINDMY dev-7f3a s3", "Hi, ", "cret! SHOW_MESSAGE Ret", "running late", "urn to desk 4"});
+        
+        assertEquals(Arrays.asList("+441", "+442"), new ArrayList<>(bodies.keySet()));
+        assertEquals("FINDMY dev-7f3a s3cret! SHOW_MESSAGE Return to desk 4", bodies.get("+441").toString());
+        assertEquals("Hi, running late", bodies.get("+442").toString());
+        
+        // A secret split across parts only matches once joined
+        assertCommand(bodies.get("+441"), "SHOW_MESSAGE", "Return to desk 4");
+        assertNull(SmsCommandParser.parse(bodies.get("+442"), DEVICE_ID, SECRET));
+    }
+    
+    @Test
+    public void joinSkipsMissingParts() {
+        Map<String, StringBuilder> bodies = SmsCommandParser.joinParts(
+                new String[] {"+441", null, "+441", "+443"},
+                new String[] {"FINDMY dev-7f3a ", null, "s3cret! LOCK", null});
+        
+        assertEquals(1, bodies.size());
+        assertCommand(bodies.get("+441"), "LOCK", null);
+    }
+    
+    @Test
+    public void joinOfNothingIsEmpty() {
+        assertEquals(0, SmsCommandParser.joinParts(new String[0], new String[0]).size());
+    }
+    
+    private static void assertCommand(CharSequence body, String type, String argument) {
+        SmsCommandParser.SmsCommand command = SmsCommandParser.parse(body, DEVICE_ID, SECRET);
+        assertNotNull("not parsed: " + body, command);
+        assertEquals(type, command.getType());
+        assertEquals(argument, command.getArgument());
+    }
+    
+    private static void assertRejected(String body) {
+        assertNull("parsed: " + body, SmsCommandParser.parse(body, DEVICE_ID, SECRET));
+    }
+}
\ No newline at end of file
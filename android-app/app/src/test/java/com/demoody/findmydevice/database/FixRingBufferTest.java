@@ -0,0 +1,266 @@
+package com.demoody.findmydevice.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.demoody.findmydevice.models.LocationData;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FixRingBufferTest {
+    private static final int CAPACITY = 8;
+    // Layout from the FixRingBuffer class comment
+    private static final int HEADER_SIZE = 64;
+    private static final int HEAD_OFFSET = 16;
+    private static final int TAIL_OFFSET = 24;
+    private static final int SEQUENCE_OFFSET = 24;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File file;
+    
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "fix_ring.bin");
+    }
+    
+    @Test
+    public void readsBackWhatWasAppended() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            ring.append(new LocationData(51.5054321, -0.1254321, 12.3, 1000, "gps"));
+            ring.append(new LocationData(-33.8688197, 151.2092955, -1, 2000, null));
+            ring.append(new LocationData(0, 0, 5, 3000, "bluetooth"));
+            
+            List<LocationData> fixes = ring.read(10).getFixes();
+            
+            assertEquals(3, fixes.size());
+            assertFix(fixes.get(0), 51.5054321, -0.1254321, 12.3, 1000, "gps");
+            assertFix(fixes.get(1), -33.8688197, 151.2092955, -1, 2000, null);
+            // Providers outside the dictionary are kept as "other"
+            assertFix(fixes.get(2), 0, 0, 5, 3000, "other");
+        }
+    }
+    
+    @Test
+    public void readDoesNotConsumeUntilCommit() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, 5);
+            
+            FixRingBuffer.Batch batch = ring.read(3);
+            assertEquals(3, batch.getFixes().size());
+            assertEquals(5, ring.size());
+            
+            ring.commit(batch.getEndSequence());
+            
+            assertEquals(2, ring.size());
+            assertTimestamps(ring.read(10).getFixes(), 3, 4);
+        }
+    }
+    
+    @Test
+    public void wraparoundOverwritesOldest() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, CAPACITY + 3);
+            
+            assertEquals(CAPACITY, ring.size());
+            assertTimestamps(ring.read(CAPACITY).getFixes(), 3, 4, 5, 6, 7, 8, 9, 10);
+        }
+    }
+    
+    @Test
+    public void commitAfterOverwriteNeverMovesTailBack() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, 4);
+            FixRingBuffer.Batch batch = ring.read(4);
+            
+            // The read records are overwritten before the commit arrives
+            appendFixes(ring, 4, CAPACITY + 2);
+            ring.commit(batch.getEndSequence());
+            
+            assertEquals(CAPACITY, ring.size());
+            assertTimestamps(ring.read(CAPACITY).getFixes(), 6, 7, 8, 9, 10, 11, 12, 13);
+        }
+    }
+    
+    @Test
+    public void commitPastHeadStopsAtHead() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, 2);
+            ring.commit(100);
+            
+            assertEquals(0, ring.size());
+            appendFixes(ring, 2, 1);
+            assertTimestamps(ring.read(10).getFixes(), 2);
+        }
+    }
+    
+    @Test
+    public void reopenKeepsUnconsumedFixes() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, CAPACITY + 2);
+            ring.commit(ring.read(3).getEndSequence());
+        }
+        
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            assertEquals(CAPACITY - 3, ring.size());
+            assertTimestamps(ring.read(CAPACITY).getFixes(), 5, 6, 7, 8, 9);
+        }
+    }
+    
+    @Test
+    public void reopenWithoutCloseSeesAppendedFixes() throws IOException {
+        // The process is killed without close() or force(); the mapping's pages still hold the records
+        FixRingBuffer crashed = new FixRingBuffer(file, CAPACITY);
+        appendFixes(crashed, 0, 3);
+        
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            assertTimestamps(ring.read(10).getFixes(), 0, 1, 2);
+        }
+        crashed.close();
+    }
+    
+    @Test
+    public void tornRecordIsSkipped() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, 3);
+        }
+        // Counted by head, but the crash hit before its commit marker was written
+        writeLong(recordOffset(1) + SEQUENCE_OFFSET, 0);
+        
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            FixRingBuffer.Batch batch = ring.read(10);
+            
+            assertTimestamps(batch.getFixes(), 0, 2);
+            // The torn record is consumed along with the rest
+            ring.commit(batch.getEndSequence());
+            assertEquals(0, ring.size());
+        }
+    }
+    
+    @Test
+    public void staleRecordFromEarlierLapIsSkipped() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, CAPACITY);
+            ring.commit(ring.read(CAPACITY).getEndSequence());
+            appendFixes(ring, CAPACITY, 2);
+        }
+        // Slot of sequence CAPACITY + 1 still carries the marker of the lap before
+        writeLong(recordOffset(CAPACITY + 1) + SEQUENCE_OFFSET, 2);
+        
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            assertTimestamps(ring.read(10).getFixes(), CAPACITY);
+        }
+    }
+    
+    @Test
+    public void uncommittedRecordIsNotCounted() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, 2);
+            appendFixes(ring, 2, 1);
+        }
+        // The third record was fully written but the crash hit before head moved past it
+        writeLong(HEAD_OFFSET, 2);
+        
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            assertEquals(2, ring.size());
+            assertTimestamps(ring.read(10).getFixes(), 0, 1);
+            // The next append takes over the slot
+            appendFixes(ring, 7, 1);
+            assertTimestamps(ring.read(10).getFixes(), 0, 1, 7);
+        }
+    }
+    
+    @Test
+    public void corruptCountersStartEmpty() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, 3);
+        }
+        writeLong(TAIL_OFFSET, 5);
+        
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            assertEquals(0, ring.size());
+        }
+    }
+    
+    @Test
+    public void headTooFarAheadIsClampedToCapacity() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, CAPACITY + 4);
+        }
+        writeLong(TAIL_OFFSET, 0);
+        
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            assertEquals(CAPACITY, ring.size());
+            assertTimestamps(ring.read(CAPACITY).getFixes(), 4, 5, 6, 7, 8, 9, 10, 11);
+        }
+    }
+    
+    @Test
+    public void differentCapacityStartsEmpty() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, 3);
+        }
+        
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY * 2)) {
+            assertEquals(0, ring.size());
+            assertEquals(CAPACITY * 2, ring.getCapacity());
+        }
+    }
+    
+    @Test
+    public void badMagicStartsEmpty() throws IOException {
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            appendFixes(ring, 0, 3);
+        }
+        writeLong(0, 0);
+        
+        try (FixRingBuffer ring = new FixRingBuffer(file, CAPACITY)) {
+            assertEquals(0, ring.size());
+        }
+    }
+    
+    // Fixes whose timestamps are first, first + 1, ...
+    private static void appendFixes(FixRingBuffer ring, int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            ring.append(51.5 + i * 1e-4, -0.12, 10, i, "fused");
+        }
+    }
+    
+    private static void assertTimestamps(List<LocationData> fixes, long... expected) {
+        assertEquals(expected.length, fixes.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], fixes.get(i).getTimestamp());
+        }
+    }
+    
+    private static void assertFix(LocationData fix, double lat, double lng, double accuracy, long timestamp,
+                                  String provider) {
+        assertEquals(lat, fix.getLat(), 1e-7);
+        assertEquals(lng, fix.getLng(), 1e-7);
+        assertEquals(accuracy, fix.getAccuracy(), 0.05);
+        assertEquals(timestamp, fix.getTimestamp());
+        if (provider == null) {
+            assertNull(fix.getProvider());
+        } else {
+            assertEquals(provider, fix.getProvider());
+        }
+    }
+    
+    private static long recordOffset(long sequence) {
+        return HEADER_SIZE + (sequence % CAPACITY) * FixRingBuffer.RECORD_SIZE;
+    }
+    
+    private void writeLong(long position, long value) throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(position);
+            raw.writeLong(value);
+        }
+    }
+}
\ No newline at end of file
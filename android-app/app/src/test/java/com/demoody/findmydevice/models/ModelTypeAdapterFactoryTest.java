@@ -0,0 +1,170 @@
+package com.demoody.findmydevice.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Every adapter must write exactly what reflective Gson wrote before it, and
+ * read back what it writes.
+ */
+public class ModelTypeAdapterFactoryTest {
+    private static final Gson STREAMING = new GsonBuilder()
+            .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+            .create();
+    private static final Gson REFLECTIVE = new Gson();
+    
+    @Test
+    public void locationDataMatchesReflection() {
+        assertMatchesAndRoundTrips(new LocationData(51.5007292, -0.1246254, 12.5, 1690000000000L, "fused"),
+                LocationData.class);
+        assertMatchesAndRoundTrips(new LocationData(-33.8688197, 151.2092955, -1, 0, null), LocationData.class);
+        assertMatchesAndRoundTrips(new LocationData(), LocationData.class);
+    }
+    
+    @Test
+    public void remoteCommandMatchesReflection() {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("message", "Call me");
+        payload.addProperty("duration", 30);
+        assertMatchesAndRoundTrips(command(42, "ALARM", payload), RemoteCommand.class);
+        assertMatchesAndRoundTrips(command(7, "LOCK", null), RemoteCommand.class);
+        assertMatchesAndRoundTrips(new RemoteCommand(), RemoteCommand.class);
+    }
+    
+    @Test
+    public void remoteCommandWithEmptyArrayPayloadHasNoPayload() {
+        // PHP's json_encode turns an empty payload array into []
+        RemoteCommand command = STREAMING.fromJson(
+                "{\"id\":3,\"device_id\":\"d1\",\"type\":\"LOCK\",\"payload\":[],\"status\":\"pending\"}",
+                RemoteCommand.class);
+        
+        assertEquals(3, command.getId());
+        assertEquals("LOCK", command.getType());
+        assertNull(command.getPayload());
+        assertEquals("pending", command.getStatus());
+    }
+    
+    @Test
+    public void remoteCommandReadsStringIdLikeReflection() {
+        String json = "{\"id\":\"42\",\"device_id\":\"d1\",\"type\":\"GET_LOCATION\",\"payload\":{\"high\":true},"
+                + "\"created_at\":\"1690000000\"}";
+        
+        RemoteCommand streaming = STREAMING.fromJson(json, RemoteCommand.class);
+        RemoteCommand reflective = REFLECTIVE.fromJson(json, RemoteCommand.class);
+        
+        assertEquals(42, streaming.getId());
+        assertEquals(1690000000L, streaming.getCreated_at());
+        assertEquals(REFLECTIVE.toJson(reflective), REFLECTIVE.toJson(streaming));
+    }
+    
+    @Test
+    public void nullAndUnknownFieldsKeepDefaults() {
+        String json = "{\"id\":null,\"device_id\":\"d1\",\"type\":null,\"extra\":{\"nested\":[1,2]},"
+                + "\"status\":\"sent\",\"executed_at\":null}";
+        
+        RemoteCommand streaming = STREAMING.fromJson(json, RemoteCommand.class);
+        RemoteCommand reflective = REFLECTIVE.fromJson(json, RemoteCommand.class);
+        
+        assertEquals(REFLECTIVE.toJson(reflective), REFLECTIVE.toJson(streaming));
+        // Reflection throws on a null payload; the adapter leaves it unset like any other null
+        assertNull(STREAMING.fromJson("{\"id\":1,\"payload\":null}", RemoteCommand.class).getPayload());
+        assertNull(STREAMING.fromJson("null", LocationData.class));
+    }
+    
+    @Test
+    public void deviceRegistrationMatchesReflection() {
+        assertMatchesAndRoundTrips(new DeviceRegistration("d1", "Pixel", "token", "Pixel 7", "14", "fcm"),
+                DeviceRegistration.class);
+        assertMatchesAndRoundTrips(new DeviceRegistration("d1", "Pixel", null, "Pixel 7", "14", null),
+                DeviceRegistration.class);
+    }
+    
+    @Test
+    public void geofenceMatchesReflection() {
+        assertMatchesAndRoundTrips(new Geofence(5, "Home", 40.7128, -74.006, 150), Geofence.class);
+        assertMatchesAndRoundTrips(new Geofence(0, null, 0, 0, 0), Geofence.class);
+    }
+    
+    @Test
+    public void geofenceListMatchesReflection() {
+        Type type = new TypeToken<List<Geofence>>() {}.getType();
+        List<Geofence> fences = Arrays.asList(new Geofence(1, "Home", 40.7128, -74.006, 150),
+                new Geofence(2, "Work", 40.7306, -73.9352, 80.5));
+        
+        assertMatchesAndRoundTrips(fences, type);
+    }
+    
+    @Test
+    public void geofenceEventMatchesReflection() {
+        LocationData location = new LocationData(40.7128, -74.006, 9.5, 1690000000000L, "fused");
+        assertMatchesAndRoundTrips(new GeofenceEvent(5, GeofenceEvent.TYPE_ENTER, location), GeofenceEvent.class);
+        assertMatchesAndRoundTrips(new GeofenceEvent(6, null, new LocationData()), GeofenceEvent.class);
+    }
+    
+    @Test
+    public void apiResponseMatchesReflection() {
+        ApiResponse<List<Geofence>> fences = new ApiResponse<>();
+        fences.setStatus("success");
+        fences.setData(Arrays.asList(new Geofence(1, "Home", 40.7128, -74.006, 150)));
+        assertMatchesAndRoundTrips(fences, new TypeToken<ApiResponse<List<Geofence>>>() {}.getType());
+        
+        ApiResponse<List<RemoteCommand>> commands = new ApiResponse<>();
+        commands.setStatus("success");
+        commands.setMessage("2 commands");
+        commands.setData(Arrays.asList(command(1, "LOCK", null), command(2, "WIPE", new JsonObject())));
+        assertMatchesAndRoundTrips(commands, new TypeToken<ApiResponse<List<RemoteCommand>>>() {}.getType());
+        
+        ApiResponse<Void> registered = new ApiResponse<>();
+        registered.setStatus("success");
+        registered.setDevice_token("abc123");
+        registered.setCommand_id(9);
+        // Reflection can't build an adapter for Void on a JVM, so compare against the raw type
+        Type voidType = new TypeToken<ApiResponse<Void>>() {}.getType();
+        String json = REFLECTIVE.toJson(registered, ApiResponse.class);
+        assertEquals(json, STREAMING.toJson(registered, voidType));
+        assertEquals(json, STREAMING.toJson(STREAMING.fromJson(json, voidType), voidType));
+    }
+    
+    @Test
+    public void voidApiResponseSkipsData() {
+        ApiResponse<Void> response = STREAMING.fromJson(
+                "{\"status\":\"error\",\"data\":{\"anything\":[1]},\"message\":\"Device already registered\"}",
+                new TypeToken<ApiResponse<Void>>() {}.getType());
+        
+        assertNotNull(response);
+        assertEquals("error", response.getStatus());
+        assertEquals("Device already registered", response.getMessage());
+        assertNull(response.getData());
+    }
+    
+    private static RemoteCommand command(int id, String type, JsonObject payload) {
+        RemoteCommand command = new RemoteCommand();
+        command.setId(id);
+        command.setDevice_id("d1");
+        command.setType(type);
+        command.setPayload(payload);
+        command.setStatus("pending");
+        command.setCreated_at(1690000000L);
+        return command;
+    }
+    
+    // Written like reflection, and reading that back writes the same JSON again
+    private static void assertMatchesAndRoundTrips(Object value, Type type) {
+        String json = REFLECTIVE.toJson(value, type);
+        assertEquals(json, STREAMING.toJson(value, type));
+        
+        Object read = STREAMING.fromJson(json, type);
+        assertEquals(json, STREAMING.toJson(read, type));
+        assertEquals(json, REFLECTIVE.toJson(read, type));
+    }
+}
\ No newline at end of file
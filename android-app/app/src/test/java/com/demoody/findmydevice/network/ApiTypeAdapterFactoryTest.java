@@ -0,0 +1,104 @@
+package com.demoody.findmydevice.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.demoody.findmydevice.models.GeofenceEvent;
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.models.ModelTypeAdapterFactory;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+/**
+ * Request bodies must go out exactly as reflective Gson wrote them, and read
+ * back to the same JSON.
+ */
+public class ApiTypeAdapterFactoryTest {
+    private static final Gson STREAMING = new GsonBuilder()
+            .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+            .registerTypeAdapterFactory(new ApiTypeAdapterFactory())
+            .create();
+    private static final Gson REFLECTIVE = new Gson();
+    
+    @Test
+    public void locationBatchMatchesReflection() {
+        assertMatchesAndRoundTrips(new ApiService.LocationBatch(Arrays.asList(
+                new LocationData(40.7128, -74.006, 8, 1690000000000L, "fused"),
+                new LocationData(40.7129, -74.0061, -1, 1690000060000L, null))));
+        assertMatchesAndRoundTrips(new ApiService.LocationBatch(Collections.<LocationData>emptyList()));
+        assertMatchesAndRoundTrips(new ApiService.LocationBatch(null));
+    }
+    
+    @Test
+    public void geofenceEventBatchMatchesReflection() {
+        LocationData location = new LocationData(40.7128, -74.006, 9.5, 1690000000000L, "gps");
+        assertMatchesAndRoundTrips(new ApiService.GeofenceEventBatch(Arrays.asList(
+                new GeofenceEvent(1, GeofenceEvent.TYPE_ENTER, location),
+                new GeofenceEvent(2, GeofenceEvent.TYPE_EXIT, location))));
+    }
+    
+    @Test
+    public void commandAcknowledgmentMatchesReflection() {
+        assertMatchesAndRoundTrips(new ApiService.CommandAcknowledgment("executed", "Alarm played", 1690000000000L));
+        assertMatchesAndRoundTrips(new ApiService.CommandAcknowledgment("failed", null, 0));
+    }
+    
+    @Test
+    public void commandAckBatchMatchesReflection() {
+        assertMatchesAndRoundTrips(new ApiService.CommandAckBatch(Arrays.asList(
+                new ApiService.CommandAckEntry(41, "executed", "Device locked", 1690000000000L),
+                new ApiService.CommandAckEntry(42, "failed", null, 1690000001000L))));
+    }
+    
+    @Test
+    public void commandAckEntryReadsStringIdLikeReflection() {
+        String json = "{\"command_id\":\"42\",\"status\":\"executed\",\"executed_at\":\"1690000000000\"}";
+        
+        ApiService.CommandAckEntry streaming = STREAMING.fromJson(json, ApiService.CommandAckEntry.class);
+        ApiService.CommandAckEntry reflective = REFLECTIVE.fromJson(json, ApiService.CommandAckEntry.class);
+        
+        assertEquals(42, streaming.getCommand_id());
+        assertEquals(REFLECTIVE.toJson(reflective), REFLECTIVE.toJson(streaming));
+    }
+    
+    @Test
+    public void simChangeReportMatchesReflection() {
+        assertMatchesAndRoundTrips(new ApiService.SimChangeReport(
+                new ApiService.SimInfo("8944100000000000001", "Vodafone", "+447700900000"),
+                new ApiService.SimInfo("8944200000000000002", "EE", null),
+                new LocationData(51.5007292, -0.1246254, 20, 1690000000000L, "network")));
+        // A device with no SIM before, and no fix yet
+        assertMatchesAndRoundTrips(new ApiService.SimChangeReport(null,
+                new ApiService.SimInfo("8944200000000000002", null, null), null));
+    }
+    
+    @Test
+    public void fcmTokenUpdateMatchesReflection() {
+        assertMatchesAndRoundTrips(new ApiService.FcmTokenUpdate("fcm:token/with+symbols="));
+        assertMatchesAndRoundTrips(new ApiService.FcmTokenUpdate(null));
+    }
+    
+    @Test
+    public void nullAndUnknownFieldsAreIgnored() {
+        ApiService.SimInfo sim = STREAMING.fromJson(
+                "{\"serial\":\"1\",\"operator\":null,\"carrier_id\":[7],\"number\":\"+1\"}", ApiService.SimInfo.class);
+        
+        assertEquals("1", sim.getSerial());
+        assertNull(sim.getOperator());
+        assertEquals("+1", sim.getNumber());
+        assertNull(STREAMING.fromJson("null", ApiService.FcmTokenUpdate.class));
+    }
+    
+    // Written like reflection, and reading that back writes the same JSON again
+    private static void assertMatchesAndRoundTrips(Object value) {
+        String json = REFLECTIVE.toJson(value);
+        assertEquals(json, STREAMING.toJson(value));
+        
+        Object read = STREAMING.fromJson(json, value.getClass());
+        assertEquals(json, STREAMING.toJson(read));
+        assertEquals(json, REFLECTIVE.toJson(read));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,125 @@
+package com.demoody.findmydevice.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.demoody.findmydevice.models.LocationData;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class LocationBatchCodecTest {
+    // The uploader's batch size
+    private static final int BATCH_SIZE = 50;
+    
+    @Test
+    public void emptyBatchRoundTrips() throws IOException {
+        assertRoundTrip(Collections.<LocationData>emptyList());
+    }
+    
+    @Test
+    public void negativeDeltasRoundTrip() throws IOException {
+        // Heading south-west, across the equator and the antimeridian, with a clock that steps back
+        assertRoundTrip(Arrays.asList(
+                new LocationData(0.0000005, -179.9999999, 5, 1690000600000L, "gps"),
+                new LocationData(-0.0000005, 179.9999999, 5, 1690000000000L, "gps"),
+                new LocationData(-33.8688197, 151.2092955, 5, 1689999999999L, "gps"),
+                new LocationData(-33.8688198, 151.2092954, 5, 0, "gps")));
+    }
+    
+    @Test
+    public void nullProviderAndUnknownAccuracyRoundTrip() throws IOException {
+        assertRoundTrip(Arrays.asList(
+                new LocationData(51.5007292, -0.1246254, -1, 1690000000000L, null),
+                new LocationData(51.5007300, -0.1246200, 0, 1690000060000L, "fused"),
+                new LocationData(51.5007310, -0.1246100, 12.3, 1690000120000L, null),
+                new LocationData(51.5007320, -0.1246000, -1, 1690000180000L, "network")));
+    }
+    
+    @Test
+    public void providerDictionaryRoundTrips() throws IOException {
+        assertRoundTrip(Arrays.asList(
+                new LocationData(48.8583701, 2.2944813, 8, 1690000000000L, "fused"),
+                new LocationData(48.8583702, 2.2944814, 8, 1690000060000L, "gps"),
+                new LocationData(48.8583703, 2.2944815, 8, 1690000120000L, "fused"),
+                new LocationData(48.8583704, 2.2944816, 8, 1690000180000L, "sim_change"),
+                new LocationData(48.8583705, 2.2944817, 8, 1690000240000L, "gps\u00e9")));
+    }
+    
+    @Test
+    public void extremeValuesRoundTrip() throws IOException {
+        assertRoundTrip(Arrays.asList(
+                new LocationData(90, 180, 9999.9, Long.MAX_VALUE / 2, "gps"),
+                new LocationData(-90, -180, 0.1, 0, "gps"),
+                new LocationData(90, 180, 0, -1, null)));
+    }
+    
+    @Test
+    public void uploaderBatchRoundTripsAtAFractionOfJson() throws IOException {
+        List<LocationData> batch = uploaderBatch();
+        assertRoundTrip(batch);
+        
+        int compactBytes = LocationBatchCodec.encode(batch).length;
+        int jsonBytes = new Gson().toJson(Collections.singletonMap("locations", batch))
+                .getBytes(StandardCharsets.UTF_8).length;
+        // 478 against 4715 bytes when written, under 10 bytes a fix
+        String sizes = compactBytes + " compact bytes, " + jsonBytes + " JSON bytes per " + BATCH_SIZE + " fixes";
+        assertTrue(sizes, compactBytes * 8 < jsonBytes);
+        assertTrue(sizes, compactBytes <= BATCH_SIZE * 12);
+    }
+    
+    @Test
+    public void rejectsMalformedInput() {
+        byte[] valid = LocationBatchCodec.encode(uploaderBatch());
+        
+        assertMalformed(new byte[0]);
+        assertMalformed(new byte[] {'X', 'L', 1, 0, 0});
+        assertMalformed(new byte[] {'F', 'L', 2, 0, 0});
+        assertMalformed(Arrays.copyOf(valid, valid.length - 1));
+        // One fix whose provider index points past an empty dictionary
+        assertMalformed(new byte[] {'F', 'L', 1, 1, 0, 0, 0, 0, 0, 1});
+    }
+    
+    // The benchmark's batch: a fix a minute on a slow diagonal, mostly fused
+    private static List<LocationData> uploaderBatch() {
+        List<LocationData> batch = new ArrayList<>(BATCH_SIZE);
+        long time = 1690000000000L;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(new LocationData(40.7128 + i * 0.0001, -74.0060 - i * 0.0001,
+                    8 + i % 5, time + i * 60000L, i % 10 == 0 ? "network" : "fused"));
+        }
+        return batch;
+    }
+    
+    private static void assertRoundTrip(List<LocationData> locations) throws IOException {
+        List<LocationData> decoded = LocationBatchCodec.decode(LocationBatchCodec.encode(locations));
+        
+        assertEquals(locations.size(), decoded.size());
+        for (int i = 0; i < locations.size(); i++) {
+            LocationData expected = locations.get(i);
+            LocationData actual = decoded.get(i);
+            String at = "fix " + i;
+            // Coordinates are kept to 1e-7 degrees and accuracy to a decimetre
+            assertEquals(at, expected.getLat(), actual.getLat(), 1e-9);
+            assertEquals(at, expected.getLng(), actual.getLng(), 1e-9);
+            assertEquals(at, expected.getAccuracy(), actual.getAccuracy(), 1e-9);
+            assertEquals(at, expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(at, expected.getProvider(), actual.getProvider());
+        }
+    }
+    
+    private static void assertMalformed(byte[] data) {
+        try {
+            LocationBatchCodec.decode(data);
+            fail("Decoded malformed batch " + Arrays.toString(data));
+        } catch (IOException expected) {
+            // Rejected as it should be
+        }
+    }
+}
\ No newline at end of file
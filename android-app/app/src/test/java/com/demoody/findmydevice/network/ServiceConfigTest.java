@@ -0,0 +1,133 @@
+package com.demoody.findmydevice.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * The swap behind ApiClient.getApiService() and updateBaseUrl(), which hand
+ * straight through to {@link ServiceConfig}.
+ */
+public class ServiceConfigTest {
+    private static final List<String> BASE_URLS = Arrays.asList(
+            "https://a.example.com/", "https://b.example.com/", "https://c.example.com/fmd/");
+    private static final int READERS = 8;
+    private static final int WRITERS = 2;
+    private static final int UPDATES_PER_WRITER = 2000;
+    
+    private OkHttpClient okHttpClient;
+    private ServiceConfig serviceConfig;
+    
+    @Before
+    public void setUp() {
+        okHttpClient = new OkHttpClient();
+        serviceConfig = new ServiceConfig(okHttpClient, GsonConverterFactory.create(ApiClient.GSON),
+                "https://a.example.com");
+    }
+    
+    @Test
+    public void normalizesBaseUrl() {
+        assertEquals("https://a.example.com/", serviceConfig.get().baseUrl);
+    }
+    
+    @Test
+    public void updateToSameUrlKeepsService() {
+        ServiceConfig.Snapshot before = serviceConfig.get();
+        serviceConfig.update("https://a.example.com");
+        assertSame(before, serviceConfig.get());
+    }
+    
+    @Test
+    public void updateSwapsUrlAndServiceTogether() {
+        ServiceConfig.Snapshot before = serviceConfig.get();
+        serviceConfig.update("https://b.example.com");
+        
+        ServiceConfig.Snapshot after = serviceConfig.get();
+        assertNotSame(before.apiService, after.apiService);
+        assertEquals("https://b.example.com/", after.baseUrl);
+        assertEquals("https://b.example.com/api/devices/d1/geofences", geofencesUrl(after).toString());
+    }
+    
+    @Test
+    public void readersNeverSeeTornConfigDuringUpdates() throws InterruptedException {
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch writersDone = new CountDownLatch(WRITERS);
+        List<Thread> threads = new ArrayList<>();
+        
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread(() -> {
+                await(start);
+                while (writing.get()) {
+                    ServiceConfig.Snapshot snapshot = serviceConfig.get();
+                    if (snapshot == null || snapshot.apiService == null) {
+                        failures.add("null service");
+                        continue;
+                    }
+                    if (!BASE_URLS.contains(snapshot.baseUrl)) {
+                        failures.add("unknown base URL " + snapshot.baseUrl);
+                    }
+                    // The service must have been built for the URL it is paired with
+                    String url = geofencesUrl(snapshot).toString();
+                    if (!url.equals(snapshot.baseUrl + "api/devices/d1/geofences")) {
+                        failures.add("service for " + url + " paired with " + snapshot.baseUrl);
+                    }
+                    if (snapshot.retrofit.callFactory() != okHttpClient) {
+                        failures.add("service built on another OkHttpClient");
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < WRITERS; i++) {
+            int offset = i;
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int n = 0; n < UPDATES_PER_WRITER; n++) {
+                    serviceConfig.update(BASE_URLS.get((n + offset) % BASE_URLS.size()));
+                }
+                writersDone.countDown();
+            }));
+        }
+        
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        assertTrue("writers did not finish", writersDone.await(60, TimeUnit.SECONDS));
+        writing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertTrue(failures.size() + " failures, first: " + failures.peek(), failures.isEmpty());
+        assertTrue(BASE_URLS.contains(serviceConfig.get().baseUrl));
+    }
+    
+    private static HttpUrl geofencesUrl(ServiceConfig.Snapshot snapshot) {
+        return snapshot.apiService.getGeofences("d1", "Bearer t").request().url();
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,173 @@
+package com.demoody.findmydevice.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.demoody.findmydevice.models.Geofence;
+import com.demoody.findmydevice.models.GeofenceEvent;
+import com.demoody.findmydevice.models.LocationData;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GeofenceEngineTest {
+    private static final double LAT = 51.505;
+    private static final double LNG = -0.125;
+    private static final double RADIUS = 100;
+    // Along a meridian the haversine distance is exactly this many metres per degree
+    private static final double METRES_PER_DEGREE = 6371000 * Math.PI / 180;
+    
+    private GeofenceEngine engine;
+    private long timestamp = 1000;
+    
+    @Before
+    public void setUp() {
+        engine = new GeofenceEngine();
+        engine.setFences(Collections.singletonList(new Geofence(1, "Home", LAT, LNG, RADIUS)));
+    }
+    
+    @Test
+    public void noFencesNoEvents() {
+        GeofenceEngine empty = new GeofenceEngine();
+        
+        assertTrue(empty.evaluate(fixFromCentre(0, 5)).isEmpty());
+        assertFalse(empty.isInsideAnyFence());
+    }
+    
+    @Test
+    public void entersJustInsideEdge() {
+        assertTrue(engine.evaluate(fixFromCentre(RADIUS + 1, 5)).isEmpty());
+        
+        List<GeofenceEvent> events = engine.evaluate(fixFromCentre(RADIUS - 1, 5));
+        
+        assertSingle(events, 1, GeofenceEvent.TYPE_ENTER);
+        assertTrue(engine.isInsideAnyFence());
+        // Staying inside reports nothing more
+        assertTrue(engine.evaluate(fixFromCentre(0, 5)).isEmpty());
+    }
+    
+    @Test
+    public void exitWaitsForMinimumMargin() {
+        engine.evaluate(fixFromCentre(0, 5));
+        
+        // Outside the radius but within MIN_EXIT_MARGIN of it
+        assertTrue(engine.evaluate(fixFromCentre(RADIUS + GeofenceEngine.MIN_EXIT_MARGIN - 1, 5)).isEmpty());
+        assertTrue(engine.isInsideAnyFence());
+        
+        assertSingle(engine.evaluate(fixFromCentre(RADIUS + GeofenceEngine.MIN_EXIT_MARGIN + 1, 5)),
+                1, GeofenceEvent.TYPE_EXIT);
+        assertFalse(engine.isInsideAnyFence());
+    }
+    
+    @Test
+    public void exitMarginGrowsWithAccuracy() {
+        engine.evaluate(fixFromCentre(0, 5));
+        
+        assertTrue(engine.evaluate(fixFromCentre(RADIUS + 60, 80)).isEmpty());
+        assertTrue(engine.evaluate(fixFromCentre(RADIUS + 79, 80)).isEmpty());
+        
+        assertSingle(engine.evaluate(fixFromCentre(RADIUS + 81, 80)), 1, GeofenceEvent.TYPE_EXIT);
+    }
+    
+    @Test
+    public void noiseAtEdgeDoesNotFlap() {
+        engine.evaluate(fixFromCentre(RADIUS - 1, 10));
+        
+        for (int i = 0; i < 10; i++) {
+            double offset = i % 2 == 0 ? RADIUS + 20 : RADIUS - 5;
+            assertTrue(engine.evaluate(fixFromCentre(offset, 10)).isEmpty());
+        }
+    }
+    
+    @Test
+    public void reentryNeedsToBeInsideRadius() {
+        engine.evaluate(fixFromCentre(0, 5));
+        engine.evaluate(fixFromCentre(RADIUS + 200, 5));
+        
+        // Within the exit margin is not enough to enter again
+        assertTrue(engine.evaluate(fixFromCentre(RADIUS + 10, 5)).isEmpty());
+        assertSingle(engine.evaluate(fixFromCentre(RADIUS - 10, 5)), 1, GeofenceEvent.TYPE_ENTER);
+    }
+    
+    @Test
+    public void largeFenceEntersAndExits() {
+        // 50 km is too large for the grid and is checked on every fix
+        engine.setFences(Arrays.asList(
+                new Geofence(1, "Home", LAT, LNG, RADIUS),
+                new Geofence(2, "County", LAT, LNG, 50000)));
+        
+        List<GeofenceEvent> events = engine.evaluate(fixFromCentre(49000, 20));
+        
+        assertSingle(events, 2, GeofenceEvent.TYPE_ENTER);
+        assertTrue(engine.evaluate(fixFromCentre(50010, 20)).isEmpty());
+        assertSingle(engine.evaluate(fixFromCentre(50030, 20)), 2, GeofenceEvent.TYPE_EXIT);
+    }
+    
+    @Test
+    public void entersFenceAcrossCellBoundary() {
+        // 55 m south of the 51.50 grid line, so the fix below is in the next cell up
+        engine.setFences(Collections.singletonList(new Geofence(3, "Corner", 51.4995, LNG, 200)));
+        
+        LocationData fix = new LocationData(51.5005, LNG, 5, timestamp, "gps");
+        
+        assertSingle(engine.evaluate(fix), 3, GeofenceEvent.TYPE_ENTER);
+    }
+    
+    @Test
+    public void setFencesDropsDeletedFencesWithoutExit() {
+        engine.setFences(Arrays.asList(
+                new Geofence(1, "Home", LAT, LNG, RADIUS),
+                new Geofence(2, "Block", LAT, LNG, 500)));
+        engine.evaluate(fixFromCentre(0, 5));
+        assertEquals(2, engine.getInsideFenceIds().size());
+        
+        engine.setFences(Collections.singletonList(new Geofence(2, "Block", LAT, LNG, 500)));
+        
+        assertEquals(Collections.singleton(2), engine.getInsideFenceIds());
+        assertEquals(1, engine.getFenceCount());
+        // Leaving reports only the fence that still exists
+        assertSingle(engine.evaluate(fixFromCentre(2000, 5)), 2, GeofenceEvent.TYPE_EXIT);
+    }
+    
+    @Test
+    public void restoredFenceIsNotEnteredAgain() {
+        engine.restoreInside(Collections.singletonList(1));
+        
+        assertTrue(engine.evaluate(fixFromCentre(0, 5)).isEmpty());
+        assertSingle(engine.evaluate(fixFromCentre(RADIUS + 200, 5)), 1, GeofenceEvent.TYPE_EXIT);
+    }
+    
+    @Test
+    public void restoredStateWaitsForFences() {
+        GeofenceEngine restarted = new GeofenceEngine();
+        restarted.restoreInside(Collections.singletonList(1));
+        
+        assertFalse(restarted.isInsideAnyFence());
+        
+        restarted.setFences(Collections.singletonList(new Geofence(1, "Home", LAT, LNG, RADIUS)));
+        
+        assertTrue(restarted.isInsideAnyFence());
+    }
+    
+    @Test
+    public void restoredUnknownFenceIsForgotten() {
+        engine.restoreInside(Arrays.asList(1, 7));
+        
+        assertTrue(engine.evaluate(fixFromCentre(0, 5)).isEmpty());
+        assertEquals(Collections.singleton(1), engine.getInsideFenceIds());
+    }
+    
+    // A fix this many metres due north of the fence centre
+    private LocationData fixFromCentre(double metres, double accuracy) {
+        return new LocationData(LAT + metres / METRES_PER_DEGREE, LNG, accuracy, timestamp++, "gps");
+    }
+    
+    private static void assertSingle(List<GeofenceEvent> events, int fenceId, String type) {
+        assertEquals(1, events.size());
+        assertEquals(fenceId, events.get(0).getGeofence_id());
+        assertEquals(type, events.get(0).getType());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.demoody.findmydevice.tracking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.demoody.findmydevice.models.Geofence;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class GeofenceIndexTest {
+    private static final Geofence[] NONE = new Geofence[0];
+    
+    @Test
+    public void emptyIndexHasNoCandidates() {
+        assertEquals(0, GeofenceIndex.EMPTY.size());
+        assertArrayEquals(NONE, GeofenceIndex.EMPTY.candidates(51.5, -0.12));
+        assertArrayEquals(NONE, GeofenceIndex.EMPTY.largeFences());
+    }
+    
+    @Test
+    public void smallFenceIsFoundInItsCell() {
+        Geofence home = new Geofence(1, "Home", 51.505, -0.125, 100);
+        GeofenceIndex index = new GeofenceIndex(Collections.singletonList(home));
+        
+        assertEquals(1, index.size());
+        assertSame(home, index.get(1));
+        assertArrayEquals(new Geofence[] {home}, index.candidates(51.505, -0.125));
+        assertArrayEquals(NONE, index.largeFences());
+        // A few cells away
+        assertArrayEquals(NONE, index.candidates(51.545, -0.125));
+        assertArrayEquals(NONE, index.candidates(51.505, -0.185));
+    }
+    
+    @Test
+    public void fenceStraddlingCellBoundaryIsFoundOnBothSides() {
+        // 200 m around a point 55 m south of the 51.50 line, and 35 m west of the -0.12 line
+        Geofence fence = new Geofence(1, "Corner", 51.4995, -0.1205, 200);
+        GeofenceIndex index = new GeofenceIndex(Collections.singletonList(fence));
+        
+        Geofence[] expected = {fence};
+        assertArrayEquals(expected, index.candidates(51.4985, -0.1215));
+        assertArrayEquals(expected, index.candidates(51.5005, -0.1215));
+        assertArrayEquals(expected, index.candidates(51.4985, -0.1195));
+        assertArrayEquals(expected, index.candidates(51.5005, -0.1195));
+    }
+    
+    @Test
+    public void pointOnCellBoundaryFindsFence() {
+        Geofence fence = new Geofence(1, "Origin", 0.0, 0.0, 100);
+        GeofenceIndex index = new GeofenceIndex(Collections.singletonList(fence));
+        
+        assertArrayEquals(new Geofence[] {fence}, index.candidates(0.0, 0.0));
+        assertArrayEquals(new Geofence[] {fence}, index.candidates(-0.0005, -0.0005));
+        assertArrayEquals(NONE, index.candidates(0.02, 0.0));
+    }
+    
+    @Test
+    public void largeFenceIsKeptOutOfTheGrid() {
+        // 50 km spans about 90 by 150 cells, well over MAX_CELLS_PER_FENCE
+        Geofence county = new Geofence(1, "County", 51.5, -0.12, 50000);
+        Geofence home = new Geofence(2, "Home", 51.505, -0.125, 100);
+        GeofenceIndex index = new GeofenceIndex(Arrays.asList(county, home));
+        
+        assertEquals(2, index.size());
+        assertSame(county, index.get(1));
+        assertArrayEquals(new Geofence[] {county}, index.largeFences());
+        assertArrayEquals(new Geofence[] {home}, index.candidates(51.505, -0.125));
+        assertArrayEquals(NONE, index.candidates(51.7, -0.12));
+    }
+    
+    @Test
+    public void unknownIdIsNull() {
+        GeofenceIndex index = new GeofenceIndex(Collections.singletonList(new Geofence(1, "Home", 51.505, -0.125, 100)));
+        
+        assertNull(index.get(2));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,185 @@
+package com.demoody.findmydevice.tracking;
+
+import static com.demoody.findmydevice.tracking.AdaptiveSamplingPolicy.DEFAULT_INTERVAL;
+import static com.demoody.findmydevice.tracking.AdaptiveSamplingPolicy.MAX_INTERVAL;
+import static com.demoody.findmydevice.tracking.AdaptiveSamplingPolicy.MIN_INTERVAL;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.demoody.findmydevice.models.LocationData;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drives SamplingEngine the way the tracking service does: wait the chosen
+ * interval on a fake clock, deliver the next scripted fix, ask for the next
+ * interval.
+ */
+public class SamplingEngineTest {
+    private static final double LAT = 51.505;
+    private static final double LNG = -0.125;
+    // Along a meridian the haversine distance is exactly this many metres per degree
+    private static final double METRES_PER_DEGREE = 6371000 * Math.PI / 180;
+    private static final long LOW_BATTERY_INTERVAL = 15 * 60 * 1000;
+    
+    private FakeClock clock;
+    private SamplingEngine engine;
+    private double northMetres;
+    private long lastInterval;
+    
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        engine = new SamplingEngine(new AdaptiveSamplingPolicy(), clock);
+    }
+    
+    @Test
+    public void stationaryBacksOffToMaximum() {
+        engine.onBatteryChanged(80, false);
+        
+        // GPS jitter well inside the accuracy radius
+        long[] intervals = stationary(20, 0, 5, -5, 5, -5, 5, -5);
+        
+        assertArrayEquals(new long[] {
+                DEFAULT_INTERVAL,
+                450000, 675000, 1012500, 1518750,
+                MAX_INTERVAL, MAX_INTERVAL}, intervals);
+        assertEquals(5, engine.getMetrics().getDecisionCount(SamplingPolicy.Decision.STRETCH));
+        assertEquals(1, engine.getMetrics().getDecisionCount(SamplingPolicy.Decision.HOLD));
+    }
+    
+    @Test
+    public void walkingHalvesDownToMinimum() {
+        engine.onBatteryChanged(80, false);
+        
+        long[] intervals = moving(1.5, 5);
+        
+        assertArrayEquals(new long[] {DEFAULT_INTERVAL, DEFAULT_INTERVAL / 2, 75000, MIN_INTERVAL, MIN_INTERVAL},
+                intervals);
+    }
+    
+    @Test
+    public void drivingDropsStraightToMinimum() {
+        engine.onBatteryChanged(80, false);
+        
+        long[] intervals = moving(15, 3);
+        
+        assertArrayEquals(new long[] {DEFAULT_INTERVAL, MIN_INTERVAL, MIN_INTERVAL}, intervals);
+    }
+    
+    @Test
+    public void movingAfterRestShrinksAgain() {
+        engine.onBatteryChanged(80, false);
+        stationary(10, 0, 0, 0, 0);
+        
+        long[] intervals = moving(15, 2);
+        
+        assertArrayEquals(new long[] {MIN_INTERVAL, MIN_INTERVAL}, intervals);
+    }
+    
+    @Test
+    public void lowBatteryCapsRate() {
+        engine.onBatteryChanged(10, false);
+        
+        long[] moving = moving(15, 3);
+        assertArrayEquals(new long[] {LOW_BATTERY_INTERVAL, LOW_BATTERY_INTERVAL, LOW_BATTERY_INTERVAL}, moving);
+        
+        // Stretching above the cap is still allowed
+        long[] resting = stationary(10, 0, 0, 0);
+        assertArrayEquals(new long[] {1350000, MAX_INTERVAL, MAX_INTERVAL}, resting);
+        assertEquals(3, engine.getMetrics().getDecisionCount(SamplingPolicy.Decision.BATTERY_CAPPED));
+    }
+    
+    @Test
+    public void unknownBatteryIsNotCapped() {
+        long[] intervals = moving(15, 3);
+        
+        assertArrayEquals(new long[] {DEFAULT_INTERVAL, MIN_INTERVAL, MIN_INTERVAL}, intervals);
+    }
+    
+    @Test
+    public void chargingStationaryHoldsAtDefault() {
+        engine.onBatteryChanged(80, true);
+        
+        long[] intervals = stationary(10, 0, 0, 0, 0);
+        
+        assertArrayEquals(new long[] {DEFAULT_INTERVAL, DEFAULT_INTERVAL, DEFAULT_INTERVAL, DEFAULT_INTERVAL},
+                intervals);
+        assertEquals(3, engine.getMetrics().getDecisionCount(SamplingPolicy.Decision.HOLD));
+    }
+    
+    @Test
+    public void chargingLiftsLowBatteryCap() {
+        engine.onBatteryChanged(10, true);
+        
+        long[] intervals = moving(15, 3);
+        
+        assertArrayEquals(new long[] {DEFAULT_INTERVAL, MIN_INTERVAL, MIN_INTERVAL}, intervals);
+    }
+    
+    @Test
+    public void unpluggingAtLowBatteryCapsNextInterval() {
+        engine.onBatteryChanged(10, true);
+        moving(15, 3);
+        
+        engine.onBatteryChanged(10, false);
+        
+        assertArrayEquals(new long[] {LOW_BATTERY_INTERVAL}, moving(15, 1));
+    }
+    
+    @Test
+    public void speedUsesClockNotFixTimestamp() {
+        engine.onBatteryChanged(80, false);
+        
+        // Cached fixes carry the same stale timestamp; 20 m in 10 s by the clock is walking pace
+        engine.onFix(new LocationData(LAT, LNG, 30, 0, "gps"));
+        engine.nextIntervalMillis();
+        clock.advance(10000);
+        engine.onFix(new LocationData(LAT + 20 / METRES_PER_DEGREE, LNG, 30, 0, "gps"));
+        
+        assertEquals(DEFAULT_INTERVAL / 2, engine.nextIntervalMillis());
+    }
+    
+    // Fixes this many metres north of where the device was, each after the interval chosen for the last
+    private long[] stationary(double accuracy, double... offsets) {
+        double base = northMetres;
+        long[] intervals = new long[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            clock.advance(lastInterval);
+            northMetres = base + offsets[i];
+            intervals[i] = deliverFix(accuracy);
+        }
+        return intervals;
+    }
+    
+    // Fixes heading north at speed, each after the interval chosen for the last
+    private long[] moving(double speed, int count) {
+        long[] intervals = new long[count];
+        for (int i = 0; i < count; i++) {
+            clock.advance(lastInterval);
+            northMetres += speed * lastInterval / 1000.0;
+            intervals[i] = deliverFix(10);
+        }
+        return intervals;
+    }
+    
+    private long deliverFix(double accuracy) {
+        engine.onFix(new LocationData(LAT + northMetres / METRES_PER_DEGREE, LNG, accuracy,
+                clock.currentTimeMillis(), "gps"));
+        lastInterval = engine.nextIntervalMillis();
+        return lastInterval;
+    }
+    
+    private static class FakeClock implements Clock {
+        private long now = 1_700_000_000_000L;
+        
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+        
+        void advance(long millis) {
+            now += millis;
+        }
+    }
+}
\ No newline at end of file
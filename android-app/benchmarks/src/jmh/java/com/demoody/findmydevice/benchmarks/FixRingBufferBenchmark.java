@@ -0,0 +1,51 @@
+package com.demoody.findmydevice.benchmarks;
+
+import com.demoody.findmydevice.database.FixRingBuffer;
+import java.io.File;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of recording a fix in the mapped ring, and of reading a staging chunk back out.
+ */
+@State(Scope.Thread)
+public class FixRingBufferBenchmark {
+    private static final int CAPACITY = 8192;
+    private static final int STAGE_BATCH_SIZE = 500;
+    
+    private File file;
+    private FixRingBuffer ring;
+    private long time;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("fix_ring", ".bin");
+        ring = new FixRingBuffer(file, CAPACITY);
+        time = 1690000000000L;
+        for (int i = 0; i < CAPACITY; i++) {
+            append();
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ring.close();
+        file.delete();
+    }
+    
+    @Benchmark
+    public void append() {
+        time += 60000L;
+        ring.append(40.7128, -74.0060, 12.5, time, "fused");
+    }
+    
+    @Benchmark
+    public FixRingBuffer.Batch readChunk() {
+        return ring.read(STAGE_BATCH_SIZE);
+    }
+}
\ No newline at end of file
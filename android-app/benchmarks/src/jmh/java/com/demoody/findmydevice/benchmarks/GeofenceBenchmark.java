@@ -0,0 +1,57 @@
+package com.demoody.findmydevice.benchmarks;
+
+import com.demoody.findmydevice.models.Geofence;
+import com.demoody.findmydevice.models.GeofenceEvent;
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.tracking.GeofenceEngine;
+import com.demoody.findmydevice.tracking.GeofenceIndex;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-fix geofence evaluation with the server's maximum of 500 zones spread over a city.
+ */
+@State(Scope.Thread)
+public class GeofenceBenchmark {
+    private static final int FENCE_COUNT = 500;
+    private static final int FIX_COUNT = 1024;
+    
+    private List<Geofence> fences;
+    private GeofenceEngine engine;
+    private final LocationData[] fixes = new LocationData[FIX_COUNT];
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        fences = new ArrayList<>(FENCE_COUNT);
+        for (int i = 0; i < FENCE_COUNT; i++) {
+            fences.add(new Geofence(i + 1, "zone" + i, 51.3 + random.nextDouble() * 0.4,
+                    -0.4 + random.nextDouble() * 0.6, 50 + random.nextDouble() * 450));
+        }
+        engine = new GeofenceEngine();
+        engine.setFences(fences);
+        
+        for (int i = 0; i < FIX_COUNT; i++) {
+            fixes[i] = new LocationData(51.3 + random.nextDouble() * 0.4, -0.4 + random.nextDouble() * 0.6,
+                    10, 1690000000000L + i * 60000L, "fused");
+        }
+    }
+    
+    @Benchmark
+    public List<GeofenceEvent> evaluate() {
+        LocationData fix = fixes[next];
+        next = (next + 1) & (FIX_COUNT - 1);
+        return engine.evaluate(fix);
+    }
+    
+    @Benchmark
+    public GeofenceIndex buildIndex() {
+        return new GeofenceIndex(fences);
+    }
+}
\ No newline at end of file
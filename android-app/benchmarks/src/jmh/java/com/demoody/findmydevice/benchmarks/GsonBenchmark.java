@@ -0,0 +1,89 @@
+package com.demoody.findmydevice.benchmarks;
+
+import com.demoody.findmydevice.models.ApiResponse;
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.models.ModelTypeAdapterFactory;
+import com.demoody.findmydevice.models.RemoteCommand;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serialization cost of the payloads exchanged with the server on every fix and poll,
+ * through Gson's reflective adapters and through the ones in {@link ModelTypeAdapterFactory}.
+ */
+@State(Scope.Thread)
+public class GsonBenchmark {
+    private static final Type COMMAND_LIST_RESPONSE = new TypeToken<ApiResponse<List<RemoteCommand>>>() {}.getType();
+    
+    private final Gson gson = new Gson();
+    private final Gson adapters = new GsonBuilder().registerTypeAdapterFactory(new ModelTypeAdapterFactory()).create();
+    private LocationData location;
+    private String locationJson;
+    private String commandJson;
+    private String pollResponseJson;
+    
+    @Setup
+    public void setUp() {
+        location = new LocationData(40.7128123, -74.0060456, 12.5, 1690000000000L, "fused");
+        locationJson = gson.toJson(location);
+        commandJson = "{\"id\":42,\"device_id\":\"a1b2c3d4\",\"type\":\"SHOW_MESSAGE\","
+                + "\"payload\":{\"message\":\"Please return this phone\"},\"status\":\"pending\","
+                + "\"created_at\":1690000000}";
+        
+        StringBuilder poll = new StringBuilder("{\"status\":\"ok\",\"data\":[");
+        for (int i = 0; i < 10; i++) {
+            if (i > 0) {
+                poll.append(',');
+            }
+            poll.append(commandJson.replace("\"id\":42", "\"id\":" + (100 + i)));
+        }
+        pollResponseJson = poll.append("]}").toString();
+    }
+    
+    @Benchmark
+    public String serializeLocation() {
+        return gson.toJson(location);
+    }
+    
+    @Benchmark
+    public LocationData deserializeLocation() {
+        return gson.fromJson(locationJson, LocationData.class);
+    }
+    
+    @Benchmark
+    public RemoteCommand deserializeCommand() {
+        return gson.fromJson(commandJson, RemoteCommand.class);
+    }
+    
+    @Benchmark
+    public ApiResponse<List<RemoteCommand>> deserializePollResponse() {
+        return gson.fromJson(pollResponseJson, COMMAND_LIST_RESPONSE);
+    }
+    
+    @Benchmark
+    public String serializeLocationWithAdapters() {
+        return adapters.toJson(location);
+    }
+    
+    @Benchmark
+    public LocationData deserializeLocationWithAdapters() {
+        return adapters.fromJson(locationJson, LocationData.class);
+    }
+    
+    @Benchmark
+    public RemoteCommand deserializeCommandWithAdapters() {
+        return adapters.fromJson(commandJson, RemoteCommand.class);
+    }
+    
+    @Benchmark
+    public ApiResponse<List<RemoteCommand>> deserializePollResponseWithAdapters() {
+        return adapters.fromJson(pollResponseJson, COMMAND_LIST_RESPONSE);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+package com.demoody.findmydevice.benchmarks;
+
+import com.demoody.findmydevice.metrics.Histogram;
+import com.demoody.findmydevice.metrics.MetricsRegistry;
+import com.demoody.findmydevice.metrics.MetricsSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of recording on the hot paths, and of taking a snapshot of a registry
+ * about the size the app fills in one sync period.
+ */
+@State(Scope.Thread)
+public class MetricsBenchmark {
+    private static final String[] ENDPOINTS = {
+            "uploadLocationBatchCompact", "pollCommands", "acknowledgeCommands", "getGeofences"
+    };
+    
+    private MetricsRegistry registry;
+    private Histogram latency;
+    private long value;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new MetricsRegistry(System::currentTimeMillis);
+        latency = registry.histogram("http.uploadLocationBatchCompact.latency_ms");
+    }
+    
+    @Benchmark
+    public void recordHistogram() {
+        value = (value + 37) & 0xffff;
+        latency.record(value);
+    }
+    
+    @Benchmark
+    public void lookupAndIncrement() {
+        registry.counter("wakeups.location").increment();
+    }
+    
+    @Benchmark
+    public MetricsSnapshot snapshot() {
+        for (String endpoint : ENDPOINTS) {
+            registry.counter("http." + endpoint + ".calls").add(4);
+            Histogram histogram = registry.histogram("http." + endpoint + ".latency_ms");
+            for (int i = 0; i < 16; i++) {
+                histogram.record(80 + i * 25);
+            }
+        }
+        return registry.snapshotAndReset();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+package com.demoody.findmydevice.benchmarks;
+
+import com.demoody.findmydevice.utils.SettingsSnapshot;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Settings reads and writes against the in-memory snapshot behind
+ * PreferenceManager. buildSnapshot is the cold path, paid once per process
+ * on the map getAll() returns. decryptRead stands in for the per-read cost
+ * the snapshot replaced: EncryptedSharedPreferences decrypts the stored
+ * value with AES-256-GCM on every get, bound to its encrypted key name. It
+ * leaves out the key-name encryption and Keystore setup, neither of which
+ * runs on the JVM, so the real saving is larger.
+ */
+@State(Scope.Thread)
+public class SettingsBenchmark {
+    private static final int GCM_IV_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+    
+    private Map<String, Object> stored;
+    private SettingsSnapshot snapshot;
+    private long lastCommandId;
+    
+    private SecretKeySpec valueKey;
+    private Cipher cipher;
+    private byte[] encryptedKeyName;
+    private String encryptedDeviceId;
+    
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        // Every key PreferenceManager writes once a device is registered and tracking
+        stored = new HashMap<>();
+        stored.put("device_id", "a1b2c3d4e5f6");
+        stored.put("device_name", "Pixel 7");
+        stored.put("device_token", "0123456789abcdef0123456789abcdef");
+        stored.put("is_registered", true);
+        stored.put("server_registered", true);
+        stored.put("tracking_enabled", true);
+        stored.put("last_sim_serial", "8944100000000000001");
+        stored.put("server_url", "https://example.com/");
+        stored.put("fake_shutdown_password", "1234");
+        stored.put("sms_secret", "Zq8vR2mX7pLk");
+        stored.put("last_command_id", 1234);
+        stored.put("inside_geofences", "3,17");
+        stored.put("trajectory_tolerance", 10);
+        stored.put("fcm_token", fcmToken());
+        stored.put("synced_fcm_token", fcmToken());
+        snapshot = SettingsSnapshot.of(stored);
+        
+        SecureRandom random = new SecureRandom();
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        valueKey = new SecretKeySpec(keyBytes, "AES");
+        cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        encryptedKeyName = new byte[32];
+        random.nextBytes(encryptedKeyName);
+        encryptedDeviceId = encrypt(random, "a1b2c3d4e5f6");
+    }
+    
+    @Benchmark
+    public SettingsSnapshot buildSnapshot() {
+        return SettingsSnapshot.of(stored);
+    }
+    
+    @Benchmark
+    public String readString() {
+        return snapshot.getString("device_id", null);
+    }
+    
+    @Benchmark
+    public String decryptRead() throws GeneralSecurityException {
+        byte[] sealed = Base64.getDecoder().decode(encryptedDeviceId);
+        cipher.init(Cipher.DECRYPT_MODE, valueKey, new GCMParameterSpec(GCM_TAG_BITS, sealed, 0, GCM_IV_BYTES));
+        cipher.updateAAD(encryptedKeyName);
+        byte[] plain = cipher.doFinal(sealed, GCM_IV_BYTES, sealed.length - GCM_IV_BYTES);
+        return new String(plain, StandardCharsets.UTF_8);
+    }
+    
+    @Benchmark
+    public boolean readBoolean() {
+        return snapshot.getBoolean("tracking_enabled", false);
+    }
+    
+    @Benchmark
+    public int readInt() {
+        return snapshot.getInt("last_command_id", 0);
+    }
+    
+    @Benchmark
+    public SettingsSnapshot write() {
+        return snapshot.with("last_command_id", (int) (++lastCommandId & 0xFFFF));
+    }
+    
+    // Stored the way EncryptedSharedPreferences stores it: IV, ciphertext and tag, Base64 encoded
+    private String encrypt(SecureRandom random, String value) throws GeneralSecurityException {
+        byte[] iv = new byte[GCM_IV_BYTES];
+        random.nextBytes(iv);
+        cipher.init(Cipher.ENCRYPT_MODE, valueKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+        cipher.updateAAD(encryptedKeyName);
+        byte[] ciphertext = cipher.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        byte[] sealed = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, sealed, 0, iv.length);
+        System.arraycopy(ciphertext, 0, sealed, iv.length, ciphertext.length);
+        return Base64.getEncoder().encodeToString(sealed);
+    }
+    
+    // FCM registration tokens are about 160 characters
+    private static String fcmToken() {
+        StringBuilder token = new StringBuilder("dGVzdC1mY20tdG9rZW46");
+        while (token.length() < 163) {
+            token.append("APA91bH");
+        }
+        return token.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.demoody.findmydevice.benchmarks;
+
+import com.demoody.findmydevice.commands.SmsCommandParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parse cost per received SMS. Most messages a phone receives are not
+ * commands, so the rejection paths matter as much as the accepted one.
+ */
+@State(Scope.Thread)
+public class SmsParserBenchmark {
+    private static final String DEVICE_ID = "a1b2c3d4e5f6";
+    private static final String SECRET = "Zq8vR2mX7pLk";
+    
+    private final String command = "FINDMY " + DEVICE_ID + " " + SECRET + " show_message Please call 555 0100";
+    private final String wrongSecret = "FINDMY " + DEVICE_ID + " Zq8vR2mX7pLj LOCK";
+    private final String ordinaryMessage = "Running ten minutes late, see you at the station";
+    
+    @Benchmark
+    public SmsCommandParser.SmsCommand parseCommand() {
+        return SmsCommandParser.parse(command, DEVICE_ID, SECRET);
+    }
+    
+    @Benchmark
+    public SmsCommandParser.SmsCommand parseWrongSecret() {
+        return SmsCommandParser.parse(wrongSecret, DEVICE_ID, SECRET);
+    }
+    
+    @Benchmark
+    public SmsCommandParser.SmsCommand parseOrdinaryMessage() {
+        return SmsCommandParser.parse(ordinaryMessage, DEVICE_ID, SECRET);
+    }
+    
+    // The receiver's previous approach, split twice per message, kept for comparison
+    @Benchmark
+    public String parseCommandWithSplit() {
+        String[] parts = command.trim().split("\\s+");
+        if (parts.length < 3 || !"FINDMY".equalsIgnoreCase(parts[0])
+                || !DEVICE_ID.equals(parts[1]) || !SECRET.equals(parts[2])) {
+            return null;
+        }
+        parts = command.trim().split("\\s+");
+        return parts.length > 3 ? parts[3].toUpperCase() : "LOCATE";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.demoody.findmydevice.benchmarks;
+
+import com.demoody.findmydevice.models.ApiResponse;
+import com.demoody.findmydevice.models.DeviceRegistration;
+import com.demoody.findmydevice.models.Geofence;
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.tracking.AdaptiveSamplingPolicy;
+import com.demoody.findmydevice.tracking.BurstSamplingPolicy;
+import com.demoody.findmydevice.tracking.Clock;
+import com.demoody.findmydevice.tracking.FixPipeline;
+import com.demoody.findmydevice.tracking.GeofenceEngine;
+import com.demoody.findmydevice.tracking.SamplingEngine;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The JVM side of a cold start: what a fresh ApiClient pays for Gson before
+ * its first call, and what LocationTrackingService does between onCreate and
+ * handling its first fix once BootReceiver has restarted it. Time to
+ * interactive and the platform's share of time to first fix are only
+ * measurable on a device; they are reported as startup.* histograms.
+ */
+@State(Scope.Thread)
+public class StartupBenchmark {
+    private static final Type VOID_RESPONSE = new TypeToken<ApiResponse<Void>>() {}.getType();
+    private static final int FENCE_COUNT = 50;
+    
+    private final List<Geofence> fences = new ArrayList<>();
+    private DeviceRegistration registration;
+    private LocationData firstFix;
+    
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < FENCE_COUNT; i++) {
+            fences.add(new Geofence(i + 1, "zone " + i, 51.40 + i * 0.004, -0.20 + i * 0.003, 150));
+        }
+        registration = new DeviceRegistration("a1b2c3d4e5f60718", "Pixel 7", "3f9a0c1e5b7d2468ace0",
+                "Pixel 7", "14", null);
+        firstFix = new LocationData(51.5007, -0.1246, 18, 1690000000000L, "fused");
+    }
+    
+    @Benchmark
+    public ApiResponse<Void> gsonFirstUse() {
+        // Retrofit's converter builds its reflective adapters on the first request of each type
+        Gson gson = new Gson();
+        gson.toJson(registration);
+        return gson.fromJson("{\"status\":\"ok\",\"device_token\":\"3f9a0c1e5b7d2468ace0\"}", VOID_RESPONSE);
+    }
+    
+    @Benchmark
+    public void serviceFirstFix(Blackhole blackhole) {
+        BurstSamplingPolicy burstPolicy = new BurstSamplingPolicy(new AdaptiveSamplingPolicy(), Clock.SYSTEM);
+        SamplingEngine samplingEngine = new SamplingEngine(burstPolicy, Clock.SYSTEM);
+        FixPipeline fixPipeline = new FixPipeline();
+        GeofenceEngine geofenceEngine = new GeofenceEngine();
+        geofenceEngine.restoreInside(Arrays.asList(3, 7));
+        geofenceEngine.setFences(fences);
+        
+        samplingEngine.onBatteryChanged(80, false);
+        blackhole.consume(samplingEngine.nextIntervalMillis());
+        samplingEngine.onFix(firstFix);
+        LocationData processed = fixPipeline.process(firstFix);
+        if (processed != null) {
+            blackhole.consume(geofenceEngine.evaluate(processed));
+        }
+    }
+}
\ No newline at end of file
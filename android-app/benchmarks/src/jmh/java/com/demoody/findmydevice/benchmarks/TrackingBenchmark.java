@@ -0,0 +1,53 @@
+package com.demoody.findmydevice.benchmarks;
+
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.tracking.FixPipeline;
+import com.demoody.findmydevice.utils.GeoUtils;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Distance and filtering math run on every fix before it is queued for upload.
+ */
+@State(Scope.Thread)
+public class TrackingBenchmark {
+    private static final int TRACK_LENGTH = 1000;
+    
+    private final LocationData[] track = new LocationData[TRACK_LENGTH];
+    
+    @Setup
+    public void setUp() {
+        // A walk at a few metres per second with realistic GPS noise and the odd bad fix
+        Random random = new Random(42);
+        double lat = 51.5007;
+        double lng = -0.1246;
+        long time = 1690000000000L;
+        for (int i = 0; i < TRACK_LENGTH; i++) {
+            lat += random.nextGaussian() * 0.00003;
+            lng += random.nextGaussian() * 0.00003;
+            time += 10000;
+            double accuracy = i % 50 == 49 ? 800 : 5 + random.nextDouble() * 25;
+            track[i] = new LocationData(lat, lng, accuracy, time, "fused");
+        }
+    }
+    
+    @Benchmark
+    public double distance() {
+        return GeoUtils.distanceMeters(track[0].getLat(), track[0].getLng(),
+                track[1].getLat(), track[1].getLng());
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(TRACK_LENGTH)
+    public void pipelinePerFix(Blackhole blackhole) {
+        FixPipeline pipeline = new FixPipeline();
+        for (LocationData fix : track) {
+            blackhole.consume(pipeline.process(fix));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+package com.demoody.findmydevice.benchmarks;
+
+import com.demoody.findmydevice.models.LocationData;
+import com.demoody.findmydevice.tracking.TrajectorySimplifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Simplification cost for one upload batch and for a day of history.
+ */
+@State(Scope.Thread)
+public class TrajectoryBenchmark {
+    private static final double TOLERANCE = 10;
+    
+    private List<LocationData> batch;
+    private List<LocationData> day;
+    
+    @Setup
+    public void setUp() {
+        day = commuteTrace(new Random(11), 1440);
+        batch = day.subList(400, 450);
+    }
+    
+    @Benchmark
+    public TrajectorySimplifier.Result simplifyBatch() {
+        return TrajectorySimplifier.simplify(batch, TOLERANCE);
+    }
+    
+    @Benchmark
+    public TrajectorySimplifier.Result simplifyDay() {
+        return TrajectorySimplifier.simplify(day, TOLERANCE);
+    }
+    
+    // One fix a minute: long stops, straight legs and turns, with GPS noise of a few metres
+    private static List<LocationData> commuteTrace(Random random, int count) {
+        List<LocationData> trace = new ArrayList<>(count);
+        double lat = 51.5007;
+        double lng = -0.1246;
+        double heading = 0;
+        double speed = 0; // degrees per minute
+        long time = 1690000000000L;
+        for (int i = 0; i < count; i++) {
+            if (i % 120 == 0) {
+                speed = random.nextDouble() < 0.5 ? 0 : 0.002 + random.nextDouble() * 0.004;
+            }
+            if (i % 15 == 0) {
+                heading += (random.nextDouble() - 0.5) * Math.PI / 2;
+            }
+            lat += Math.cos(heading) * speed;
+            lng += Math.sin(heading) * speed;
+            time += 60000;
+            trace.add(new LocationData(lat + random.nextGaussian() * 0.00003, lng + random.nextGaussian() * 0.00003,
+                    5 + random.nextDouble() * 10, time, "fused"));
+        }
+        return trace;
+    }
+}
\ No newline at end of file
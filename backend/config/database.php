@@ -5,6 +5,49 @@ define('DB_NAME', 'findmydevice');
 define('DB_USER', 'root');
 define('DB_PASS', '');
 
+// Largest request body accepted, before and after gzip decoding
+define('MAX_REQUEST_BYTES', 1048576);
+
+// Shortest device-chosen token accepted at registration; shorter ones are replaced
+define('MIN_CLIENT_TOKEN_LENGTH', 32);
+
+// Owner key for DELETE /devices/{id}/token, sent as a Bearer token. Empty disables the endpoint
+define('ADMIN_API_KEY', '');
+
+// Upper bound on fixes accepted in a single batch upload
+define('MAX_LOCATION_BATCH_SIZE', 500);
+
+// Location history reads
+define('MAX_HISTORY_POINTS', 20000);
+define('DEFAULT_HISTORY_TOLERANCE', 10); // metres, 0 returns raw rows
+
+// Binary location batch format, see decode_compact_locations()
+define('COMPACT_LOCATIONS_CONTENT_TYPE', 'application/x-fmd-locations');
+
+// Command polling
+define('COMMAND_POLL_LIMIT', 50);
+define('LONG_POLL_MAX_WAIT', 25); // seconds
+define('LONG_POLL_CHECK_INTERVAL', 200000); // microseconds
+define('MAX_COMMAND_ACK_BATCH_SIZE', 100);
+
+// Firebase Cloud Messaging (HTTP v1). With no project id commands are delivered by polling only
+define('FCM_PROJECT_ID', '');
+// Keep the key outside the document root; Apache would serve it from config/
+define('FCM_SERVICE_ACCOUNT_FILE', '/etc/findmydevice/firebase-service-account.json');
+define('FCM_MAX_DATA_BYTES', 3800); // FCM rejects data payloads over 4096 bytes
+define('FCM_TIMEOUT', 5); // seconds, command creation waits for the send
+define('MAX_FCM_TOKEN_LENGTH', 4096);
+
+// Geofences
+define('MAX_GEOFENCES_PER_DEVICE', 500);
+define('MIN_GEOFENCE_RADIUS', 25); // metres
+define('MAX_GEOFENCE_RADIUS', 50000); // metres
+define('MAX_GEOFENCE_EVENT_BATCH_SIZE', 200);
+
+// Device metrics snapshots
+define('MAX_METRICS_SNAPSHOT_BYTES', 65536);
+define('MAX_METRICS_ENTRIES', 500);
+
 function get_database_connection() {
     static $pdo = null;
     
@@ -84,6 +127,46 @@ function init_database() {
         INDEX idx_device_status (device_id, status)
     )");
     
+    // Geofences (safe zones) table
+    $db->exec("CREATE TABLE IF NOT EXISTS geofences (
+        id INT AUTO_INCREMENT PRIMARY KEY,
+        device_id VARCHAR(255) NOT NULL,
+        name VARCHAR(255) NOT NULL,
+        lat DECIMAL(10, 8) NOT NULL,
+        lng DECIMAL(11, 8) NOT NULL,
+        radius DECIMAL(10, 2) NOT NULL,
+        created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+        FOREIGN KEY (device_id) REFERENCES devices(device_id) ON DELETE CASCADE,
+        INDEX idx_device (device_id)
+    )");
+    
+    // Geofence transitions reported by devices
+    $db->exec("CREATE TABLE IF NOT EXISTS geofence_events (
+        id INT AUTO_INCREMENT PRIMARY KEY,
+        device_id VARCHAR(255) NOT NULL,
+        geofence_id INT NOT NULL,
+        type ENUM('enter', 'exit') NOT NULL,
+        lat DECIMAL(10, 8) NOT NULL,
+        lng DECIMAL(11, 8) NOT NULL,
+        accuracy DECIMAL(8, 2) DEFAULT -1,
+        recorded_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+        FOREIGN KEY (device_id) REFERENCES devices(device_id) ON DELETE CASCADE,
+        FOREIGN KEY (geofence_id) REFERENCES geofences(id) ON DELETE CASCADE,
+        INDEX idx_device_time (device_id, recorded_at)
+    )");
+    
+    // Metrics snapshots uploaded by devices, one row per period
+    $db->exec("CREATE TABLE IF NOT EXISTS device_metrics (
+        id INT AUTO_INCREMENT PRIMARY KEY,
+        device_id VARCHAR(255) NOT NULL,
+        period_start TIMESTAMP NULL,
+        period_end TIMESTAMP NULL,
+        snapshot JSON NOT NULL,
+        received_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+        FOREIGN KEY (device_id) REFERENCES devices(device_id) ON DELETE CASCADE,
+        INDEX idx_device_period (device_id, period_end)
+    )");
+    
     // Logs table
     $db->exec("CREATE TABLE IF NOT EXISTS logs (
         id INT AUTO_INCREMENT PRIMARY KEY,
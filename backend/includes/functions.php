@@ -1,7 +1,37 @@
 <?php
+function get_request_body() {
+    // One byte over the limit is enough to tell an oversized body apart
+    $body = file_get_contents('php://input', false, null, 0, MAX_REQUEST_BYTES + 1);
+    if ($body === false) {
+        send_error('Could not read request body', 400);
+    }
+    if (strlen($body) > MAX_REQUEST_BYTES) {
+        send_error('Request body too large', 413);
+    }
+    
+    // The Android client gzips bulk uploads
+    $encoding = strtolower($_SERVER['HTTP_CONTENT_ENCODING'] ?? '');
+    if ($encoding === 'gzip' && $body !== '') {
+        // The limit stops a gzip bomb before it is inflated in memory; it fails the same way as corrupt data
+        $decoded = @gzdecode($body, MAX_REQUEST_BYTES);
+        if ($decoded === false) {
+            send_error('Malformed or oversized gzip body', 400);
+        }
+        return $decoded;
+    }
+    
+    return $body;
+}
+
 function get_json_input() {
-    $input = file_get_contents('php://input');
-    return json_decode($input, true);
+    return json_decode(get_request_body(), true);
+}
+
+function get_request_content_type() {
+    $content_type = $_SERVER['CONTENT_TYPE'] ?? '';
+    // Drop parameters such as "; charset=utf-8"
+    $parts = explode(';', $content_type);
+    return strtolower(trim($parts[0]));
 }
 
 function get_auth_header() {
@@ -18,6 +48,11 @@ function get_auth_header() {
 }
 
 function verify_device_token($device_id, $token) {
+    // A released token is stored as '' and must not authenticate an empty header
+    if (!is_string($token) || $token === '') {
+        return false;
+    }
+    
     $db = get_database_connection();
     
     $stmt = $db->prepare("SELECT id FROM devices WHERE device_id = ? AND device_token = ? AND is_active = 1");
@@ -26,6 +61,10 @@ function verify_device_token($device_id, $token) {
     return $stmt->fetch() !== false;
 }
 
+function verify_admin_key($key) {
+    return ADMIN_API_KEY !== '' && is_string($key) && hash_equals(ADMIN_API_KEY, $key);
+}
+
 function generate_token($length = 32) {
     return bin2hex(random_bytes($length / 2));
 }
@@ -79,6 +118,9 @@ function clean_old_data() {
         // Clean logs older than 30 days
         $db->exec("DELETE FROM logs WHERE event_at < DATE_SUB(NOW(), INTERVAL 30 DAY)");
         
+        // Clean metrics snapshots older than 30 days
+        $db->exec("DELETE FROM device_metrics WHERE received_at < DATE_SUB(NOW(), INTERVAL 30 DAY)");
+        
     } catch (Exception $e) {
         error_log('Failed to clean old data: ' . $e->getMessage());
     }
@@ -90,6 +132,92 @@ function validate_coordinates($lat, $lng) {
            $lng >= -180 && $lng <= 180;
 }
 
+function normalize_timestamp($timestamp) {
+    // The Android client records fixes with System.currentTimeMillis()
+    $timestamp = intval($timestamp);
+    if ($timestamp > 100000000000) {
+        $timestamp = intdiv($timestamp, 1000);
+    }
+    return $timestamp;
+}
+
+function read_varint($data, &$offset) {
+    $result = 0;
+    $shift = 0;
+    $length = strlen($data);
+    
+    while ($offset < $length && $shift < 64) {
+        $byte = ord($data[$offset++]);
+        $result |= ($byte & 0x7F) << $shift;
+        if (($byte & 0x80) === 0) {
+            return $result;
+        }
+        $shift += 7;
+    }
+    
+    return null;
+}
+
+function zigzag_decode($value) {
+    return (($value >> 1) & PHP_INT_MAX) ^ -($value & 1);
+}
+
+// Decodes a location batch written by the Android LocationBatchCodec.
+// Returns null if the payload is malformed.
+function decode_compact_locations($data) {
+    if (strlen($data) < 3 || $data[0] !== 'F' || $data[1] !== 'L' || ord($data[2]) !== 1) {
+        return null;
+    }
+    
+    $offset = 3;
+    $count = read_varint($data, $offset);
+    $provider_count = read_varint($data, $offset);
+    if ($count === null || $provider_count === null || $count > MAX_LOCATION_BATCH_SIZE) {
+        return null;
+    }
+    
+    $providers = [];
+    for ($i = 0; $i < $provider_count; $i++) {
+        $length = read_varint($data, $offset);
+        if ($length === null || $offset + $length > strlen($data)) {
+            return null;
+        }
+        $providers[] = substr($data, $offset, $length);
+        $offset += $length;
+    }
+    
+    $locations = [];
+    $lat = 0;
+    $lng = 0;
+    $time = 0;
+    for ($i = 0; $i < $count; $i++) {
+        $d_lat = read_varint($data, $offset);
+        $d_lng = read_varint($data, $offset);
+        $d_time = read_varint($data, $offset);
+        $accuracy = read_varint($data, $offset);
+        $provider_index = read_varint($data, $offset);
+        
+        if ($provider_index === null || $d_lat === null || $d_lng === null ||
+            $d_time === null || $accuracy === null || $provider_index > count($providers)) {
+            return null;
+        }
+        
+        $lat += zigzag_decode($d_lat);
+        $lng += zigzag_decode($d_lng);
+        $time += zigzag_decode($d_time);
+        
+        $locations[] = [
+            'lat' => $lat / 1e7,
+            'lng' => $lng / 1e7,
+            'accuracy' => $accuracy === 0 ? -1 : ($accuracy - 1) / 10,
+            'timestamp' => $time,
+            'provider' => $provider_index === 0 ? 'unknown' : $providers[$provider_index - 1]
+        ];
+    }
+    
+    return $locations;
+}
+
 function calculate_distance($lat1, $lng1, $lat2, $lng2) {
     $earth_radius = 6371000; // meters
     
@@ -107,6 +235,231 @@ function calculate_distance($lat1, $lng1, $lat2, $lng2) {
     return $earth_radius * $c;
 }
 
+// Time-aware Douglas-Peucker, the same algorithm as the app's TrajectorySimplifier.
+// $points must be in time order with 'lat', 'lng' and a unix 'timestamp'.
+// Returns ['points' => kept points, 'max_deviation' => metres].
+function simplify_trajectory($points, $tolerance) {
+    $count = count($points);
+    if ($count <= 2 || $tolerance <= 0) {
+        return ['points' => $points, 'max_deviation' => 0];
+    }
+    
+    // Local flat projection around the first point
+    $origin_lat = $points[0]['lat'];
+    $origin_lng = $points[0]['lng'];
+    $lng_scale = cos(deg2rad($origin_lat)) * 111320;
+    $x = [];
+    $y = [];
+    $t = [];
+    foreach ($points as $point) {
+        $x[] = ($point['lng'] - $origin_lng) * $lng_scale;
+        $y[] = ($point['lat'] - $origin_lat) * 111320;
+        $t[] = $point['timestamp'];
+    }
+    
+    $keep = array_fill(0, $count, false);
+    $keep[0] = true;
+    $keep[$count - 1] = true;
+    $max_deviation = 0;
+    
+    $stack = [[0, $count - 1]];
+    while (!empty($stack)) {
+        list($start, $end) = array_pop($stack);
+        $span = $t[$end] - $t[$start];
+        
+        $farthest = -1;
+        $farthest_distance = 0;
+        for ($i = $start + 1; $i < $end; $i++) {
+            // Where the device would be at t[i] moving evenly from start to end
+            $ratio = $span > 0 ? ($t[$i] - $t[$start]) / $span : 0;
+            $dx = $x[$i] - ($x[$start] + ($x[$end] - $x[$start]) * $ratio);
+            $dy = $y[$i] - ($y[$start] + ($y[$end] - $y[$start]) * $ratio);
+            $distance = sqrt($dx * $dx + $dy * $dy);
+            if ($distance > $farthest_distance) {
+                $farthest_distance = $distance;
+                $farthest = $i;
+            }
+        }
+        
+        if ($farthest >= 0 && $farthest_distance > $tolerance) {
+            $keep[$farthest] = true;
+            $stack[] = [$start, $farthest];
+            $stack[] = [$farthest, $end];
+        } else {
+            $max_deviation = max($max_deviation, $farthest_distance);
+        }
+    }
+    
+    $kept = [];
+    for ($i = 0; $i < $count; $i++) {
+        if ($keep[$i]) {
+            $kept[] = $points[$i];
+        }
+    }
+    
+    return ['points' => $kept, 'max_deviation' => $max_deviation];
+}
+
+function get_command_signal_file($device_id) {
+    return sys_get_temp_dir() . '/command_signal_' . md5($device_id);
+}
+
+function signal_new_command($device_id) {
+    // Content changes on every insert, so waiters see it even within the same second
+    file_put_contents(get_command_signal_file($device_id), uniqid('', true), LOCK_EX);
+}
+
+function get_command_signal($device_id) {
+    $signal = @file_get_contents(get_command_signal_file($device_id));
+    return $signal === false ? null : $signal;
+}
+
+function base64url_encode($data) {
+    return rtrim(strtr(base64_encode($data), '+/', '-_'), '=');
+}
+
+function fcm_http_post($url, $body, $headers) {
+    $curl = curl_init($url);
+    curl_setopt_array($curl, [
+        CURLOPT_POST => true,
+        CURLOPT_POSTFIELDS => $body,
+        CURLOPT_HTTPHEADER => $headers,
+        CURLOPT_RETURNTRANSFER => true,
+        CURLOPT_TIMEOUT => FCM_TIMEOUT
+    ]);
+    $response = curl_exec($curl);
+    $code = $response === false ? 0 : curl_getinfo($curl, CURLINFO_HTTP_CODE);
+    if ($response === false) {
+        error_log('FCM request failed: ' . curl_error($curl));
+    }
+    curl_close($curl);
+    
+    return [$code, $response === false ? null : json_decode($response, true)];
+}
+
+function get_fcm_access_token() {
+    // Google tokens last an hour; one is shared by every request until shortly before it expires
+    $cache_file = sys_get_temp_dir() . '/fcm_access_token_' . md5(FCM_SERVICE_ACCOUNT_FILE);
+    $cached = json_decode((string) @file_get_contents($cache_file), true);
+    if (is_array($cached) && ($cached['expires_at'] ?? 0) > time() + 60) {
+        return $cached['access_token'];
+    }
+    
+    $account = json_decode((string) @file_get_contents(FCM_SERVICE_ACCOUNT_FILE), true);
+    if (!is_array($account) || empty($account['client_email']) || empty($account['private_key'])) {
+        error_log('FCM service account missing or invalid: ' . FCM_SERVICE_ACCOUNT_FILE);
+        return null;
+    }
+    
+    $now = time();
+    $header = base64url_encode(json_encode(['alg' => 'RS256', 'typ' => 'JWT']));
+    $claims = base64url_encode(json_encode([
+        'iss' => $account['client_email'],
+        'scope' => 'https://www.googleapis.com/auth/firebase.messaging',
+        'aud' => 'https://oauth2.googleapis.com/token',
+        'iat' => $now,
+        'exp' => $now + 3600
+    ]));
+    $signature = '';
+    if (!openssl_sign($header . '.' . $claims, $signature, $account['private_key'], OPENSSL_ALGO_SHA256)) {
+        error_log('Failed to sign FCM token request');
+        return null;
+    }
+    
+    list($code, $response) = fcm_http_post('https://oauth2.googleapis.com/token', http_build_query([
+        'grant_type' => 'urn:ietf:params:oauth:grant-type:jwt-bearer',
+        'assertion' => $header . '.' . $claims . '.' . base64url_encode($signature)
+    ]), ['Content-Type: application/x-www-form-urlencoded']);
+    if ($code !== 200 || empty($response['access_token'])) {
+        error_log('FCM access token request failed: ' . $code);
+        return null;
+    }
+    
+    file_put_contents($cache_file, json_encode([
+        'access_token' => $response['access_token'],
+        'expires_at' => $now + intval($response['expires_in'] ?? 3600)
+    ]), LOCK_EX);
+    chmod($cache_file, 0600);
+    return $response['access_token'];
+}
+
+// Returns 'sent', 'unregistered' when the token is no longer valid, or 'failed'
+function send_fcm_message($fcm_token, $data) {
+    $access_token = get_fcm_access_token();
+    if ($access_token === null) {
+        return 'failed';
+    }
+    
+    list($code, $response) = fcm_http_post(
+        'https://fcm.googleapis.com/v1/projects/' . FCM_PROJECT_ID . '/messages:send',
+        json_encode([
+            'message' => [
+                'token' => $fcm_token,
+                'data' => $data,
+                // High priority wakes a dozing device, which a remote command is worth
+                'android' => ['priority' => 'high']
+            ]
+        ]),
+        ['Content-Type: application/json', 'Authorization: Bearer ' . $access_token]
+    );
+    
+    if ($code === 200) {
+        return 'sent';
+    }
+    if ($code === 404 || ($response['error']['status'] ?? '') === 'NOT_FOUND') {
+        return 'unregistered';
+    }
+    if ($code === 401) {
+        // Revoked before it expired; the next send fetches a new one
+        @unlink(sys_get_temp_dir() . '/fcm_access_token_' . md5(FCM_SERVICE_ACCOUNT_FILE));
+    }
+    error_log('FCM send failed: ' . $code . ' ' . ($response['error']['message'] ?? ''));
+    return 'failed';
+}
+
+// Returns 'push' if the device was sent the command over FCM, otherwise 'poll'
+function push_command($device_id, $command_id, $type, $payload) {
+    if (FCM_PROJECT_ID === '') {
+        return 'poll';
+    }
+    
+    $db = get_database_connection();
+    $stmt = $db->prepare("SELECT fcm_token FROM devices WHERE device_id = ? AND is_active = 1");
+    $stmt->execute([$device_id]);
+    $fcm_token = $stmt->fetchColumn();
+    if (!$fcm_token) {
+        return 'poll';
+    }
+    
+    // Data values must be strings; payload fields are flattened the way the app reads polled commands
+    $data = [
+        'device_id' => $device_id,
+        'command_id' => strval($command_id),
+        'command_type' => $type
+    ];
+    if (is_array($payload)) {
+        foreach ($payload as $key => $value) {
+            if (is_scalar($value) && !isset($data[$key])) {
+                $data[$key] = is_bool($value) ? ($value ? 'true' : 'false') : strval($value);
+            }
+        }
+    }
+    if (strlen(json_encode($data)) > FCM_MAX_DATA_BYTES) {
+        // Too large to carry inline, so only tell the device to poll for it
+        $data = ['device_id' => $device_id, 'command_id' => strval($command_id), 'action' => 'poll'];
+    }
+    
+    $result = send_fcm_message($fcm_token, $data);
+    if ($result === 'unregistered') {
+        // The app uninstalled or the token rotated; polling picks commands up until a new token arrives
+        $stmt = $db->prepare("UPDATE devices SET fcm_token = NULL WHERE device_id = ? AND fcm_token = ?");
+        $stmt->execute([$device_id, $fcm_token]);
+        log_event($device_id, 'FCM_TOKEN_UNREGISTERED');
+    }
+    
+    return $result === 'sent' ? 'push' : 'poll';
+}
+
 function rate_limit($identifier, $max_requests = 60, $time_window = 3600) {
     // Simple file-based rate limiting
     $rate_limit_file = sys_get_temp_dir() . '/rate_limit_' . md5($identifier);
@@ -2,7 +2,9 @@
 header('Content-Type: application/json');
 header('Access-Control-Allow-Origin: *');
 header('Access-Control-Allow-Methods: GET, POST, PUT, DELETE, OPTIONS');
-header('Access-Control-Allow-Headers: Content-Type, Authorization');
+header('Access-Control-Allow-Headers: Content-Type, Content-Encoding, Authorization');
+// Responses are per-device and mostly stateful; endpoints opt in to caching individually
+header('Cache-Control: no-store');
 
 // Handle preflight requests
 if ($_SERVER['REQUEST_METHOD'] === 'OPTIONS') {
@@ -52,13 +54,27 @@ function route_request($path, $method) {
                     if (count($segments) >= 3) {
                         switch ($segments[2]) {
                             case 'location':
-                                if ($method === 'POST') {
+                                if (count($segments) >= 4 && $segments[3] === 'batch') {
+                                    if ($method === 'POST') {
+                                        handle_location_batch_upload($device_id);
+                                    } else {
+                                        send_error('Method not allowed', 405);
+                                    }
+                                } elseif ($method === 'POST') {
                                     handle_location_upload($device_id);
                                 } else {
                                     send_error('Method not allowed', 405);
                                 }
                                 break;
                                 
+                            case 'locations':
+                                if ($method === 'GET') {
+                                    handle_location_history($device_id);
+                                } else {
+                                    send_error('Method not allowed', 405);
+                                }
+                                break;
+                                
                             case 'commands':
                                 if (count($segments) >= 4 && $segments[3] === 'poll') {
                                     if ($method === 'GET') {
@@ -66,6 +82,12 @@ function route_request($path, $method) {
                                     } else {
                                         send_error('Method not allowed', 405);
                                     }
+                                } elseif (count($segments) === 4 && $segments[3] === 'ack') {
+                                    if ($method === 'POST') {
+                                        handle_command_ack_batch($device_id);
+                                    } else {
+                                        send_error('Method not allowed', 405);
+                                    }
                                 } elseif (count($segments) >= 5 && $segments[4] === 'ack') {
                                     if ($method === 'POST') {
                                         handle_command_ack($device_id, $segments[3]);
@@ -79,6 +101,14 @@ function route_request($path, $method) {
                                 }
                                 break;
                                 
+                            case 'metrics':
+                                if ($method === 'POST') {
+                                    handle_metrics_upload($device_id);
+                                } else {
+                                    send_error('Method not allowed', 405);
+                                }
+                                break;
+                                
                             case 'sim_change':
                                 if ($method === 'POST') {
                                     handle_sim_change($device_id);
@@ -87,6 +117,44 @@ function route_request($path, $method) {
                                 }
                                 break;
                                 
+                            case 'fcm_token':
+                                if ($method === 'POST') {
+                                    handle_fcm_token_update($device_id);
+                                } else {
+                                    send_error('Method not allowed', 405);
+                                }
+                                break;
+                                
+                            case 'geofences':
+                                if (count($segments) >= 4 && $segments[3] === 'events') {
+                                    if ($method === 'POST') {
+                                        handle_geofence_events($device_id);
+                                    } else {
+                                        send_error('Method not allowed', 405);
+                                    }
+                                } elseif (count($segments) >= 4 && $segments[3] !== '') {
+                                    if ($method === 'DELETE') {
+                                        handle_geofence_delete($device_id, $segments[3]);
+                                    } else {
+                                        send_error('Method not allowed', 405);
+                                    }
+                                } elseif ($method === 'GET') {
+                                    handle_geofence_list($device_id);
+                                } elseif ($method === 'POST') {
+                                    handle_geofence_create($device_id);
+                                } else {
+                                    send_error('Method not allowed', 405);
+                                }
+                                break;
+                                
+                            case 'token':
+                                if ($method === 'DELETE') {
+                                    handle_device_token_reset($device_id);
+                                } else {
+                                    send_error('Method not allowed', 405);
+                                }
+                                break;
+                                
                             case 'status':
                                 if ($method === 'GET') {
                                     handle_device_status($device_id);
@@ -125,7 +193,7 @@ function handle_device_registration() {
     
     $device_id = $input['device_id'];
     $device_name = $input['device_name'];
-    $auth_token = $input['auth_token'] ?? generate_token();
+    $auth_token = $input['auth_token'] ?? null;
     $model = $input['model'] ?? '';
     $os_version = $input['os_version'] ?? '';
     $fcm_token = $input['fcm_token'] ?? null;
@@ -133,21 +201,61 @@ function handle_device_registration() {
     $db = get_database_connection();
     
     // Check if device already exists
-    $stmt = $db->prepare("SELECT id FROM devices WHERE device_id = ?");
+    $stmt = $db->prepare("SELECT device_token FROM devices WHERE device_id = ?");
     $stmt->execute([$device_id]);
-    
-    if ($stmt->fetch()) {
-        // Update existing device
-        $stmt = $db->prepare("UPDATE devices SET device_name = ?, model = ?, os_version = ?, fcm_token = ?, last_seen = NOW() WHERE device_id = ?");
-        $stmt->execute([$device_name, $model, $os_version, $fcm_token, $device_id]);
+    $existing = $stmt->fetch();
+    
+    // Keep the device's own token when it is strong enough, so retrying the registration is idempotent
+    $client_token = is_string($auth_token) && strlen($auth_token) >= MIN_CLIENT_TOKEN_LENGTH ? $auth_token : null;
+    
+    if ($existing) {
+        if ($existing['device_token'] === '') {
+            // Released by the owner through DELETE /devices/{id}/token, so the next registration claims it
+            $device_token = $client_token ?? generate_token();
+        } elseif (is_string($auth_token) && hash_equals($existing['device_token'], $auth_token)) {
+            // A retry whose earlier response was lost presents the token already on file
+            $device_token = $existing['device_token'];
+        } else {
+            // device_id is not a secret, so anyone else asking for it must not get or replace the token
+            send_error('Device already registered', 409);
+            return;
+        }
+        
+        // A registration without an FCM token must not drop the one the device synced earlier
+        $stmt = $db->prepare("UPDATE devices SET device_name = ?, device_token = ?, model = ?, os_version = ?, fcm_token = COALESCE(?, fcm_token), last_seen = NOW() WHERE device_id = ?");
+        $stmt->execute([$device_name, $device_token, $model, $os_version, $fcm_token, $device_id]);
     } else {
-        // Create new device
-        $device_token = generate_token();
+        $device_token = $client_token ?? generate_token();
         $stmt = $db->prepare("INSERT INTO devices (device_id, device_name, device_token, model, os_version, fcm_token, is_active, created_at, last_seen) VALUES (?, ?, ?, ?, ?, ?, 1, NOW(), NOW())");
         $stmt->execute([$device_id, $device_name, $device_token, $model, $os_version, $fcm_token]);
     }
     
-    send_success(['device_token' => $device_token ?? $auth_token]);
+    send_success(['device_token' => $device_token]);
+}
+
+function handle_device_token_reset($device_id) {
+    // Owner-only: a reinstalled app has lost the token and is refused until the old one is released
+    if (!verify_admin_key(get_auth_header())) {
+        send_error('Unauthorized', 401);
+        return;
+    }
+    
+    $db = get_database_connection();
+    
+    $stmt = $db->prepare("UPDATE devices SET device_token = '' WHERE device_id = ?");
+    $stmt->execute([$device_id]);
+    
+    if ($stmt->rowCount() === 0) {
+        // Also covers a token that was already released
+        $stmt = $db->prepare("SELECT id FROM devices WHERE device_id = ?");
+        $stmt->execute([$device_id]);
+        if ($stmt->fetch() === false) {
+            send_error('Device not found', 404);
+            return;
+        }
+    }
+    
+    send_success();
 }
 
 function handle_location_upload($device_id) {
@@ -183,6 +291,115 @@ function handle_location_upload($device_id) {
     send_success();
 }
 
+function handle_location_batch_upload($device_id) {
+    $auth_header = get_auth_header();
+    if (!$auth_header || !verify_device_token($device_id, $auth_header)) {
+        send_error('Unauthorized', 401);
+        return;
+    }
+    
+    $content_type = get_request_content_type();
+    if ($content_type === COMPACT_LOCATIONS_CONTENT_TYPE) {
+        $locations = decode_compact_locations(get_request_body());
+        if ($locations === null) {
+            send_error('Malformed location batch', 400);
+            return;
+        }
+        $input = ['locations' => $locations];
+    } elseif ($content_type === '' || $content_type === 'application/json') {
+        $input = get_json_input();
+    } else {
+        // The app falls back to JSON on a 415, so an encoding this server can't read must not look like bad data
+        send_error('Unsupported location batch encoding', 415);
+        return;
+    }
+    
+    if (!$input || !isset($input['locations']) || !is_array($input['locations'])) {
+        send_error('Missing location data', 400);
+        return;
+    }
+    
+    if (count($input['locations']) > MAX_LOCATION_BATCH_SIZE) {
+        send_error('Too many locations in batch', 400);
+        return;
+    }
+    
+    $db = get_database_connection();
+    
+    // One transaction per batch instead of one round trip per fix
+    $db->beginTransaction();
+    try {
+        $stmt = $db->prepare("INSERT INTO locations (device_id, lat, lng, accuracy, provider, recorded_at) VALUES (?, ?, ?, ?, ?, FROM_UNIXTIME(?))");
+        
+        $accepted = 0;
+        foreach ($input['locations'] as $location) {
+            if (!isset($location['lat']) || !isset($location['lng']) ||
+                !validate_coordinates($location['lat'], $location['lng'])) {
+                continue;
+            }
+            
+            $stmt->execute([
+                $device_id,
+                floatval($location['lat']),
+                floatval($location['lng']),
+                floatval($location['accuracy'] ?? -1),
+                $location['provider'] ?? 'unknown',
+                normalize_timestamp($location['timestamp'] ?? time())
+            ]);
+            $accepted++;
+        }
+        
+        $stmt = $db->prepare("UPDATE devices SET last_seen = NOW() WHERE device_id = ?");
+        $stmt->execute([$device_id]);
+        
+        $db->commit();
+    } catch (Exception $e) {
+        $db->rollBack();
+        throw $e;
+    }
+    
+    send_success(['accepted' => $accepted]);
+}
+
+function handle_location_history($device_id) {
+    // The web dashboard reads it with the owner key, the device with its own token
+    $auth_header = get_auth_header();
+    if (!verify_admin_key($auth_header) && !($auth_header && verify_device_token($device_id, $auth_header))) {
+        send_error('Unauthorized', 401);
+        return;
+    }
+    
+    $to = isset($_GET['to']) ? normalize_timestamp($_GET['to']) : time();
+    $from = isset($_GET['from']) ? normalize_timestamp($_GET['from']) : $to - 24 * 3600;
+    $tolerance = isset($_GET['tolerance']) ? max(0, floatval($_GET['tolerance'])) : DEFAULT_HISTORY_TOLERANCE;
+    
+    $db = get_database_connection();
+    
+    $stmt = $db->prepare("SELECT lat, lng, accuracy, provider, UNIX_TIMESTAMP(recorded_at) AS timestamp FROM locations WHERE device_id = ? AND recorded_at BETWEEN FROM_UNIXTIME(?) AND FROM_UNIXTIME(?) ORDER BY recorded_at ASC LIMIT " . MAX_HISTORY_POINTS);
+    $stmt->execute([$device_id, $from, $to]);
+    
+    $points = [];
+    while ($row = $stmt->fetch(PDO::FETCH_ASSOC)) {
+        $points[] = [
+            'lat' => floatval($row['lat']),
+            'lng' => floatval($row['lng']),
+            'accuracy' => floatval($row['accuracy']),
+            'provider' => $row['provider'],
+            'timestamp' => intval($row['timestamp'])
+        ];
+    }
+    
+    $simplified = simplify_trajectory($points, $tolerance);
+    
+    send_success([
+        'locations' => $simplified['points'],
+        'original_count' => count($points),
+        'returned_count' => count($simplified['points']),
+        'max_deviation' => round($simplified['max_deviation'], 1),
+        'truncated' => count($points) >= MAX_HISTORY_POINTS
+    ]);
+}
+
 function handle_command_poll($device_id) {
     $auth_header = get_auth_header();
     if (!$auth_header || !verify_device_token($device_id, $auth_header)) {
@@ -191,16 +408,41 @@ function handle_command_poll($device_id) {
     }
     
     $since_id = intval($_GET['since_id'] ?? 0);
+    // Long-poll: hold the request open for up to `wait` seconds until a command arrives
+    $wait = max(0, min(intval($_GET['wait'] ?? 0), LONG_POLL_MAX_WAIT));
+    set_time_limit($wait + 30);
     
     $db = get_database_connection();
     
-    $stmt = $db->prepare("SELECT id, type, payload, created_at FROM commands WHERE device_id = ? AND id > ? AND status = 'pending' ORDER BY id ASC LIMIT 10");
-    $stmt->execute([$device_id, $since_id]);
+    $stmt = $db->prepare("SELECT id, type, payload, UNIX_TIMESTAMP(created_at) AS created_at FROM commands WHERE device_id = ? AND id > ? AND status = 'pending' ORDER BY id ASC LIMIT " . COMMAND_POLL_LIMIT);
     
-    $commands = [];
-    while ($row = $stmt->fetch(PDO::FETCH_ASSOC)) {
-        $row['payload'] = json_decode($row['payload'], true);
-        $commands[] = $row;
+    $deadline = microtime(true) + $wait;
+    $last_signal = get_command_signal($device_id);
+    
+    while (true) {
+        $stmt->execute([$device_id, $since_id]);
+        
+        $commands = [];
+        while ($row = $stmt->fetch(PDO::FETCH_ASSOC)) {
+            $row['id'] = intval($row['id']);
+            $row['created_at'] = intval($row['created_at']);
+            $row['payload'] = json_decode($row['payload'], true);
+            $commands[] = $row;
+        }
+        
+        if (!empty($commands) || microtime(true) >= $deadline) {
+            break;
+        }
+        
+        // Only go back to the database once handle_command_create has signalled a new row
+        while (microtime(true) < $deadline) {
+            usleep(LONG_POLL_CHECK_INTERVAL);
+            $signal = get_command_signal($device_id);
+            if ($signal !== $last_signal) {
+                $last_signal = $signal;
+                break;
+            }
+        }
     }
     
     send_success($commands);
@@ -226,6 +468,58 @@ function handle_command_ack($device_id, $command_id) {
     send_success();
 }
 
+function handle_command_ack_batch($device_id) {
+    $auth_header = get_auth_header();
+    if (!$auth_header || !verify_device_token($device_id, $auth_header)) {
+        send_error('Unauthorized', 401);
+        return;
+    }
+    
+    $input = get_json_input();
+    
+    if (!$input || !isset($input['acks']) || !is_array($input['acks'])) {
+        send_error('Missing acknowledgements', 400);
+        return;
+    }
+    
+    if (count($input['acks']) > MAX_COMMAND_ACK_BATCH_SIZE) {
+        send_error('Too many acknowledgements in batch', 400);
+        return;
+    }
+    
+    $db = get_database_connection();
+    
+    // Acks are retried by the device, so replays must be harmless: a command
+    // that already reached a final state is never moved back or overwritten
+    $stmt = $db->prepare("UPDATE commands SET status = ?, message = ?, executed_at = FROM_UNIXTIME(?) WHERE id = ? AND device_id = ? AND status NOT IN ('executed', 'failed')");
+    
+    $acknowledged = [];
+    $db->beginTransaction();
+    try {
+        foreach ($input['acks'] as $ack) {
+            if (!isset($ack['command_id']) || !in_array($ack['status'] ?? '', ['acknowledged', 'executed', 'failed'], true)) {
+                continue;
+            }
+            
+            $stmt->execute([
+                $ack['status'],
+                $ack['message'] ?? '',
+                normalize_timestamp($ack['executed_at'] ?? time()),
+                intval($ack['command_id']),
+                $device_id
+            ]);
+            $acknowledged[] = intval($ack['command_id']);
+        }
+        
+        $db->commit();
+    } catch (Exception $e) {
+        $db->rollBack();
+        throw $e;
+    }
+    
+    send_success(['acknowledged' => $acknowledged]);
+}
+
 function handle_command_create($device_id) {
     // This would typically be called from the web dashboard
     $input = get_json_input();
@@ -245,7 +539,13 @@ function handle_command_create($device_id) {
     
     $command_id = $db->lastInsertId();
     
-    send_success(['command_id' => $command_id]);
+    // Wake any long-poll waiting on this device
+    signal_new_command($device_id);
+    
+    // The push carries the whole command; a device that misses it still finds it pending on its next poll
+    $delivery = push_command($device_id, $command_id, $type, $input['payload'] ?? []);
+    
+    send_success(['command_id' => $command_id, 'delivery' => $delivery]);
 }
 
 function handle_sim_change($device_id) {
@@ -263,16 +563,238 @@ function handle_sim_change($device_id) {
     $stmt = $db->prepare("INSERT INTO logs (device_id, event_type, message, event_at) VALUES (?, 'SIM_CHANGE', ?, NOW())");
     $stmt->execute([$device_id, json_encode($input)]);
     
-    // If location is provided, store it
+    // If location is provided, store it at the time the fix was taken; it may have waited for a network
     if (isset($input['location'])) {
         $location = $input['location'];
-        $stmt = $db->prepare("INSERT INTO locations (device_id, lat, lng, accuracy, provider, recorded_at) VALUES (?, ?, ?, ?, 'sim_change', NOW())");
-        $stmt->execute([$device_id, $location['lat'], $location['lng'], $location['accuracy'] ?? -1]);
+        $stmt = $db->prepare("INSERT INTO locations (device_id, lat, lng, accuracy, provider, recorded_at) VALUES (?, ?, ?, ?, 'sim_change', FROM_UNIXTIME(?))");
+        $stmt->execute([
+            $device_id,
+            $location['lat'],
+            $location['lng'],
+            $location['accuracy'] ?? -1,
+            normalize_timestamp($location['timestamp'] ?? time())
+        ]);
+    }
+    
+    send_success();
+}
+
+function handle_fcm_token_update($device_id) {
+    $auth_header = get_auth_header();
+    if (!$auth_header || !verify_device_token($device_id, $auth_header)) {
+        send_error('Unauthorized', 401);
+        return;
+    }
+    
+    $input = get_json_input();
+    $fcm_token = $input['fcm_token'] ?? null;
+    
+    if (!is_string($fcm_token) || $fcm_token === '' || strlen($fcm_token) > MAX_FCM_TOKEN_LENGTH) {
+        send_error('Invalid FCM token', 400);
+        return;
+    }
+    
+    $db = get_database_connection();
+    
+    $stmt = $db->prepare("UPDATE devices SET fcm_token = ?, last_seen = NOW() WHERE device_id = ?");
+    $stmt->execute([$fcm_token, $device_id]);
+    
+    send_success();
+}
+
+function handle_metrics_upload($device_id) {
+    $auth_header = get_auth_header();
+    if (!$auth_header || !verify_device_token($device_id, $auth_header)) {
+        send_error('Unauthorized', 401);
+        return;
+    }
+    
+    $body = get_request_body();
+    if (strlen($body) > MAX_METRICS_SNAPSHOT_BYTES) {
+        send_error('Metrics snapshot too large', 413);
+        return;
+    }
+    
+    $input = json_decode($body, true);
+    if (!$input || !isset($input['period_start']) || !isset($input['period_end'])) {
+        send_error('Missing metrics period', 400);
+        return;
+    }
+    
+    $entries = 0;
+    foreach (['counters', 'gauges', 'histograms'] as $section) {
+        if (isset($input[$section]) && !is_array($input[$section])) {
+            send_error('Invalid metrics section: ' . $section, 400);
+            return;
+        }
+        $entries += count($input[$section] ?? []);
+    }
+    if ($entries > MAX_METRICS_ENTRIES) {
+        send_error('Too many metrics in snapshot', 400);
+        return;
+    }
+    
+    $db = get_database_connection();
+    
+    $stmt = $db->prepare("INSERT INTO device_metrics (device_id, period_start, period_end, snapshot) VALUES (?, FROM_UNIXTIME(?), FROM_UNIXTIME(?), ?)");
+    $stmt->execute([
+        $device_id,
+        normalize_timestamp($input['period_start']),
+        normalize_timestamp($input['period_end']),
+        json_encode([
+            'counters' => $input['counters'] ?? new stdClass(),
+            'gauges' => $input['gauges'] ?? new stdClass(),
+            'histograms' => $input['histograms'] ?? new stdClass()
+        ])
+    ]);
+    
+    send_success();
+}
+
+function handle_geofence_list($device_id) {
+    $auth_header = get_auth_header();
+    if (!$auth_header || !verify_device_token($device_id, $auth_header)) {
+        send_error('Unauthorized', 401);
+        return;
+    }
+    
+    $db = get_database_connection();
+    
+    $stmt = $db->prepare("SELECT id, name, lat, lng, radius FROM geofences WHERE device_id = ? ORDER BY id");
+    $stmt->execute([$device_id]);
+    $geofences = [];
+    while ($row = $stmt->fetch(PDO::FETCH_ASSOC)) {
+        $geofences[] = [
+            'id' => intval($row['id']),
+            'name' => $row['name'],
+            'lat' => floatval($row['lat']),
+            'lng' => floatval($row['lng']),
+            'radius' => floatval($row['radius'])
+        ];
+    }
+    
+    // Devices refresh periodically; an unchanged list costs a bodiless 304
+    $etag = '"' . md5(json_encode($geofences)) . '"';
+    header('Cache-Control: private, no-cache');
+    header('ETag: ' . $etag);
+    if (trim($_SERVER['HTTP_IF_NONE_MATCH'] ?? '') === $etag) {
+        http_response_code(304);
+        exit();
+    }
+    
+    send_success($geofences);
+}
+
+function handle_geofence_create($device_id) {
+    // This would typically be called from the web dashboard
+    $input = get_json_input();
+    
+    if (!$input || !isset($input['name']) || !isset($input['lat']) || !isset($input['lng']) || !isset($input['radius'])) {
+        send_error('Missing geofence data', 400);
+        return;
+    }
+    
+    if (!validate_coordinates($input['lat'], $input['lng'])) {
+        send_error('Invalid coordinates', 400);
+        return;
+    }
+    
+    $radius = floatval($input['radius']);
+    if ($radius < MIN_GEOFENCE_RADIUS || $radius > MAX_GEOFENCE_RADIUS) {
+        send_error('Radius must be between ' . MIN_GEOFENCE_RADIUS . ' and ' . MAX_GEOFENCE_RADIUS . ' metres', 400);
+        return;
+    }
+    
+    $db = get_database_connection();
+    
+    $stmt = $db->prepare("SELECT COUNT(*) FROM geofences WHERE device_id = ?");
+    $stmt->execute([$device_id]);
+    if ($stmt->fetchColumn() >= MAX_GEOFENCES_PER_DEVICE) {
+        send_error('Too many geofences for this device', 400);
+        return;
+    }
+    
+    $stmt = $db->prepare("INSERT INTO geofences (device_id, name, lat, lng, radius, created_at) VALUES (?, ?, ?, ?, ?, NOW())");
+    $stmt->execute([$device_id, $input['name'], floatval($input['lat']), floatval($input['lng']), $radius]);
+    
+    send_success(['geofence_id' => intval($db->lastInsertId())]);
+}
+
+function handle_geofence_delete($device_id, $geofence_id) {
+    // This would typically be called from the web dashboard
+    $db = get_database_connection();
+    
+    $stmt = $db->prepare("DELETE FROM geofences WHERE id = ? AND device_id = ?");
+    $stmt->execute([intval($geofence_id), $device_id]);
+    
+    if ($stmt->rowCount() === 0) {
+        send_error('Geofence not found', 404);
+        return;
     }
     
     send_success();
 }
 
+function handle_geofence_events($device_id) {
+    $auth_header = get_auth_header();
+    if (!$auth_header || !verify_device_token($device_id, $auth_header)) {
+        send_error('Unauthorized', 401);
+        return;
+    }
+    
+    $input = get_json_input();
+    
+    if (!$input || !isset($input['events']) || !is_array($input['events'])) {
+        send_error('Missing geofence events', 400);
+        return;
+    }
+    
+    if (count($input['events']) > MAX_GEOFENCE_EVENT_BATCH_SIZE) {
+        send_error('Too many geofence events in batch', 400);
+        return;
+    }
+    
+    $db = get_database_connection();
+    
+    // Only events for this device's own zones are stored
+    $stmt = $db->prepare("INSERT INTO geofence_events (device_id, geofence_id, type, lat, lng, accuracy, recorded_at)
+                          SELECT ?, id, ?, ?, ?, ?, FROM_UNIXTIME(?) FROM geofences WHERE id = ? AND device_id = ?");
+    
+    $accepted = 0;
+    $db->beginTransaction();
+    try {
+        foreach ($input['events'] as $event) {
+            if (!isset($event['geofence_id']) || !in_array($event['type'] ?? '', ['enter', 'exit'], true) ||
+                !isset($event['lat']) || !isset($event['lng']) ||
+                !validate_coordinates($event['lat'], $event['lng'])) {
+                continue;
+            }
+            
+            $stmt->execute([
+                $device_id,
+                $event['type'],
+                floatval($event['lat']),
+                floatval($event['lng']),
+                floatval($event['accuracy'] ?? -1),
+                normalize_timestamp($event['timestamp'] ?? time()),
+                intval($event['geofence_id']),
+                $device_id
+            ]);
+            $accepted += $stmt->rowCount();
+        }
+        
+        $stmt = $db->prepare("UPDATE devices SET last_seen = NOW() WHERE device_id = ?");
+        $stmt->execute([$device_id]);
+        
+        $db->commit();
+    } catch (Exception $e) {
+        $db->rollBack();
+        throw $e;
+    }
+    
+    send_success(['accepted' => $accepted]);
+}
+
 function handle_device_status($device_id) {
     $auth_header = get_auth_header();
     if (!$auth_header || !verify_device_token($device_id, $auth_header)) {
@@ -299,6 +821,8 @@ function handle_device_status($device_id) {
     
     $device['last_location'] = $location;
     
+    // Safe to reuse briefly; the status only changes when the device checks in
+    header('Cache-Control: private, max-age=15');
     send_success($device);
 }
 ?>
\ No newline at end of file
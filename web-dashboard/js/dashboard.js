@@ -1,9 +1,12 @@
 // Dashboard JavaScript
 const API_BASE_URL = 'http://localhost/findmydevice/backend';
+// ADMIN_API_KEY from the backend config; location history is refused without it
+const ADMIN_API_KEY = '';
 let map;
 let devices = [];
 let selectedDevice = null;
 let deviceMarkers = {};
+let historyLine = null;
 
 // Initialize the dashboard
 document.addEventListener('DOMContentLoaded', function() {
@@ -122,6 +125,7 @@ function selectDevice(deviceId) {
     
     if (device) {
         updateDeviceInfo(device);
+        loadHistory(deviceId);
         
         // Center map on selected device
         if (device.last_location) {
@@ -140,6 +144,42 @@ function selectDevice(deviceId) {
     }
 }
 
+async function loadHistory(deviceId) {
+    try {
+        // The server simplifies the track to within 10 m, so a day of fixes stays cheap to draw
+        const response = await fetch(`${API_BASE_URL}/devices/${deviceId}/locations?tolerance=10`, {
+            headers: { 'Authorization': `Bearer ${ADMIN_API_KEY}` }
+        });
+        
+        if (!response.ok) {
+            throw new Error('Failed to load location history');
+        }
+        
+        const data = await response.json();
+        
+        // Ignore a late response for a device that is no longer selected; it must not erase the current track
+        if (deviceId !== selectedDevice) {
+            return;
+        }
+        
+        if (historyLine) {
+            map.removeLayer(historyLine);
+            historyLine = null;
+        }
+        
+        if (!data.locations || data.locations.length < 2) {
+            return;
+        }
+        
+        const points = data.locations.map(location => [location.lat, location.lng]);
+        historyLine = L.polyline(points, { color: '#0d6efd', weight: 3, opacity: 0.7 }).addTo(map);
+        historyLine.bindPopup(`${data.returned_count} of ${data.original_count} points in the last 24 hours`);
+        
+    } catch (error) {
+        console.error('Error loading location history:', error);
+    }
+}
+
 function updateDeviceInfo(device) {
     const deviceInfo = document.getElementById('deviceInfo');
     